@@ -0,0 +1,114 @@
+#!/usr/bin/env python3
+"""Compares JMH JSON results with a baseline.
+
+Usage: compare-benchmarks.py [--threshold PERCENT] BASELINE CURRENT
+
+Prints the score and the allocations per operation of every benchmark in both files, and exits with 1 when a score
+regressed by more than the threshold (10% by default) even at the favourable end of the confidence interval of the
+change. The interval combines the relative error margins of both runs, so a benchmark scoring around a nanosecond is
+held to the same standard as one scoring milliseconds. Scores whose margin exceeds half of the score are flagged as
+too noisy to compare.
+"""
+
+import argparse
+import json
+import math
+import sys
+
+ALLOCATION_METRIC = "·gc.alloc.rate.norm"
+NOISY_RELATIVE_ERROR = 0.5
+
+
+def load(path):
+    with open(path) as results:
+        return {key(result): result for result in json.load(results)}
+
+
+def key(result):
+    params = ",".join("%s=%s" % item for item in sorted(result.get("params", {}).items()))
+    return "%s(%s)" % (result["benchmark"].rsplit(".", 2)[-2] + "." + result["benchmark"].rsplit(".", 1)[-1], params)
+
+
+def allocation(result):
+    metric = result.get("secondaryMetrics", {}).get(ALLOCATION_METRIC)
+    return None if metric is None else metric["score"]
+
+
+def change(baseline, current):
+    return 0.0 if baseline == 0 else (current - baseline) * 100.0 / baseline
+
+
+def relative_error(result):
+    metric = result["primaryMetric"]
+    error = metric.get("scoreError")
+    if metric["score"] == 0 or error is None or math.isnan(error):
+        return float("inf")
+
+    return abs(error / metric["score"])
+
+
+def is_noisy(result):
+    return relative_error(result) > NOISY_RELATIVE_ERROR
+
+
+def is_regression(baseline, current, threshold):
+    if is_noisy(baseline) or is_noisy(current):
+        return False
+
+    base = baseline["primaryMetric"]["score"]
+    cur = current["primaryMetric"]["score"]
+    if base == 0:
+        return False
+
+    # Confidence interval of the ratio of the scores, from the relative errors of both runs
+    ratio = cur / base
+    margin = math.hypot(relative_error(baseline), relative_error(current))
+    # Scores of throughput modes are better higher, the others lower
+    if baseline["mode"] == "thrpt":
+        return ratio * (1 + margin) < 1 - threshold / 100.0
+
+    return ratio * (1 - margin) > 1 + threshold / 100.0
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Compares JMH JSON results with a baseline")
+    parser.add_argument("--threshold", type=float, default=10.0, help="regression threshold in percent")
+    parser.add_argument("baseline")
+    parser.add_argument("current")
+    arguments = parser.parse_args()
+
+    baseline = load(arguments.baseline)
+    current = load(arguments.current)
+    regressions = []
+    print("%-70s %14s %14s %9s %12s %12s" % ("Benchmark", "Baseline", "Current", "Change", "B/op base", "B/op now"))
+    for name in sorted(set(baseline) | set(current)):
+        if name not in baseline or name not in current:
+            print("%-70s %s" % (name, "only in the current results" if name in current else "only in the baseline"))
+            continue
+
+        base = baseline[name]
+        cur = current[name]
+        base_allocation = allocation(base)
+        cur_allocation = allocation(cur)
+        regressed = is_regression(base, cur, arguments.threshold)
+        if regressed:
+            regressions.append(name)
+
+        flag = "  REGRESSION" if regressed else "  NOISY" if is_noisy(base) or is_noisy(cur) else ""
+
+        print("%-70s %14.3f %14.3f %8.1f%% %12s %12s %s%s" % (
+            name, base["primaryMetric"]["score"], cur["primaryMetric"]["score"],
+            change(base["primaryMetric"]["score"], cur["primaryMetric"]["score"]),
+            "-" if base_allocation is None else "%.0f" % base_allocation,
+            "-" if cur_allocation is None else "%.0f" % cur_allocation,
+            cur["primaryMetric"]["scoreUnit"], flag))
+
+    if regressions:
+        print("\n%d regression(s) beyond %.1f%%" % (len(regressions), arguments.threshold))
+        return 1
+
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main())
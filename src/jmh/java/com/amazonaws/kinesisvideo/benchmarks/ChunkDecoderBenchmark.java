@@ -0,0 +1,65 @@
+package com.amazonaws.kinesisvideo.benchmarks;
+
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.encoding.ChunkDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the chunked ACK stream of a PutMedia response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkDecoderBenchmark {
+    private static final String[] EVENT_TYPES = {"BUFFERING", "RECEIVED", "PERSISTED"};
+
+    /**
+     * Number of ACKs in the response
+     */
+    @Param({"3", "300"})
+    private int ackCount;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder builder = new StringBuilder("\r\n");
+        for (int i = 0; i < ackCount; i++) {
+            final String ack = "{\"EventType\":\"" + EVENT_TYPES[i % EVENT_TYPES.length] + "\",\"FragmentTimecode\":"
+                    + (1600000000000L + i / EVENT_TYPES.length * 2000L) + ",\"FragmentNumber\":\"9134385233318150"
+                    + String.format("%05d", i / EVENT_TYPES.length) + "\"}";
+            builder.append(Integer.toHexString(ack.length())).append("\r\n").append(ack).append("\r\n");
+        }
+
+        body = builder.append("0\r\n\r\n").toString();
+    }
+
+    @Benchmark
+    public Integer parseResponseBodyAndDecodeAck(final Blackhole blackhole) {
+        return ChunkDecoder.parseResponseBodyAndDecodeAck(new BufferedReader(new StringReader(body)),
+                new Consumer<String>() {
+                    @Override
+                    public void accept(final String ack) {
+                        blackhole.consume(ack);
+                    }
+                });
+    }
+}
@@ -0,0 +1,76 @@
+package com.amazonaws.kinesisvideo.benchmarks;
+
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentials;
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credential tokens passed to the native producer, with the binary codec against the Java serialization it replaced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialsCodecBenchmark {
+    private KinesisVideoCredentials credentials;
+    private byte[] codecToken;
+    private byte[] serializedToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        final StringBuilder sessionToken = new StringBuilder();
+        while (sessionToken.length() < 800) {
+            sessionToken.append("FwoGZXIvYXdzEJr//////////wEaDOiEXAMPLESESSIONTOKEN");
+        }
+
+        credentials = new KinesisVideoCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY",
+                sessionToken.toString(), new Date(1900000000000L));
+        codecToken = codecEncode();
+        serializedToken = serialize();
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return KinesisVideoCredentialsCodec.encode(credentials);
+    }
+
+    @Benchmark
+    public KinesisVideoCredentials codecDecode() throws Exception {
+        return KinesisVideoCredentialsCodec.decode(codecToken);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (final ObjectOutputStream objectOutput = new ObjectOutputStream(output)) {
+            objectOutput.writeObject(credentials);
+        }
+
+        return output.toByteArray();
+    }
+
+    @Benchmark
+    public KinesisVideoCredentials deserialize() throws Exception {
+        try (final ObjectInputStream objectInput = new ObjectInputStream(new ByteArrayInputStream(serializedToken))) {
+            return (KinesisVideoCredentials) objectInput.readObject();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.amazonaws.kinesisvideo.benchmarks;
+
+import com.amazonaws.kinesisvideo.producer.FrameFlags;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame data handed to the native producer, copied off-heap when the frame wraps a heap buffer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KinesisVideoFrameBenchmark {
+    @Param({"65536", "1048576"})
+    private int size;
+
+    @Param({"true", "false"})
+    private boolean isDirect;
+
+    private KinesisVideoFrame frame;
+
+    @Setup
+    public void setUp() {
+        final ByteBuffer data = isDirect ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        frame = new KinesisVideoFrame(0, FrameFlags.FRAME_FLAG_KEY_FRAME, 0, 0, 20, data);
+    }
+
+    @Benchmark
+    public ByteBuffer getData() {
+        return frame.getData();
+    }
+}
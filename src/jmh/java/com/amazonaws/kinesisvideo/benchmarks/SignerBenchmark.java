@@ -0,0 +1,58 @@
+package com.amazonaws.kinesisvideo.benchmarks;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.kinesisvideo.client.signing.KinesisVideoAWS4Signer;
+import com.amazonaws.kinesisvideo.config.ClientConfiguration;
+import com.amazonaws.kinesisvideo.http.HttpMethodName;
+import com.amazonaws.kinesisvideo.http.KinesisVideoApacheHttpClient;
+import org.apache.http.entity.ContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SigV4 signing of a data plane request
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignerBenchmark {
+    private KinesisVideoAWS4Signer signer;
+    private KinesisVideoApacheHttpClient httpClient;
+
+    @Setup
+    public void setUp() {
+        final ClientConfiguration configuration = ClientConfiguration.builder()
+                .region("us-west-2")
+                .serviceName("kinesisvideo")
+                .build();
+        signer = new KinesisVideoAWS4Signer(new AWSStaticCredentialsProvider(
+                new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")), configuration);
+        httpClient = KinesisVideoApacheHttpClient.builder()
+                .withUri(URI.create("https://s-1234abcd.kinesisvideo.us-west-2.amazonaws.com/getMedia"))
+                .withMethod(HttpMethodName.POST)
+                .withContentType(ContentType.APPLICATION_JSON)
+                .withContentInJson("{\"StreamName\":\"stream\",\"StartSelector\":{\"StartSelectorType\":\"NOW\"}}")
+                .build();
+    }
+
+    @Benchmark
+    public KinesisVideoApacheHttpClient sign() {
+        signer.sign(httpClient);
+        return httpClient;
+    }
+}
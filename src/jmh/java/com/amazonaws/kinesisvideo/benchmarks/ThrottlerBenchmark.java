@@ -0,0 +1,49 @@
+package com.amazonaws.kinesisvideo.benchmarks;
+
+import com.amazonaws.kinesisvideo.stream.throttling.BandwidthThrottlerImpl;
+import com.amazonaws.kinesisvideo.stream.throttling.DiscreteTimePeriodsThrottler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the throttlers on every write when the limits are not reached
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThrottlerBenchmark {
+    private static final int WRITE_SIZE = 8192;
+
+    private BandwidthThrottlerImpl bandwidthThrottler;
+    private DiscreteTimePeriodsThrottler discreteTimePeriodsThrottler;
+
+    @Setup
+    public void setUp() {
+        // Limits no write rate can reach, so neither throttler sleeps
+        bandwidthThrottler = new BandwidthThrottlerImpl(Long.MAX_VALUE / 2);
+        discreteTimePeriodsThrottler = new DiscreteTimePeriodsThrottler(Integer.MAX_VALUE, 10);
+    }
+
+    @Benchmark
+    public int getAllowedBytes() {
+        return bandwidthThrottler.getAllowedBytes(WRITE_SIZE);
+    }
+
+    @Benchmark
+    public void throttle() {
+        discreteTimePeriodsThrottler.throttle();
+    }
+}
@@ -11,11 +11,19 @@ import com.amazonaws.kinesisvideo.producer.Time;
 import javax.annotation.Nullable;
 import javax.annotation.Nonnull;
 
-import java.io.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Default AuthCallbacks implementation based on the credentials provider
+ * Default AuthCallbacks implementation based on the credentials provider.
+ * <p>
+ * The credentials are refreshed in the background on the executor once the configured fraction of the lifetime they
+ * had left when fetched has elapsed, e.g. after 48 minutes for credentials fetched an hour before they expire. A failed
+ * refresh is retried after 5 seconds. The current token is kept in an atomically swapped immutable {@link AuthInfo} so
+ * that {@link #getSecurityToken()}, which is called on the native threads, returns without waiting for the credentials
+ * provider. Only the very first call waits for the initial credentials.
  */
 public class DefaultAuthCallbacks implements AuthCallbacks {
     /**
@@ -28,6 +36,26 @@ public class DefaultAuthCallbacks implements AuthCallbacks {
      */
     public static final long CREDENTIALS_NEVER_EXPIRE = Long.MAX_VALUE;
 
+    /**
+     * Default fraction of the remaining credentials lifetime after which they are refreshed
+     */
+    public static final double DEFAULT_REFRESH_LIFETIME_FRACTION = 0.8;
+
+    /**
+     * Remaining lifetime under which a returned token is counted as a near-expiry event
+     */
+    private static final long NEAR_EXPIRY_THRESHOLD_MILLIS = 60 * 1000;
+
+    /**
+     * Delay before retrying a failed refresh
+     */
+    private static final long REFRESH_RETRY_DELAY_MILLIS = 5 * 1000;
+
+    /**
+     * Minimal delay between the scheduled refreshes
+     */
+    private static final long MIN_REFRESH_DELAY_MILLIS = 1000;
+
     /**
      * Stored credentials provider
      */
@@ -44,21 +72,54 @@ public class DefaultAuthCallbacks implements AuthCallbacks {
     private final Logger log;
 
     /**
-     * Stores the serialized credentials
+     * Fraction of the remaining credentials lifetime after which they are refreshed
      */
-    private byte[] serializedCredentials;
+    private final double refreshLifetimeFraction;
 
     /**
-     * Expiration of the credentials
+     * The current security token. Null until the first refresh completes.
      */
-    private long expiration;
+    private final AtomicReference<AuthInfo> securityToken = new AtomicReference<AuthInfo>();
+
+    /**
+     * Whether a refresh is either running or scheduled
+     */
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    /**
+     * Released once the first refresh attempt has completed
+     */
+    private final CountDownLatch initialRefreshLatch = new CountDownLatch(1);
+
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+    private final AtomicLong lastRefreshLatencyMillis = new AtomicLong();
+    private final AtomicLong maxRefreshLatencyMillis = new AtomicLong();
+    private final AtomicLong nearExpiryCount = new AtomicLong();
 
     public DefaultAuthCallbacks(@Nonnull KinesisVideoCredentialsProvider credentialsProvider,
                                 @Nonnull final ScheduledExecutorService executor,
                                 @Nonnull Logger log) {
+        this(credentialsProvider, executor, log, DEFAULT_REFRESH_LIFETIME_FRACTION);
+    }
+
+    /**
+     * @param credentialsProvider Credentials provider
+     * @param executor Executor to refresh the credentials on
+     * @param log Logger
+     * @param refreshLifetimeFraction Fraction in the (0, 1] range of the lifetime the credentials have left when
+     *                                fetched after which they are refreshed
+     */
+    public DefaultAuthCallbacks(@Nonnull KinesisVideoCredentialsProvider credentialsProvider,
+                                @Nonnull final ScheduledExecutorService executor,
+                                @Nonnull Logger log,
+                                final double refreshLifetimeFraction) {
+        Preconditions.checkArgument(refreshLifetimeFraction > 0 && refreshLifetimeFraction <= 1,
+                "Refresh lifetime fraction must be in the (0, 1] range");
         this.credentialsProvider = Preconditions.checkNotNull(credentialsProvider);
         this.executor = Preconditions.checkNotNull(executor);
         this.log = Preconditions.checkNotNull(log);
+        this.refreshLifetimeFraction = refreshLifetimeFraction;
     }
 
     @Nullable
@@ -70,65 +131,163 @@ public class DefaultAuthCallbacks implements AuthCallbacks {
     @Nullable
     @Override
     public AuthInfo getSecurityToken() {
-        final Runnable task = new Runnable() {
-            @Override
-            public void run() {
-                // Get the updated credentials and serialize it
-
-                final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                try {
-                    final KinesisVideoCredentials credentials = credentialsProvider.getUpdatedCredentials();
-                    expiration = credentials.getExpiration().getTime() * Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
-
-                    final ObjectOutput outputStream = new ObjectOutputStream(byteArrayOutputStream);
-                    outputStream.writeObject(credentials);
-                    outputStream.flush();
-                    serializedCredentials = byteArrayOutputStream.toByteArray();
-                    outputStream.close();
-                } catch (final IOException e) {
-                    // return null
-                    serializedCredentials = null;
-                    expiration = 0;
-                    log.error("Exception was thrown trying to get updated credentials", e);
-                } catch (final KinesisVideoException e) {
-                    // return null
-                    serializedCredentials = null;
-                    expiration = 0;
-                    log.error("Exception was thrown trying to get updated credentials", e);
-                } finally {
-                    try {
-                        byteArrayOutputStream.close();
-                    }
-                    catch(final IOException e) {
-                        // Do nothing
-                        log.error("Closing the byte array stream threw an exception", e);
-                    }
-                }
-            }
-        };
+        AuthInfo authInfo = securityToken.get();
+        if (authInfo == null) {
+            authInfo = awaitInitialToken();
+        }
+
+        recordNearExpiry(authInfo);
+        return authInfo;
+    }
+
+    @Nullable
+    @Override
+    public String getDeviceFingerprint() {
+        throw new RuntimeException("Provisioning is not implemented");
+    }
 
-        final ScheduledFuture<?> future = executor.schedule(task, 0, TimeUnit.NANOSECONDS);
+    /**
+     * Returns the number of successful credentials refreshes
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
 
-        // Await for the future to complete
+    /**
+     * Returns the number of failed credentials refreshes
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.get();
+    }
+
+    /**
+     * Returns the latency of the latest credentials refresh in milliseconds
+     */
+    public long getLastRefreshLatencyMillis() {
+        return lastRefreshLatencyMillis.get();
+    }
+
+    /**
+     * Returns the max latency of the credentials refresh in milliseconds
+     */
+    public long getMaxRefreshLatencyMillis() {
+        return maxRefreshLatencyMillis.get();
+    }
+
+    /**
+     * Returns the number of times a token close to its expiration or already expired has been handed out
+     */
+    public long getNearExpiryCount() {
+        return nearExpiryCount.get();
+    }
+
+    @Nonnull
+    private AuthInfo awaitInitialToken() {
+        scheduleRefresh(0);
+
+        // Await for the initial refresh to complete
         try {
-            future.get(CREDENTIALS_UPDATE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (!initialRefreshLatch.await(CREDENTIALS_UPDATE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.error("Awaiting for the credentials update timed out");
+            }
         } catch (final InterruptedException e) {
             log.error("Awaiting for the credentials update threw an exception", e);
-        } catch (final ExecutionException e) {
-            log.error("Awaiting for the credentials update threw an exception", e);
-        } catch (final TimeoutException e) {
-            log.error("Awaiting for the credentials update threw an exception", e);
+            Thread.currentThread().interrupt();
         }
 
-        return new AuthInfo(
-                AuthInfoType.SECURITY_TOKEN,
-                serializedCredentials,
-                expiration);
+        final AuthInfo authInfo = securityToken.get();
+        return authInfo != null ? authInfo : new AuthInfo(AuthInfoType.SECURITY_TOKEN, (byte[]) null, 0);
     }
 
-    @Nullable
-    @Override
-    public String getDeviceFingerprint() {
-        throw new RuntimeException("Provisioning is not implemented");
+    /**
+     * Schedules a refresh unless one is already scheduled or running.
+     *
+     * @param delayMillis Delay before the refresh
+     */
+    private void scheduleRefresh(final long delayMillis) {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            // The executor is being shut down
+            refreshScheduled.set(false);
+            log.warn("Credentials refresh could not be scheduled", e);
+        }
+    }
+
+    private void refresh() {
+        final long startNanos = System.nanoTime();
+        long nextRefreshDelayMillis;
+
+        try {
+            final KinesisVideoCredentials credentials = credentialsProvider.getUpdatedCredentials();
+            final long expirationMillis = credentials.getExpiration().getTime();
+            final boolean neverExpires =
+                    expirationMillis >= CREDENTIALS_NEVER_EXPIRE / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
+            final long expiration = neverExpires
+                    ? CREDENTIALS_NEVER_EXPIRE
+                    : expirationMillis * Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
+
+            securityToken.set(new AuthInfo(AuthInfoType.SECURITY_TOKEN,
+                    KinesisVideoCredentialsCodec.encode(credentials),
+                    expiration));
+            refreshCount.incrementAndGet();
+
+            nextRefreshDelayMillis = neverExpires
+                    ? -1
+                    : Math.max(MIN_REFRESH_DELAY_MILLIS, (long) ((expirationMillis - System.currentTimeMillis())
+                            * refreshLifetimeFraction));
+        } catch (final KinesisVideoException e) {
+            // Keep handing out the current token until a refresh succeeds
+            refreshFailureCount.incrementAndGet();
+            nextRefreshDelayMillis = REFRESH_RETRY_DELAY_MILLIS;
+            log.error("Exception was thrown trying to get updated credentials", e);
+        } catch (final RuntimeException e) {
+            refreshFailureCount.incrementAndGet();
+            nextRefreshDelayMillis = REFRESH_RETRY_DELAY_MILLIS;
+            log.error("Exception was thrown trying to get updated credentials", e);
+        } finally {
+            recordRefreshLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            refreshScheduled.set(false);
+            initialRefreshLatch.countDown();
+        }
+
+        if (nextRefreshDelayMillis >= 0) {
+            scheduleRefresh(nextRefreshDelayMillis);
+        }
+    }
+
+    private void recordRefreshLatency(final long latencyMillis) {
+        lastRefreshLatencyMillis.set(latencyMillis);
+        long max;
+        while ((max = maxRefreshLatencyMillis.get()) < latencyMillis) {
+            if (maxRefreshLatencyMillis.compareAndSet(max, latencyMillis)) {
+                break;
+            }
+        }
+    }
+
+    private void recordNearExpiry(@Nonnull final AuthInfo authInfo) {
+        final long expiration = authInfo.getExpiration();
+        if (expiration == CREDENTIALS_NEVER_EXPIRE) {
+            return;
+        }
+
+        final long remainingMillis = expiration / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND - System.currentTimeMillis();
+        if (remainingMillis < NEAR_EXPIRY_THRESHOLD_MILLIS) {
+            nearExpiryCount.incrementAndGet();
+            log.warn("Handing out a security token which expires in {} ms", remainingMillis);
+
+            // Make sure a refresh is on the way
+            scheduleRefresh(0);
+        }
     }
 }
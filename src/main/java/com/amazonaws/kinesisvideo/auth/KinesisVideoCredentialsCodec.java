@@ -0,0 +1,134 @@
+package com.amazonaws.kinesisvideo.auth;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Compact binary codec for the {@link KinesisVideoCredentials} passed through the native producer as the security and
+ * streaming tokens.
+ * <p>
+ * The native codebase treats the token as an opaque blob which it hands back with every service call, so the format
+ * only needs to be understood by this class. The layout is:
+ * <pre>
+ * +---------+-------+------------+-----+------------+-----+------------+-----+---------------+
+ * | version | flags | expiration | len | access key | len | secret key | len | session token |
+ * | 1 byte  | 1 byte| 8 bytes    | 4   | UTF-8      | 4   | UTF-8      | 4   | UTF-8         |
+ * +---------+-------+------------+-----+------------+-----+------------+-----+---------------+
+ * </pre>
+ * The session token fields are present only when {@link #FLAG_SESSION_TOKEN} is set. All the numbers are big-endian.
+ * <p>
+ * NOTE: Unlike the Java serialization used previously, decoding never instantiates arbitrary classes.
+ */
+public final class KinesisVideoCredentialsCodec {
+    /**
+     * Current version of the format
+     */
+    public static final byte VERSION_1 = 1;
+
+    /**
+     * Set when the token carries a session token
+     */
+    static final byte FLAG_SESSION_TOKEN = 0x01;
+
+    private static final int HEADER_SIZE = 2 + 8;
+    private static final int LENGTH_SIZE = 4;
+
+    private KinesisVideoCredentialsCodec() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Encodes the credentials into a token.
+     *
+     * @param credentials Credentials to encode
+     * @return encoded token
+     */
+    @Nonnull
+    public static byte[] encode(@Nonnull final KinesisVideoCredentials credentials) {
+        Preconditions.checkNotNull(credentials);
+
+        final byte[] accessKey = credentials.getAccessKey().getBytes(StandardCharsets.UTF_8);
+        final byte[] secretKey = credentials.getSecretKey().getBytes(StandardCharsets.UTF_8);
+        final String sessionTokenString = credentials.getSessionToken();
+        final byte[] sessionToken = sessionTokenString == null
+                ? null
+                : sessionTokenString.getBytes(StandardCharsets.UTF_8);
+        final Date expiration = credentials.getExpiration() == null
+                ? KinesisVideoCredentials.CREDENTIALS_NEVER_EXPIRE
+                : credentials.getExpiration();
+
+        int size = HEADER_SIZE + LENGTH_SIZE + accessKey.length + LENGTH_SIZE + secretKey.length;
+        if (sessionToken != null) {
+            size += LENGTH_SIZE + sessionToken.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION_1);
+        buffer.put(sessionToken == null ? 0 : FLAG_SESSION_TOKEN);
+        buffer.putLong(expiration.getTime());
+        putBytes(buffer, accessKey);
+        putBytes(buffer, secretKey);
+        if (sessionToken != null) {
+            putBytes(buffer, sessionToken);
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Decodes the credentials from a token produced by {@link #encode(KinesisVideoCredentials)}.
+     *
+     * @param token Encoded token
+     * @return decoded credentials
+     * @throws KinesisVideoException if the token is malformed or of an unsupported version
+     */
+    @Nonnull
+    public static KinesisVideoCredentials decode(@Nonnull final byte[] token) throws KinesisVideoException {
+        Preconditions.checkNotNull(token);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(token);
+        try {
+            final byte version = buffer.get();
+            if (version != VERSION_1) {
+                throw new KinesisVideoException("Unsupported credentials token version " + version);
+            }
+
+            final byte flags = buffer.get();
+            final long expiration = buffer.getLong();
+            final String accessKey = getString(buffer);
+            final String secretKey = getString(buffer);
+            final String sessionToken = (flags & FLAG_SESSION_TOKEN) != 0 ? getString(buffer) : null;
+
+            if (buffer.hasRemaining()) {
+                throw new KinesisVideoException("Credentials token has trailing bytes");
+            }
+
+            return new KinesisVideoCredentials(accessKey, secretKey, sessionToken, new Date(expiration));
+        } catch (final BufferUnderflowException e) {
+            throw new KinesisVideoException("Credentials token is truncated", e);
+        }
+    }
+
+    private static void putBytes(@Nonnull final ByteBuffer buffer, @Nonnull final byte[] bytes) {
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    @Nonnull
+    private static String getString(@Nonnull final ByteBuffer buffer) throws KinesisVideoException {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new KinesisVideoException("Invalid field length " + length + " in the credentials token");
+        }
+
+        final String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
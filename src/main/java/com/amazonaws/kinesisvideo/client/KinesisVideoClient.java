@@ -8,7 +8,10 @@ import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import com.amazonaws.kinesisvideo.producer.DeviceInfo;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  *
@@ -62,6 +65,21 @@ public interface KinesisVideoClient {
      */
     void registerMediaSourceAsync(final MediaSource mediaSource) throws KinesisVideoException;
 
+    /**
+     * Register multiple media sources concurrently. Each media source is registered as with
+     * {@link #registerMediaSource(MediaSource)} with at most the given number of registrations in flight.
+     * Async call returning once the registrations have been scheduled.
+     *
+     * @param mediaSources media sources to bind to kinesis video producer streams
+     * @param parallelism max number of the concurrent registrations
+     * @return futures completing once the corresponding media source is registered, in the iteration order of
+     *         the media sources. A future completes exceptionally if its media source failed to register.
+     * @throws KinesisVideoException if unable to schedule the registrations.
+     */
+    Map<MediaSource, CompletableFuture<Void>> registerMediaSources(@Nonnull final Collection<MediaSource> mediaSources,
+                                                                   final int parallelism)
+            throws KinesisVideoException;
+
     /**
      * Un-Register a media source. The media source will stop binding to kinesis video producer stream
      * and it cannot send data via producer stream afterwards until register again.
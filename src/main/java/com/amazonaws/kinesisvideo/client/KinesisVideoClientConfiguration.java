@@ -11,12 +11,26 @@ public final class KinesisVideoClientConfiguration {
     private final KinesisVideoCredentialsProvider credentialsProvider;
     private final StorageCallbacks storageCallbacks;
     private final String endpoint;
+    private final long serviceCallCacheTtlInMillis;
+    private final long serviceCallErrorCacheTtlInMillis;
+    private final long serviceCallMaxJitterInMillis;
+    private final int serviceCallMaxRetries;
+    private final double serviceCallRateLimitPerSecond;
+    private final int circuitBreakerFailureThreshold;
+    private final long circuitBreakerOpenDurationInMillis;
 
     private KinesisVideoClientConfiguration(final Builder builder) {
         this.region = builder.region;
         this.credentialsProvider = builder.credentialsProvider;
         this.storageCallbacks = builder.storageCallbacks;
         this.endpoint = builder.endpoint;
+        this.serviceCallCacheTtlInMillis = builder.serviceCallCacheTtlInMillis;
+        this.serviceCallErrorCacheTtlInMillis = builder.serviceCallErrorCacheTtlInMillis;
+        this.serviceCallMaxJitterInMillis = builder.serviceCallMaxJitterInMillis;
+        this.serviceCallMaxRetries = builder.serviceCallMaxRetries;
+        this.serviceCallRateLimitPerSecond = builder.serviceCallRateLimitPerSecond;
+        this.circuitBreakerFailureThreshold = builder.circuitBreakerFailureThreshold;
+        this.circuitBreakerOpenDurationInMillis = builder.circuitBreakerOpenDurationInMillis;
     }
 
     public static Builder builder() {
@@ -66,12 +80,77 @@ public final class KinesisVideoClientConfiguration {
         return this.endpoint;
     }
 
+    /**
+     * Returns the duration for which the stream descriptions and data endpoints are cached. 0 disables caching.
+     */
+    public long getServiceCallCacheTtlInMillis() {
+        return this.serviceCallCacheTtlInMillis;
+    }
+
+    /**
+     * Returns the duration for which the failed describe stream and get data endpoint calls are cached.
+     */
+    public long getServiceCallErrorCacheTtlInMillis() {
+        return this.serviceCallErrorCacheTtlInMillis;
+    }
+
+    /**
+     * Returns the max random admission delay of the control plane calls when many of them are pending.
+     * 0 disables the admission delay.
+     */
+    public long getServiceCallMaxJitterInMillis() {
+        return this.serviceCallMaxJitterInMillis;
+    }
+
+    /**
+     * Returns the max number of retries of a failed control plane call with a transient error. 0 disables retries.
+     */
+    public int getServiceCallMaxRetries() {
+        return this.serviceCallMaxRetries;
+    }
+
+    /**
+     * Returns the max sustained rate of the control plane calls, including the retries. 0 disables the rate limit.
+     */
+    public double getServiceCallRateLimitPerSecond() {
+        return this.serviceCallRateLimitPerSecond;
+    }
+
+    /**
+     * Returns the number of consecutive transient failures after which the calls to an endpoint are short-circuited.
+     * 0 disables the circuit breaker.
+     */
+    public int getCircuitBreakerFailureThreshold() {
+        return this.circuitBreakerFailureThreshold;
+    }
+
+    /**
+     * Returns the duration for which the calls to an endpoint are short-circuited before a trial call is let through.
+     */
+    public long getCircuitBreakerOpenDurationInMillis() {
+        return this.circuitBreakerOpenDurationInMillis;
+    }
+
     public static class Builder {
         private String region;
         private KinesisVideoCredentialsProvider credentialsProvider;
         private StorageCallbacks storageCallbacks =
                 KinesisVideoClientConfigurationDefaults.NO_OP_STORAGE_CALLBACKS;
         private String endpoint;
+        private long serviceCallCacheTtlInMillis =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_CACHE_TTL_IN_MILLIS;
+        private long serviceCallErrorCacheTtlInMillis =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_ERROR_CACHE_TTL_IN_MILLIS;
+        private long serviceCallMaxJitterInMillis =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_MAX_JITTER_IN_MILLIS;
+        private int serviceCallMaxRetries =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_MAX_RETRIES;
+        private double serviceCallRateLimitPerSecond =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_RATE_LIMIT_PER_SECOND;
+        private int circuitBreakerFailureThreshold =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+        private long circuitBreakerOpenDurationInMillis =
+                KinesisVideoClientConfigurationDefaults.DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION_IN_MILLIS;
 
         public Builder withRegion(final String region) {
             this.region = region;
@@ -93,6 +172,41 @@ public final class KinesisVideoClientConfiguration {
             return this;
         }
 
+        public Builder withServiceCallCacheTtlInMillis(final long serviceCallCacheTtlInMillis) {
+            this.serviceCallCacheTtlInMillis = serviceCallCacheTtlInMillis;
+            return this;
+        }
+
+        public Builder withServiceCallErrorCacheTtlInMillis(final long serviceCallErrorCacheTtlInMillis) {
+            this.serviceCallErrorCacheTtlInMillis = serviceCallErrorCacheTtlInMillis;
+            return this;
+        }
+
+        public Builder withServiceCallMaxJitterInMillis(final long serviceCallMaxJitterInMillis) {
+            this.serviceCallMaxJitterInMillis = serviceCallMaxJitterInMillis;
+            return this;
+        }
+
+        public Builder withServiceCallMaxRetries(final int serviceCallMaxRetries) {
+            this.serviceCallMaxRetries = serviceCallMaxRetries;
+            return this;
+        }
+
+        public Builder withServiceCallRateLimitPerSecond(final double serviceCallRateLimitPerSecond) {
+            this.serviceCallRateLimitPerSecond = serviceCallRateLimitPerSecond;
+            return this;
+        }
+
+        public Builder withCircuitBreakerFailureThreshold(final int circuitBreakerFailureThreshold) {
+            this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+            return this;
+        }
+
+        public Builder withCircuitBreakerOpenDurationInMillis(final long circuitBreakerOpenDurationInMillis) {
+            this.circuitBreakerOpenDurationInMillis = circuitBreakerOpenDurationInMillis;
+            return this;
+        }
+
         public KinesisVideoClientConfiguration build() {
             sanitizeBuilder(this);
             return new KinesisVideoClientConfiguration(this);
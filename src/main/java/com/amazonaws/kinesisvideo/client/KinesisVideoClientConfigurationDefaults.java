@@ -16,6 +16,41 @@ public final class KinesisVideoClientConfigurationDefaults {
 
     public static final int DEFAULT_SERVICE_CALL_TIMEOUT_IN_MILLIS = 5000;
 
+    /**
+     * Duration for which stream descriptions and data endpoints are reused
+     */
+    public static final long DEFAULT_SERVICE_CALL_CACHE_TTL_IN_MILLIS = 5 * 60 * 1000;
+
+    /**
+     * Duration for which control plane errors are reused
+     */
+    public static final long DEFAULT_SERVICE_CALL_ERROR_CACHE_TTL_IN_MILLIS = 1000;
+
+    /**
+     * Max random admission delay of the control plane calls when many of them are pending
+     */
+    public static final long DEFAULT_SERVICE_CALL_MAX_JITTER_IN_MILLIS = 1000;
+
+    /**
+     * Max number of retries of a control plane call failed with a transient error
+     */
+    public static final int DEFAULT_SERVICE_CALL_MAX_RETRIES = 2;
+
+    /**
+     * Max sustained rate of the control plane calls per client
+     */
+    public static final double DEFAULT_SERVICE_CALL_RATE_LIMIT_PER_SECOND = 50;
+
+    /**
+     * Number of consecutive transient failures opening the circuit breaker of an endpoint
+     */
+    public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+    /**
+     * Duration for which an open circuit breaker short-circuits the calls
+     */
+    public static final long DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION_IN_MILLIS = 10 * 1000;
+
     static final StorageCallbacks NO_OP_STORAGE_CALLBACKS = new DefaultStorageCallbacks();
 
     public static String getControlPlaneEndpoint(final @Nonnull String region) {
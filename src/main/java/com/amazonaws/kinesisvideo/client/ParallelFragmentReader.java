@@ -0,0 +1,712 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.http.HttpMethodName;
+import com.amazonaws.kinesisvideo.http.KinesisVideoApacheHttpAsyncClient;
+import com.amazonaws.kinesisvideo.http.KinesisVideoApacheHttpClient;
+import com.amazonaws.kinesisvideo.http.SharedHttpClients;
+import com.amazonaws.kinesisvideo.signing.KinesisVideoSigner;
+import com.amazonaws.kinesisvideo.stream.cache.FragmentCache;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvFragment;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvBufferPool;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamParser;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamVisitor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkArgument;
+import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkNotNull;
+
+/**
+ * Reader of archived media which fetches the fragments over several GetMediaForFragmentList requests at once.
+ * <p>
+ * The fragments, listed by the caller or by ListFragments for a time range, are split in batches which are requested
+ * concurrently on the pooled async client of the endpoint. The responses are buffered until the batches before them
+ * have been delivered, so the visitor sees the fragments in timecode order on the calling thread. The reorder window
+ * bounds the batches requested ahead of the one being delivered, and with it the memory held by the responses which
+ * completed out of order.
+ * <p>
+ * With a {@link FragmentCache} only the fragments missing from the cache are requested, the others are read from
+ * memory. The fragments requested are added to the cache as their responses complete, and the readers missing the
+ * same fragment wait for the one requesting it.
+ */
+public final class ParallelFragmentReader {
+    private static final String LIST_FRAGMENTS_PATH = "/listFragments";
+    private static final String GET_MEDIA_FOR_FRAGMENT_LIST_PATH = "/getMediaForFragmentList";
+    private static final String CONTENT_TYPE_HEADER_KEY = "Content-Type";
+    private static final String PRODUCER_TIMESTAMP = "PRODUCER_TIMESTAMP";
+    private static final int LIST_FRAGMENTS_MAX_RESULTS = 1000;
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int DEFAULT_FRAGMENTS_PER_REQUEST = 5;
+
+    private final Builder mBuilder;
+    private final Logger log;
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mFragmentCount = new AtomicLong();
+    private final AtomicLong mOutOfOrderBatchCount = new AtomicLong();
+    private final AtomicLong mReorderBufferSize = new AtomicLong();
+    private final AtomicLong mMaxReorderBufferSize = new AtomicLong();
+    private final AtomicLong mReadNanos = new AtomicLong();
+
+    /**
+     * Fragment listed by ListFragments
+     */
+    private static final class ListedFragment {
+        private final String fragmentNumber;
+        private final double producerTimestamp;
+
+        private ListedFragment(final String fragmentNumber, final double producerTimestamp) {
+            this.fragmentNumber = fragmentNumber;
+            this.producerTimestamp = producerTimestamp;
+        }
+    }
+
+    /**
+     * Batches of one read, guarded by the instance
+     */
+    private final class Batches {
+        private final List<List<String>> fragmentNumbers;
+        private final Map<Integer, HttpResponse> responses = new HashMap<Integer, HttpResponse>();
+        private final Map<Integer, List<FragmentCache.Lookup>> lookups =
+                new HashMap<Integer, List<FragmentCache.Lookup>>();
+        private final Map<Integer, KinesisVideoApacheHttpAsyncClient> requests =
+                new HashMap<Integer, KinesisVideoApacheHttpAsyncClient>();
+        private Exception failure;
+        private int nextToDeliver;
+        private int nextToRequest;
+
+        private Batches(final List<List<String>> fragmentNumbers) {
+            this.fragmentNumbers = fragmentNumbers;
+        }
+
+        private synchronized boolean canRequest() {
+            return failure == null && nextToRequest < fragmentNumbers.size()
+                    && requests.size() < mBuilder.mConcurrency
+                    && nextToRequest - nextToDeliver < mBuilder.mReorderWindow;
+        }
+
+        /**
+         * @param response Response of the batch, null when it is read from the cache
+         */
+        private synchronized void onCompleted(final int index, final HttpResponse response) {
+            if (requests.remove(index) == null && response != null) {
+                return;
+            }
+
+            responses.put(index, response);
+            if (index != nextToDeliver) {
+                mOutOfOrderBatchCount.incrementAndGet();
+            }
+
+            final long size = mReorderBufferSize.incrementAndGet();
+            while (true) {
+                final long max = mMaxReorderBufferSize.get();
+                if (size <= max || mMaxReorderBufferSize.compareAndSet(max, size)) {
+                    break;
+                }
+            }
+
+            notifyAll();
+        }
+
+        private synchronized void onFailed(final int index, final Exception exception) {
+            if (requests.remove(index) != null && failure == null) {
+                failure = exception;
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * Waits for the next batch to deliver, or for room to request another one
+         *
+         * @return Whether the next batch completed, false when another batch can be requested
+         */
+        private synchronized boolean awaitNext() throws IOException {
+            while (true) {
+                if (failure != null) {
+                    throw failure instanceof IOException
+                            ? (IOException) failure
+                            : new IOException("GetMediaForFragmentList request failed", failure);
+                }
+
+                if (responses.containsKey(nextToDeliver)) {
+                    return true;
+                }
+
+                if (canRequest()) {
+                    return false;
+                }
+
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the fragments");
+                }
+            }
+        }
+
+        private synchronized HttpResponse takeNext() {
+            mReorderBufferSize.decrementAndGet();
+            return responses.remove(nextToDeliver);
+        }
+
+        private synchronized void cancel() {
+            for (final KinesisVideoApacheHttpAsyncClient request : requests.values()) {
+                try {
+                    request.close();
+                } catch (final IOException e) {
+                    log.debug("Exception while cancelling a GetMediaForFragmentList request", e);
+                }
+            }
+
+            requests.clear();
+            mReorderBufferSize.addAndGet(-responses.size());
+            responses.clear();
+            for (final List<FragmentCache.Lookup> batchLookups : lookups.values()) {
+                release(batchLookups);
+            }
+
+            lookups.clear();
+        }
+    }
+
+    private ParallelFragmentReader(final Builder builder) {
+        mBuilder = builder;
+        log = LogManager.getLogger(ParallelFragmentReader.class);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Lists the fragments whose producer timestamps are in the range, in timecode order
+     */
+    @Nonnull
+    public List<String> listFragments(final long startTimestampMillis, final long endTimestampMillis)
+            throws IOException {
+        checkArgument(startTimestampMillis <= endTimestampMillis);
+        final List<ListedFragment> listed = new ArrayList<ListedFragment>();
+        String nextToken = null;
+        do {
+            final JsonObject range = new JsonObject();
+            range.addProperty("StartTimestamp", startTimestampMillis / 1000.0);
+            range.addProperty("EndTimestamp", endTimestampMillis / 1000.0);
+            final JsonObject selector = new JsonObject();
+            selector.addProperty("FragmentSelectorType", PRODUCER_TIMESTAMP);
+            selector.add("TimestampRange", range);
+            final JsonObject request = new JsonObject();
+            request.addProperty("StreamName", mBuilder.mStreamName);
+            request.addProperty("MaxResults", LIST_FRAGMENTS_MAX_RESULTS);
+            request.add("FragmentSelector", selector);
+            if (nextToken != null) {
+                request.addProperty("NextToken", nextToken);
+            }
+
+            final JsonObject response = listFragments(request.toString());
+            final JsonElement fragments = response.get("Fragments");
+            if (fragments != null && fragments.isJsonArray()) {
+                for (final JsonElement fragment : fragments.getAsJsonArray()) {
+                    final JsonObject object = fragment.getAsJsonObject();
+                    listed.add(new ListedFragment(object.get("FragmentNumber").getAsString(),
+                            object.has("ProducerTimestamp") ? object.get("ProducerTimestamp").getAsDouble() : 0));
+                }
+            }
+
+            final JsonElement token = response.get("NextToken");
+            nextToken = token == null || token.isJsonNull() ? null : token.getAsString();
+        } while (nextToken != null);
+
+        // The listing is not ordered
+        Collections.sort(listed, new Comparator<ListedFragment>() {
+            @Override
+            public int compare(final ListedFragment first, final ListedFragment second) {
+                final int byTimestamp = Double.compare(first.producerTimestamp, second.producerTimestamp);
+                return byTimestamp != 0 ? byTimestamp : first.fragmentNumber.compareTo(second.fragmentNumber);
+            }
+        });
+
+        final List<String> fragmentNumbers = new ArrayList<String>(listed.size());
+        for (final ListedFragment fragment : listed) {
+            fragmentNumbers.add(fragment.fragmentNumber);
+        }
+
+        return fragmentNumbers;
+    }
+
+    /**
+     * Reads the fragments whose producer timestamps are in the range, in timecode order
+     */
+    public void read(final long startTimestampMillis, final long endTimestampMillis,
+                     @Nonnull final MkvStreamVisitor visitor) throws IOException {
+        read(listFragments(startTimestampMillis, endTimestampMillis), visitor);
+    }
+
+    /**
+     * Reads the fragments, which are delivered to the visitor on the calling thread in the order of the list
+     */
+    public void read(@Nonnull final List<String> fragmentNumbers, @Nonnull final MkvStreamVisitor visitor)
+            throws IOException {
+        checkNotNull(fragmentNumbers);
+        checkNotNull(visitor);
+        final List<List<String>> batchFragmentNumbers = new ArrayList<List<String>>();
+        for (int i = 0; i < fragmentNumbers.size(); i += mBuilder.mFragmentsPerRequest) {
+            batchFragmentNumbers.add(new ArrayList<String>(fragmentNumbers.subList(i,
+                    Math.min(fragmentNumbers.size(), i + mBuilder.mFragmentsPerRequest))));
+        }
+
+        final Batches batches = new Batches(batchFragmentNumbers);
+        final long start = System.nanoTime();
+        try {
+            while (batches.nextToDeliver < batchFragmentNumbers.size()) {
+                if (!batches.awaitNext()) {
+                    request(batches);
+                    continue;
+                }
+
+                final HttpResponse response = batches.takeNext();
+                if (mBuilder.mFragmentCache == null) {
+                    deliver(batches.nextToDeliver, response, visitor);
+                } else {
+                    final List<FragmentCache.Lookup> lookups;
+                    synchronized (batches) {
+                        lookups = batches.lookups.remove(batches.nextToDeliver);
+                    }
+
+                    deliver(lookups, visitor);
+                }
+
+                synchronized (batches) {
+                    batches.nextToDeliver++;
+                }
+            }
+        } finally {
+            batches.cancel();
+            mReadNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived.get();
+    }
+
+    public long getFragmentCount() {
+        return mFragmentCount.get();
+    }
+
+    /**
+     * Returns the bytes received per second spent reading
+     */
+    public long getThroughputBytesPerSecond() {
+        final long readNanos = mReadNanos.get();
+        return readNanos == 0 ? 0 : (long) (mBytesReceived.get() * 1e9 / readNanos);
+    }
+
+    /**
+     * Returns the number of batches which completed before the one being delivered
+     */
+    public long getOutOfOrderBatchCount() {
+        return mOutOfOrderBatchCount.get();
+    }
+
+    /**
+     * Returns the number of completed batches waiting for the ones before them
+     */
+    public long getReorderBufferSize() {
+        return mReorderBufferSize.get();
+    }
+
+    public long getMaxReorderBufferSize() {
+        return mMaxReorderBufferSize.get();
+    }
+
+    private void request(final Batches batches) {
+        final int index;
+        synchronized (batches) {
+            index = batches.nextToRequest++;
+        }
+
+        final List<String> fragmentNumbers = new ArrayList<String>();
+        final List<FragmentCache.Lookup> fills = new ArrayList<FragmentCache.Lookup>();
+        if (mBuilder.mFragmentCache == null) {
+            fragmentNumbers.addAll(batches.fragmentNumbers.get(index));
+        } else {
+            final List<FragmentCache.Lookup> lookups = new ArrayList<FragmentCache.Lookup>();
+            for (final String fragmentNumber : batches.fragmentNumbers.get(index)) {
+                final FragmentCache.Lookup lookup = mBuilder.mFragmentCache.lookup(mBuilder.mStreamName,
+                        fragmentNumber);
+                lookups.add(lookup);
+                if (lookup.isFiller()) {
+                    fragmentNumbers.add(fragmentNumber);
+                    fills.add(lookup);
+                }
+            }
+
+            synchronized (batches) {
+                batches.lookups.put(index, lookups);
+            }
+
+            if (fragmentNumbers.isEmpty()) {
+                batches.onCompleted(index, null);
+                return;
+            }
+        }
+
+        final JsonArray fragments = new JsonArray();
+        for (final String fragmentNumber : fragmentNumbers) {
+            fragments.add(fragmentNumber);
+        }
+
+        final JsonObject request = new JsonObject();
+        request.addProperty("StreamName", mBuilder.mStreamName);
+        request.add("Fragments", fragments);
+        final KinesisVideoApacheHttpAsyncClient client = KinesisVideoApacheHttpAsyncClient.builder()
+                .withUri(mBuilder.mUri.resolve(GET_MEDIA_FOR_FRAGMENT_LIST_PATH))
+                .withMethod(HttpMethodName.POST)
+                .withContentType(ContentType.APPLICATION_JSON)
+                .withContentInJson(request.toString())
+                .withHeader(CONTENT_TYPE_HEADER_KEY, ContentType.APPLICATION_JSON.getMimeType())
+                .withConnectionTimeoutInMillis(mBuilder.mConnectionTimeoutInMillis)
+                .withSocketTimeoutInMillis(mBuilder.mReadTimeoutInMillis)
+                .withSharedHttpClients(mBuilder.mSharedHttpClients)
+                .withHttpAsyncResponseConsumer(new CountingResponseConsumer())
+                .withFutureCallback(new FutureCallback<HttpResponse>() {
+                    @Override
+                    public void completed(final HttpResponse response) {
+                        // Runs on the I/O reactor of the shared client, nothing may escape
+                        try {
+                            onResponse(index, response, fills);
+                        } catch (final IOException | RuntimeException e) {
+                            failed(e);
+                            return;
+                        }
+
+                        batches.onCompleted(index, response);
+                    }
+
+                    @Override
+                    public void failed(final Exception e) {
+                        abandon(fills, e);
+                        batches.onFailed(index, e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        failed(new IOException("GetMediaForFragmentList request was cancelled"));
+                    }
+                })
+                .build();
+        mBuilder.mSigner.sign(client);
+        synchronized (batches) {
+            batches.requests.put(index, client);
+        }
+
+        mRequestCount.incrementAndGet();
+        log.debug("Requesting batch {} of {} fragments of stream {}", index, fragmentNumbers.size(),
+                mBuilder.mStreamName);
+        client.executeRequest();
+    }
+
+    /**
+     * Buffers the response of a batch, counting its content as it is decoded since chunked responses have no
+     * content length
+     */
+    private final class CountingResponseConsumer extends BasicAsyncResponseConsumer {
+        @Override
+        protected void onContentReceived(final ContentDecoder decoder, final IOControl ioControl)
+                throws IOException {
+            super.onContentReceived(new ContentDecoder() {
+                @Override
+                public int read(final ByteBuffer dst) throws IOException {
+                    final int read = decoder.read(dst);
+                    if (read > 0) {
+                        mBytesReceived.addAndGet(read);
+                    }
+
+                    return read;
+                }
+
+                @Override
+                public boolean isCompleted() {
+                    return decoder.isCompleted();
+                }
+            }, ioControl);
+        }
+    }
+
+    /**
+     * Checks the response of a batch and fills the cache with its fragments
+     */
+    private void onResponse(final int index, final HttpResponse response, final List<FragmentCache.Lookup> fills)
+            throws IOException {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            throw new IOException("GetMediaForFragmentList responded " + response.getStatusLine());
+        }
+
+        if (mBuilder.mFragmentCache != null) {
+            // Filled here rather than when delivered, the readers waiting for the fills may be the ones this reader
+            // waits for
+            fill(index, response, fills);
+        }
+    }
+
+    private void deliver(final int index, final HttpResponse response, final MkvStreamVisitor visitor)
+            throws IOException {
+        if (response.getEntity() == null) {
+            throw new IOException("GetMediaForFragmentList response of batch " + index + " has no content");
+        }
+
+        try (final MkvStreamParser parser = new MkvStreamParser(response.getEntity().getContent(), visitor,
+                mBuilder.mBufferPool)) {
+            parser.parse();
+            mFragmentCount.addAndGet(parser.getFragmentCount());
+        }
+    }
+
+    /**
+     * Delivers the fragments of a batch read through the cache
+     */
+    private void deliver(final List<FragmentCache.Lookup> lookups, final MkvStreamVisitor visitor)
+            throws IOException {
+        for (int i = 0; i < lookups.size(); i++) {
+            final FragmentCache.CachedFragment fragment;
+            try {
+                fragment = lookups.get(i).getFragment().get();
+            } catch (final InterruptedException e) {
+                release(lookups.subList(i, lookups.size()));
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the fragments");
+            } catch (final ExecutionException e) {
+                release(lookups.subList(i + 1, lookups.size()));
+                throw e.getCause() instanceof IOException
+                        ? (IOException) e.getCause()
+                        : new IOException("GetMediaForFragmentList request failed", e.getCause());
+            }
+
+            try (final ReadableByteChannel channel = fragment.openChannel();
+                 final MkvStreamParser parser = new MkvStreamParser(channel, visitor, mBuilder.mBufferPool)) {
+                parser.parse();
+                mFragmentCount.addAndGet(parser.getFragmentCount());
+            } catch (final IOException | RuntimeException e) {
+                release(lookups.subList(i + 1, lookups.size()));
+                throw e;
+            } finally {
+                fragment.close();
+            }
+        }
+    }
+
+    /**
+     * Fails the pending fills and unpins the fragments of lookups which are not delivered
+     */
+    private static void release(final List<FragmentCache.Lookup> lookups) {
+        for (final FragmentCache.Lookup lookup : lookups) {
+            lookup.abandon(new IOException("Read was cancelled"));
+            lookup.getFragment().thenAccept(new Consumer<FragmentCache.CachedFragment>() {
+                @Override
+                public void accept(final FragmentCache.CachedFragment fragment) {
+                    fragment.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Splits the response of a batch in its fragments, which fill the cache in the order they were requested
+     */
+    private void fill(final int index, final HttpResponse response, final List<FragmentCache.Lookup> fills)
+            throws IOException {
+        if (response.getEntity() == null) {
+            throw new IOException("GetMediaForFragmentList response of batch " + index + " has no content");
+        }
+
+        final byte[] body = EntityUtils.toByteArray(response.getEntity());
+        final List<Integer> ends = new ArrayList<Integer>();
+        final MkvStreamParser[] parser = new MkvStreamParser[1];
+        parser[0] = new MkvStreamParser(new ByteArrayInputStream(body), new MkvStreamVisitor() {
+            @Override
+            public void onFragmentEnd(@Nonnull final MkvFragment fragment) {
+                ends.add((int) parser[0].getOffset());
+            }
+        }, mBuilder.mBufferPool);
+        try {
+            parser[0].parse();
+        } finally {
+            parser[0].close();
+        }
+
+        int start = 0;
+        for (int i = 0; i < fills.size(); i++) {
+            if (i == ends.size()) {
+                abandon(fills.subList(i, fills.size()), new IOException("GetMediaForFragmentList response of batch "
+                        + index + " has " + ends.size() + " of " + fills.size() + " fragments"));
+                break;
+            }
+
+            // Ignored if the read was cancelled meanwhile
+            fills.get(i).fill(ByteBuffer.wrap(body, start, ends.get(i) - start));
+            start = ends.get(i);
+        }
+    }
+
+    private static void abandon(final List<FragmentCache.Lookup> fills, final Exception cause) {
+        for (final FragmentCache.Lookup fill : fills) {
+            fill.abandon(cause);
+        }
+    }
+
+    private JsonObject listFragments(final String requestInJson) throws IOException {
+        final KinesisVideoApacheHttpClient client = KinesisVideoApacheHttpClient.builder()
+                .withUri(mBuilder.mUri.resolve(LIST_FRAGMENTS_PATH))
+                .withMethod(HttpMethodName.POST)
+                .withContentType(ContentType.APPLICATION_JSON)
+                .withContentInJson(requestInJson)
+                .withHeader(CONTENT_TYPE_HEADER_KEY, ContentType.APPLICATION_JSON.getMimeType())
+                .withConnectionTimeoutInMillis(mBuilder.mConnectionTimeoutInMillis)
+                .withSocketTimeoutInMillis(mBuilder.mReadTimeoutInMillis)
+                .withSharedHttpClients(mBuilder.mSharedHttpClients)
+                .build();
+        mBuilder.mSigner.sign(client);
+        mRequestCount.incrementAndGet();
+        try (final CloseableHttpResponse response = client.executeRequest()) {
+            final String body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity());
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("ListFragments responded " + response.getStatusLine() + ": " + body);
+            }
+
+            return JsonParser.parseString(body).getAsJsonObject();
+        } catch (final JsonParseException | IllegalStateException e) {
+            throw new IOException("Malformed ListFragments response", e);
+        }
+    }
+
+    public static class Builder {
+        private URI mUri;
+        private String mStreamName;
+        private KinesisVideoSigner mSigner;
+        private int mConcurrency = DEFAULT_CONCURRENCY;
+        private int mFragmentsPerRequest = DEFAULT_FRAGMENTS_PER_REQUEST;
+        private int mReorderWindow = 2 * DEFAULT_CONCURRENCY;
+        private int mConnectionTimeoutInMillis = 10000;
+        private int mReadTimeoutInMillis = 10000;
+        private SharedHttpClients mSharedHttpClients = SharedHttpClients.getShared();
+        private MkvBufferPool mBufferPool = MkvBufferPool.getShared();
+        private FragmentCache mFragmentCache;
+
+        /**
+         * Archived media endpoint of the stream, as returned by GetDataEndpoint
+         */
+        public Builder archivedMediaUri(final URI uri) {
+            mUri = uri;
+            return this;
+        }
+
+        public Builder streamName(final String streamName) {
+            mStreamName = streamName;
+            return this;
+        }
+
+        public Builder signWith(final KinesisVideoSigner signer) {
+            mSigner = signer;
+            return this;
+        }
+
+        /**
+         * Maximum number of requests in flight
+         */
+        public Builder concurrency(final int concurrency) {
+            mConcurrency = concurrency;
+            return this;
+        }
+
+        public Builder fragmentsPerRequest(final int fragmentsPerRequest) {
+            mFragmentsPerRequest = fragmentsPerRequest;
+            return this;
+        }
+
+        /**
+         * Maximum number of batches requested or buffered ahead of the one being delivered, at least the concurrency
+         */
+        public Builder reorderWindow(final int reorderWindow) {
+            mReorderWindow = reorderWindow;
+            return this;
+        }
+
+        public Builder connectionTimeoutInMillis(final int connectionTimeoutInMillis) {
+            mConnectionTimeoutInMillis = connectionTimeoutInMillis;
+            return this;
+        }
+
+        public Builder readTimeoutInMillis(final int readTimeoutInMillis) {
+            mReadTimeoutInMillis = readTimeoutInMillis;
+            return this;
+        }
+
+        public Builder sharedHttpClients(final SharedHttpClients sharedHttpClients) {
+            mSharedHttpClients = sharedHttpClients;
+            return this;
+        }
+
+        public Builder bufferPool(final MkvBufferPool bufferPool) {
+            mBufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Cache the fragments are read through, which can be shared by the readers of several streams
+         */
+        public Builder fragmentCache(final FragmentCache fragmentCache) {
+            mFragmentCache = fragmentCache;
+            return this;
+        }
+
+        public ParallelFragmentReader build() {
+            checkNotNull(mUri);
+            checkNotNull(mStreamName);
+            checkNotNull(mSigner);
+            checkNotNull(mSharedHttpClients);
+            checkNotNull(mBufferPool);
+            checkArgument(mConcurrency > 0);
+            checkArgument(mFragmentsPerRequest > 0);
+            checkArgument(mReorderWindow >= mConcurrency, "Reorder window is smaller than the concurrency");
+            return new ParallelFragmentReader(this);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.ack.AckEventData;
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.signing.KinesisVideoSigner;
+import com.amazonaws.kinesisvideo.stream.spill.SegmentSpillLog;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkArgument;
+import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Client for making PutMedia API calls which outlive the connection failures.
+ * <p>
+ * The MKV stream is copied into a {@link SegmentSpillLog} as it is read and each PutMedia session sends the log from
+ * the first fragment which has not been persisted yet. The persisted acknowledgements release the fragments from the
+ * log. When a session fails or the service ends it before the stream has been persisted, a new session is started
+ * after a backoff, with the same producer start timestamp, so the service receives the fragments it missed. The
+ * acknowledgements are matched against the cluster timecodes of the stream.
+ */
+public final class ResumablePutMediaClient implements Closeable {
+    private static final String EVENT_TYPE = "EventType";
+    private static final String FRAGMENT_TIMECODE = "FragmentTimecode";
+    private static final String ERROR_ID = "ErrorId";
+    private static final String PERSISTED = "PERSISTED";
+    private static final String ERROR = "ERROR";
+    private static final String END_OF_CHUNKED_DATA = "0";
+    private static final String HTTP_OK_PREFIX = "HTTP/1.1 200";
+    private static final String HTTP_PREFIX = "HTTP/";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long DEFAULT_RECONNECT_DELAY_MILLIS = 500;
+    private static final long DEFAULT_MAX_RECONNECT_DELAY_MILLIS = 30000;
+    private static final int DEFAULT_MAX_FAILURES_WITHOUT_PROGRESS = 10;
+
+    private final Builder mBuilder;
+    private final Logger log;
+    private final ScheduledExecutorService mScheduler;
+    private final CompletableFuture<Void> mCompletion = new CompletableFuture<Void>();
+    private final AtomicLong mSessionCount = new AtomicLong();
+    private final AtomicLong mAckCount = new AtomicLong();
+    private volatile boolean mIsClosed;
+    private PutMediaClient mSession;
+    private InputStream mSessionStream;
+    private int mFailuresWithoutProgress;
+
+    private ResumablePutMediaClient(final Builder builder) {
+        mBuilder = builder;
+        log = LogManager.getLogger(ResumablePutMediaClient.class);
+        mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("KVS-ResumablePutMedia-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts copying the MKV stream into the spill log and sending it
+     *
+     * @return Future completed once the whole stream has been persisted, or failed when it can not be
+     */
+    public CompletableFuture<Void> putMediaInBackground() {
+        final Thread pump = new ThreadFactoryBuilder()
+                .setNameFormat("KVS-SpillPump-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        pumpMkvStream();
+                    }
+                });
+        pump.start();
+        mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                startSession();
+            }
+        });
+        return mCompletion;
+    }
+
+    public long getSessionCount() {
+        return mSessionCount.get();
+    }
+
+    public long getAckCount() {
+        return mAckCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (mIsClosed) {
+            return;
+        }
+
+        mIsClosed = true;
+        mScheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeSession();
+            }
+        });
+        mScheduler.shutdown();
+        mCompletion.completeExceptionally(new IOException("PutMedia client has been closed"));
+    }
+
+    private void pumpMkvStream() {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while (!mIsClosed && (read = mBuilder.mMkvStream.read(buffer)) != -1) {
+                mBuilder.mSpillLog.append(buffer, 0, read);
+            }
+
+            if (!mIsClosed) {
+                log.info("End-of-stream is reported, sending the rest of the spill log");
+                mBuilder.mSpillLog.markEndOfStream();
+            }
+        } catch (final IOException e) {
+            log.error("Exception while spilling the MKV stream", e);
+            mCompletion.completeExceptionally(e);
+            close();
+        }
+    }
+
+    private void startSession() {
+        if (mIsClosed || mCompletion.isDone()) {
+            return;
+        }
+
+        final long ackCountAtStart = mBuilder.mSpillLog.getAcknowledgedFragmentCount();
+        final AtomicBoolean isSessionComplete = new AtomicBoolean();
+        try {
+            mSessionStream = mBuilder.mSpillLog.openSession();
+            mSession = PutMediaClient.builder()
+                    .putMediaDestinationUri(mBuilder.mUri)
+                    .streamName(mBuilder.mStreamName)
+                    .mkvStream(mSessionStream)
+                    .timestamp(mBuilder.mTimestamp)
+                    .fragmentTimecodeType(mBuilder.mFragmentTimecodeType)
+                    .signWith(mBuilder.mSigner)
+                    .receiveTimeout(mBuilder.mReceiveTimeout)
+                    .receiveAcks(receiveAcks())
+                    .receiveCompletion(new Consumer<Exception>() {
+                        @Override
+                        public void accept(final Exception exception) {
+                            // Called by both the sender and the receiver when sending fails
+                            if (isSessionComplete.compareAndSet(false, true)) {
+                                scheduleOnSessionComplete(exception, ackCountAtStart);
+                            }
+                        }
+                    })
+                    .build();
+            mSessionCount.incrementAndGet();
+            log.info("Starting PutMedia session {} of stream {}", mSessionCount.get(), mBuilder.mStreamName);
+            mSession.putMediaInBackground();
+        } catch (final IOException | RuntimeException e) {
+            mSession = null;
+            if (isSessionComplete.compareAndSet(false, true)) {
+                onSessionComplete(e, ackCountAtStart);
+            }
+        }
+    }
+
+    private void scheduleOnSessionComplete(final Exception exception, final long ackCountAtStart) {
+        try {
+            mScheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    onSessionComplete(exception, ackCountAtStart);
+                }
+            });
+        } catch (final RuntimeException e) {
+            log.debug("PutMedia session completed after the client has been closed", e);
+        }
+    }
+
+    private void onSessionComplete(final Exception exception, final long ackCountAtStart) {
+        closeSession();
+        if (mIsClosed) {
+            return;
+        }
+
+        final SegmentSpillLog spillLog = mBuilder.mSpillLog;
+        if (exception == null && spillLog.isEndOfStream() && spillLog.getPendingFragmentCount() == 0) {
+            log.info("Stream {} has been persisted in {} sessions", mBuilder.mStreamName, mSessionCount.get());
+            mCompletion.complete(null);
+            return;
+        }
+
+        if (spillLog.getAcknowledgedFragmentCount() > ackCountAtStart) {
+            mFailuresWithoutProgress = 0;
+        }
+
+        mFailuresWithoutProgress++;
+        if (mFailuresWithoutProgress > mBuilder.mMaxFailuresWithoutProgress) {
+            log.error("Giving up on stream {} after {} sessions without progress", mBuilder.mStreamName,
+                    mFailuresWithoutProgress);
+            mCompletion.completeExceptionally(exception != null
+                    ? exception
+                    : new IOException("PutMedia sessions end without progress"));
+            return;
+        }
+
+        final long delay = Math.min(mBuilder.mMaxReconnectDelayMillis,
+                mBuilder.mReconnectDelayMillis << Math.min(mFailuresWithoutProgress - 1, 16));
+        log.warn("PutMedia session of stream {} ended with {} fragments pending, resuming in {} ms",
+                mBuilder.mStreamName, spillLog.getPendingFragmentCount(), delay, exception);
+        mScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                startSession();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void closeSession() {
+        if (mSessionStream != null) {
+            try {
+                // Stops the sender of the session
+                mSessionStream.close();
+            } catch (final IOException e) {
+                log.debug("Exception while closing the session stream", e);
+            }
+
+            mSessionStream = null;
+        }
+
+        if (mSession != null) {
+            try {
+                mSession.close();
+            } catch (final IOException | RuntimeException e) {
+                log.debug("Exception while closing the PutMedia session", e);
+            }
+
+            mSession = null;
+        }
+    }
+
+    private Consumer<InputStream> receiveAcks() {
+        return new Consumer<InputStream>() {
+            @Override
+            public void accept(final InputStream inputStream) {
+                try {
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (END_OF_CHUNKED_DATA.equals(line)) {
+                            break;
+                        }
+
+                        if (line.startsWith(HTTP_PREFIX) && !line.startsWith(HTTP_OK_PREFIX)) {
+                            log.warn("PutMedia of stream {} responded {}", mBuilder.mStreamName, line);
+                        }
+
+                        final AckEventData ack = parseAck(line);
+                        if (ack != null) {
+                            onAck(ack);
+                        }
+                    }
+                } catch (final IOException e) {
+                    throw new RuntimeException("Exception while reading acks", e);
+                }
+            }
+        };
+    }
+
+    private AckEventData parseAck(final String line) {
+        final int start = line.indexOf('{');
+        final int end = line.lastIndexOf('}');
+        if (start < 0 || end < start) {
+            return null;
+        }
+
+        try {
+            final JsonObject json = JsonParser.parseString(line.substring(start, end + 1)).getAsJsonObject();
+            final JsonElement type = json.get(EVENT_TYPE);
+            if (type == null) {
+                return null;
+            }
+
+            final AckEventData ack = new AckEventData();
+            ack.setType(type.getAsString());
+            if (json.has(FRAGMENT_TIMECODE)) {
+                ack.setFragmentTimecode(json.get(FRAGMENT_TIMECODE).getAsLong());
+            }
+
+            if (json.has(ERROR_ID)) {
+                ack.setErrorCode(json.get(ERROR_ID).getAsInt());
+            }
+
+            return ack;
+        } catch (final JsonParseException | IllegalStateException | NumberFormatException e) {
+            log.warn("Ignoring the malformed ack {}", line);
+            return null;
+        }
+    }
+
+    private void onAck(final AckEventData ack) throws IOException {
+        mAckCount.incrementAndGet();
+        if (PERSISTED.equals(ack.getType())) {
+            mBuilder.mSpillLog.acknowledge(ack.getFragmentTimecode());
+        } else if (ERROR.equals(ack.getType())) {
+            log.warn("PutMedia of stream {} failed with error {} at fragment timecode {}", mBuilder.mStreamName,
+                    ack.getErrorCode(), ack.getFragmentTimecode());
+        }
+
+        if (mBuilder.mAckListener != null) {
+            mBuilder.mAckListener.accept(ack);
+        }
+    }
+
+    public static class Builder {
+        private URI mUri;
+        private String mStreamName;
+        private InputStream mMkvStream;
+        private SegmentSpillLog mSpillLog;
+        private long mTimestamp = System.currentTimeMillis();
+        private KinesisVideoSigner mSigner;
+        private String mFragmentTimecodeType;
+        private Integer mReceiveTimeout;
+        private Consumer<AckEventData> mAckListener;
+        private long mReconnectDelayMillis = DEFAULT_RECONNECT_DELAY_MILLIS;
+        private long mMaxReconnectDelayMillis = DEFAULT_MAX_RECONNECT_DELAY_MILLIS;
+        private int mMaxFailuresWithoutProgress = DEFAULT_MAX_FAILURES_WITHOUT_PROGRESS;
+
+        public Builder putMediaDestinationUri(final URI uri) {
+            mUri = uri;
+            return this;
+        }
+
+        public Builder streamName(final String streamName) {
+            mStreamName = streamName;
+            return this;
+        }
+
+        public Builder mkvStream(final InputStream mkvStream) {
+            mMkvStream = mkvStream;
+            return this;
+        }
+
+        /**
+         * Log the MKV stream is spilled into, it may hold the fragments left over by a previous run
+         */
+        public Builder spillLog(final SegmentSpillLog spillLog) {
+            mSpillLog = spillLog;
+            return this;
+        }
+
+        public Builder timestamp(final long timestamp) {
+            mTimestamp = timestamp;
+            return this;
+        }
+
+        public Builder signWith(final KinesisVideoSigner signer) {
+            mSigner = signer;
+            return this;
+        }
+
+        public Builder fragmentTimecodeType(final String fragmentTimecodeType) {
+            mFragmentTimecodeType = fragmentTimecodeType;
+            return this;
+        }
+
+        public Builder receiveTimeout(final Integer timeout) {
+            mReceiveTimeout = timeout;
+            return this;
+        }
+
+        public Builder receiveAcks(final Consumer<AckEventData> ackListener) {
+            mAckListener = ackListener;
+            return this;
+        }
+
+        /**
+         * Delay before the first reconnection, doubled after every session which has not persisted anything
+         */
+        public Builder reconnectDelay(final long delayMillis, final long maxDelayMillis) {
+            mReconnectDelayMillis = delayMillis;
+            mMaxReconnectDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        public Builder maxFailuresWithoutProgress(final int maxFailures) {
+            mMaxFailuresWithoutProgress = maxFailures;
+            return this;
+        }
+
+        public ResumablePutMediaClient build() {
+            checkNotNull(mUri);
+            checkNotNull(mStreamName);
+            checkNotNull(mMkvStream);
+            checkNotNull(mSpillLog);
+            checkArgument(mReconnectDelayMillis > 0 && mMaxReconnectDelayMillis >= mReconnectDelayMillis,
+                    "Invalid reconnect delay");
+            checkArgument(mMaxFailuresWithoutProgress >= 0, "Invalid maximum number of failures");
+            return new ResumablePutMediaClient(this);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.amazonaws.kinesisvideo.client.stream;
 
+import com.amazonaws.kinesisvideo.ack.AckEventData;
 import com.amazonaws.kinesisvideo.client.PutMediaClient;
+import com.amazonaws.kinesisvideo.client.ResumablePutMediaClient;
 import com.amazonaws.kinesisvideo.common.function.Consumer;
 import com.amazonaws.kinesisvideo.config.ClientConfiguration;
 import com.amazonaws.kinesisvideo.signing.KinesisVideoSigner;
+import com.amazonaws.kinesisvideo.stream.spill.SegmentSpillLog;
 import com.google.inject.Inject;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import javax.annotation.WillClose;
@@ -33,6 +36,16 @@ public class PutMediaManager {
         PutMediaClient.builder().putMediaDestinationUri(config.getStreamUri()).mkvStream(inputStream).streamName(config.getStreamName()).fragmentTimecodeType(ABSOLUTE).signWith(signer).receiveAcks(consumer).receiveTimeout(receiveTimeout).build().putMediaInBackground();
     }
 
+    /**
+     * Sends the stream through the spill log, resuming from the first fragment which has not been persisted when the
+     * connection fails. Closing the returned client stops sending.
+     */
+    public ResumablePutMediaClient sendMkvStreamWithSpillLog(final ClientConfiguration config, final InputStream inputStream, final SegmentSpillLog spillLog, final Consumer<AckEventData> ackListener, final Integer receiveTimeout) {
+        final ResumablePutMediaClient client = ResumablePutMediaClient.builder().putMediaDestinationUri(config.getStreamUri()).mkvStream(inputStream).spillLog(spillLog).streamName(config.getStreamName()).fragmentTimecodeType(ABSOLUTE).signWith(signer).receiveAcks(ackListener).receiveTimeout(receiveTimeout).build();
+        client.putMediaInBackground();
+        return client;
+    }
+
     @Inject
     public PutMediaManager(final KinesisVideoSigner signer) {
         this.signer = signer;
@@ -1,10 +1,17 @@
 package com.amazonaws.kinesisvideo.client.stream;
 
 
+import java.io.IOException;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import com.amazonaws.kinesisvideo.client.StreamingReadAsyncClient;
 import com.amazonaws.kinesisvideo.client.StreamingReadClient;
 import com.amazonaws.kinesisvideo.config.ClientConfiguration;
+import com.amazonaws.kinesisvideo.http.FlowControlledAsyncResponseConsumer;
 import com.amazonaws.kinesisvideo.signing.KinesisVideoSigner;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvFragmentIterator;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamParser;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamVisitor;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 
@@ -22,4 +29,34 @@ public class StreamingReadManager {
     public CloseableHttpResponse receiveStreamData(final ClientConfiguration config, final String inputInJson) {
         return StreamingReadClient.builder().uri(config.getStreamUri()).signer(mSigner).inputInJson(inputInJson).connectionTimeoutInMillis(config.getConnectionTimeoutInMillis()).readTimeoutInMillis(config.getReadTimeoutInMillis()).build().execute();
     }
+
+    /**
+     * Receives the stream data and parses them as they arrive, until the end of the response.
+     *
+     * @throws IOException if the request fails or the response ends within an element
+     */
+    public void receiveStreamData(final ClientConfiguration config, final String inputInJson,
+                                  final MkvStreamVisitor visitor) throws IOException {
+        try (final CloseableHttpResponse response = receiveStreamData(config, inputInJson)) {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                throw new IOException("Failed to receive the stream data: " + response.getStatusLine());
+            }
+
+            try (final MkvStreamParser parser = new MkvStreamParser(response.getEntity().getContent(), visitor)) {
+                parser.parse();
+            }
+        }
+    }
+
+    /**
+     * Starts receiving the stream data on the async client, returning the fragments as they are asked for. The socket
+     * reads are suspended while the buffered bytes are not consumed, a pause longer than the read timeout ends the
+     * response. Closing the iterator cancels the response.
+     */
+    public MkvFragmentIterator receiveStreamFragments(final ClientConfiguration config, final String inputInJson,
+                                                      final int maxBufferedBytes) {
+        final FlowControlledAsyncResponseConsumer consumer = new FlowControlledAsyncResponseConsumer(maxBufferedBytes);
+        StreamingReadAsyncClient.builder().uri(config.getStreamUri()).signer(mSigner).inputInJson(inputInJson).connectionTimeoutInMillis(config.getConnectionTimeoutInMillis()).readTimeoutInMillis(config.getReadTimeoutInMillis()).httpAsyncResponseConsumer(consumer).build().execute();
+        return new MkvFragmentIterator(consumer.getContentChannel());
+    }
 }
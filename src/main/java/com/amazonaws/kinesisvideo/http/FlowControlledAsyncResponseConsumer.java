@@ -0,0 +1,255 @@
+package com.amazonaws.kinesisvideo.http;
+
+import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Async response consumer which buffers a bounded amount of the response body for a reader on another thread.
+ * <p>
+ * The body is decoded straight into a direct ring buffer. Once the buffer is full the socket reads are suspended with
+ * {@link IOControl#suspendInput()}, so the I/O reactor is never blocked and a slow reader holds back the sender
+ * through TCP flow control instead. The reads resume when the reader has drained half of the buffer. The body is
+ * read through {@link #getContentChannel()}, for example by an
+ * {@link com.amazonaws.kinesisvideo.stream.mkv.MkvFragmentIterator}.
+ */
+public final class FlowControlledAsyncResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 1024 * 1024;
+
+    private final Logger log = LogManager.getLogger(FlowControlledAsyncResponseConsumer.class);
+    private final ByteBuffer mRing;
+    private final int mCapacity;
+    private final ContentChannel mContentChannel = new ContentChannel();
+    private IOControl mIOControl;
+    private HttpResponse mResponse;
+    private IOException mStatusFailure;
+    private IOException mFailure;
+    private long mWritten;
+    private long mRead;
+    private long mMaxBuffered;
+    private long mSuspendCount;
+    private boolean mIsSuspended;
+    private boolean mIsCompleted;
+    private boolean mIsEnded;
+    private boolean mIsClosed;
+
+    public FlowControlledAsyncResponseConsumer() {
+        this(DEFAULT_MAX_BUFFERED_BYTES);
+    }
+
+    public FlowControlledAsyncResponseConsumer(final int maxBufferedBytes) {
+        checkArgument(maxBufferedBytes > 0, "Max buffered bytes must be positive");
+        mCapacity = maxBufferedBytes;
+        mRing = ByteBuffer.allocateDirect(maxBufferedBytes);
+    }
+
+    /**
+     * Returns the channel the body is read from. Reads block until data arrive, and return -1 once the whole body is
+     * read. Closing the channel cancels the response and shuts the connection down.
+     */
+    public ReadableByteChannel getContentChannel() {
+        return mContentChannel;
+    }
+
+    public synchronized long getBufferedBytes() {
+        return mWritten - mRead;
+    }
+
+    public synchronized long getMaxBufferedBytes() {
+        return mMaxBuffered;
+    }
+
+    public synchronized long getReceivedBytes() {
+        return mWritten;
+    }
+
+    /**
+     * Returns the number of times the socket reads were suspended on a full buffer
+     */
+    public synchronized long getSuspendCount() {
+        return mSuspendCount;
+    }
+
+    @Override
+    protected synchronized void onResponseReceived(final HttpResponse response) {
+        mResponse = response;
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            mStatusFailure = new IOException("Streaming read responded " + response.getStatusLine());
+            notifyAll();
+        }
+    }
+
+    @Override
+    protected synchronized void onContentReceived(final ContentDecoder decoder, final IOControl ioControl)
+            throws IOException {
+        mIOControl = ioControl;
+        if (mIsClosed) {
+            return;
+        }
+
+        final int free = (int) (mCapacity - (mWritten - mRead));
+        if (free > 0) {
+            final int position = (int) (mWritten % mCapacity);
+            final ByteBuffer window = mRing.duplicate();
+            window.limit(position + Math.min(free, mCapacity - position)).position(position);
+            final int read = decoder.read(window);
+            if (read > 0) {
+                mWritten += read;
+                mMaxBuffered = Math.max(mMaxBuffered, mWritten - mRead);
+                notifyAll();
+            }
+        }
+
+        if (mWritten - mRead == mCapacity && !decoder.isCompleted()) {
+            ioControl.suspendInput();
+            mIsSuspended = true;
+            mSuspendCount++;
+        }
+    }
+
+    @Override
+    protected void onEntityEnclosed(final HttpEntity entity, final ContentType contentType) {
+        // The content is buffered as it is decoded
+    }
+
+    @Override
+    protected synchronized HttpResponse buildResult(final HttpContext context) {
+        mIsCompleted = true;
+        return mResponse;
+    }
+
+    @Override
+    protected synchronized void releaseResources() {
+        mIsEnded = true;
+        if (mFailure == null && !mIsCompleted && !mIsClosed) {
+            final Exception exception = getException();
+            mFailure = exception == null
+                    ? new IOException("Streaming read was cancelled")
+                    : exception instanceof IOException
+                    ? (IOException) exception
+                    : new IOException("Streaming read failed", exception);
+        }
+
+        notifyAll();
+    }
+
+    private int read(final ByteBuffer destination) throws IOException {
+        final IOControl resumed;
+        final int length;
+        synchronized (this) {
+            length = transfer(destination);
+            resumed = mIsSuspended && mWritten - mRead <= mCapacity / 2 ? mIOControl : null;
+            if (resumed != null) {
+                mIsSuspended = false;
+            }
+        }
+
+        // Outside of the lock the reactor thread takes when delivering content
+        if (resumed != null) {
+            resumed.requestInput();
+        }
+
+        return length;
+    }
+
+    private int transfer(final ByteBuffer destination) throws IOException {
+        while (true) {
+            if (mIsClosed) {
+                throw new ClosedChannelException();
+            }
+
+            if (mStatusFailure != null) {
+                throw mStatusFailure;
+            }
+
+            if (mWritten > mRead || mIsEnded || !destination.hasRemaining()) {
+                break;
+            }
+
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the response content");
+            }
+        }
+
+        final int buffered = (int) (mWritten - mRead);
+        if (buffered == 0) {
+            // A failure is only reported once the content received before it has been read
+            if (mFailure != null) {
+                throw mFailure;
+            }
+
+            return mIsEnded ? -1 : 0;
+        }
+
+        final int position = (int) (mRead % mCapacity);
+        final int length = Math.min(destination.remaining(), Math.min(buffered, mCapacity - position));
+        final ByteBuffer window = mRing.duplicate();
+        window.limit(position + length).position(position);
+        destination.put(window);
+        mRead += length;
+        return length;
+    }
+
+    private void closeContent() {
+        final IOControl ioControl;
+        synchronized (this) {
+            if (mIsClosed) {
+                return;
+            }
+
+            mIsClosed = true;
+            ioControl = mIsEnded ? null : mIOControl;
+            notifyAll();
+        }
+
+        cancel();
+        if (ioControl != null) {
+            try {
+                // Without it the connection would stay suspended
+                ioControl.shutdown();
+            } catch (final IOException e) {
+                log.debug("Exception while shutting the connection down", e);
+            }
+        }
+    }
+
+    /**
+     * Reader side of the ring buffer
+     */
+    private final class ContentChannel implements ReadableByteChannel {
+        @Override
+        public int read(final ByteBuffer destination) throws IOException {
+            return FlowControlledAsyncResponseConsumer.this.read(destination);
+        }
+
+        @Override
+        public boolean isOpen() {
+            synchronized (FlowControlledAsyncResponseConsumer.this) {
+                return !mIsClosed;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeContent();
+        }
+    }
+}
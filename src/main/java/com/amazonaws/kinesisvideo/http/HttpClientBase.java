@@ -15,6 +15,8 @@ public abstract class HttpClientBase implements HttpClient {
     private static final String HOST_HEADER = "Host";
     private static final int DEFAULT_CONNECTION_TIMEOUT_IN_MILLIS = 10000; //magic number
     private static final int DEFAULT_SOCKET_TIMEOUT_IN_MILLIS = 10000; //magic number
+    // Bounds the wait for a connection of the shared pool of the endpoint
+    private static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT_IN_MILLIS = 10000;
 
     protected final BuilderBase<? extends BuilderBase> mBuilder;
     
@@ -65,6 +67,7 @@ public abstract class HttpClientBase implements HttpClient {
         protected HttpMethodName mMethod;
         protected int mConnectionTimeoutInMillis;
         protected int mSocketTimeoutInMillis;
+        protected int mConnectionRequestTimeoutInMillis;
         protected ContentType mContentType;
         protected String mContentInJson;
         
@@ -74,6 +77,7 @@ public abstract class HttpClientBase implements HttpClient {
             mHeaders = new HashMap<String, String>();
             mConnectionTimeoutInMillis = DEFAULT_CONNECTION_TIMEOUT_IN_MILLIS;
             mSocketTimeoutInMillis = DEFAULT_SOCKET_TIMEOUT_IN_MILLIS;
+            mConnectionRequestTimeoutInMillis = DEFAULT_CONNECTION_REQUEST_TIMEOUT_IN_MILLIS;
         }
 
         public T withUri(final URI uri) {
@@ -102,6 +106,11 @@ public abstract class HttpClientBase implements HttpClient {
             return builderType();
         }
 
+        public T withConnectionRequestTimeoutInMillis(final int connectionRequestTimeoutInMillis) {
+            mConnectionRequestTimeoutInMillis = connectionRequestTimeoutInMillis;
+            return builderType();
+        }
+
         public T withContentType(final ContentType contentType) {
             mContentType = contentType;
             return builderType();
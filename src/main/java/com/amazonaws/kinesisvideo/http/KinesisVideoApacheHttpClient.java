@@ -3,27 +3,21 @@ package com.amazonaws.kinesisvideo.http;
 import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkNotNull;
 
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.util.Map;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.config.SocketConfig;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.X509ExtendedTrustManager;
 
 /**
  * Http Client which uses Apache HttpClient internally to make
  * the http request and get the response.
+ * <p>
+ * The Apache client is the pooled one of the endpoint from {@link SharedHttpClients}, so the connections are reused
+ * by the following requests. Closing the response returns its connection to the pool once the content is consumed.
  */
 public final class KinesisVideoApacheHttpClient extends HttpClientBase {
 
@@ -31,7 +25,7 @@ public final class KinesisVideoApacheHttpClient extends HttpClientBase {
 
     private KinesisVideoApacheHttpClient(final BuilderBase<Builder> builder) {
         super(builder);
-        this.mHttpClient = buildHttpClient();
+        this.mHttpClient = ((Builder) builder).mSharedHttpClients.getClient(builder.mUri);
     }
 
     public static Builder builder() {
@@ -46,6 +40,11 @@ public final class KinesisVideoApacheHttpClient extends HttpClientBase {
         }
         final HttpEntity entity = new StringEntity(mBuilder.mContentInJson, mBuilder.mContentType);
         request.setEntity(entity);
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(mBuilder.mConnectionTimeoutInMillis)
+                .setSocketTimeout(mBuilder.mSocketTimeoutInMillis)
+                .setConnectionRequestTimeout(mBuilder.mConnectionRequestTimeoutInMillis)
+                .build());
         try {
             return this.mHttpClient.execute(request);
         } catch (final IOException e) {
@@ -53,37 +52,20 @@ public final class KinesisVideoApacheHttpClient extends HttpClientBase {
         }
     }
 
-    private CloseableHttpClient buildHttpClient() {
-        try {
-            final SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-            sslContext.init(null, new X509ExtendedTrustManager[] {
-                    new HostnameVerifyingX509ExtendedTrustManager(true)}, new SecureRandom());
-
-            final SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
-
-            return HttpClients.custom()
-                    .setSSLSocketFactory(sslSocketFactory)
-                    .setDefaultRequestConfig(RequestConfig.custom()
-                            .setConnectTimeout(mBuilder.mConnectionTimeoutInMillis)
-                            .build())
-                    .setDefaultSocketConfig(SocketConfig.custom()
-                            .setSoTimeout(mBuilder.mSocketTimeoutInMillis)
-                            .build())
-                    .build();
-        } catch (final KeyManagementException e) {
-            throw new RuntimeException("Exception while building Apache http client", e);
-        } catch (final NoSuchAlgorithmException e) {
-            throw new RuntimeException("Exception while building Apache http client", e);
-        }
-    }
-
     @Override
     public void closeClient() throws IOException {
-        this.mHttpClient.close();
+        // The pooled client is shared with the other requests to the endpoint
     }
     
     public static final class Builder extends BuilderBase<Builder> {
-        
+
+        private SharedHttpClients mSharedHttpClients = SharedHttpClients.getShared();
+
+        public Builder withSharedHttpClients(final SharedHttpClients sharedHttpClients) {
+            mSharedHttpClients = sharedHttpClients;
+            return this;
+        }
+
         public KinesisVideoApacheHttpClient build() {
             checkNotNull(mUri);
             return new KinesisVideoApacheHttpClient(this);
@@ -0,0 +1,350 @@
+package com.amazonaws.kinesisvideo.http;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.ManagedNHttpClientConnectionFactory;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.conn.ManagedNHttpClientConnection;
+import org.apache.http.nio.conn.NHttpConnectionFactory;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.protocol.HttpContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.X509ExtendedTrustManager;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pooled Apache HTTP clients shared by the requests made to the same endpoint.
+ * <p>
+ * A sync and an async client are built per endpoint, the scheme, host and port of the request URI, on its first use
+ * and kept for the life of the pool. Their connections are kept alive as long as the service allows, or the default
+ * keep-alive when it does not say, and reused by the following requests, so the polling consumers no longer pay a
+ * connect and TLS handshake per call. A single daemon thread evicts the expired and idle connections. The TLS context
+ * is built once for all the endpoints.
+ * <p>
+ * The timeouts are set per request, the clients of the pool are never closed by their users.
+ */
+public final class SharedHttpClients implements Closeable {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 50;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+    private static final long EVICTION_PERIOD_MILLIS = 5000;
+    private static final String HTTPS = "https";
+    private static final String HTTP = "http";
+    private static final int HTTPS_PORT = 443;
+    private static final int HTTP_PORT = 80;
+
+    private static final Logger log = LogManager.getLogger(SharedHttpClients.class);
+    private static final SharedHttpClients SHARED = new SharedHttpClients(DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT,
+            DEFAULT_KEEP_ALIVE_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+    private final int maxConnectionsPerEndpoint;
+    private final long keepAliveMillis;
+    private final long idleTimeoutMillis;
+    private final SSLContext sslContext;
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean isClosed;
+
+    /**
+     * Requests and connections of an endpoint, the requests in excess of the connections reused one
+     */
+    public static final class EndpointMetrics {
+        private final AtomicLong requestCount = new AtomicLong();
+        private final AtomicLong connectionCount = new AtomicLong();
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        public long getConnectionCount() {
+            return connectionCount.get();
+        }
+
+        public long getReusedConnectionCount() {
+            return Math.max(0, requestCount.get() - connectionCount.get());
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + getRequestCount() + ", connections=" + getConnectionCount() + ", reused="
+                    + getReusedConnectionCount();
+        }
+    }
+
+    private static final class Endpoint {
+        private final EndpointMetrics metrics = new EndpointMetrics();
+        private PoolingHttpClientConnectionManager connectionManager;
+        private CloseableHttpClient client;
+        private PoolingNHttpClientConnectionManager asyncConnectionManager;
+        private CloseableHttpAsyncClient asyncClient;
+    }
+
+    public SharedHttpClients(final int maxConnectionsPerEndpoint,
+                             final long keepAliveMillis,
+                             final long idleTimeoutMillis) {
+        Preconditions.checkArgument(maxConnectionsPerEndpoint > 0, "Maximum connection count must be positive");
+        Preconditions.checkArgument(keepAliveMillis > 0 && idleTimeoutMillis > 0, "Timeouts must be positive");
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+        this.keepAliveMillis = keepAliveMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.sslContext = buildSslContext();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("KVS-HttpConnectionEvictor-%d")
+                .setDaemon(true)
+                .build());
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictConnections();
+            }
+        }, EVICTION_PERIOD_MILLIS, EVICTION_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the pool shared by the clients of the process
+     */
+    @Nonnull
+    public static SharedHttpClients getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the pooled sync client of the endpoint of the URI
+     */
+    @Nonnull
+    public CloseableHttpClient getClient(@Nonnull final URI uri) {
+        final Endpoint endpoint = getEndpoint(uri);
+        synchronized (endpoint) {
+            if (endpoint.client == null) {
+                endpoint.connectionManager = buildConnectionManager(endpoint.metrics);
+                endpoint.client = HttpClients.custom()
+                        .setConnectionManager(endpoint.connectionManager)
+                        .setKeepAliveStrategy(keepAliveStrategy())
+                        .addInterceptorFirst(countRequests(endpoint.metrics))
+                        .build();
+            }
+
+            return endpoint.client;
+        }
+    }
+
+    /**
+     * Returns the pooled and started async client of the endpoint of the URI
+     */
+    @Nonnull
+    public CloseableHttpAsyncClient getAsyncClient(@Nonnull final URI uri) {
+        final Endpoint endpoint = getEndpoint(uri);
+        synchronized (endpoint) {
+            if (endpoint.asyncClient == null) {
+                endpoint.asyncConnectionManager = buildAsyncConnectionManager(endpoint.metrics);
+                endpoint.asyncClient = HttpAsyncClientBuilder.create()
+                        .setConnectionManager(endpoint.asyncConnectionManager)
+                        .setKeepAliveStrategy(keepAliveStrategy())
+                        .addInterceptorFirst(countRequests(endpoint.metrics))
+                        .build();
+                endpoint.asyncClient.start();
+            }
+
+            return endpoint.asyncClient;
+        }
+    }
+
+    /**
+     * Returns the metrics of the endpoint of the URI or null if no request has been made to it
+     */
+    @Nullable
+    public EndpointMetrics getMetrics(@Nonnull final URI uri) {
+        final Endpoint endpoint = endpoints.get(getEndpointKey(uri));
+        return endpoint != null ? endpoint.metrics : null;
+    }
+
+    @Override
+    public void close() {
+        isClosed = true;
+        evictor.shutdownNow();
+        for (final Endpoint endpoint : endpoints.values()) {
+            synchronized (endpoint) {
+                closeQuietly(endpoint.client);
+                closeQuietly(endpoint.asyncClient);
+            }
+        }
+
+        endpoints.clear();
+    }
+
+    @Nonnull
+    private Endpoint getEndpoint(@Nonnull final URI uri) {
+        Preconditions.checkState(!isClosed, "Shared http clients are closed");
+        final String key = getEndpointKey(uri);
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            final Endpoint newEndpoint = new Endpoint();
+            endpoint = endpoints.putIfAbsent(key, newEndpoint);
+            if (endpoint == null) {
+                endpoint = newEndpoint;
+            }
+        }
+
+        return endpoint;
+    }
+
+    @Nonnull
+    private static String getEndpointKey(@Nonnull final URI uri) {
+        final String scheme = uri.getScheme() == null ? HTTPS : uri.getScheme().toLowerCase(Locale.US);
+        final int port = uri.getPort() != -1 ? uri.getPort() : (HTTP.equals(scheme) ? HTTP_PORT : HTTPS_PORT);
+        return scheme + "://" + Preconditions.checkNotNull(uri.getHost()).toLowerCase(Locale.US) + ":" + port;
+    }
+
+    private PoolingHttpClientConnectionManager buildConnectionManager(final EndpointMetrics metrics) {
+        final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register(HTTP, PlainConnectionSocketFactory.getSocketFactory())
+                .register(HTTPS, new SSLConnectionSocketFactory(sslContext))
+                .build();
+        final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory =
+                new HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection>() {
+                    @Override
+                    public ManagedHttpClientConnection create(final HttpRoute route, final ConnectionConfig config) {
+                        metrics.connectionCount.incrementAndGet();
+                        return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+                    }
+                };
+        final PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(registry, connectionFactory);
+        connectionManager.setMaxTotal(maxConnectionsPerEndpoint);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerEndpoint);
+        return connectionManager;
+    }
+
+    private PoolingNHttpClientConnectionManager buildAsyncConnectionManager(final EndpointMetrics metrics) {
+        final Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register(HTTP, NoopIOSessionStrategy.INSTANCE)
+                .register(HTTPS, new SSLIOSessionStrategy(sslContext))
+                .build();
+        final NHttpConnectionFactory<ManagedNHttpClientConnection> connectionFactory =
+                new NHttpConnectionFactory<ManagedNHttpClientConnection>() {
+                    @Override
+                    public ManagedNHttpClientConnection create(final IOSession session, final ConnectionConfig config) {
+                        metrics.connectionCount.incrementAndGet();
+                        return ManagedNHttpClientConnectionFactory.INSTANCE.create(session, config);
+                    }
+                };
+        try {
+            final PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(), connectionFactory, registry);
+            connectionManager.setMaxTotal(maxConnectionsPerEndpoint);
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerEndpoint);
+            return connectionManager;
+        } catch (final IOReactorException e) {
+            throw new RuntimeException("Exception while building Apache http async client", e);
+        }
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                        .getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : keepAliveMillis;
+            }
+        };
+    }
+
+    private static HttpRequestInterceptor countRequests(final EndpointMetrics metrics) {
+        return new HttpRequestInterceptor() {
+            @Override
+            public void process(final HttpRequest request, final HttpContext context) {
+                metrics.requestCount.incrementAndGet();
+            }
+        };
+    }
+
+    private void evictConnections() {
+        for (final Endpoint endpoint : endpoints.values()) {
+            synchronized (endpoint) {
+                try {
+                    if (endpoint.connectionManager != null) {
+                        endpoint.connectionManager.closeExpiredConnections();
+                        endpoint.connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+                    }
+
+                    if (endpoint.asyncConnectionManager != null) {
+                        endpoint.asyncConnectionManager.closeExpiredConnections();
+                        endpoint.asyncConnectionManager.closeIdleConnections(idleTimeoutMillis,
+                                TimeUnit.MILLISECONDS);
+                    }
+                } catch (final RuntimeException e) {
+                    log.warn("Exception while evicting idle connections", e);
+                }
+            }
+        }
+    }
+
+    private static SSLContext buildSslContext() {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
+            sslContext.init(null, new X509ExtendedTrustManager[] {
+                    new HostnameVerifyingX509ExtendedTrustManager(true)}, new SecureRandom());
+            return sslContext;
+        } catch (final KeyManagementException e) {
+            throw new RuntimeException("Exception while building Apache http client", e);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException("Exception while building Apache http client", e);
+        }
+    }
+
+    private static void closeQuietly(@Nullable final Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (final IOException e) {
+            log.warn("Exception while closing a shared http client", e);
+        }
+    }
+}
@@ -7,25 +7,34 @@ import org.apache.logging.log4j.Logger;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
 import com.amazonaws.kinesisvideo.producer.DeviceInfo;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import javax.annotation.Nonnull;
-import javax.annotation.concurrent.NotThreadSafe;
 
 import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkState;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Abstract Kinesis Video Client implementation which handles some of the common pieces
  * and delegates platform specifics to the implementations.
+ *
+ * NOTE: Media sources can be registered concurrently, the rest of the calls are expected to be serialized.
  */
-@NotThreadSafe
 public abstract class AbstractKinesisVideoClient implements KinesisVideoClient {
 
     /**
      * Stores the list of streams
      */
-    protected final List<MediaSource> mMediaSources = new ArrayList<MediaSource>();
+    protected final List<MediaSource> mMediaSources = new CopyOnWriteArrayList<MediaSource>();
 
     /**
      * Whether the object has been initialized
@@ -148,6 +157,60 @@ public abstract class AbstractKinesisVideoClient implements KinesisVideoClient {
         mMediaSources.add(mediaSource);
     }
 
+    /**
+     * Registers the media sources with {@link #registerMediaSource(MediaSource)} on a short-lived pool of at most
+     * the given number of threads.
+     */
+    @Override
+    public Map<MediaSource, CompletableFuture<Void>> registerMediaSources(
+            @Nonnull final Collection<MediaSource> mediaSources,
+            final int parallelism) throws KinesisVideoException {
+        Preconditions.checkNotNull(mediaSources);
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        checkState(isInitialized(), "Must initialize first.");
+        // Validated up front, nothing is registered if any of them is invalid
+        for (final MediaSource mediaSource : mediaSources) {
+            Preconditions.checkNotNull(mediaSource);
+        }
+
+        final Map<MediaSource, CompletableFuture<Void>> registrations =
+                new LinkedHashMap<MediaSource, CompletableFuture<Void>>();
+        if (mediaSources.isEmpty()) {
+            return registrations;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, mediaSources.size()),
+                new ThreadFactoryBuilder().setNameFormat("KVS-MediaSourceRegistration-%d").setDaemon(true).build());
+        try {
+            for (final MediaSource mediaSource : mediaSources) {
+                final CompletableFuture<Void> registration = new CompletableFuture<Void>();
+                registrations.put(mediaSource, registration);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            registerMediaSource(mediaSource);
+                            registration.complete(null);
+                        } catch (final KinesisVideoException e) {
+                            mLog.error("Failed to register media source {}", mediaSource, e);
+                            registration.completeExceptionally(e);
+                        } catch (final RuntimeException e) {
+                            mLog.error("Failed to register media source {}", mediaSource, e);
+                            registration.completeExceptionally(e);
+                        }
+                    }
+                });
+            }
+        } catch (final RejectedExecutionException e) {
+            throw new KinesisVideoException(e);
+        } finally {
+            // Lets the scheduled registrations run to completion
+            executor.shutdown();
+        }
+
+        return registrations;
+    }
+
     /**
      * Un-Register a media source. The media source will stop binding to kinesis video producer stream
      * and it cannot send data via producer stream afterwards until register again.
@@ -3,10 +3,11 @@ package com.amazonaws.kinesisvideo.internal.client;
 import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkNotNull;
 import static com.amazonaws.kinesisvideo.internal.producer.ReadResult.INVALID_UPLOAD_HANDLE_VALUE;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 
 import javax.annotation.Nonnull;
@@ -19,7 +20,10 @@ import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.BackpressureStorageCallbacks;
 import com.amazonaws.kinesisvideo.internal.mediasource.ProducerStreamSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.StoragePressurePolicy;
+import com.amazonaws.kinesisvideo.internal.mediasource.StreamBackpressureMonitor;
 import com.amazonaws.kinesisvideo.producer.AuthCallbacks;
 import com.amazonaws.kinesisvideo.producer.DeviceInfo;
 import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducer;
@@ -28,6 +32,7 @@ import com.amazonaws.kinesisvideo.producer.ProducerException;
 import com.amazonaws.kinesisvideo.internal.producer.ServiceCallbacks;
 import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
 import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamInfo;
 import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
 import com.amazonaws.kinesisvideo.internal.producer.jni.NativeKinesisVideoProducerJni;
 import com.amazonaws.kinesisvideo.internal.service.DefaultServiceCallbacksImpl;
@@ -53,15 +58,25 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
     private static final String TAG = "NativeKinesisVideoClient";
 
     /**
-     * Map of the media source to KVS producer stream
+     * Map of the media source to KVS producer stream. Mutated concurrently by the bulk registration.
      */
     private final Map<MediaSource, KinesisVideoProducerStream> mMediaSourceToStreamMap;
 
+    /**
+     * Map of the media source to the backpressure monitor of its stream
+     */
+    private final Map<MediaSource, StreamBackpressureMonitor> mMediaSourceToMonitorMap;
+
     /**
      * Kinesis Video producer callbacks
      */
     private final AuthCallbacks mAuthCallbacks;
-    private final StorageCallbacks mStorageCallbacks;
+    private final BackpressureStorageCallbacks mStorageCallbacks;
+
+    /**
+     * Storage pressure policy applied to the streams when installed as the storage callbacks, otherwise null
+     */
+    private final StoragePressurePolicy mStoragePressurePolicy;
     private final StreamCallbacks mStreamCallbacks;
     private final ServiceCallbacks mServiceCallbacks;
 
@@ -104,11 +119,15 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
         super(log);
 
         mAuthCallbacks = checkNotNull(authCallbacks);
-        mStorageCallbacks = checkNotNull(storageCallbacks);
+        mStorageCallbacks = new BackpressureStorageCallbacks(checkNotNull(storageCallbacks));
+        mStoragePressurePolicy = storageCallbacks instanceof StoragePressurePolicy
+                ? (StoragePressurePolicy) storageCallbacks
+                : null;
         mServiceCallbacks = checkNotNull(serviceCallbacks);
         mStreamCallbacks = checkNotNull(streamCallbacks);
 
-        mMediaSourceToStreamMap = new HashMap<MediaSource, KinesisVideoProducerStream>();
+        mMediaSourceToStreamMap = new ConcurrentHashMap<MediaSource, KinesisVideoProducerStream>();
+        mMediaSourceToMonitorMap = new ConcurrentHashMap<MediaSource, StreamBackpressureMonitor>();
     }
 
     /**
@@ -117,6 +136,11 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
     @Override
     public void initialize(@Nonnull final DeviceInfo deviceInfo) throws KinesisVideoException {
         kinesisVideoProducer = initializeNewKinesisVideoProducer(deviceInfo);
+        mStorageCallbacks.attach(kinesisVideoProducer, deviceInfo.getStorageInfo().getStorageSize());
+        if (mStoragePressurePolicy != null) {
+            mStoragePressurePolicy.attach(mStorageCallbacks);
+        }
+
         super.initialize(deviceInfo);
     }
 
@@ -128,8 +152,12 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
             streamCallbacks = mStreamCallbacks;
         }
 
-        final KinesisVideoProducerStream producerStream = kinesisVideoProducer.createStreamSync(mediaSource.getStreamInfo(), streamCallbacks);
-        mediaSource.initialize(new ProducerStreamSink(producerStream));
+        final StreamInfo streamInfo = mediaSource.getStreamInfo();
+        final StreamBackpressureMonitor monitor = new StreamBackpressureMonitor(streamCallbacks,
+                streamInfo.getBufferDuration(), mStorageCallbacks);
+        final KinesisVideoProducerStream producerStream = kinesisVideoProducer.createStreamSync(streamInfo, monitor);
+        attachMonitor(mediaSource, producerStream, monitor);
+        mediaSource.initialize(new ProducerStreamSink(producerStream, monitor));
         mServiceCallbacks.addStream(producerStream);
         mMediaSourceToStreamMap.put(mediaSource, producerStream);
         super.registerMediaSource(mediaSource);
@@ -143,8 +171,12 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
             streamCallbacks = mStreamCallbacks;
         }
 
-        final KinesisVideoProducerStream producerStream = kinesisVideoProducer.createStream(mediaSource.getStreamInfo(), streamCallbacks);
-        mediaSource.initialize(new ProducerStreamSink(producerStream));
+        final StreamInfo streamInfo = mediaSource.getStreamInfo();
+        final StreamBackpressureMonitor monitor = new StreamBackpressureMonitor(streamCallbacks,
+                streamInfo.getBufferDuration(), mStorageCallbacks);
+        final KinesisVideoProducerStream producerStream = kinesisVideoProducer.createStream(streamInfo, monitor);
+        attachMonitor(mediaSource, producerStream, monitor);
+        mediaSource.initialize(new ProducerStreamSink(producerStream, monitor));
         mServiceCallbacks.addStream(producerStream);
         mMediaSourceToStreamMap.put(mediaSource, producerStream);
         super.registerMediaSource(mediaSource);
@@ -161,6 +193,7 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
             // The following call will blocked till the stopped event completes
             producerStream.stopStreamSync();
         } finally {
+            detachMonitor(mediaSource);
             kinesisVideoProducer.freeStream(producerStream);
             mServiceCallbacks.removeStream(producerStream);
         }
@@ -176,6 +209,7 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
             // The following call will not blocked during the stopped event
             producerStream.streamClosed(INVALID_UPLOAD_HANDLE_VALUE);
         } finally {
+            detachMonitor(mediaSource);
             kinesisVideoProducer.freeStream(producerStream);
             mServiceCallbacks.removeStream(producerStream);
         }
@@ -183,18 +217,37 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
 
     @Override
     public void stopAllMediaSources() throws KinesisVideoException {
+        stopAllMediaSources(new StreamShutdownCoordinator(mLog));
+    }
+
+    /**
+     * Stops all the media sources and then their producer streams concurrently using the coordinator, which bounds
+     * the total time by its deadline and reports the per-stream progress.
+     *
+     * @param coordinator Coordinator to stop the streams with
+     * @return Per-stream outcomes
+     * @throws KinesisVideoException if unable to stop the media sources
+     */
+    @Nonnull
+    public StreamShutdownCoordinator.Report stopAllMediaSources(@Nonnull final StreamShutdownCoordinator coordinator)
+            throws KinesisVideoException {
+        Preconditions.checkNotNull(coordinator);
         super.stopAllMediaSources();
         try {
+            final List<KinesisVideoProducerStream> producerStreams = new ArrayList<KinesisVideoProducerStream>();
             for (final MediaSource mediaSource : mMediaSources) {
                 final KinesisVideoProducerStream producerStream = mMediaSourceToStreamMap.get(mediaSource);
-                try {
-                    producerStream.stopStreamSync();
-                } catch (final KinesisVideoException e) {
-                    mLog.error("Failed to stop media source {} due to Exception.", mediaSource);
-                    mLog.error(e);
+                if (producerStream != null) {
+                    producerStreams.add(producerStream);
                 }
             }
+
+            return coordinator.stop(producerStreams);
         } finally {
+            for (final MediaSource mediaSource : mMediaSourceToMonitorMap.keySet()) {
+                detachMonitor(mediaSource);
+            }
+
             mMediaSourceToStreamMap.clear();
         }
     }
@@ -218,6 +271,15 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
             super.free();
 
             mServiceCallbacks.free();
+            for (final MediaSource mediaSource : mMediaSourceToMonitorMap.keySet()) {
+                detachMonitor(mediaSource);
+            }
+
+            if (mStoragePressurePolicy != null) {
+                mStoragePressurePolicy.detach();
+            }
+
+            mStorageCallbacks.detach();
             kinesisVideoProducer.stopStreams();
             kinesisVideoProducer.free();
 
@@ -225,6 +287,30 @@ public class NativeKinesisVideoClient extends AbstractKinesisVideoClient {
         }
     }
 
+    private void attachMonitor(@Nonnull final MediaSource mediaSource,
+                               @Nonnull final KinesisVideoProducerStream producerStream,
+                               @Nonnull final StreamBackpressureMonitor monitor) {
+        monitor.attach(producerStream);
+        mStorageCallbacks.addMonitor(monitor);
+        if (mStoragePressurePolicy != null) {
+            mStoragePressurePolicy.addStream(producerStream.getStreamName(), monitor);
+        }
+
+        mMediaSourceToMonitorMap.put(mediaSource, monitor);
+    }
+
+    private void detachMonitor(@Nonnull final MediaSource mediaSource) {
+        final StreamBackpressureMonitor monitor = mMediaSourceToMonitorMap.remove(mediaSource);
+        if (monitor != null) {
+            mStorageCallbacks.removeMonitor(monitor);
+            if (mStoragePressurePolicy != null) {
+                mStoragePressurePolicy.removeStream(monitor);
+            }
+
+            monitor.close();
+        }
+    }
+
     /**
      * Initialize a new native {@link com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducer}.
      * Used internally by {@link #initialize} and visible for testing.
@@ -0,0 +1,275 @@
+package com.amazonaws.kinesisvideo.internal.client;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.kinesisvideo.internal.producer.ReadResult.INVALID_UPLOAD_HANDLE_VALUE;
+
+/**
+ * Stops a set of producer streams concurrently within a single deadline.
+ * <p>
+ * Every stream is stopped with {@link KinesisVideoProducerStream#stopStreamSync()}, which waits for the buffered data
+ * to drain. The streams still stopping when the deadline expires are torn down by closing their data streams, which
+ * releases the pending stop, and the stopping threads are interrupted. The total shutdown time is therefore bounded by
+ * the deadline instead of growing with the number of streams.
+ */
+public class StreamShutdownCoordinator {
+    /**
+     * Default deadline for stopping all the streams
+     */
+    public static final long DEFAULT_DEADLINE_IN_MILLIS = 30 * 1000;
+
+    /**
+     * Default max number of the streams stopped concurrently
+     */
+    public static final int DEFAULT_PARALLELISM = 32;
+
+    /**
+     * Outcome of stopping a stream
+     */
+    public enum Outcome {
+        /**
+         * The stream stopped and drained its data within the deadline
+         */
+        STOPPED,
+
+        /**
+         * Stopping the stream threw an exception
+         */
+        FAILED,
+
+        /**
+         * The stream was torn down as it did not stop within the deadline
+         */
+        FORCED
+    }
+
+    /**
+     * Receives the per-stream progress of the shutdown. Called on the stopping threads.
+     */
+    public interface ProgressListener {
+        /**
+         * @param streamName Name of the stream
+         * @param outcome Outcome of stopping the stream
+         * @param durationInMillis Time since the shutdown started
+         * @param completed Number of the streams completed so far, including this one
+         * @param total Total number of the streams
+         */
+        void onStreamCompleted(@Nonnull String streamName,
+                               @Nonnull Outcome outcome,
+                               long durationInMillis,
+                               int completed,
+                               int total);
+    }
+
+    /**
+     * Result of a shutdown
+     */
+    public static final class Report {
+        private final Map<KinesisVideoProducerStream, Outcome> outcomes;
+        private final long durationInMillis;
+
+        private Report(@Nonnull final Map<KinesisVideoProducerStream, Outcome> outcomes, final long durationInMillis) {
+            this.outcomes = Collections.unmodifiableMap(outcomes);
+            this.durationInMillis = durationInMillis;
+        }
+
+        /**
+         * Returns the outcome for each stream in the order the streams were passed in
+         */
+        @Nonnull
+        public Map<KinesisVideoProducerStream, Outcome> getOutcomes() {
+            return outcomes;
+        }
+
+        public int getCount(@Nonnull final Outcome outcome) {
+            int count = 0;
+            for (final Outcome streamOutcome : outcomes.values()) {
+                if (streamOutcome == outcome) {
+                    count++;
+                }
+            }
+
+            return count;
+        }
+
+        public long getDurationInMillis() {
+            return durationInMillis;
+        }
+    }
+
+    private final Logger log;
+    private final int parallelism;
+    private final long deadlineInMillis;
+    private final ProgressListener progressListener;
+
+    public StreamShutdownCoordinator(@Nonnull final Logger log) {
+        this(log, DEFAULT_PARALLELISM, DEFAULT_DEADLINE_IN_MILLIS, null);
+    }
+
+    /**
+     * @param log Logger to use
+     * @param parallelism Max number of the streams stopped concurrently
+     * @param deadlineInMillis Deadline for stopping all the streams
+     * @param progressListener Optional listener of the per-stream progress
+     */
+    public StreamShutdownCoordinator(@Nonnull final Logger log,
+                                     final int parallelism,
+                                     final long deadlineInMillis,
+                                     @Nullable final ProgressListener progressListener) {
+        Preconditions.checkArgument(parallelism > 0, "Parallelism must be positive");
+        Preconditions.checkArgument(deadlineInMillis >= 0, "Deadline must not be negative");
+        this.log = Preconditions.checkNotNull(log);
+        this.parallelism = parallelism;
+        this.deadlineInMillis = deadlineInMillis;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Stops the streams and returns once all of them have stopped or have been torn down.
+     *
+     * @param streams Streams to stop
+     * @return Per-stream outcomes
+     */
+    @Nonnull
+    public Report stop(@Nonnull final Collection<? extends KinesisVideoProducerStream> streams) {
+        Preconditions.checkNotNull(streams);
+        final long startNanos = System.nanoTime();
+        final List<KinesisVideoProducerStream> pending = new ArrayList<KinesisVideoProducerStream>(streams);
+        final ConcurrentMap<KinesisVideoProducerStream, Outcome> outcomes =
+                new ConcurrentHashMap<KinesisVideoProducerStream, Outcome>();
+        final AtomicInteger completed = new AtomicInteger();
+        final CountDownLatch allStopped = new CountDownLatch(pending.size());
+
+        if (!pending.isEmpty()) {
+            final ExecutorService stopExecutor = Executors.newFixedThreadPool(Math.min(parallelism, pending.size()),
+                    new ThreadFactoryBuilder().setNameFormat("KVS-StreamShutdown-%d").setDaemon(true).build());
+            try {
+                for (final KinesisVideoProducerStream stream : pending) {
+                    stopExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            Outcome outcome = Outcome.FAILED;
+                            try {
+                                if (!outcomes.containsKey(stream)) {
+                                    stream.stopStreamSync();
+                                    outcome = Outcome.STOPPED;
+                                }
+                            } catch (final ProducerException e) {
+                                log.error("Stopping stream {} threw an exception.", stream.getStreamName(), e);
+                            } catch (final RuntimeException e) {
+                                log.error("Stopping stream {} threw an exception.", stream.getStreamName(), e);
+                            } finally {
+                                complete(stream, outcome, outcomes, completed, startNanos, pending.size());
+                                allStopped.countDown();
+                            }
+                        }
+                    });
+                }
+
+                await(allStopped, startNanos);
+                forceTeardown(pending, outcomes, completed, startNanos);
+            } finally {
+                // Interrupts the stops which are still stuck after the teardown
+                stopExecutor.shutdownNow();
+            }
+        }
+
+        final Map<KinesisVideoProducerStream, Outcome> orderedOutcomes =
+                new LinkedHashMap<KinesisVideoProducerStream, Outcome>();
+        for (final KinesisVideoProducerStream stream : pending) {
+            orderedOutcomes.put(stream, outcomes.get(stream));
+        }
+
+        final Report report = new Report(orderedOutcomes, elapsedMillis(startNanos));
+        log.info("Stopped {} streams in {} ms: {} stopped, {} failed, {} forced", pending.size(),
+                report.getDurationInMillis(), report.getCount(Outcome.STOPPED), report.getCount(Outcome.FAILED),
+                report.getCount(Outcome.FORCED));
+        return report;
+    }
+
+    private void await(@Nonnull final CountDownLatch allStopped, final long startNanos) {
+        final long remainingNanos = TimeUnit.MILLISECONDS.toNanos(deadlineInMillis) - (System.nanoTime() - startNanos);
+        try {
+            if (!allStopped.await(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS)) {
+                log.warn("Streams did not stop within {} ms, tearing down {} remaining", deadlineInMillis,
+                        allStopped.getCount());
+            }
+        } catch (final InterruptedException e) {
+            log.error("Awaiting for the streams to stop was interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void forceTeardown(@Nonnull final List<KinesisVideoProducerStream> streams,
+                               @Nonnull final ConcurrentMap<KinesisVideoProducerStream, Outcome> outcomes,
+                               @Nonnull final AtomicInteger completed,
+                               final long startNanos) {
+        for (final KinesisVideoProducerStream stream : streams) {
+            if (outcomes.containsKey(stream)
+                    || !complete(stream, Outcome.FORCED, outcomes, completed, startNanos, streams.size())) {
+                continue;
+            }
+
+            try {
+                // Closes the data streams and releases anyone awaiting for the stream to stop
+                stream.streamClosed(INVALID_UPLOAD_HANDLE_VALUE);
+            } catch (final ProducerException e) {
+                log.error("Tearing down stream {} threw an exception.", stream.getStreamName(), e);
+            } catch (final RuntimeException e) {
+                log.error("Tearing down stream {} threw an exception.", stream.getStreamName(), e);
+            }
+        }
+    }
+
+    /**
+     * Records the outcome unless the stream already has one.
+     *
+     * @return whether the outcome has been recorded
+     */
+    private boolean complete(@Nonnull final KinesisVideoProducerStream stream,
+                             @Nonnull final Outcome outcome,
+                             @Nonnull final ConcurrentMap<KinesisVideoProducerStream, Outcome> outcomes,
+                             @Nonnull final AtomicInteger completed,
+                             final long startNanos,
+                             final int total) {
+        if (outcomes.putIfAbsent(stream, outcome) != null) {
+            return false;
+        }
+
+        final int completedCount = completed.incrementAndGet();
+        if (progressListener != null) {
+            try {
+                progressListener.onStreamCompleted(stream.getStreamName(), outcome, elapsedMillis(startNanos),
+                        completedCount, total);
+            } catch (final RuntimeException e) {
+                log.error("Shutdown progress listener threw an exception.", e);
+            }
+        }
+
+        return true;
+    }
+
+    private static long elapsedMillis(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
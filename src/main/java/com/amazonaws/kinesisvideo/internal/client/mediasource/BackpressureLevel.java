@@ -0,0 +1,21 @@
+package com.amazonaws.kinesisvideo.internal.client.mediasource;
+
+/**
+ * How hard a {@link MediaSourceSink} is pushing back on its media source
+ */
+public enum BackpressureLevel {
+    /**
+     * The buffer has enough room, the frames can be produced at the full rate
+     */
+    NONE,
+
+    /**
+     * The buffer is filling up. The source should reduce its rate or quality, e.g. send the key frames only.
+     */
+    DEGRADE,
+
+    /**
+     * The buffer is about to overflow. The source should stop producing until the pressure eases.
+     */
+    PAUSE
+}
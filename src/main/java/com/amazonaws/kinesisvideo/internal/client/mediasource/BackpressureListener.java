@@ -0,0 +1,12 @@
+package com.amazonaws.kinesisvideo.internal.client.mediasource;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Notified when the {@link BackpressureLevel} of a {@link MediaSourceSink} changes.
+ * <p>
+ * NOTE: The notifications are delivered in order on a background thread, never on the caller of the sink.
+ */
+public interface BackpressureListener {
+    void onBackpressureChanged(@Nonnull BackpressureLevel backpressureLevel);
+}
@@ -6,13 +6,20 @@ import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Acts as a media source sink
  *
- *
+ * The sinks aware of the producer buffer additionally expose the remaining buffer budget and a
+ * {@link BackpressureLevel}, so the media sources can degrade or pause before the content store overflows.
  */
 public interface MediaSourceSink {
+    /**
+     * Returned by the budget getters when the budget is not known
+     */
+    long BUDGET_UNKNOWN = -1;
+
     /**
      * Offers a frame from the source.
      */
@@ -26,4 +33,54 @@ public interface MediaSourceSink {
             throws KinesisVideoException;
 
     KinesisVideoProducerStream getProducerStream();
+
+    /**
+     * Offers a frame without blocking the source. The returned future completes once the frame has been put into the
+     * stream, which is held back while the sink is paused, or exceptionally if the frame could not be put.
+     *
+     * NOTE: The frame data must not be reused until the future completes. The default implementation puts the frame
+     * immediately.
+     */
+    @Nonnull
+    default CompletableFuture<Void> offer(final @Nonnull KinesisVideoFrame kinesisVideoFrame) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            onFrame(kinesisVideoFrame);
+            future.complete(null);
+        } catch (final KinesisVideoException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Returns the current backpressure of the sink
+     */
+    @Nonnull
+    default BackpressureLevel getBackpressureLevel() {
+        return BackpressureLevel.NONE;
+    }
+
+    /**
+     * Returns the bytes still available in the content store shared by all the streams or {@link #BUDGET_UNKNOWN}
+     */
+    default long getAvailableStorageSize() {
+        return BUDGET_UNKNOWN;
+    }
+
+    /**
+     * Returns the duration in 100ns the stream buffer can still take or {@link #BUDGET_UNKNOWN}
+     */
+    default long getRemainingBufferDuration() {
+        return BUDGET_UNKNOWN;
+    }
+
+    default void addBackpressureListener(final @Nonnull BackpressureListener listener) {
+        // no-op
+    }
+
+    default void removeBackpressureListener(final @Nonnull BackpressureListener listener) {
+        // no-op
+    }
 }
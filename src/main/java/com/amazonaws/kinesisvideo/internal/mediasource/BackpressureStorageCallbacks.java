@@ -0,0 +1,108 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducer;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage callbacks feeding the content store budget into the {@link StreamBackpressureMonitor}s of the streams.
+ * <p>
+ * The content store is shared by all the streams of a client, so a storage overflow pressure is fanned out to every
+ * registered monitor after the wrapped callbacks have been called. Between the pressure reports the monitors poll the
+ * available size from the producer metrics.
+ */
+public class BackpressureStorageCallbacks implements StorageCallbacks {
+    private final Log log = LogFactory.getLog(BackpressureStorageCallbacks.class);
+    private final StorageCallbacks storageCallbacks;
+    private final List<StreamBackpressureMonitor> monitors = new CopyOnWriteArrayList<StreamBackpressureMonitor>();
+    private final AtomicLong storageOverflowPressureCount = new AtomicLong();
+
+    private volatile KinesisVideoProducer kinesisVideoProducer;
+    private volatile long storageSize = MediaSourceSink.BUDGET_UNKNOWN;
+
+    /**
+     * @param storageCallbacks Storage callbacks of the application, called first
+     */
+    public BackpressureStorageCallbacks(@Nonnull final StorageCallbacks storageCallbacks) {
+        this.storageCallbacks = Preconditions.checkNotNull(storageCallbacks);
+    }
+
+    /**
+     * Starts reading the available size from the producer metrics.
+     *
+     * @param kinesisVideoProducer Producer owning the content store
+     * @param storageSize Size of the content store in bytes
+     */
+    public void attach(@Nonnull final KinesisVideoProducer kinesisVideoProducer, final long storageSize) {
+        this.kinesisVideoProducer = Preconditions.checkNotNull(kinesisVideoProducer);
+        this.storageSize = storageSize;
+    }
+
+    /**
+     * Stops reading the producer metrics, called before the producer is freed
+     */
+    public void detach() {
+        kinesisVideoProducer = null;
+    }
+
+    public void addMonitor(@Nonnull final StreamBackpressureMonitor monitor) {
+        monitors.add(Preconditions.checkNotNull(monitor));
+    }
+
+    public void removeMonitor(@Nonnull final StreamBackpressureMonitor monitor) {
+        monitors.remove(monitor);
+    }
+
+    @Override
+    public void storageOverflowPressure(final long remainingSize) {
+        storageOverflowPressureCount.incrementAndGet();
+        try {
+            storageCallbacks.storageOverflowPressure(remainingSize);
+        } finally {
+            for (final StreamBackpressureMonitor monitor : monitors) {
+                monitor.onStorageOverflowPressure(remainingSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the content store in bytes or {@link MediaSourceSink#BUDGET_UNKNOWN}
+     */
+    public long getStorageSize() {
+        return storageSize;
+    }
+
+    /**
+     * Reads the available size of the content store from the producer metrics.
+     *
+     * NOTE: Must not be called from the producer callbacks, which may hold the native locks.
+     *
+     * @return Available bytes or {@link MediaSourceSink#BUDGET_UNKNOWN} if the producer is not attached
+     */
+    public long pollAvailableStorageSize() {
+        final KinesisVideoProducer producer = kinesisVideoProducer;
+        if (producer == null) {
+            return MediaSourceSink.BUDGET_UNKNOWN;
+        }
+
+        try {
+            return producer.getMetrics().getContentStoreAvailableSize();
+        } catch (final ProducerException e) {
+            log.debug("Unable to read the content store metrics", e);
+            return MediaSourceSink.BUDGET_UNKNOWN;
+        }
+    }
+
+    public long getStorageOverflowPressureCount() {
+        return storageOverflowPressureCount.get();
+    }
+}
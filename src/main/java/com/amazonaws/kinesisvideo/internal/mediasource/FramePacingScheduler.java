@@ -0,0 +1,284 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the frame generation of many media sources from a small shared thread pool.
+ * <p>
+ * Every source ticks on absolute deadlines computed from its start time and period using {@link System#nanoTime()},
+ * so the time spent producing a frame does not accumulate into a drift of the frame rate. The ticks of a source never
+ * overlap - the next tick is scheduled once the current one has returned. A tick which could not start on time is
+ * handled according to the source's {@link CatchUpPolicy}.
+ * <p>
+ * NOTE: The ticks run on the shared threads so they should hand out ready data rather than block.
+ */
+public class FramePacingScheduler {
+    /**
+     * Ticks started later than this fraction of the period after their deadline are counted as late
+     */
+    private static final double LATE_TICK_PERIOD_FRACTION = 0.5;
+
+    private static final int DEFAULT_THREAD_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * What to do with the ticks missed while a source was running late
+     */
+    public enum CatchUpPolicy {
+        /**
+         * Drop the missed ticks and continue on the original deadline grid
+         */
+        SKIP,
+
+        /**
+         * Run the missed ticks back to back until the source is back on schedule
+         */
+        BURST,
+
+        /**
+         * Re-anchor the deadline grid at the current time
+         */
+        RESET
+    }
+
+    /**
+     * Work performed on every tick of a source
+     */
+    public interface Tick {
+        /**
+         * @param tickIndex Index of the tick on the deadline grid. Skipped ticks leave gaps.
+         */
+        void onTick(long tickIndex) throws KinesisVideoException;
+    }
+
+    /**
+     * Handle of a paced source exposing its pacing metrics
+     */
+    public final class PacedSource {
+        private final Tick tick;
+        private final long periodNanos;
+        private final CatchUpPolicy catchUpPolicy;
+
+        private long startNanos;
+        private long tickIndex;
+        private volatile boolean cancelled;
+        private volatile ScheduledFuture<?> future;
+
+        private final AtomicLong tickCount = new AtomicLong();
+        private final AtomicLong lateTickCount = new AtomicLong();
+        private final AtomicLong skippedTickCount = new AtomicLong();
+        private final AtomicLong totalJitterNanos = new AtomicLong();
+        private final AtomicLong maxJitterNanos = new AtomicLong();
+
+        private PacedSource(@Nonnull final Tick tick, final long periodNanos, @Nonnull final CatchUpPolicy policy) {
+            this.tick = tick;
+            this.periodNanos = periodNanos;
+            this.catchUpPolicy = policy;
+        }
+
+        /**
+         * Stops the ticks. A tick which is already running completes.
+         */
+        public void cancel() {
+            cancelled = true;
+            final ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getTickCount() {
+            return tickCount.get();
+        }
+
+        /**
+         * Returns the number of the ticks which started more than half a period after their deadline
+         */
+        public long getLateTickCount() {
+            return lateTickCount.get();
+        }
+
+        /**
+         * Returns the number of the ticks dropped by the {@link CatchUpPolicy#SKIP} policy
+         */
+        public long getSkippedTickCount() {
+            return skippedTickCount.get();
+        }
+
+        /**
+         * Returns the average delay of the tick start after its deadline in nanoseconds
+         */
+        public long getAverageJitterNanos() {
+            final long ticks = tickCount.get();
+            return ticks == 0 ? 0 : totalJitterNanos.get() / ticks;
+        }
+
+        /**
+         * Returns the max delay of the tick start after its deadline in nanoseconds
+         */
+        public long getMaxJitterNanos() {
+            return maxJitterNanos.get();
+        }
+
+        private void start() {
+            startNanos = System.nanoTime();
+            tickIndex = 0;
+            scheduleAt(startNanos);
+        }
+
+        private void run() {
+            if (cancelled) {
+                return;
+            }
+
+            final long deadlineNanos = startNanos + tickIndex * periodNanos;
+            recordJitter(System.nanoTime() - deadlineNanos);
+
+            try {
+                tick.onTick(tickIndex);
+            } catch (final KinesisVideoException e) {
+                log.error("Frame tick threw an exception", e);
+            } catch (final RuntimeException e) {
+                log.error("Frame tick threw an exception", e);
+            }
+
+            tickIndex++;
+            final long now = System.nanoTime();
+            final long nextDeadlineNanos = startNanos + tickIndex * periodNanos;
+            if (now - nextDeadlineNanos > 0) {
+                catchUp(now);
+            }
+
+            scheduleAt(startNanos + tickIndex * periodNanos);
+        }
+
+        private void catchUp(final long now) {
+            switch (catchUpPolicy) {
+                case SKIP:
+                    // Move to the first deadline which is still ahead
+                    final long currentIndex = (now - startNanos) / periodNanos + 1;
+                    skippedTickCount.addAndGet(currentIndex - tickIndex);
+                    tickIndex = currentIndex;
+                    break;
+                case RESET:
+                    startNanos = now;
+                    tickIndex = 0;
+                    break;
+                case BURST:
+                default:
+                    // The overdue deadlines are scheduled immediately
+                    break;
+            }
+        }
+
+        private void scheduleAt(final long deadlineNanos) {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                future = executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        PacedSource.this.run();
+                    }
+                }, Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (final RejectedExecutionException e) {
+                log.warn("Frame pacing scheduler is shut down, stopping the source");
+                cancelled = true;
+            }
+        }
+
+        private void recordJitter(final long jitterNanos) {
+            final long jitter = Math.max(0, jitterNanos);
+            tickCount.incrementAndGet();
+            totalJitterNanos.addAndGet(jitter);
+            if (jitter > periodNanos * LATE_TICK_PERIOD_FRACTION) {
+                lateTickCount.incrementAndGet();
+            }
+
+            long max;
+            while ((max = maxJitterNanos.get()) < jitter) {
+                if (maxJitterNanos.compareAndSet(max, jitter)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static volatile FramePacingScheduler sharedInstance;
+
+    private final Log log = LogFactory.getLog(FramePacingScheduler.class);
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param threadCount Number of the threads running the ticks of all the sources
+     */
+    public FramePacingScheduler(final int threadCount) {
+        Preconditions.checkArgument(threadCount > 0, "Thread count must be positive");
+        executor = new ScheduledThreadPoolExecutor(threadCount,
+                new ThreadFactoryBuilder().setNameFormat("KVS-FramePacing-%d").setDaemon(true).build());
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the scheduler shared by the built-in media sources
+     */
+    @Nonnull
+    public static FramePacingScheduler getShared() {
+        FramePacingScheduler scheduler = sharedInstance;
+        if (scheduler == null) {
+            synchronized (FramePacingScheduler.class) {
+                scheduler = sharedInstance;
+                if (scheduler == null) {
+                    scheduler = new FramePacingScheduler(DEFAULT_THREAD_COUNT);
+                    sharedInstance = scheduler;
+                }
+            }
+        }
+
+        return scheduler;
+    }
+
+    /**
+     * Starts ticking a source. The first tick runs immediately.
+     *
+     * @param tick Work to perform on every tick
+     * @param periodNanos Tick period in nanoseconds
+     * @param catchUpPolicy What to do with the ticks missed while running late
+     * @return Handle to cancel the source and read its metrics
+     */
+    @Nonnull
+    public PacedSource schedule(@Nonnull final Tick tick,
+                                final long periodNanos,
+                                @Nonnull final CatchUpPolicy catchUpPolicy) {
+        Preconditions.checkNotNull(tick);
+        Preconditions.checkNotNull(catchUpPolicy);
+        Preconditions.checkArgument(periodNanos > 0, "Period must be positive");
+
+        final PacedSource source = new PacedSource(tick, periodNanos, catchUpPolicy);
+        source.start();
+        return source;
+    }
+
+    /**
+     * Stops all the sources of this scheduler.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
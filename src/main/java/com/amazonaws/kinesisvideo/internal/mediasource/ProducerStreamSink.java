@@ -3,9 +3,17 @@ package com.amazonaws.kinesisvideo.internal.mediasource;
 import static com.amazonaws.kinesisvideo.common.preconditions.Preconditions.checkNotNull;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_TRACK_ID;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureLevel;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureListener;
 import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
 import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
@@ -22,17 +30,82 @@ import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
  *
  * It's then media source's job to produce the frames and push them into the sink
  * it has been initialized with
+ *
+ * With a {@link StreamBackpressureMonitor} the sink exposes the buffer budget of the stream. The frames offered with
+ * {@link #offer(KinesisVideoFrame)} while the stream is paused are queued, up to a limit, and put in order once the
+ * pressure eases. The frames passed to {@link #onFrame(KinesisVideoFrame)} are always put immediately. The frames the
+ * {@link StoragePressurePolicy} action of the stream drops are discarded instead of being put. The offers still held
+ * back when the monitor is closed fail, as the stream is being freed.
  */
 public class ProducerStreamSink implements MediaSourceSink {
+    /**
+     * Max number of the offered frames held back while the stream is paused
+     */
+    public static final int DEFAULT_MAX_PENDING_OFFERS = 256;
+
     private final KinesisVideoProducerStream producerStream;
+    private final StreamBackpressureMonitor backpressureMonitor;
+    private final int maxPendingOffers;
+    private final Queue<PendingOffer> pendingOffers = new ArrayDeque<PendingOffer>();
+    private boolean isDraining;
+
+    private static final class PendingOffer {
+        private final KinesisVideoFrame frame;
+        private final CompletableFuture<Void> future;
+
+        private PendingOffer(final KinesisVideoFrame frame, final CompletableFuture<Void> future) {
+            this.frame = frame;
+            this.future = future;
+        }
+    }
 
     public ProducerStreamSink(final KinesisVideoProducerStream producerStream) {
+        this(producerStream, null, DEFAULT_MAX_PENDING_OFFERS);
+    }
+
+    public ProducerStreamSink(final KinesisVideoProducerStream producerStream,
+                              @Nullable final StreamBackpressureMonitor backpressureMonitor) {
+        this(producerStream, backpressureMonitor, DEFAULT_MAX_PENDING_OFFERS);
+    }
+
+    /**
+     * @param producerStream Stream to put the frames into
+     * @param backpressureMonitor Monitor of the stream buffer or null
+     * @param maxPendingOffers Max number of the offered frames held back while paused
+     */
+    public ProducerStreamSink(final KinesisVideoProducerStream producerStream,
+                              @Nullable final StreamBackpressureMonitor backpressureMonitor,
+                              final int maxPendingOffers) {
         this.producerStream = producerStream;
+        this.backpressureMonitor = backpressureMonitor;
+        this.maxPendingOffers = maxPendingOffers;
+
+        if (backpressureMonitor != null) {
+            backpressureMonitor.addListener(new BackpressureListener() {
+                @Override
+                public void onBackpressureChanged(@Nonnull final BackpressureLevel backpressureLevel) {
+                    if (backpressureLevel != BackpressureLevel.PAUSE) {
+                        drainPendingOffers();
+                    }
+                }
+            });
+            // Closing releases the level but the stream is being freed
+            backpressureMonitor.addCloseListener(new Runnable() {
+                @Override
+                public void run() {
+                    failPendingOffers();
+                }
+            });
+        }
     }
 
     @Override
     public void onFrame(@Nonnull final KinesisVideoFrame kinesisVideoFrame) throws KinesisVideoException {
         checkNotNull(kinesisVideoFrame);
+        if (isDroppedByPolicy(kinesisVideoFrame)) {
+            return;
+        }
+
         producerStream.putFrame(kinesisVideoFrame);
     }
 
@@ -56,4 +129,154 @@ public class ProducerStreamSink implements MediaSourceSink {
     public KinesisVideoProducerStream getProducerStream() {
         return producerStream;
     }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> offer(@Nonnull final KinesisVideoFrame kinesisVideoFrame) {
+        checkNotNull(kinesisVideoFrame);
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        final boolean isQueued;
+        final boolean isPendingDrain;
+        synchronized (pendingOffers) {
+            // Checked under the lock the close listener fails the held back offers with
+            if (isClosed()) {
+                future.completeExceptionally(getClosedException());
+                return future;
+            }
+
+            // Keep the order behind the frames already held back
+            final boolean isPaused = getBackpressureLevel() == BackpressureLevel.PAUSE;
+            isQueued = isDraining || !pendingOffers.isEmpty() || isPaused;
+            if (isQueued) {
+                if (pendingOffers.size() >= maxPendingOffers) {
+                    future.completeExceptionally(new KinesisVideoException("Stream " + producerStream.getStreamName()
+                            + " is paused by the backpressure and " + maxPendingOffers + " frames are pending"));
+                } else {
+                    pendingOffers.add(new PendingOffer(kinesisVideoFrame, future));
+                }
+            }
+
+            isPendingDrain = isQueued && !isDraining && !isPaused;
+        }
+
+        if (isQueued) {
+            // The pause has eased but no notification has drained the held back frames, e.g. it was coalesced
+            if (isPendingDrain) {
+                drainPendingOffers();
+            }
+
+            return future;
+        }
+
+        put(kinesisVideoFrame, future);
+        return future;
+    }
+
+    @Nonnull
+    @Override
+    public BackpressureLevel getBackpressureLevel() {
+        return backpressureMonitor != null ? backpressureMonitor.getBackpressureLevel() : BackpressureLevel.NONE;
+    }
+
+    @Override
+    public long getAvailableStorageSize() {
+        return backpressureMonitor != null ? backpressureMonitor.getAvailableStorageSize() : BUDGET_UNKNOWN;
+    }
+
+    @Override
+    public long getRemainingBufferDuration() {
+        return backpressureMonitor != null ? backpressureMonitor.getRemainingBufferDuration() : BUDGET_UNKNOWN;
+    }
+
+    @Override
+    public void addBackpressureListener(@Nonnull final BackpressureListener listener) {
+        if (backpressureMonitor != null) {
+            backpressureMonitor.addListener(listener);
+        }
+    }
+
+    @Override
+    public void removeBackpressureListener(@Nonnull final BackpressureListener listener) {
+        if (backpressureMonitor != null) {
+            backpressureMonitor.removeListener(listener);
+        }
+    }
+
+    /**
+     * Returns the number of the offered frames held back by the backpressure
+     */
+    public int getPendingOfferCount() {
+        synchronized (pendingOffers) {
+            return pendingOffers.size();
+        }
+    }
+
+    private void drainPendingOffers() {
+        synchronized (pendingOffers) {
+            if (isDraining) {
+                return;
+            }
+
+            isDraining = true;
+        }
+
+        while (true) {
+            final PendingOffer pendingOffer;
+            synchronized (pendingOffers) {
+                if (pendingOffers.isEmpty() || getBackpressureLevel() == BackpressureLevel.PAUSE || isClosed()) {
+                    isDraining = false;
+                    break;
+                }
+
+                pendingOffer = pendingOffers.poll();
+            }
+
+            put(pendingOffer.frame, pendingOffer.future);
+        }
+
+        // Closed while draining
+        if (isClosed()) {
+            failPendingOffers();
+        }
+    }
+
+    private void failPendingOffers() {
+        final List<PendingOffer> failed;
+        synchronized (pendingOffers) {
+            failed = new ArrayList<PendingOffer>(pendingOffers);
+            pendingOffers.clear();
+        }
+
+        for (final PendingOffer pendingOffer : failed) {
+            pendingOffer.future.completeExceptionally(getClosedException());
+        }
+    }
+
+    private boolean isClosed() {
+        return backpressureMonitor != null && backpressureMonitor.isClosed();
+    }
+
+    @Nonnull
+    private KinesisVideoException getClosedException() {
+        return new KinesisVideoException("Stream " + producerStream.getStreamName()
+                + " was closed before the frame could be put");
+    }
+
+    private boolean isDroppedByPolicy(@Nonnull final KinesisVideoFrame kinesisVideoFrame) {
+        return backpressureMonitor != null && backpressureMonitor.dropsFrame(kinesisVideoFrame);
+    }
+
+    private void put(@Nonnull final KinesisVideoFrame kinesisVideoFrame, @Nonnull final CompletableFuture<Void> future) {
+        try {
+            if (!isDroppedByPolicy(kinesisVideoFrame)) {
+                producerStream.putFrame(kinesisVideoFrame);
+            }
+
+            future.complete(null);
+        } catch (final KinesisVideoException e) {
+            future.completeExceptionally(e);
+        } catch (final RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
 }
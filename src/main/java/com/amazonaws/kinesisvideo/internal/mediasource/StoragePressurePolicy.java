@@ -0,0 +1,367 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
+import com.amazonaws.kinesisvideo.storage.DefaultStorageCallbacks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Storage callbacks degrading the streams sharing a content store in tiers as it fills up.
+ * <p>
+ * Installed as the storage callbacks of the client, the policy is handed the {@link StreamBackpressureMonitor} of every
+ * stream. It tracks the available size of the content store from the storage overflow pressure reports and the
+ * producer metrics polled on the {@link FramePacingScheduler}, and projects it over a short horizon by its trend, so a
+ * quickly filling store escalates before it is actually short. Each stream is then assigned the most severe
+ * {@link Action} whose threshold the projected remaining fraction has fallen below.
+ * <p>
+ * The thresholds are scaled by the priority weight of the stream relative to the mean weight of all the streams,
+ * within a factor of two, so the low priority streams reach every tier first and the high priority ones last.
+ * Leaving a tier requires the fraction to rise above its threshold by a margin, so the actions do not flap. The
+ * number of times every action has been taken and the frames dropped by the policy are exposed as metrics.
+ */
+public class StoragePressurePolicy implements StorageCallbacks {
+    /**
+     * Actions applied to a stream, in the order of severity
+     */
+    public enum Action {
+        NONE,
+
+        /**
+         * The media sources are asked to reduce their bitrate
+         */
+        REDUCE_BITRATE,
+
+        /**
+         * The media sources are asked to reduce their bitrate and only the key frames are put
+         */
+        DROP_NON_KEY_FRAMES,
+
+        /**
+         * The media sources are asked to pause and the offered frames are held back
+         */
+        THROTTLE,
+
+        /**
+         * All the frames are dropped so the buffered content of the stream is drained and not replaced
+         */
+        EVICT
+    }
+
+    public static final double DEFAULT_PRIORITY = 1.0;
+
+    public static final double DEFAULT_REDUCE_BITRATE_THRESHOLD = 0.30;
+    public static final double DEFAULT_DROP_NON_KEY_FRAMES_THRESHOLD = 0.20;
+    public static final double DEFAULT_THROTTLE_THRESHOLD = 0.10;
+    public static final double DEFAULT_EVICT_THRESHOLD = 0.04;
+
+    /**
+     * Default time the trend of the available size is projected over
+     */
+    public static final long DEFAULT_TREND_HORIZON_MILLIS = 1000;
+
+    private static final double RESUME_MARGIN = 0.05;
+    private static final double MAX_PRIORITY_SCALE = 2.0;
+    private static final double TREND_SMOOTHING = 0.3;
+    private static final long EVALUATION_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MIN_TREND_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Log log = LogFactory.getLog(StoragePressurePolicy.class);
+    private final StorageCallbacks storageCallbacks;
+    private final double[] thresholds = new double[Action.values().length];
+    private final long trendHorizonNanos;
+    private final FramePacingScheduler scheduler;
+    private final Map<String, Double> priorities = new ConcurrentHashMap<String, Double>();
+    private final List<StreamEntry> streams = new CopyOnWriteArrayList<StreamEntry>();
+    private final AtomicLong[] actionCounts = new AtomicLong[Action.values().length];
+    private final AtomicLong storageOverflowPressureCount = new AtomicLong();
+
+    private BackpressureStorageCallbacks storageSource;
+    private FramePacingScheduler.PacedSource evaluation;
+    private long lastAvailableSize = MediaSourceSink.BUDGET_UNKNOWN;
+    private long lastSampleNanos;
+    private double trendBytesPerSecond;
+    private long projectedAvailableSize = MediaSourceSink.BUDGET_UNKNOWN;
+
+    private static final class StreamEntry {
+        private final String streamName;
+        private final StreamBackpressureMonitor monitor;
+        private Action action = Action.NONE;
+
+        private StreamEntry(@Nonnull final String streamName, @Nonnull final StreamBackpressureMonitor monitor) {
+            this.streamName = streamName;
+            this.monitor = monitor;
+        }
+    }
+
+    public StoragePressurePolicy() {
+        this(new DefaultStorageCallbacks());
+    }
+
+    /**
+     * @param storageCallbacks Storage callbacks of the application, called first
+     */
+    public StoragePressurePolicy(@Nonnull final StorageCallbacks storageCallbacks) {
+        this(storageCallbacks,
+                DEFAULT_REDUCE_BITRATE_THRESHOLD,
+                DEFAULT_DROP_NON_KEY_FRAMES_THRESHOLD,
+                DEFAULT_THROTTLE_THRESHOLD,
+                DEFAULT_EVICT_THRESHOLD,
+                DEFAULT_TREND_HORIZON_MILLIS,
+                FramePacingScheduler.getShared());
+    }
+
+    /**
+     * The thresholds are the remaining fractions of the content store for a stream of the mean priority. A tier is
+     * disabled by a zero threshold.
+     *
+     * @param storageCallbacks Storage callbacks of the application, called first
+     * @param reduceBitrateThreshold Threshold of {@link Action#REDUCE_BITRATE}
+     * @param dropNonKeyFramesThreshold Threshold of {@link Action#DROP_NON_KEY_FRAMES}
+     * @param throttleThreshold Threshold of {@link Action#THROTTLE}
+     * @param evictThreshold Threshold of {@link Action#EVICT}
+     * @param trendHorizonMillis Time the trend of the available size is projected over, 0 to ignore the trend
+     * @param scheduler Scheduler polling the content store
+     */
+    public StoragePressurePolicy(@Nonnull final StorageCallbacks storageCallbacks,
+                                 final double reduceBitrateThreshold,
+                                 final double dropNonKeyFramesThreshold,
+                                 final double throttleThreshold,
+                                 final double evictThreshold,
+                                 final long trendHorizonMillis,
+                                 @Nonnull final FramePacingScheduler scheduler) {
+        Preconditions.checkArgument(evictThreshold >= 0
+                        && evictThreshold <= throttleThreshold
+                        && throttleThreshold <= dropNonKeyFramesThreshold
+                        && dropNonKeyFramesThreshold <= reduceBitrateThreshold
+                        && reduceBitrateThreshold < 1,
+                "Thresholds must satisfy 0 <= evict <= throttle <= drop non-key frames <= reduce bitrate < 1");
+        Preconditions.checkArgument(trendHorizonMillis >= 0, "Trend horizon must not be negative");
+        this.storageCallbacks = Preconditions.checkNotNull(storageCallbacks);
+        this.trendHorizonNanos = TimeUnit.MILLISECONDS.toNanos(trendHorizonMillis);
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        thresholds[Action.REDUCE_BITRATE.ordinal()] = reduceBitrateThreshold;
+        thresholds[Action.DROP_NON_KEY_FRAMES.ordinal()] = dropNonKeyFramesThreshold;
+        thresholds[Action.THROTTLE.ordinal()] = throttleThreshold;
+        thresholds[Action.EVICT.ordinal()] = evictThreshold;
+        for (int i = 0; i < actionCounts.length; i++) {
+            actionCounts[i] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Sets the priority weight of a stream, {@link #DEFAULT_PRIORITY} unless set. May be called before the stream is
+     * created.
+     */
+    public void setPriority(@Nonnull final String streamName, final double priority) {
+        Preconditions.checkNotNull(streamName);
+        Preconditions.checkArgument(priority > 0, "Priority must be positive");
+        priorities.put(streamName, priority);
+    }
+
+    public double getPriority(@Nonnull final String streamName) {
+        final Double priority = priorities.get(streamName);
+        return priority != null ? priority : DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Starts polling the content store the storage callbacks of the client read from the producer
+     */
+    public synchronized void attach(@Nonnull final BackpressureStorageCallbacks storageSource) {
+        Preconditions.checkState(this.storageSource == null, "Policy is already attached");
+        this.storageSource = Preconditions.checkNotNull(storageSource);
+        evaluation = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                poll();
+            }
+        }, EVALUATION_PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+    }
+
+    /**
+     * Stops polling, called before the producer is freed
+     */
+    public synchronized void detach() {
+        if (evaluation != null) {
+            evaluation.cancel();
+            evaluation = null;
+        }
+
+        storageSource = null;
+    }
+
+    /**
+     * Applies the policy to the stream of the monitor
+     */
+    public void addStream(@Nonnull final String streamName, @Nonnull final StreamBackpressureMonitor monitor) {
+        streams.add(new StreamEntry(Preconditions.checkNotNull(streamName), Preconditions.checkNotNull(monitor)));
+    }
+
+    public synchronized void removeStream(@Nonnull final StreamBackpressureMonitor monitor) {
+        for (final StreamEntry entry : streams) {
+            if (entry.monitor == monitor) {
+                streams.remove(entry);
+                monitor.setStoragePressureAction(Action.NONE);
+            }
+        }
+    }
+
+    @Override
+    public void storageOverflowPressure(final long remainingSize) {
+        storageOverflowPressureCount.incrementAndGet();
+        try {
+            storageCallbacks.storageOverflowPressure(remainingSize);
+        } finally {
+            // Only updates the monitors, the producer is not called back from its own callback
+            evaluate(remainingSize, System.nanoTime());
+        }
+    }
+
+    /**
+     * Returns the action currently applied to a stream or null if the stream is not known
+     */
+    @Nullable
+    public synchronized Action getAction(@Nonnull final String streamName) {
+        for (final StreamEntry entry : streams) {
+            if (entry.streamName.equals(streamName)) {
+                return entry.action;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns how many times a stream has been escalated to the action
+     */
+    public long getActionCount(@Nonnull final Action action) {
+        return actionCounts[action.ordinal()].get();
+    }
+
+    /**
+     * Returns the number of the frames dropped by the policy from the streams currently applied to
+     */
+    public long getDroppedFrameCount() {
+        long droppedFrameCount = 0;
+        for (final StreamEntry entry : streams) {
+            droppedFrameCount += entry.monitor.getStoragePressureDroppedFrameCount();
+        }
+
+        return droppedFrameCount;
+    }
+
+    public long getStorageOverflowPressureCount() {
+        return storageOverflowPressureCount.get();
+    }
+
+    /**
+     * Returns the smoothed change of the available size in bytes per second, negative while the store fills up
+     */
+    public synchronized double getAvailableSizeTrend() {
+        return trendBytesPerSecond;
+    }
+
+    /**
+     * Returns the available size projected over the trend horizon or {@link MediaSourceSink#BUDGET_UNKNOWN}
+     */
+    public synchronized long getProjectedAvailableSize() {
+        return projectedAvailableSize;
+    }
+
+    private void poll() {
+        final BackpressureStorageCallbacks source;
+        synchronized (this) {
+            source = storageSource;
+        }
+
+        if (source == null) {
+            return;
+        }
+
+        final long availableSize = source.pollAvailableStorageSize();
+        if (availableSize != MediaSourceSink.BUDGET_UNKNOWN) {
+            evaluate(availableSize, System.nanoTime());
+        }
+    }
+
+    /**
+     * Updates the trend with a sample of the available size and reapplies the tiers. Visible for testing.
+     */
+    synchronized void evaluate(final long availableSize, final long nowNanos) {
+        if (lastAvailableSize != MediaSourceSink.BUDGET_UNKNOWN
+                && nowNanos - lastSampleNanos >= MIN_TREND_SAMPLE_NANOS) {
+            final double slope = (availableSize - lastAvailableSize) * 1e9 / (nowNanos - lastSampleNanos);
+            trendBytesPerSecond += TREND_SMOOTHING * (slope - trendBytesPerSecond);
+        }
+
+        lastAvailableSize = availableSize;
+        lastSampleNanos = nowNanos;
+
+        // Only a shrinking store is projected, a draining one is not trusted to keep draining
+        projectedAvailableSize = Math.max(0,
+                availableSize + (long) (Math.min(0, trendBytesPerSecond) * trendHorizonNanos / 1e9));
+
+        final long storageSize = storageSource != null
+                ? storageSource.getStorageSize()
+                : MediaSourceSink.BUDGET_UNKNOWN;
+        if (storageSize <= 0 || streams.isEmpty()) {
+            return;
+        }
+
+        final double remainingFraction = (double) projectedAvailableSize / storageSize;
+        double totalPriority = 0;
+        for (final StreamEntry entry : streams) {
+            totalPriority += getPriority(entry.streamName);
+        }
+
+        final double meanPriority = totalPriority / streams.size();
+        for (final StreamEntry entry : streams) {
+            final double scale = Math.max(1 / MAX_PRIORITY_SCALE,
+                    Math.min(MAX_PRIORITY_SCALE, meanPriority / getPriority(entry.streamName)));
+            apply(entry, selectAction(entry.action, remainingFraction, scale));
+        }
+    }
+
+    @Nonnull
+    private Action selectAction(@Nonnull final Action currentAction,
+                                final double remainingFraction,
+                                final double scale) {
+        final Action[] actions = Action.values();
+        for (int i = actions.length - 1; i > 0; i--) {
+            final double boundary = thresholds[i] * scale
+                    + (currentAction.ordinal() >= i ? RESUME_MARGIN : 0);
+            if (thresholds[i] > 0 && remainingFraction < boundary) {
+                return actions[i];
+            }
+        }
+
+        return Action.NONE;
+    }
+
+    private void apply(@Nonnull final StreamEntry entry, @Nonnull final Action action) {
+        if (action == entry.action) {
+            return;
+        }
+
+        if (action.compareTo(entry.action) > 0) {
+            actionCounts[action.ordinal()].incrementAndGet();
+            log.warn("Content store pressure: " + action + " for stream " + entry.streamName + ", "
+                    + projectedAvailableSize + " bytes projected to remain");
+        } else {
+            log.info("Content store pressure eased: " + action + " for stream " + entry.streamName);
+        }
+
+        entry.action = action;
+        entry.monitor.setStoragePressureAction(action);
+    }
+}
@@ -0,0 +1,496 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureLevel;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureListener;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFragmentAck;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+
+/**
+ * Tracks the buffer budget of a stream and turns it into a {@link BackpressureLevel}.
+ * <p>
+ * The monitor wraps the stream callbacks of the stream. The buffer duration overflow pressure of the stream and the
+ * storage overflow pressure fanned out by the {@link BackpressureStorageCallbacks} raise the level immediately. In
+ * addition the stream and content store metrics are polled on the {@link FramePacingScheduler}, which both detects the
+ * filling buffer before the producer reports the pressure and eases the level once the buffer has drained. The polling
+ * never runs on the producer callbacks as they may hold the native locks.
+ * <p>
+ * The level is derived from the smaller of the remaining buffer duration and available storage fractions. Leaving a
+ * level requires the fraction to rise above its threshold by a margin, so the level does not flap.
+ * <p>
+ * A {@link StoragePressurePolicy} may additionally apply an action to the stream, which raises the level to at least
+ * the one of the action and decides which frames {@link #dropsFrame(KinesisVideoFrame)} drops.
+ */
+public class StreamBackpressureMonitor implements StreamCallbacks {
+    /**
+     * Remaining fraction of the buffer below which the sources are asked to degrade
+     */
+    public static final double DEFAULT_DEGRADE_THRESHOLD = 0.25;
+
+    /**
+     * Remaining fraction of the buffer below which the sources are asked to pause
+     */
+    public static final double DEFAULT_PAUSE_THRESHOLD = 0.05;
+
+    private static final double RESUME_MARGIN = 0.05;
+
+    private static final long METRICS_POLL_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final Executor NOTIFICATION_EXECUTOR = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("KVS-Backpressure-%d").setDaemon(true).build());
+
+    private final Log log = LogFactory.getLog(StreamBackpressureMonitor.class);
+    private final StreamCallbacks streamCallbacks;
+    private final long bufferDuration;
+    private final BackpressureStorageCallbacks storageCallbacks;
+    private final FramePacingScheduler scheduler;
+    private final Executor notificationExecutor;
+    private final double degradeThreshold;
+    private final double pauseThreshold;
+    private final List<BackpressureListener> listeners = new CopyOnWriteArrayList<BackpressureListener>();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<Runnable>();
+    private final Runnable notifier = new Runnable() {
+        @Override
+        public void run() {
+            notifyListeners();
+        }
+    };
+
+    private final AtomicLong bufferDurationOverflowPressureCount = new AtomicLong();
+    private final AtomicLong degradeCount = new AtomicLong();
+    private final AtomicLong pauseCount = new AtomicLong();
+    private final AtomicLong storagePressureDroppedFrameCount = new AtomicLong();
+
+    private KinesisVideoProducerStream producerStream;
+    private FramePacingScheduler.PacedSource metricsPoll;
+    private long remainingBufferDuration = MediaSourceSink.BUDGET_UNKNOWN;
+    private long availableStorageSize = MediaSourceSink.BUDGET_UNKNOWN;
+    private BackpressureLevel backpressureLevel = BackpressureLevel.NONE;
+    private boolean isNotificationPending;
+    private boolean isChangedSinceNotified;
+    private StoragePressurePolicy.Action storagePressureAction = StoragePressurePolicy.Action.NONE;
+    private boolean isAwaitingKeyFrame;
+    private boolean isClosed;
+
+    /**
+     * @param streamCallbacks Stream callbacks of the application, all the calls are forwarded
+     * @param bufferDuration Buffer duration of the stream in 100ns
+     * @param storageCallbacks Source of the content store budget or null
+     */
+    public StreamBackpressureMonitor(@Nonnull final StreamCallbacks streamCallbacks,
+                                     final long bufferDuration,
+                                     @Nullable final BackpressureStorageCallbacks storageCallbacks) {
+        this(streamCallbacks, bufferDuration, storageCallbacks, FramePacingScheduler.getShared(),
+                NOTIFICATION_EXECUTOR, DEFAULT_DEGRADE_THRESHOLD, DEFAULT_PAUSE_THRESHOLD);
+    }
+
+    /**
+     * @param streamCallbacks Stream callbacks of the application, all the calls are forwarded
+     * @param bufferDuration Buffer duration of the stream in 100ns
+     * @param storageCallbacks Source of the content store budget or null
+     * @param scheduler Scheduler polling the metrics
+     * @param notificationExecutor Executor notifying the listeners
+     * @param degradeThreshold Remaining buffer fraction below which the sources should degrade
+     * @param pauseThreshold Remaining buffer fraction below which the sources should pause
+     */
+    public StreamBackpressureMonitor(@Nonnull final StreamCallbacks streamCallbacks,
+                                     final long bufferDuration,
+                                     @Nullable final BackpressureStorageCallbacks storageCallbacks,
+                                     @Nonnull final FramePacingScheduler scheduler,
+                                     @Nonnull final Executor notificationExecutor,
+                                     final double degradeThreshold,
+                                     final double pauseThreshold) {
+        Preconditions.checkArgument(pauseThreshold >= 0 && pauseThreshold <= degradeThreshold
+                && degradeThreshold < 1, "Thresholds must satisfy 0 <= pause <= degrade < 1");
+        this.streamCallbacks = Preconditions.checkNotNull(streamCallbacks);
+        this.bufferDuration = bufferDuration;
+        this.storageCallbacks = storageCallbacks;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        this.notificationExecutor = Preconditions.checkNotNull(notificationExecutor);
+        this.degradeThreshold = degradeThreshold;
+        this.pauseThreshold = pauseThreshold;
+    }
+
+    /**
+     * Starts polling the metrics of the stream created with this monitor as its callbacks
+     */
+    public synchronized void attach(@Nonnull final KinesisVideoProducerStream producerStream) {
+        Preconditions.checkState(this.producerStream == null, "Monitor is already attached");
+        this.producerStream = Preconditions.checkNotNull(producerStream);
+        metricsPoll = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                pollMetrics();
+            }
+        }, METRICS_POLL_PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+    }
+
+    /**
+     * Stops polling and releases the paused sources. Called before the stream is freed. The close listeners run on
+     * the calling thread, so they are done before the stream is freed.
+     */
+    public void close() {
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+
+            isClosed = true;
+            if (metricsPoll != null) {
+                metricsPoll.cancel();
+                metricsPoll = null;
+            }
+
+            producerStream = null;
+            remainingBufferDuration = MediaSourceSink.BUDGET_UNKNOWN;
+            availableStorageSize = MediaSourceSink.BUDGET_UNKNOWN;
+            storagePressureAction = StoragePressurePolicy.Action.NONE;
+            isAwaitingKeyFrame = false;
+            setLevel(BackpressureLevel.NONE);
+        }
+
+        for (final Runnable closeListener : closeListeners) {
+            try {
+                closeListener.run();
+            } catch (final RuntimeException e) {
+                log.error("Close listener threw an exception", e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the monitor was closed, the level no longer reflects the stream, which is being freed
+     */
+    public synchronized boolean isClosed() {
+        return isClosed;
+    }
+
+    public void addListener(@Nonnull final BackpressureListener listener) {
+        listeners.add(Preconditions.checkNotNull(listener));
+    }
+
+    public void removeListener(@Nonnull final BackpressureListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds a listener run when the monitor is closed, before the stream is freed
+     */
+    public void addCloseListener(@Nonnull final Runnable closeListener) {
+        closeListeners.add(Preconditions.checkNotNull(closeListener));
+    }
+
+    @Nonnull
+    public synchronized BackpressureLevel getBackpressureLevel() {
+        return backpressureLevel;
+    }
+
+    /**
+     * Returns the duration in 100ns the stream buffer can still take or {@link MediaSourceSink#BUDGET_UNKNOWN}
+     */
+    public synchronized long getRemainingBufferDuration() {
+        return remainingBufferDuration;
+    }
+
+    /**
+     * Returns the bytes available in the content store or {@link MediaSourceSink#BUDGET_UNKNOWN}
+     */
+    public synchronized long getAvailableStorageSize() {
+        return availableStorageSize;
+    }
+
+    public long getBufferDurationOverflowPressureCount() {
+        return bufferDurationOverflowPressureCount.get();
+    }
+
+    /**
+     * Returns how many times the level has risen to {@link BackpressureLevel#DEGRADE}
+     */
+    public long getDegradeCount() {
+        return degradeCount.get();
+    }
+
+    /**
+     * Returns how many times the level has risen to {@link BackpressureLevel#PAUSE}
+     */
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    /**
+     * Returns the number of the frames dropped by the actions of the {@link StoragePressurePolicy}
+     */
+    public long getStoragePressureDroppedFrameCount() {
+        return storagePressureDroppedFrameCount.get();
+    }
+
+    @Nonnull
+    public synchronized StoragePressurePolicy.Action getStoragePressureAction() {
+        return storagePressureAction;
+    }
+
+    /**
+     * Called by the {@link StoragePressurePolicy} when the action applied to the stream changes
+     */
+    synchronized void setStoragePressureAction(@Nonnull final StoragePressurePolicy.Action action) {
+        storagePressureAction = Preconditions.checkNotNull(action);
+        updateLevel();
+    }
+
+    /**
+     * Returns whether the frame is to be dropped by the storage pressure action. Once frames have been dropped the
+     * stream resumes on a key frame, so the producer is never handed a frame whose references are missing.
+     */
+    public synchronized boolean dropsFrame(@Nonnull final KinesisVideoFrame kinesisVideoFrame) {
+        final boolean isKeyFrame = (kinesisVideoFrame.getFlags() & FRAME_FLAG_KEY_FRAME) != 0;
+        final boolean isDropped;
+        if (storagePressureAction == StoragePressurePolicy.Action.EVICT
+                || storagePressureAction == StoragePressurePolicy.Action.DROP_NON_KEY_FRAMES && !isKeyFrame) {
+            isAwaitingKeyFrame = true;
+            isDropped = true;
+        } else if (isAwaitingKeyFrame && !isKeyFrame) {
+            isDropped = true;
+        } else {
+            isAwaitingKeyFrame = false;
+            isDropped = false;
+        }
+
+        if (isDropped) {
+            storagePressureDroppedFrameCount.incrementAndGet();
+        }
+
+        return isDropped;
+    }
+
+    /**
+     * Called by the {@link BackpressureStorageCallbacks} on the storage overflow pressure
+     */
+    synchronized void onStorageOverflowPressure(final long remainingSize) {
+        availableStorageSize = remainingSize;
+        updateLevel();
+    }
+
+    /**
+     * Polls the stream and content store metrics. Visible for testing.
+     */
+    void pollMetrics() {
+        final KinesisVideoProducerStream stream;
+        synchronized (this) {
+            stream = producerStream;
+        }
+
+        if (stream == null) {
+            return;
+        }
+
+        long remainingDuration = MediaSourceSink.BUDGET_UNKNOWN;
+        if (bufferDuration > 0) {
+            try {
+                remainingDuration = Math.max(0,
+                        bufferDuration - stream.getMetrics().getOverallViewDurationInTimeUnits());
+            } catch (final ProducerException e) {
+                log.debug("Unable to read the stream metrics", e);
+            }
+        }
+
+        final long availableSize = storageCallbacks != null
+                ? storageCallbacks.pollAvailableStorageSize()
+                : MediaSourceSink.BUDGET_UNKNOWN;
+
+        synchronized (this) {
+            if (producerStream != stream) {
+                // Closed while polling
+                return;
+            }
+
+            if (remainingDuration != MediaSourceSink.BUDGET_UNKNOWN) {
+                remainingBufferDuration = remainingDuration;
+            }
+
+            if (availableSize != MediaSourceSink.BUDGET_UNKNOWN) {
+                availableStorageSize = availableSize;
+            }
+
+            updateLevel();
+        }
+    }
+
+    @Override
+    public void bufferDurationOverflowPressure(final long remainDuration) throws ProducerException {
+        bufferDurationOverflowPressureCount.incrementAndGet();
+        synchronized (this) {
+            remainingBufferDuration = remainDuration;
+            updateLevel();
+        }
+
+        streamCallbacks.bufferDurationOverflowPressure(remainDuration);
+    }
+
+    @Override
+    public void streamUnderflowReport() throws ProducerException {
+        streamCallbacks.streamUnderflowReport();
+    }
+
+    @Override
+    public void streamLatencyPressure(final long duration) throws ProducerException {
+        streamCallbacks.streamLatencyPressure(duration);
+    }
+
+    @Override
+    public void streamConnectionStale(final long lastAckDuration) throws ProducerException {
+        streamCallbacks.streamConnectionStale(lastAckDuration);
+    }
+
+    @Override
+    public void fragmentAckReceived(final long uploadHandle, @Nonnull final KinesisVideoFragmentAck fragmentAck)
+            throws ProducerException {
+        streamCallbacks.fragmentAckReceived(uploadHandle, fragmentAck);
+    }
+
+    @Override
+    public void droppedFrameReport(final long frameTimecode) throws ProducerException {
+        streamCallbacks.droppedFrameReport(frameTimecode);
+    }
+
+    @Override
+    public void droppedFragmentReport(final long fragmentTimecode) throws ProducerException {
+        streamCallbacks.droppedFragmentReport(fragmentTimecode);
+    }
+
+    @Override
+    public void streamErrorReport(final long uploadHandle, final long fragmentTimecode, final long statusCode)
+            throws ProducerException {
+        streamCallbacks.streamErrorReport(uploadHandle, fragmentTimecode, statusCode);
+    }
+
+    @Override
+    public void streamDataAvailable(final long uploadHandle, final long duration, final long availableSize)
+            throws ProducerException {
+        streamCallbacks.streamDataAvailable(uploadHandle, duration, availableSize);
+    }
+
+    @Override
+    public void streamReady() throws ProducerException {
+        streamCallbacks.streamReady();
+    }
+
+    @Override
+    public void streamClosed(final long uploadHandle) throws ProducerException {
+        streamCallbacks.streamClosed(uploadHandle);
+    }
+
+    private void updateLevel() {
+        double remainingFraction = 1.0;
+        if (remainingBufferDuration != MediaSourceSink.BUDGET_UNKNOWN && bufferDuration > 0) {
+            remainingFraction = Math.min(remainingFraction, (double) remainingBufferDuration / bufferDuration);
+        }
+
+        if (availableStorageSize != MediaSourceSink.BUDGET_UNKNOWN) {
+            final long storageSize = storageCallbacks != null
+                    ? storageCallbacks.getStorageSize()
+                    : MediaSourceSink.BUDGET_UNKNOWN;
+            // The producer only reports the storage pressure close to the overflow
+            remainingFraction = Math.min(remainingFraction,
+                    storageSize > 0 ? (double) availableStorageSize / storageSize : 0);
+        }
+
+        final double pauseBoundary = backpressureLevel == BackpressureLevel.PAUSE
+                ? pauseThreshold + RESUME_MARGIN
+                : pauseThreshold;
+        final double degradeBoundary = backpressureLevel != BackpressureLevel.NONE
+                ? degradeThreshold + RESUME_MARGIN
+                : degradeThreshold;
+
+        final BackpressureLevel level;
+        if (remainingFraction < pauseBoundary) {
+            level = BackpressureLevel.PAUSE;
+        } else if (remainingFraction < degradeBoundary) {
+            level = BackpressureLevel.DEGRADE;
+        } else {
+            level = BackpressureLevel.NONE;
+        }
+
+        final BackpressureLevel actionLevel = getActionLevel(storagePressureAction);
+        setLevel(level.compareTo(actionLevel) >= 0 ? level : actionLevel);
+    }
+
+    @Nonnull
+    private static BackpressureLevel getActionLevel(@Nonnull final StoragePressurePolicy.Action action) {
+        switch (action) {
+            case REDUCE_BITRATE:
+            case DROP_NON_KEY_FRAMES:
+                return BackpressureLevel.DEGRADE;
+            case THROTTLE:
+            case EVICT:
+                return BackpressureLevel.PAUSE;
+            default:
+                return BackpressureLevel.NONE;
+        }
+    }
+
+    private void setLevel(@Nonnull final BackpressureLevel level) {
+        if (level == backpressureLevel) {
+            return;
+        }
+
+        if (level.compareTo(backpressureLevel) > 0) {
+            if (level == BackpressureLevel.PAUSE) {
+                pauseCount.incrementAndGet();
+            } else {
+                degradeCount.incrementAndGet();
+            }
+        }
+
+        log.debug("Stream backpressure changed from " + backpressureLevel + " to " + level);
+        backpressureLevel = level;
+        isChangedSinceNotified = true;
+
+        // A single notification task at a time keeps the listeners in order and coalesces quick changes. A change
+        // back to the notified level is still delivered, the listeners may have acted on the level in between.
+        if (!isNotificationPending) {
+            isNotificationPending = true;
+            notificationExecutor.execute(notifier);
+        }
+    }
+
+    private void notifyListeners() {
+        while (true) {
+            final BackpressureLevel level;
+            synchronized (this) {
+                if (!isChangedSinceNotified) {
+                    isNotificationPending = false;
+                    return;
+                }
+
+                level = backpressureLevel;
+                isChangedSinceNotified = false;
+            }
+
+            for (final BackpressureListener listener : listeners) {
+                try {
+                    listener.onBackpressureChanged(level);
+                } catch (final RuntimeException e) {
+                    log.error("Backpressure listener threw an exception", e);
+                }
+            }
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package com.amazonaws.kinesisvideo.internal.mediasource.multitrack;
 
 import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
 import com.amazonaws.kinesisvideo.internal.mediasource.OnStreamDataAvailable;
 import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
@@ -24,7 +25,7 @@ public class MultiTrackFrameSource {
     private OnStreamDataAvailable streamDataAvailable;
     private final int fps;
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(1);
+    private final FramePacingScheduler scheduler;
     private final byte[][] framesData = new byte[][]{
             new byte[MAX_FRAME_SIZE_BYTES_1024],
             new byte[MAX_FRAME_SIZE_BYTES_1024],
@@ -37,10 +38,17 @@ public class MultiTrackFrameSource {
     private final Log log = LogFactory.getLog(MultiTrackFrameSource.class);
     private volatile boolean isRunning;
     private int frameCounter;
+    private FramePacingScheduler.PacedSource pacedSource;
 
     public MultiTrackFrameSource(final MultiTrackMediaSourceConfiguration configuration) {
+        this(configuration, FramePacingScheduler.getShared());
+    }
+
+    public MultiTrackFrameSource(final MultiTrackMediaSourceConfiguration configuration,
+                                 final FramePacingScheduler scheduler) {
         frameCounter = 0;
         this.fps = configuration.getFps();
+        this.scheduler = Preconditions.checkNotNull(scheduler);
     }
 
     public void onStreamDataAvailable(final OnStreamDataAvailable streamDataAvailable) {
@@ -59,38 +67,41 @@ public class MultiTrackFrameSource {
 
     public synchronized void stop() {
         isRunning = false;
+        if (pacedSource != null) {
+            pacedSource.cancel();
+        }
+    }
+
+    /**
+     * Returns the pacing metrics of the running generator or null if it has not been started
+     */
+    @Nullable
+    public synchronized FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
     }
 
     private void startGeneratorInBackground() {
-        executor.execute(new Runnable() {
+        pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
             @Override
-            public void run() {
-                try {
-                    generateBytesAndNotifyListener();
-                } catch (final KinesisVideoException e) {
-                    log.error("Failed to keep generating frames with Exception", e);
-                }
+            public void onTick(final long tickIndex) throws KinesisVideoException {
+                generateBytesAndNotifyListener();
             }
-        });
+        }, Duration.ofSeconds(1L).toNanos() / fps, FramePacingScheduler.CatchUpPolicy.SKIP);
     }
 
     private void generateBytesAndNotifyListener() throws KinesisVideoException {
-        while (isRunning) {
-            fillArrayWithDigitsOfFramesCounter();
-
-            if (streamDataAvailable != null) {
-                streamDataAvailable
-                        .onFrameDataAvailable(createKinesisVideoFrame());
-            }
+        if (!isRunning) {
+            return;
+        }
 
-            frameCounter++;
+        fillArrayWithDigitsOfFramesCounter();
 
-            try {
-                Thread.sleep(Duration.ofSeconds(1L).toMillis() / fps);
-            } catch (final InterruptedException e) {
-                log.error("Frame interval wait interrupted by Exception ", e);
-            }
+        if (streamDataAvailable != null) {
+            streamDataAvailable
+                    .onFrameDataAvailable(createKinesisVideoFrame());
         }
+
+        frameCounter++;
     }
 
     private KinesisVideoFrame createKinesisVideoFrame() {
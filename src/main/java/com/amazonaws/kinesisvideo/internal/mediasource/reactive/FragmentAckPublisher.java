@@ -0,0 +1,311 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.reactive;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFragmentAck;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.amazonaws.kinesisvideo.streaming.DefaultStreamCallbacks;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.kinesisvideo.internal.producer.ReadResult.INVALID_UPLOAD_HANDLE_VALUE;
+
+/**
+ * Reactive streams publisher of the fragment ACKs of a stream.
+ * <p>
+ * The publisher is a set of stream callbacks, to be returned by
+ * {@link com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSource#getStreamCallbacks()}, forwarding all the
+ * calls to the wrapped callbacks. It is hot: the subscribers receive the ACKs arriving after they have subscribed.
+ * Every subscriber has its own bounded queue holding the ACKs it has not requested yet. A subscriber falling further
+ * behind is failed rather than silently losing ACKs. The subscribers are completed when the stream is freed or the
+ * publisher is closed.
+ */
+public class FragmentAckPublisher implements Publisher<KinesisVideoFragmentAck>, StreamCallbacks {
+    /**
+     * Default max number of the ACKs queued for a subscriber
+     */
+    public static final int DEFAULT_MAX_QUEUED_ACKS = 1024;
+
+    private final StreamCallbacks streamCallbacks;
+    private final int maxQueuedAcks;
+    private final List<AckSubscription> subscriptions = new CopyOnWriteArrayList<AckSubscription>();
+    private final AtomicLong ackCount = new AtomicLong();
+    private volatile boolean isClosed;
+
+    public FragmentAckPublisher() {
+        this(new DefaultStreamCallbacks(), DEFAULT_MAX_QUEUED_ACKS);
+    }
+
+    /**
+     * @param streamCallbacks Stream callbacks all the calls are forwarded to
+     * @param maxQueuedAcks Max number of the ACKs queued for a subscriber
+     */
+    public FragmentAckPublisher(@Nonnull final StreamCallbacks streamCallbacks, final int maxQueuedAcks) {
+        Preconditions.checkArgument(maxQueuedAcks > 0, "Max queued ACKs must be positive");
+        this.streamCallbacks = Preconditions.checkNotNull(streamCallbacks);
+        this.maxQueuedAcks = maxQueuedAcks;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super KinesisVideoFragmentAck> subscriber) {
+        Preconditions.checkNotNull(subscriber);
+        final AckSubscription subscription = new AckSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+
+        // Closed before the subscription was added
+        if (isClosed) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Completes all the subscribers. The ACKs arriving afterwards are not published.
+     */
+    public void close() {
+        isClosed = true;
+        for (final AckSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Returns the number of the ACKs received from the stream
+     */
+    public long getAckCount() {
+        return ackCount.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    @Override
+    public void fragmentAckReceived(final long uploadHandle, @Nonnull final KinesisVideoFragmentAck fragmentAck)
+            throws ProducerException {
+        try {
+            streamCallbacks.fragmentAckReceived(uploadHandle, fragmentAck);
+        } finally {
+            ackCount.incrementAndGet();
+            if (!isClosed) {
+                for (final AckSubscription subscription : subscriptions) {
+                    subscription.offer(fragmentAck);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void streamClosed(final long uploadHandle) throws ProducerException {
+        try {
+            streamCallbacks.streamClosed(uploadHandle);
+        } finally {
+            // The uploads close on every reconnection, the stream itself only when freed
+            if (uploadHandle == INVALID_UPLOAD_HANDLE_VALUE) {
+                close();
+            }
+        }
+    }
+
+    @Override
+    public void streamUnderflowReport() throws ProducerException {
+        streamCallbacks.streamUnderflowReport();
+    }
+
+    @Override
+    public void streamLatencyPressure(final long duration) throws ProducerException {
+        streamCallbacks.streamLatencyPressure(duration);
+    }
+
+    @Override
+    public void streamConnectionStale(final long lastAckDuration) throws ProducerException {
+        streamCallbacks.streamConnectionStale(lastAckDuration);
+    }
+
+    @Override
+    public void droppedFrameReport(final long frameTimecode) throws ProducerException {
+        streamCallbacks.droppedFrameReport(frameTimecode);
+    }
+
+    @Override
+    public void droppedFragmentReport(final long fragmentTimecode) throws ProducerException {
+        streamCallbacks.droppedFragmentReport(fragmentTimecode);
+    }
+
+    @Override
+    public void streamErrorReport(final long uploadHandle, final long fragmentTimecode, final long statusCode)
+            throws ProducerException {
+        streamCallbacks.streamErrorReport(uploadHandle, fragmentTimecode, statusCode);
+    }
+
+    @Override
+    public void streamDataAvailable(final long uploadHandle, final long duration, final long availableSize)
+            throws ProducerException {
+        streamCallbacks.streamDataAvailable(uploadHandle, duration, availableSize);
+    }
+
+    @Override
+    public void streamReady() throws ProducerException {
+        streamCallbacks.streamReady();
+    }
+
+    @Override
+    public void bufferDurationOverflowPressure(final long remainDuration) throws ProducerException {
+        streamCallbacks.bufferDurationOverflowPressure(remainDuration);
+    }
+
+    /**
+     * Subscription delivering the queued ACKs as requested.
+     * <p>
+     * The signals are emitted by a single drain loop at a time, entered by whichever thread has queued an ACK or
+     * requested more, so they are serialized and a request from within onNext does not recurse.
+     */
+    private final class AckSubscription implements Subscription {
+        private final Queue<KinesisVideoFragmentAck> queue = new ArrayDeque<KinesisVideoFragmentAck>();
+        private final AtomicInteger drainCount = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+
+        private volatile Subscriber<? super KinesisVideoFragmentAck> subscriber;
+        private volatile boolean isStarted;
+        private volatile boolean isCancelled;
+        private boolean isCompleted;
+        private Throwable error;
+        private boolean isTerminated;
+
+        private AckSubscription(@Nonnull final Subscriber<? super KinesisVideoFragmentAck> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        private void start() {
+            isStarted = true;
+            drain();
+        }
+
+        @Override
+        public void request(final long count) {
+            if (count <= 0) {
+                fail(new IllegalArgumentException("Requested " + count + " ACKs, the count must be positive"));
+                return;
+            }
+
+            long current;
+            long next;
+            do {
+                current = requested.get();
+                next = current + count;
+                if (next < 0) {
+                    // Treated as an unbounded demand
+                    next = Long.MAX_VALUE;
+                }
+            } while (!requested.compareAndSet(current, next));
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            subscriber = null;
+            subscriptions.remove(this);
+            synchronized (this) {
+                queue.clear();
+            }
+        }
+
+        private void offer(@Nonnull final KinesisVideoFragmentAck fragmentAck) {
+            synchronized (this) {
+                if (isCompleted || error != null) {
+                    return;
+                }
+
+                if (queue.size() >= maxQueuedAcks) {
+                    queue.clear();
+                    error = new KinesisVideoException("Subscriber fell behind by more than " + maxQueuedAcks
+                            + " fragment ACKs");
+                } else {
+                    queue.add(fragmentAck);
+                }
+            }
+
+            drain();
+        }
+
+        private void complete() {
+            synchronized (this) {
+                isCompleted = true;
+            }
+
+            drain();
+        }
+
+        private void fail(@Nonnull final Throwable throwable) {
+            synchronized (this) {
+                queue.clear();
+                error = throwable;
+            }
+
+            drain();
+        }
+
+        private void drain() {
+            if (!isStarted || drainCount.getAndIncrement() != 0) {
+                // The running drain loop picks up the change
+                return;
+            }
+
+            int missed = 1;
+            do {
+                while (!isCancelled && !isTerminated) {
+                    final Subscriber<? super KinesisVideoFragmentAck> target = subscriber;
+                    if (target == null) {
+                        break;
+                    }
+
+                    final KinesisVideoFragmentAck fragmentAck;
+                    final Throwable failure;
+                    final boolean isDone;
+                    synchronized (this) {
+                        failure = error;
+                        fragmentAck = failure == null && requested.get() > 0 ? queue.poll() : null;
+                        isDone = failure == null && isCompleted && queue.isEmpty();
+                    }
+
+                    if (failure != null) {
+                        terminate();
+                        target.onError(failure);
+                    } else if (fragmentAck != null) {
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+
+                        target.onNext(fragmentAck);
+                    } else if (isDone) {
+                        terminate();
+                        target.onComplete();
+                    } else {
+                        break;
+                    }
+                }
+
+                missed = drainCount.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            isTerminated = true;
+            subscriber = null;
+            subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.reactive;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureLevel;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureListener;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive streams subscriber putting the frames of a publisher into a producer stream.
+ * <p>
+ * The frames are requested in batches sized by the buffer budget of the {@link MediaSourceSink}: no more than the
+ * configured number of frames is outstanding, the window is limited to half of the available content store by the
+ * average frame size, shrinks to a single frame while the sink asks to degrade and nothing is requested while it is
+ * paused. The requests resume once the sink notifies the pressure has eased. The frames already requested are put
+ * even when paused, so the overshoot is bounded by the window.
+ * <p>
+ * A frame the producer fails to take cancels the subscription. The outcome is reported by
+ * {@link #getCompletionFuture()}.
+ */
+public class KinesisVideoFrameSubscriber implements Subscriber<KinesisVideoFrame> {
+    /**
+     * Default max number of the frames requested but not yet received
+     */
+    public static final int DEFAULT_MAX_OUTSTANDING_FRAMES = 32;
+
+    /**
+     * Weight of the latest frame in the average frame size
+     */
+    private static final double FRAME_SIZE_SMOOTHING = 0.1;
+
+    private final Log log = LogFactory.getLog(KinesisVideoFrameSubscriber.class);
+    private final MediaSourceSink mediaSourceSink;
+    private final int maxOutstandingFrames;
+    private final CompletableFuture<Void> completion = new CompletableFuture<Void>();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong requestedCount = new AtomicLong();
+    private final BackpressureListener backpressureListener = new BackpressureListener() {
+        @Override
+        public void onBackpressureChanged(@Nonnull final BackpressureLevel backpressureLevel) {
+            if (backpressureLevel != BackpressureLevel.PAUSE) {
+                requestMore();
+            }
+        }
+    };
+
+    private Subscription subscription;
+    private long outstandingFrames;
+    private double averageFrameSize;
+    private boolean isDone;
+
+    /**
+     * @param mediaSourceSink Sink of the media source, e.g. {@link com.amazonaws.kinesisvideo.internal.client
+     *                        .mediasource.MediaSource#getMediaSourceSink()}, putting the frames into the stream and
+     *                        providing its buffer budget
+     */
+    public KinesisVideoFrameSubscriber(@Nonnull final MediaSourceSink mediaSourceSink) {
+        this(mediaSourceSink, DEFAULT_MAX_OUTSTANDING_FRAMES);
+    }
+
+    /**
+     * @param mediaSourceSink Sink putting the frames into the stream and providing its buffer budget
+     * @param maxOutstandingFrames Max number of the frames requested but not yet received
+     */
+    public KinesisVideoFrameSubscriber(@Nonnull final MediaSourceSink mediaSourceSink,
+                                       final int maxOutstandingFrames) {
+        Preconditions.checkArgument(maxOutstandingFrames > 0, "Max outstanding frames must be positive");
+        this.mediaSourceSink = Preconditions.checkNotNull(mediaSourceSink);
+        this.maxOutstandingFrames = maxOutstandingFrames;
+    }
+
+    @Override
+    public void onSubscribe(final Subscription subscription) {
+        Preconditions.checkNotNull(subscription);
+        synchronized (this) {
+            if (this.subscription != null || isDone) {
+                // A subscriber is only subscribed once
+                subscription.cancel();
+                return;
+            }
+
+            this.subscription = subscription;
+        }
+
+        mediaSourceSink.addBackpressureListener(backpressureListener);
+        requestMore();
+    }
+
+    @Override
+    public void onNext(final KinesisVideoFrame kinesisVideoFrame) {
+        Preconditions.checkNotNull(kinesisVideoFrame);
+        synchronized (this) {
+            if (isDone) {
+                return;
+            }
+
+            outstandingFrames = Math.max(0, outstandingFrames - 1);
+            averageFrameSize = averageFrameSize == 0
+                    ? kinesisVideoFrame.getSize()
+                    : averageFrameSize + FRAME_SIZE_SMOOTHING * (kinesisVideoFrame.getSize() - averageFrameSize);
+        }
+
+        try {
+            mediaSourceSink.onFrame(kinesisVideoFrame);
+            frameCount.incrementAndGet();
+        } catch (final KinesisVideoException e) {
+            log.error("Putting frame " + kinesisVideoFrame.getIndex() + " failed, cancelling the subscription", e);
+            final Subscription cancelled = terminate();
+            if (cancelled != null) {
+                cancelled.cancel();
+            }
+
+            completion.completeExceptionally(e);
+            return;
+        }
+
+        requestMore();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        Preconditions.checkNotNull(throwable);
+        terminate();
+        completion.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        terminate();
+        completion.complete(null);
+    }
+
+    /**
+     * Returns a future completed when the publisher completes, or exceptionally if it fails or a frame could not be
+     * put. The producer stream is not stopped.
+     */
+    @Nonnull
+    public CompletableFuture<Void> getCompletionFuture() {
+        return completion;
+    }
+
+    /**
+     * Returns the number of the frames put into the stream
+     */
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    /**
+     * Returns the number of the frames requested from the publisher
+     */
+    public long getRequestedCount() {
+        return requestedCount.get();
+    }
+
+    private void requestMore() {
+        final Subscription toRequest;
+        final long batch;
+        synchronized (this) {
+            if (isDone || subscription == null) {
+                return;
+            }
+
+            final long window = getWindow();
+            // Request in batches once half of the window has been received
+            if (window == 0 || outstandingFrames > window / 2) {
+                return;
+            }
+
+            batch = window - outstandingFrames;
+            outstandingFrames += batch;
+            toRequest = subscription;
+        }
+
+        requestedCount.addAndGet(batch);
+        toRequest.request(batch);
+    }
+
+    private long getWindow() {
+        final BackpressureLevel level = mediaSourceSink.getBackpressureLevel();
+        if (level == BackpressureLevel.PAUSE) {
+            return 0;
+        }
+
+        if (level == BackpressureLevel.DEGRADE) {
+            return 1;
+        }
+
+        long window = maxOutstandingFrames;
+        final long availableStorageSize = mediaSourceSink.getAvailableStorageSize();
+        if (availableStorageSize != MediaSourceSink.BUDGET_UNKNOWN && averageFrameSize > 0) {
+            // Leave half of the content store to the frames already buffered by the other streams
+            window = Math.min(window, Math.max(1, (long) (availableStorageSize / 2 / averageFrameSize)));
+        }
+
+        return window;
+    }
+
+    private Subscription terminate() {
+        final Subscription terminated;
+        synchronized (this) {
+            if (isDone) {
+                return null;
+            }
+
+            isDone = true;
+            terminated = subscription;
+        }
+
+        mediaSourceSink.removeBackpressureListener(backpressureListener);
+        return terminated;
+    }
+}
@@ -0,0 +1,223 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
+import static com.amazonaws.kinesisvideo.producer.Time.NANOS_IN_A_TIME_UNIT;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.AUDIO_TRACK_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VIDEO_TRACK_ID;
+
+/**
+ * Frame source generating the frames of a synthetic load on the ticks of the shared {@link FramePacingScheduler}.
+ * <p>
+ * A video frame is sent on every tick in decode order: a GOP starts with a key frame followed by groups of the
+ * configured number of B frames each preceded by the P frame they reference, the frames left over at the end of the
+ * GOP are P frames. With B frames the presentation timestamps are delayed by a frame so they never precede the decode
+ * ones. The audio frames falling within the tick are interleaved. The ticks that could not be made on time are skipped
+ * rather than burst, so an overloaded host shows up as a lower achieved rate.
+ * <p>
+ * The frame data is a slice of the shared {@link SyntheticPayloadPool}, nothing is allocated or filled per frame.
+ */
+class SyntheticFrameSource {
+    private final Log log = LogFactory.getLog(SyntheticFrameSource.class);
+    private final SyntheticMediaSourceConfiguration configuration;
+    private final SyntheticPayloadPool payloadPool;
+    private final FramePacingScheduler scheduler;
+    private final ByteBuffer payload;
+    private final long frameDurationNanos;
+    private final long audioFrameDurationNanos;
+    private final int groupLength;
+    private final int fullGroupFrames;
+    private final long sizeSequenceOffset;
+    private final AtomicLong videoFrameCount = new AtomicLong();
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+    private final AtomicLong failedFrameCount = new AtomicLong();
+
+    private MediaSourceSink mediaSourceSink;
+    private volatile boolean isRunning;
+    private FramePacingScheduler.PacedSource pacedSource;
+    private long timestampBase;
+    private long nextAudioFrame;
+    private int frameIndex;
+    private long startNanos;
+    private long stopNanos;
+
+    /**
+     * @param configuration Configuration of the load
+     * @param payloadPool Payloads of the load, may be shared with the frame sources of the other streams
+     * @param scheduler Scheduler pacing the frames
+     * @param sizeSequenceOffset Offset into the pre-drawn frame sizes, so the streams sharing a pool differ
+     */
+    SyntheticFrameSource(@Nonnull final SyntheticMediaSourceConfiguration configuration,
+                         @Nonnull final SyntheticPayloadPool payloadPool,
+                         @Nonnull final FramePacingScheduler scheduler,
+                         final long sizeSequenceOffset) {
+        this.configuration = Preconditions.checkNotNull(configuration);
+        this.payloadPool = Preconditions.checkNotNull(payloadPool);
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        this.payload = payloadPool.newView();
+        this.frameDurationNanos = Duration.ofSeconds(1L).toNanos() / configuration.getFps();
+        this.audioFrameDurationNanos = Duration.ofMillis(configuration.getAudioFrameDurationInMillis()).toNanos();
+        this.groupLength = configuration.getConsecutiveBFrames() + 1;
+        this.fullGroupFrames = (configuration.getGopLength() - 1) / groupLength * groupLength;
+        this.sizeSequenceOffset = sizeSequenceOffset;
+    }
+
+    void onMediaSourceSink(final MediaSourceSink mediaSourceSink) {
+        this.mediaSourceSink = mediaSourceSink;
+    }
+
+    synchronized void start() {
+        Preconditions.checkState(!isRunning, "Frame source is already running");
+        isRunning = true;
+        startNanos = System.nanoTime();
+        stopNanos = 0;
+        timestampBase = configuration.isAbsoluteTimecode()
+                ? System.currentTimeMillis() * HUNDREDS_OF_NANOS_IN_A_MILLISECOND
+                : 0;
+
+        pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                if (isRunning) {
+                    generateTick(tickIndex);
+                }
+            }
+        }, frameDurationNanos, FramePacingScheduler.CatchUpPolicy.SKIP);
+    }
+
+    synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+
+        isRunning = false;
+        stopNanos = System.nanoTime();
+        if (pacedSource != null) {
+            pacedSource.cancel();
+        }
+    }
+
+    /**
+     * Returns the pacing metrics of the running generator or null if it has not been started
+     */
+    @Nullable
+    synchronized FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
+    }
+
+    @Nonnull
+    synchronized SyntheticLoadReport getReport() {
+        final long elapsedNanos = startNanos == 0
+                ? 0
+                : (isRunning ? System.nanoTime() : stopNanos) - startNanos;
+        return new SyntheticLoadReport(1,
+                elapsedNanos,
+                configuration.getFps(),
+                configuration.getVideoBitrate() + configuration.getAudioBitrate(),
+                videoFrameCount.get(),
+                frameCount.get(),
+                byteCount.get(),
+                failedFrameCount.get(),
+                pacedSource != null ? pacedSource.getSkippedTickCount() : 0,
+                pacedSource != null ? pacedSource.getMaxJitterNanos() : 0);
+    }
+
+    /**
+     * Sends the video frame of the tick and the audio frames until the next tick
+     */
+    void generateTick(final long decodeIndex) {
+        final int gopPosition = (int) (decodeIndex % configuration.getGopLength());
+        final long gopStart = decodeIndex - gopPosition;
+        final long frameDuration = frameDurationNanos / NANOS_IN_A_TIME_UNIT;
+        final long reorderDelay = configuration.getConsecutiveBFrames() > 0 ? 1 : 0;
+
+        final SyntheticPayloadPool.FrameType frameType;
+        final long displayIndex;
+        if (gopPosition == 0) {
+            frameType = SyntheticPayloadPool.FrameType.I;
+            displayIndex = 0;
+        } else if (gopPosition > fullGroupFrames) {
+            frameType = SyntheticPayloadPool.FrameType.P;
+            displayIndex = gopPosition;
+        } else {
+            // The reference frame of a group is decoded first and displayed last
+            final int group = (gopPosition - 1) / groupLength;
+            final int groupPosition = (gopPosition - 1) % groupLength;
+            frameType = groupPosition == 0 ? SyntheticPayloadPool.FrameType.P : SyntheticPayloadPool.FrameType.B;
+            displayIndex = groupPosition == 0
+                    ? (group + 1) * groupLength
+                    : group * groupLength + groupPosition;
+        }
+
+        send(frameType,
+                gopPosition == 0 ? FRAME_FLAG_KEY_FRAME : FRAME_FLAG_NONE,
+                timestampBase + decodeIndex * frameDuration,
+                timestampBase + (gopStart + displayIndex + reorderDelay) * frameDuration,
+                frameDuration,
+                VIDEO_TRACK_ID,
+                decodeIndex);
+
+        if (configuration.getAudioBitrate() > 0) {
+            // Skip the audio of the ticks which have not been made
+            nextAudioFrame = Math.max(nextAudioFrame,
+                    (decodeIndex * frameDurationNanos + audioFrameDurationNanos - 1) / audioFrameDurationNanos);
+            final long audioFrameDuration = audioFrameDurationNanos / NANOS_IN_A_TIME_UNIT;
+            while (nextAudioFrame * audioFrameDurationNanos < (decodeIndex + 1) * frameDurationNanos) {
+                final long timestamp = timestampBase + nextAudioFrame * audioFrameDuration;
+                send(SyntheticPayloadPool.FrameType.AUDIO, FRAME_FLAG_NONE, timestamp, timestamp, audioFrameDuration,
+                        AUDIO_TRACK_ID, nextAudioFrame);
+                nextAudioFrame++;
+            }
+        }
+    }
+
+    private void send(@Nonnull final SyntheticPayloadPool.FrameType frameType,
+                      final int flags,
+                      final long decodingTs,
+                      final long presentationTs,
+                      final long duration,
+                      final int trackId,
+                      final long sequenceNumber) {
+        final int size = payloadPool.getSize(frameType, sizeSequenceOffset + sequenceNumber);
+        payload.clear();
+        payload.limit(size);
+
+        // The producer copies the data while putting the frame, so the same payload is reused by the next frame
+        final KinesisVideoFrame frame = new KinesisVideoFrame(frameIndex++, flags, decodingTs, presentationTs,
+                duration, payload, trackId);
+        try {
+            if (mediaSourceSink != null) {
+                mediaSourceSink.onFrame(frame);
+            }
+
+            if (trackId == VIDEO_TRACK_ID) {
+                videoFrameCount.incrementAndGet();
+            }
+
+            frameCount.incrementAndGet();
+            byteCount.addAndGet(size);
+        } catch (final KinesisVideoException e) {
+            // The load goes on, the rejected frames are reported
+            if (failedFrameCount.getAndIncrement() == 0) {
+                log.warn("Putting synthetic frame " + frame.getIndex() + " failed, further failures are only counted",
+                        e);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the load offered by synthetic media sources versus the load the producer has actually taken.
+ * <p>
+ * The offered rates are the configured targets. The achieved rates count the frames the producer has accepted, so the
+ * gap shows both the ticks the sources could not make on time and the frames the producer has rejected.
+ */
+public final class SyntheticLoadReport {
+    private static final double NANOS_IN_A_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final int streamCount;
+    private final long elapsedNanos;
+    private final double offeredFrameRate;
+    private final long offeredBitrate;
+    private final long sentVideoFrameCount;
+    private final long sentFrameCount;
+    private final long sentByteCount;
+    private final long failedFrameCount;
+    private final long skippedFrameCount;
+    private final long maxJitterNanos;
+
+    SyntheticLoadReport(final int streamCount,
+                        final long elapsedNanos,
+                        final double offeredFrameRate,
+                        final long offeredBitrate,
+                        final long sentVideoFrameCount,
+                        final long sentFrameCount,
+                        final long sentByteCount,
+                        final long failedFrameCount,
+                        final long skippedFrameCount,
+                        final long maxJitterNanos) {
+        this.streamCount = streamCount;
+        this.elapsedNanos = elapsedNanos;
+        this.offeredFrameRate = offeredFrameRate;
+        this.offeredBitrate = offeredBitrate;
+        this.sentVideoFrameCount = sentVideoFrameCount;
+        this.sentFrameCount = sentFrameCount;
+        this.sentByteCount = sentByteCount;
+        this.failedFrameCount = failedFrameCount;
+        this.skippedFrameCount = skippedFrameCount;
+        this.maxJitterNanos = maxJitterNanos;
+    }
+
+    /**
+     * Combines the reports of the streams of a load. The elapsed time is the longest one.
+     */
+    @Nonnull
+    public static SyntheticLoadReport aggregate(@Nonnull final Collection<SyntheticLoadReport> reports) {
+        Preconditions.checkNotNull(reports);
+        int streamCount = 0;
+        long elapsedNanos = 0;
+        double offeredFrameRate = 0;
+        long offeredBitrate = 0;
+        long sentVideoFrameCount = 0;
+        long sentFrameCount = 0;
+        long sentByteCount = 0;
+        long failedFrameCount = 0;
+        long skippedFrameCount = 0;
+        long maxJitterNanos = 0;
+        for (final SyntheticLoadReport report : reports) {
+            streamCount += report.streamCount;
+            elapsedNanos = Math.max(elapsedNanos, report.elapsedNanos);
+            offeredFrameRate += report.offeredFrameRate;
+            offeredBitrate += report.offeredBitrate;
+            sentVideoFrameCount += report.sentVideoFrameCount;
+            sentFrameCount += report.sentFrameCount;
+            sentByteCount += report.sentByteCount;
+            failedFrameCount += report.failedFrameCount;
+            skippedFrameCount += report.skippedFrameCount;
+            maxJitterNanos = Math.max(maxJitterNanos, report.maxJitterNanos);
+        }
+
+        return new SyntheticLoadReport(streamCount, elapsedNanos, offeredFrameRate, offeredBitrate,
+                sentVideoFrameCount, sentFrameCount, sentByteCount, failedFrameCount, skippedFrameCount,
+                maxJitterNanos);
+    }
+
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the target video frame rate of all the streams
+     */
+    public double getOfferedFrameRate() {
+        return offeredFrameRate;
+    }
+
+    /**
+     * Returns the target bitrate of all the tracks of all the streams in bits per second
+     */
+    public long getOfferedBitrate() {
+        return offeredBitrate;
+    }
+
+    /**
+     * Returns the rate of the video frames accepted by the producer
+     */
+    public double getAchievedFrameRate() {
+        return elapsedNanos == 0 ? 0 : sentVideoFrameCount * NANOS_IN_A_SECOND / elapsedNanos;
+    }
+
+    /**
+     * Returns the rate of the bytes of all the tracks accepted by the producer in bits per second
+     */
+    public long getAchievedBitrate() {
+        return elapsedNanos == 0 ? 0 : (long) (sentByteCount * 8 * NANOS_IN_A_SECOND / elapsedNanos);
+    }
+
+    /**
+     * Returns the number of the video and audio frames accepted by the producer
+     */
+    public long getSentFrameCount() {
+        return sentFrameCount;
+    }
+
+    public long getSentByteCount() {
+        return sentByteCount;
+    }
+
+    /**
+     * Returns the number of the frames the producer has rejected
+     */
+    public long getFailedFrameCount() {
+        return failedFrameCount;
+    }
+
+    /**
+     * Returns the number of the video frames not generated as their ticks could not be made on time
+     */
+    public long getSkippedFrameCount() {
+        return skippedFrameCount;
+    }
+
+    public long getMaxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%d stream(s) over %.1f s: offered %.1f fps / %.2f Mbps, achieved %.1f fps / %.2f Mbps, "
+                        + "%d frames sent, %d failed, %d skipped, max tick jitter %.1f ms",
+                streamCount,
+                elapsedNanos / NANOS_IN_A_SECOND,
+                offeredFrameRate,
+                offeredBitrate / 1e6,
+                getAchievedFrameRate(),
+                getAchievedBitrate() / 1e6,
+                sentFrameCount,
+                failedFrameCount,
+                skippedFrameCount,
+                maxJitterNanos / 1e6);
+    }
+}
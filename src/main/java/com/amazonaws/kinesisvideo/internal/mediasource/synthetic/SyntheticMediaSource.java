@@ -0,0 +1,238 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import com.amazonaws.kinesisvideo.client.mediasource.MediaSourceState;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSource;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceConfiguration;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamInfo;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_AN_HOUR;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_BITRATE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_GOP_DURATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.KEYFRAME_FRAGMENTATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NOT_ADAPTIVE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NO_KMS_KEY_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECALCULATE_METRICS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECOVER_ON_FAILURE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.REQUEST_FRAGMENT_ACKS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.USE_FRAME_TIMECODES;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VERSION_ZERO;
+
+/**
+ * MediaSource generating a synthetic load for capacity testing.
+ * <p>
+ * The frames follow the configured bitrate, GOP structure and frame size distribution of the video track and
+ * optionally carry an audio track. Their payloads are generated once and shared, so the generator adds next to no
+ * overhead to the producer being measured. Many streams are created with
+ * {@link #createMediaSources(String, int, SyntheticMediaSourceConfiguration)} and their combined
+ * {@link SyntheticLoadReport} compares the offered and the achieved rates.
+ */
+public class SyntheticMediaSource implements MediaSource {
+    private final Log log = LogFactory.getLog(SyntheticMediaSource.class);
+    private final String streamName;
+    private final CompletableFuture<Boolean> future;
+    private final FramePacingScheduler scheduler;
+
+    private SyntheticMediaSourceConfiguration configuration;
+    private SyntheticPayloadPool payloadPool;
+    private long sizeSequenceOffset;
+    private MediaSourceState mediaSourceState;
+    private MediaSourceSink mediaSourceSink;
+    private SyntheticFrameSource frameSource;
+
+    public SyntheticMediaSource(@Nonnull final String streamName) {
+        this(streamName, new CompletableFuture<Boolean>());
+    }
+
+    public SyntheticMediaSource(@Nonnull final String streamName, final CompletableFuture<Boolean> future) {
+        this(streamName, future, FramePacingScheduler.getShared());
+    }
+
+    public SyntheticMediaSource(@Nonnull final String streamName,
+                                final CompletableFuture<Boolean> future,
+                                @Nonnull final FramePacingScheduler scheduler) {
+        this.streamName = streamName;
+        this.future = future;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+    }
+
+    /**
+     * Creates the configured media sources of a load of many streams named after the prefix and their index. The
+     * sources share their payloads, each one starts at a different point of the frame size sequence.
+     */
+    @Nonnull
+    public static List<SyntheticMediaSource> createMediaSources(@Nonnull final String streamNamePrefix,
+                                                                final int streamCount,
+                                                                @Nonnull final SyntheticMediaSourceConfiguration
+                                                                        configuration) {
+        Preconditions.checkNotNull(streamNamePrefix);
+        Preconditions.checkArgument(streamCount > 0, "Stream count must be positive");
+        final SyntheticPayloadPool payloadPool = new SyntheticPayloadPool(Preconditions.checkNotNull(configuration));
+        final List<SyntheticMediaSource> mediaSources = new ArrayList<SyntheticMediaSource>(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            final SyntheticMediaSource mediaSource = new SyntheticMediaSource(streamNamePrefix + "-" + i);
+            mediaSource.configure(configuration, payloadPool,
+                    (long) i * SyntheticPayloadPool.SIZE_SEQUENCE_LENGTH / streamCount);
+            mediaSources.add(mediaSource);
+        }
+
+        return mediaSources;
+    }
+
+    /**
+     * Returns the combined report of the media sources of a load
+     */
+    @Nonnull
+    public static SyntheticLoadReport getReport(@Nonnull final List<SyntheticMediaSource> mediaSources) {
+        final List<SyntheticLoadReport> reports = new ArrayList<SyntheticLoadReport>(mediaSources.size());
+        for (final SyntheticMediaSource mediaSource : mediaSources) {
+            reports.add(mediaSource.getReport());
+        }
+
+        return SyntheticLoadReport.aggregate(reports);
+    }
+
+    @Override
+    public MediaSourceState getMediaSourceState() {
+        return mediaSourceState;
+    }
+
+    @Override
+    public MediaSourceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public StreamInfo getStreamInfo() throws KinesisVideoException {
+        return new StreamInfo(VERSION_ZERO,
+                streamName,
+                StreamInfo.StreamingType.STREAMING_TYPE_REALTIME,
+                configuration.getContentType(),
+                NO_KMS_KEY_ID,
+                configuration.getRetentionPeriodInHours() * HUNDREDS_OF_NANOS_IN_AN_HOUR,
+                NOT_ADAPTIVE,
+                configuration.getLatencyPressure(),
+                DEFAULT_GOP_DURATION,
+                KEYFRAME_FRAGMENTATION,
+                USE_FRAME_TIMECODES,
+                configuration.isAbsoluteTimecode(),
+                REQUEST_FRAGMENT_ACKS,
+                RECOVER_ON_FAILURE,
+                DEFAULT_BITRATE,
+                configuration.getFps(),
+                configuration.getBufferDuration(),
+                configuration.getReplayDuration(),
+                configuration.getStalenessDuration(),
+                configuration.getTimecodeScale(),
+                RECALCULATE_METRICS,
+                null,
+                configuration.getNalAdaptationFlag(),
+                null,
+                configuration.getTrackInfoList());
+    }
+
+    @Override
+    public void initialize(@Nonnull final MediaSourceSink mediaSourceSink) throws KinesisVideoException {
+        this.mediaSourceSink = mediaSourceSink;
+    }
+
+    @Override
+    public void configure(final MediaSourceConfiguration configuration) {
+        if (!(configuration instanceof SyntheticMediaSourceConfiguration)) {
+            throw new IllegalStateException("Configuration must be an instance of SyntheticMediaSourceConfiguration");
+        }
+
+        final SyntheticMediaSourceConfiguration syntheticConfiguration =
+                (SyntheticMediaSourceConfiguration) configuration;
+        configure(syntheticConfiguration, new SyntheticPayloadPool(syntheticConfiguration), 0);
+    }
+
+    private void configure(@Nonnull final SyntheticMediaSourceConfiguration configuration,
+                           @Nonnull final SyntheticPayloadPool payloadPool,
+                           final long sizeSequenceOffset) {
+        Preconditions.checkState(this.configuration == null);
+        this.configuration = configuration;
+        this.payloadPool = payloadPool;
+        this.sizeSequenceOffset = sizeSequenceOffset;
+    }
+
+    @Override
+    public void start() throws KinesisVideoException {
+        mediaSourceState = MediaSourceState.RUNNING;
+        frameSource = new SyntheticFrameSource(configuration, payloadPool, scheduler, sizeSequenceOffset);
+        frameSource.onMediaSourceSink(mediaSourceSink);
+        frameSource.start();
+    }
+
+    @Override
+    public void stop() throws KinesisVideoException {
+        if (frameSource != null) {
+            frameSource.stop();
+            log.info("Synthetic load of stream " + streamName + ": " + frameSource.getReport());
+        }
+
+        try {
+            if (null != mediaSourceSink && null != mediaSourceSink.getProducerStream()) {
+                mediaSourceSink.getProducerStream().stopStreamSync();
+            }
+        } finally {
+            mediaSourceState = MediaSourceState.STOPPED;
+            future.complete(true);
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        return mediaSourceState == MediaSourceState.STOPPED;
+    }
+
+    @Override
+    public void free() throws KinesisVideoException {
+        // No-op
+    }
+
+    @Override
+    public MediaSourceSink getMediaSourceSink() {
+        return mediaSourceSink;
+    }
+
+    @Nullable
+    @Override
+    public StreamCallbacks getStreamCallbacks() {
+        return null;
+    }
+
+    /**
+     * Returns the offered and achieved load of the stream so far
+     */
+    @Nonnull
+    public SyntheticLoadReport getReport() {
+        if (frameSource != null) {
+            return frameSource.getReport();
+        }
+
+        // Not started yet
+        return new SyntheticLoadReport(1, 0, configuration.getFps(),
+                configuration.getVideoBitrate() + configuration.getAudioBitrate(), 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the pacing metrics of the running generator or null if it has not been started
+     */
+    @Nullable
+    public FramePacingScheduler.PacedSource getPacing() {
+        return frameSource != null ? frameSource.getPacing() : null;
+    }
+}
@@ -0,0 +1,208 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.multitrack.MultiTrackMediaSourceConfiguration;
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+import com.amazonaws.kinesisvideo.producer.TrackInfo;
+
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.AUDIO_CODEC_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.AUDIO_TRACK_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.AUDIO_VIDEO_CONTENT_TYPE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RELATIVE_TIMECODES;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VIDEO_CODEC_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VIDEO_CONTENT_TYPE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VIDEO_TRACK_ID;
+
+public class SyntheticMediaSourceConfiguration extends MultiTrackMediaSourceConfiguration {
+    private static final String MEDIA_SOURCE_TYPE = "SyntheticMediaSource";
+    private static final String MEDIA_SOURCE_DESCRIPTION = "Media Source generating a synthetic load. ";
+
+    public static final long DEFAULT_VIDEO_BITRATE = 4000000;
+    public static final int DEFAULT_GOP_DURATION_IN_SECONDS = 2;
+    public static final double DEFAULT_I_FRAME_WEIGHT = 8;
+    public static final double DEFAULT_P_FRAME_WEIGHT = 3;
+    public static final double DEFAULT_B_FRAME_WEIGHT = 1;
+    public static final double DEFAULT_FRAME_SIZE_JITTER = 0.1;
+    public static final int DEFAULT_AUDIO_FRAME_DURATION_IN_MILLIS = 20;
+
+    private final Builder builder;
+
+    protected SyntheticMediaSourceConfiguration(final Builder builder) {
+        super(builder);
+        this.builder = builder;
+    }
+
+    /**
+     * Returns the target bitrate of the video track in bits per second
+     */
+    public long getVideoBitrate() {
+        return builder.videoBitrate;
+    }
+
+    /**
+     * Returns the number of the frames from a key frame to the next one
+     */
+    public int getGopLength() {
+        return builder.gopLength;
+    }
+
+    /**
+     * Returns the number of the B frames between two reference frames
+     */
+    public int getConsecutiveBFrames() {
+        return builder.consecutiveBFrames;
+    }
+
+    public double getIFrameWeight() {
+        return builder.iFrameWeight;
+    }
+
+    public double getPFrameWeight() {
+        return builder.pFrameWeight;
+    }
+
+    public double getBFrameWeight() {
+        return builder.bFrameWeight;
+    }
+
+    /**
+     * Returns the max deviation of a frame size from the mean size of its type as a fraction of the mean
+     */
+    public double getFrameSizeJitter() {
+        return builder.frameSizeJitter;
+    }
+
+    /**
+     * Returns the bitrate of the audio track in bits per second or 0 without an audio track
+     */
+    public long getAudioBitrate() {
+        return builder.audioBitrate;
+    }
+
+    public int getAudioFrameDurationInMillis() {
+        return builder.audioFrameDurationInMillis;
+    }
+
+    public long getRandomSeed() {
+        return builder.randomSeed;
+    }
+
+    @Override
+    public String getMediaSourceType() {
+        return MEDIA_SOURCE_TYPE;
+    }
+
+    @Override
+    public String getMediaSourceDescription() {
+        return MEDIA_SOURCE_DESCRIPTION;
+    }
+
+    public static class SyntheticBuilder extends Builder<SyntheticBuilder> {
+        public SyntheticBuilder() {
+            super(SyntheticBuilder.class);
+        }
+    }
+
+    protected static class Builder<T extends Builder<T>>
+            extends MultiTrackMediaSourceConfiguration.Builder<T> {
+        private long videoBitrate = DEFAULT_VIDEO_BITRATE;
+        private int gopLength;
+        private int consecutiveBFrames;
+        private double iFrameWeight = DEFAULT_I_FRAME_WEIGHT;
+        private double pFrameWeight = DEFAULT_P_FRAME_WEIGHT;
+        private double bFrameWeight = DEFAULT_B_FRAME_WEIGHT;
+        private double frameSizeJitter = DEFAULT_FRAME_SIZE_JITTER;
+        private long audioBitrate;
+        private int audioFrameDurationInMillis = DEFAULT_AUDIO_FRAME_DURATION_IN_MILLIS;
+        private long randomSeed;
+
+        public Builder(final Class<?> builder) {
+            super();
+
+            // The frames are timed from the generator start
+            withAbsoluteTimecode(RELATIVE_TIMECODES);
+        }
+
+        public T withVideoBitrate(final long videoBitrate) {
+            this.videoBitrate = videoBitrate;
+            return (T) this;
+        }
+
+        /**
+         * @param gopLength Number of the frames from a key frame to the next one, 0 for two seconds of frames
+         * @param consecutiveBFrames Number of the B frames between two reference frames
+         */
+        public T withGop(final int gopLength, final int consecutiveBFrames) {
+            this.gopLength = gopLength;
+            this.consecutiveBFrames = consecutiveBFrames;
+            return (T) this;
+        }
+
+        /**
+         * Sets the relative mean sizes of the I, P and B frames
+         */
+        public T withFrameSizeWeights(final double iFrameWeight, final double pFrameWeight,
+                                      final double bFrameWeight) {
+            this.iFrameWeight = iFrameWeight;
+            this.pFrameWeight = pFrameWeight;
+            this.bFrameWeight = bFrameWeight;
+            return (T) this;
+        }
+
+        public T withFrameSizeJitter(final double frameSizeJitter) {
+            this.frameSizeJitter = frameSizeJitter;
+            return (T) this;
+        }
+
+        /**
+         * Adds an AAC audio track
+         */
+        public T withAudioTrack(final long audioBitrate, final int audioFrameDurationInMillis) {
+            this.audioBitrate = audioBitrate;
+            this.audioFrameDurationInMillis = audioFrameDurationInMillis;
+            return (T) this;
+        }
+
+        /**
+         * Sets the seed of the generated frame sizes and payloads, so a load can be reproduced
+         */
+        public T withRandomSeed(final long randomSeed) {
+            this.randomSeed = randomSeed;
+            return (T) this;
+        }
+
+        @Override
+        public SyntheticMediaSourceConfiguration build() {
+            Preconditions.checkArgument(fps > 0, "Frame rate must be positive");
+            Preconditions.checkArgument(videoBitrate > 0, "Video bitrate must be positive");
+            Preconditions.checkArgument(consecutiveBFrames >= 0, "B frame count must not be negative");
+            Preconditions.checkArgument(iFrameWeight > 0 && pFrameWeight > 0 && bFrameWeight > 0,
+                    "Frame size weights must be positive");
+            Preconditions.checkArgument(frameSizeJitter >= 0 && frameSizeJitter < 1,
+                    "Frame size jitter must be within [0, 1)");
+            Preconditions.checkArgument(audioBitrate == 0 || audioFrameDurationInMillis > 0,
+                    "Audio frame duration must be positive");
+
+            if (gopLength == 0) {
+                gopLength = fps * DEFAULT_GOP_DURATION_IN_SECONDS;
+            }
+
+            Preconditions.checkArgument(gopLength > 0, "GOP length must be positive");
+
+            if (contentType == null) {
+                withContentType(audioBitrate > 0 ? AUDIO_VIDEO_CONTENT_TYPE : VIDEO_CONTENT_TYPE);
+            }
+
+            if (trackInfoList == null) {
+                final TrackInfo videoTrack = new TrackInfo(VIDEO_TRACK_ID, VIDEO_CODEC_ID, "video", null,
+                        MkvTrackInfoType.VIDEO);
+                withTrackInfoList(audioBitrate > 0
+                        ? new TrackInfo[] {videoTrack, new TrackInfo(AUDIO_TRACK_ID, AUDIO_CODEC_ID, "audio", null,
+                                MkvTrackInfoType.AUDIO)}
+                        : new TrackInfo[] {videoTrack});
+            }
+
+            return new SyntheticMediaSourceConfiguration(this);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Payloads and frame sizes generated once up front, so producing a frame costs no more than slicing a buffer.
+ * <p>
+ * The frame data of all the types is a prefix of a single random direct buffer sized for the largest frame. The
+ * sizes of every frame type are a pre-drawn sequence the frame sources cycle through. The pool is immutable and shared
+ * by all the streams of a load, every frame source reads it through its own view.
+ */
+class SyntheticPayloadPool {
+    /**
+     * Number of the pre-drawn sizes of every frame type
+     */
+    static final int SIZE_SEQUENCE_LENGTH = 1024;
+
+    private static final int FILL_CHUNK_SIZE = 64 * 1024;
+
+    enum FrameType {
+        I, P, B, AUDIO
+    }
+
+    private final ByteBuffer payload;
+    private final int[][] sizes = new int[FrameType.values().length][SIZE_SEQUENCE_LENGTH];
+    private final double[] meanSizes = new double[FrameType.values().length];
+
+    SyntheticPayloadPool(@Nonnull final SyntheticMediaSourceConfiguration configuration) {
+        final Random random = new Random(configuration.getRandomSeed());
+        final int gopLength = configuration.getGopLength();
+        final int groupLength = configuration.getConsecutiveBFrames() + 1;
+        final int bFrameCount = (gopLength - 1) / groupLength * configuration.getConsecutiveBFrames();
+        final int pFrameCount = gopLength - 1 - bFrameCount;
+
+        // Split the bytes of a GOP at the target bitrate between the frames by the weights of their types
+        final double gopBytes = configuration.getVideoBitrate() / 8.0 * gopLength / configuration.getFps();
+        final double totalWeight = configuration.getIFrameWeight()
+                + pFrameCount * configuration.getPFrameWeight()
+                + bFrameCount * configuration.getBFrameWeight();
+        meanSizes[FrameType.I.ordinal()] = gopBytes * configuration.getIFrameWeight() / totalWeight;
+        meanSizes[FrameType.P.ordinal()] = gopBytes * configuration.getPFrameWeight() / totalWeight;
+        meanSizes[FrameType.B.ordinal()] = gopBytes * configuration.getBFrameWeight() / totalWeight;
+        meanSizes[FrameType.AUDIO.ordinal()] = configuration.getAudioBitrate() / 8.0
+                * configuration.getAudioFrameDurationInMillis() / 1000;
+
+        int maxSize = 1;
+        for (final FrameType frameType : FrameType.values()) {
+            final double meanSize = meanSizes[frameType.ordinal()];
+            final int[] typeSizes = sizes[frameType.ordinal()];
+            for (int i = 0; i < SIZE_SEQUENCE_LENGTH; i++) {
+                final double deviation = configuration.getFrameSizeJitter() * (2 * random.nextDouble() - 1);
+                typeSizes[i] = (int) Math.max(1, Math.round(meanSize * (1 + deviation)));
+                maxSize = Math.max(maxSize, typeSizes[i]);
+            }
+        }
+
+        payload = ByteBuffer.allocateDirect(maxSize);
+        final byte[] chunk = new byte[Math.min(FILL_CHUNK_SIZE, maxSize)];
+        while (payload.hasRemaining()) {
+            random.nextBytes(chunk);
+            payload.put(chunk, 0, Math.min(chunk.length, payload.remaining()));
+        }
+
+        payload.clear();
+    }
+
+    /**
+     * Returns a view of the payload with its own position and limit
+     */
+    @Nonnull
+    ByteBuffer newView() {
+        return payload.duplicate();
+    }
+
+    /**
+     * Returns the size of a frame of the type at a position of the pre-drawn sequence
+     */
+    int getSize(@Nonnull final FrameType frameType, final long sequenceNumber) {
+        return sizes[frameType.ordinal()][(int) (sequenceNumber % SIZE_SEQUENCE_LENGTH)];
+    }
+
+    double getMeanSize(@Nonnull final FrameType frameType) {
+        return meanSizes[frameType.ordinal()];
+    }
+
+    int getPayloadSize() {
+        return payload.capacity();
+    }
+}
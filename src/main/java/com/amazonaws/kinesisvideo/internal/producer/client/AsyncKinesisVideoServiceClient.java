@@ -0,0 +1,69 @@
+package com.amazonaws.kinesisvideo.internal.producer.client;
+
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsProvider;
+import com.amazonaws.kinesisvideo.producer.StreamDescription;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link KinesisVideoServiceClient} which can complete the control plane calls asynchronously, so that the calling
+ * thread is not held while a call waits for its admission or its retry.
+ * <p>
+ * The returned futures complete exceptionally with a {@link com.amazonaws.kinesisvideo.common.exception
+ * .KinesisVideoException} when the call fails. Their completion can run on a thread of the client.
+ */
+public interface AsyncKinesisVideoServiceClient extends KinesisVideoServiceClient {
+
+    /**
+     * Asynchronous {@link #createStream(String, String, String, String, long, long, KinesisVideoCredentialsProvider)}
+     *
+     * @return Future of the StreamArn of stream just created
+     */
+    @Nonnull
+    CompletableFuture<String> createStreamAsync(@Nonnull final String streamName,
+                                                @Nonnull final String deviceName,
+                                                @Nonnull final String contentType,
+                                                @Nullable final String kmsKeyId,
+                                                long retentionPeriodInHours,
+                                                long timeoutInMillis,
+                                                @Nullable final KinesisVideoCredentialsProvider
+                                                        kinesisVideoCredentialsProvider);
+
+    /**
+     * Asynchronous {@link #describeStream(String, long, KinesisVideoCredentialsProvider)}
+     *
+     * @return Future of the stream description
+     */
+    @Nonnull
+    CompletableFuture<StreamDescription> describeStreamAsync(@Nonnull final String streamName,
+                                                             long timeoutInMillis,
+                                                             @Nullable final KinesisVideoCredentialsProvider
+                                                                     kinesisVideoCredentialsProvider);
+
+    /**
+     * Asynchronous {@link #tagStream(String, Map, long, KinesisVideoCredentialsProvider)}
+     *
+     * @return Future completed once the stream is tagged
+     */
+    @Nonnull
+    CompletableFuture<Void> tagStreamAsync(@Nonnull final String streamArn,
+                                           @Nullable final Map<String, String> tags,
+                                           long timeoutInMillis,
+                                           @Nullable final KinesisVideoCredentialsProvider
+                                                   kinesisVideoCredentialsProvider);
+
+    /**
+     * Asynchronous {@link #getDataEndpoint(String, String, long, KinesisVideoCredentialsProvider)}
+     *
+     * @return Future of the data endpoint
+     */
+    @Nonnull
+    CompletableFuture<String> getDataEndpointAsync(@Nonnull final String streamName,
+                                                   @Nonnull final String apiName,
+                                                   long timeoutInMillis,
+                                                   @Nullable final KinesisVideoCredentialsProvider
+                                                           kinesisVideoCredentialsProvider);
+}
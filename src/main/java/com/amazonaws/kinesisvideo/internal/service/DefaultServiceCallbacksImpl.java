@@ -1,6 +1,7 @@
 package com.amazonaws.kinesisvideo.internal.service;
 
 import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentials;
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsCodec;
 import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsProvider;
 import com.amazonaws.kinesisvideo.auth.StaticCredentialsProvider;
 import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfiguration;
@@ -8,25 +9,36 @@ import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import com.amazonaws.kinesisvideo.common.function.Consumer;
 import org.apache.logging.log4j.Logger;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.StreamShutdownCoordinator;
 import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducer;
 import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
 import com.amazonaws.kinesisvideo.producer.ProducerException;
 import com.amazonaws.kinesisvideo.internal.producer.ServiceCallbacks;
 import com.amazonaws.kinesisvideo.producer.StreamDescription;
+import com.amazonaws.kinesisvideo.producer.StreamStatus;
 import com.amazonaws.kinesisvideo.producer.Tag;
 import com.amazonaws.kinesisvideo.producer.Time;
+import com.amazonaws.kinesisvideo.internal.producer.client.AsyncKinesisVideoServiceClient;
 import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
 import com.amazonaws.kinesisvideo.internal.producer.jni.NativeKinesisVideoProducerJni;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.ACCESS_DENIED;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_ACCESS_DENIED;
@@ -34,22 +46,42 @@ import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_BAD_REQUE
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_NOT_FOUND;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_OK;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_RESOURCE_IN_USE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.HTTP_SERVICE_UNAVAILABLE;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RESOURCE_IN_USE;
 import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RESOURCE_NOT_FOUND;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.SERVICE_UNAVAILABLE;
 
 /**
  * Implementation of {@link ServiceCallbacks}
  */
 public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
+    /**
+     * API name the native producer requests the streaming endpoint for
+     */
+    private static final String PUT_MEDIA_API_NAME = "PUT_MEDIA";
+
+    /**
+     * Number of the pending control plane calls which are admitted without an admission delay
+     */
+    private static final int ADMISSION_BURST_SIZE = 4;
+
+    /**
+     * Admission delay spread added for every pending control plane call over the burst size
+     */
+    private static final long ADMISSION_SPREAD_PER_CALL_IN_MILLIS = 10;
+
     private class CompletionCallback implements Consumer<Exception> {
         private final KinesisVideoProducerStream stream;
         private final long uploadHandle;
+        private final String dataEndpointCacheKey;
 
         public CompletionCallback(@Nonnull final KinesisVideoProducerStream stream,
-                                  final long uploadHandle) {
+                                  final long uploadHandle,
+                                  @Nonnull final String dataEndpointCacheKey) {
 
             this.stream = Preconditions.checkNotNull(stream);
             this.uploadHandle = uploadHandle;
+            this.dataEndpointCacheKey = Preconditions.checkNotNull(dataEndpointCacheKey);
         }
 
         @Override
@@ -59,11 +91,16 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
             if (streamHandle != NativeKinesisVideoProducerJni.INVALID_STREAM_HANDLE_VALUE) {
                 // The exception can be null indicating successful completion
                 final int statusCode = getStatusCodeFromException(object);
-                for (final StreamingInfo stream : mStreams) {
-                    if (stream.getStream().getStreamHandle() == streamHandle) {
-                        log.info("Complete callback triggered for {} with status code {}", stream.getStream().getStreamName(), statusCode);
-                    }
+                final StreamingInfo streamingInfo = mStreamsByHandle.get(streamHandle);
+                if (streamingInfo != null) {
+                    log.info("Complete callback triggered for {} with status code {}",
+                            streamingInfo.getStream().getStreamName(), statusCode);
                 }
+                if (statusCode == HTTP_NOT_FOUND) {
+                    // The endpoint is no longer valid for the stream
+                    dataEndpointCache.invalidate(dataEndpointCacheKey);
+                }
+
                 if (statusCode != HTTP_OK) {
                     try {
                         stream.streamTerminated(uploadHandle, statusCode);
@@ -80,23 +117,22 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
      */
     private class StreamingInfo {
         private final KinesisVideoProducerStream stream;
+        private final long streamHandle;
 
         public StreamingInfo(@Nonnull final KinesisVideoProducerStream stream) {
             this.stream = Preconditions.checkNotNull(stream);
-        }
 
-        public void stop() {
-            try {
-                log.debug("Stopping the kinesis video producer stream");
-                stream.stopStreamSync();
-            } catch (final ProducerException e) {
-                log.error("Stopping stream threw an exception.", e);
-            }
+            // Stored as the stream resets its handle once freed
+            this.streamHandle = stream.getStreamHandle();
         }
 
         public KinesisVideoProducerStream getStream() {
             return stream;
         }
+
+        public long getStreamHandle() {
+            return streamHandle;
+        }
     }
 
     /**
@@ -109,6 +145,11 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
      */
     protected final KinesisVideoServiceClient kinesisVideoServiceClient;
 
+    /**
+     * The same client making the control plane calls without holding the executor threads while they wait.
+     */
+    private final AsyncKinesisVideoServiceClient asyncServiceClient;
+
     /**
      * Logger to use
      */
@@ -125,15 +166,48 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
     protected KinesisVideoProducer kinesisVideoProducer = null;
 
     /**
-     * The list of streams for which the callbacks can be applied.
+     * The streams for which the callbacks can be applied indexed by the stream object.
      */
-    private final List<StreamingInfo> mStreams = new ArrayList<StreamingInfo>();
+    private final ConcurrentMap<KinesisVideoProducerStream, StreamingInfo> mStreams =
+            new ConcurrentHashMap<KinesisVideoProducerStream, StreamingInfo>();
+
+    /**
+     * The same streams indexed by the stream handle for the lookups on the upload completion path.
+     */
+    private final ConcurrentMap<Long, StreamingInfo> mStreamsByHandle = new ConcurrentHashMap<Long, StreamingInfo>();
 
     /**
      * A monotonically increasing value serving as an upload handle
      */
     private long uploadHandle;
 
+    /**
+     * Cached stream descriptions of the active streams.
+     */
+    private final ServiceCallResultCache<String, StreamDescription> streamDescriptionCache;
+
+    /**
+     * Cached data endpoints of the streams.
+     */
+    private final ServiceCallResultCache<String, String> dataEndpointCache;
+
+    /**
+     * Coalesces the concurrent identical create stream calls.
+     */
+    private final ServiceCallResultCache<String, String> createStreamCalls =
+            new ServiceCallResultCache<String, String>(0, 0);
+
+    /**
+     * Coalesces the concurrent identical tag resource calls.
+     */
+    private final ServiceCallResultCache<String, Boolean> tagResourceCalls =
+            new ServiceCallResultCache<String, Boolean>(0, 0);
+
+    /**
+     * Number of the control plane calls which are scheduled but not started yet.
+     */
+    private final AtomicInteger pendingServiceCalls = new AtomicInteger();
+
     public DefaultServiceCallbacksImpl(
             @Nonnull final Logger log,
             @Nonnull final ScheduledExecutorService executor,
@@ -141,10 +215,17 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
             @Nonnull final KinesisVideoServiceClient kinesisVideoServiceClient) {
         this.executor = Preconditions.checkNotNull(executor);
         this.kinesisVideoServiceClient = Preconditions.checkNotNull(kinesisVideoServiceClient);
+        this.asyncServiceClient = SynchronousServiceClientAdapter.of(kinesisVideoServiceClient);
         this.log = Preconditions.checkNotNull(log);
         this.configuration = Preconditions.checkNotNull(configuration);
 
         this.uploadHandle = 0;
+        this.streamDescriptionCache = new ServiceCallResultCache<String, StreamDescription>(
+                configuration.getServiceCallCacheTtlInMillis(),
+                configuration.getServiceCallErrorCacheTtlInMillis());
+        this.dataEndpointCache = new ServiceCallResultCache<String, String>(
+                configuration.getServiceCallCacheTtlInMillis(),
+                configuration.getServiceCallErrorCacheTtlInMillis());
 
         try {
             this.kinesisVideoServiceClient.initialize(configuration);
@@ -188,38 +269,49 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
         final Runnable task = new Runnable() {
             @Override
             public void run() {
-                int statusCode;
-                String streamArn = null;
-
                 final KinesisVideoCredentialsProvider credentialsProvider = getCredentialsProvider(authData, log);
                 final long retentionInHours = retentionPeriod / Time.HUNDREDS_OF_NANOS_IN_AN_HOUR;
                 final long timeoutInMillis = timeout / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
-
-                try {
-                    streamArn = kinesisVideoServiceClient.createStream(
-                            streamName,
-                            deviceName,
-                            contentType,
-                            kmsKeyId,
-                            retentionInHours,
-                            timeoutInMillis,
-                            credentialsProvider);
-                    statusCode = HTTP_OK;
-                } catch (final KinesisVideoException e) {
-                    statusCode = getStatusCodeFromException(e);
-                    log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.", e);
-                }
-
-                try {
-                    kinesisVideoProducer.createStreamResult(customData, streamArn, statusCode);
-                } catch (final ProducerException e) {
-                    // TODO: Deal with the runtime exception properly in this and following cases
-                    throw new RuntimeException(e);
-                }
+                final String cacheKey = getCacheKey(streamName, credentialsProvider);
+
+                createStreamCalls.get(cacheKey, new ServiceCallResultCache.AsyncLoader<String>() {
+                    @Nonnull
+                    @Override
+                    public CompletableFuture<String> load() {
+                        return asyncServiceClient.createStreamAsync(
+                                streamName,
+                                deviceName,
+                                contentType,
+                                kmsKeyId,
+                                retentionInHours,
+                                timeoutInMillis,
+                                credentialsProvider);
+                    }
+                }, new ServiceCallResultCache.Callback<String>() {
+                    @Override
+                    public void onResult(@Nullable final String streamArn, @Nullable final KinesisVideoException e) {
+                        int statusCode = HTTP_OK;
+                        if (e != null) {
+                            statusCode = getStatusCodeFromException(e);
+                            log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.",
+                                    e);
+                        } else {
+                            // Drop the cached not-found description so the newly created stream gets described
+                            streamDescriptionCache.invalidate(cacheKey);
+                        }
+
+                        try {
+                            kinesisVideoProducer.createStreamResult(customData, streamArn, statusCode);
+                        } catch (final ProducerException ex) {
+                            // TODO: Deal with the runtime exception properly in this and following cases
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                });
             }
         };
 
-        executor.schedule(task, delay, TimeUnit.NANOSECONDS);
+        scheduleServiceCall(task, delay);
     }
 
     @Override
@@ -238,31 +330,51 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
         final Runnable task = new Runnable() {
             @Override
             public void run() {
-                int statusCode;
-                StreamDescription streamDescription = null;
-
                 final KinesisVideoCredentialsProvider credentialsProvider = getCredentialsProvider(authData, log);
                 final long timeoutInMillis = timeout / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
-
-                try {
-                    streamDescription = kinesisVideoServiceClient.describeStream(streamName,
-                            timeoutInMillis,
-                            credentialsProvider);
-                    statusCode = HTTP_OK;
-                } catch (final KinesisVideoException e) {
-                    statusCode = getStatusCodeFromException(e);
-                    log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.", e);
-                }
-
-                try {
-                    kinesisVideoProducer.describeStreamResult(stream, streamHandle, streamDescription, statusCode);
-                } catch (final ProducerException e) {
-                    throw new RuntimeException(e);
-                }
+                final String cacheKey = getCacheKey(streamName, credentialsProvider);
+
+                streamDescriptionCache.get(cacheKey, new ServiceCallResultCache.AsyncLoader<StreamDescription>() {
+                    @Nonnull
+                    @Override
+                    public CompletableFuture<StreamDescription> load() {
+                        return asyncServiceClient.describeStreamAsync(streamName,
+                                timeoutInMillis,
+                                credentialsProvider);
+                    }
+                }, new ServiceCallResultCache.Callback<StreamDescription>() {
+                    @Override
+                    public void onResult(@Nullable final StreamDescription streamDescription,
+                                         @Nullable final KinesisVideoException e) {
+                        int statusCode = HTTP_OK;
+                        if (e != null) {
+                            statusCode = getStatusCodeFromException(e);
+                            log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.",
+                                    e);
+
+                            // Not found is followed by a create stream call so it should never be served from the
+                            // cache
+                            if (statusCode == HTTP_NOT_FOUND) {
+                                streamDescriptionCache.invalidate(cacheKey);
+                            }
+                        } else if (streamDescription == null
+                                || streamDescription.getStreamStatus() != StreamStatus.ACTIVE.intValue()) {
+                            // Streams which are being created or deleted are polled until their status changes
+                            streamDescriptionCache.invalidate(cacheKey);
+                        }
+
+                        try {
+                            kinesisVideoProducer.describeStreamResult(stream, streamHandle, streamDescription,
+                                    statusCode);
+                        } catch (final ProducerException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                });
             }
         };
 
-        executor.schedule(task, delay, TimeUnit.NANOSECONDS);
+        scheduleServiceCall(task, delay);
     }
 
     @Override
@@ -284,32 +396,49 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
             public void run() {
                 final KinesisVideoCredentialsProvider credentialsProvider = getCredentialsProvider(authData, log);
                 final long timeoutInMillis = timeout / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
-                int statusCode = HTTP_OK;
-                String endpoint = "";
-                try {
-                    endpoint = kinesisVideoServiceClient.getDataEndpoint(streamName,
-                            apiName,
-                            timeoutInMillis,
-                            credentialsProvider);
-                } catch (final KinesisVideoException e) {
-                    log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.", e);
-                    statusCode = getStatusCodeFromException(e);
-                }
-
-                if (statusCode != HTTP_OK && isBlank(endpoint)) {
-                    // TODO: more URI validation
-                    statusCode = HTTP_NOT_FOUND;
-                }
-
-                try {
-                    kinesisVideoProducer.getStreamingEndpointResult(stream, streamHandle, endpoint, statusCode);
-                } catch (final ProducerException e) {
-                    throw new RuntimeException(e);
-                }
+                final String cacheKey = getDataEndpointCacheKey(streamName, apiName, credentialsProvider);
+
+                dataEndpointCache.get(cacheKey, new ServiceCallResultCache.AsyncLoader<String>() {
+                    @Nonnull
+                    @Override
+                    public CompletableFuture<String> load() {
+                        return asyncServiceClient.getDataEndpointAsync(streamName,
+                                apiName,
+                                timeoutInMillis,
+                                credentialsProvider);
+                    }
+                }, new ServiceCallResultCache.Callback<String>() {
+                    @Override
+                    public void onResult(@Nullable final String result, @Nullable final KinesisVideoException e) {
+                        int statusCode = HTTP_OK;
+                        final String endpoint = result == null ? "" : result;
+                        if (e != null) {
+                            log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.",
+                                    e);
+                            statusCode = getStatusCodeFromException(e);
+                        }
+
+                        if (statusCode != HTTP_OK && isBlank(endpoint)) {
+                            // TODO: more URI validation
+                            statusCode = HTTP_NOT_FOUND;
+                        }
+
+                        if (statusCode == HTTP_NOT_FOUND || isBlank(endpoint)) {
+                            dataEndpointCache.invalidate(cacheKey);
+                        }
+
+                        try {
+                            kinesisVideoProducer.getStreamingEndpointResult(stream, streamHandle, endpoint,
+                                    statusCode);
+                        } catch (final ProducerException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                });
             }
         };
 
-        executor.schedule(task, delay, TimeUnit.NANOSECONDS);
+        scheduleServiceCall(task, delay);
     }
 
     @Override
@@ -336,7 +465,6 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
                 byte[] serializedCredentials = null;
                 long expiration = 0;
 
-                final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
                 try {
                     final KinesisVideoCredentials credentials = credentialsProvider.getUpdatedCredentials();
 
@@ -344,21 +472,9 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
                     expiration = credentials.getExpiration().getTime() * Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
 
                     // Serialize the credentials as streaming token
-                    final ObjectOutput outputStream = new ObjectOutputStream(byteArrayOutputStream);
-                    outputStream.writeObject(credentials);
-                    outputStream.flush();
-                    serializedCredentials = byteArrayOutputStream.toByteArray();
-                    outputStream.close();
-                } catch (final IOException e) {
-                    log.error(e);
+                    serializedCredentials = KinesisVideoCredentialsCodec.encode(credentials);
                 } catch (final KinesisVideoException e) {
                     log.error(e);
-                } finally {
-                    try {
-                        byteArrayOutputStream.close();
-                    } catch (final IOException ex) {
-                        // Do nothing
-                    }
                 }
 
                 final int statusCode = HTTP_OK;
@@ -410,6 +526,8 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
                 int statusCode = HTTP_OK;
 
                 final KinesisVideoCredentialsProvider credentialsProvider = getCredentialsProvider(authData, log);
+                final String dataEndpointCacheKey = getDataEndpointCacheKey(streamName, PUT_MEDIA_API_NAME,
+                        credentialsProvider);
 
                 final long clientUploadHandle = getUploadHandle();
 
@@ -419,7 +537,7 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
                     final BlockingAckConsumer blockingAckConsumer = new BlockingAckConsumer(ackConsumer, log,
                             kinesisVideoProducerStream);
                     final CompletionCallback completionCallback = new CompletionCallback(kinesisVideoProducerStream,
-                            clientUploadHandle);
+                            clientUploadHandle, dataEndpointCacheKey);
 
                     // This will kick-off a long running operation
                     kinesisVideoServiceClient.putMedia(streamName,
@@ -439,6 +557,9 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
                 } catch (final KinesisVideoException e) {
                     statusCode = getStatusCodeFromException(e);
                     log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.", e);
+
+                    // The cached endpoint might be the reason of the failure
+                    dataEndpointCache.invalidate(dataEndpointCacheKey);
                 }
 
                 try {
@@ -471,41 +592,62 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
             public void run() {
                 final KinesisVideoCredentialsProvider credentialsProvider = getCredentialsProvider(authData, log);
                 final long timeoutInMillis = timeout / Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
-                int statusCode = HTTP_OK;
 
-                Map<String, String> tagsMap = null;
+                // Sorted so that the identical tag sets produce identical call keys
+                final Map<String, String> tagsMap;
                 if (null != tags) {
                     // Convert the tags to map
-                    tagsMap = new HashMap<String, String>(tags.length);
+                    tagsMap = new TreeMap<String, String>();
 
                     for (final Tag tag : tags) {
                         tagsMap.put(tag.getName(), tag.getValue());
                     }
-                }
-                try {
-                    kinesisVideoServiceClient.tagStream(resourceArn,
-                            tagsMap,
-                            timeoutInMillis,
-                            credentialsProvider);
-                } catch (final KinesisVideoException e) {
-                    log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.", e);
-                    statusCode = getStatusCodeFromException(e);
+                } else {
+                    tagsMap = null;
                 }
 
-                if (statusCode != HTTP_OK) {
-                    // TODO: more URI validation
-                    statusCode = HTTP_BAD_REQUEST;
-                }
-
-                try {
-                    kinesisVideoProducer.tagResourceResult(stream, streamHandle, statusCode);
-                } catch (final ProducerException e) {
-                    throw new RuntimeException(e);
-                }
+                final String callKey = getCacheKey(resourceArn, credentialsProvider) + "/" + tagsMap;
+
+                tagResourceCalls.get(callKey, new ServiceCallResultCache.AsyncLoader<Boolean>() {
+                    @Nonnull
+                    @Override
+                    public CompletableFuture<Boolean> load() {
+                        return asyncServiceClient.tagStreamAsync(resourceArn,
+                                tagsMap,
+                                timeoutInMillis,
+                                credentialsProvider).thenApply(new Function<Void, Boolean>() {
+                                    @Override
+                                    public Boolean apply(final Void result) {
+                                        return Boolean.TRUE;
+                                    }
+                                });
+                    }
+                }, new ServiceCallResultCache.Callback<Boolean>() {
+                    @Override
+                    public void onResult(@Nullable final Boolean result, @Nullable final KinesisVideoException e) {
+                        int statusCode = HTTP_OK;
+                        if (e != null) {
+                            log.error("Kinesis Video service client returned an error. Reporting to Kinesis Video PIC.",
+                                    e);
+                            statusCode = getStatusCodeFromException(e);
+                        }
+
+                        if (statusCode != HTTP_OK) {
+                            // TODO: more URI validation
+                            statusCode = HTTP_BAD_REQUEST;
+                        }
+
+                        try {
+                            kinesisVideoProducer.tagResourceResult(stream, streamHandle, statusCode);
+                        } catch (final ProducerException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    }
+                });
             }
         };
 
-        executor.schedule(task, delay, TimeUnit.NANOSECONDS);
+        scheduleServiceCall(task, delay);
     }
 
     @Override
@@ -554,34 +696,113 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
 
     @Override
     public synchronized void free() {
-        for (final StreamingInfo streamingInfo : mStreams) {
-            // Cancel the futures
-            streamingInfo.stop();
-        }
-
+        final List<KinesisVideoProducerStream> streams = new ArrayList<KinesisVideoProducerStream>(mStreams.keySet());
         mStreams.clear();
+        mStreamsByHandle.clear();
+
+        // Stops the streams concurrently within a deadline. The stops are not run on the callbacks executor as
+        // stopping a stream awaits for the in-flight uploads which might need the executor threads to complete.
+        new StreamShutdownCoordinator(log).stop(streams);
+
+        streamDescriptionCache.clear();
+        dataEndpointCache.clear();
+
+        // Shuts down the cached control plane clients
+        if (kinesisVideoServiceClient instanceof Closeable) {
+            try {
+                ((Closeable) kinesisVideoServiceClient).close();
+            } catch (final IOException e) {
+                log.error("Closing the service client threw an exception", e);
+            }
+        }
 
         this.executor.shutdownNow();
     }
 
     @Override
-    public synchronized void addStream(@Nonnull final KinesisVideoProducerStream kinesisVideoProducerStream) {
-        mStreams.add(new StreamingInfo(kinesisVideoProducerStream));
+    public void addStream(@Nonnull final KinesisVideoProducerStream kinesisVideoProducerStream) {
+        final StreamingInfo streamingInfo = new StreamingInfo(kinesisVideoProducerStream);
+        mStreams.put(kinesisVideoProducerStream, streamingInfo);
+        mStreamsByHandle.put(streamingInfo.getStreamHandle(), streamingInfo);
     }
 
     @Override
-    public synchronized void removeStream(@Nonnull KinesisVideoProducerStream kinesisVideoProducerStream) {
-        StreamingInfo streamingInfoToBeRemoved = null;
-        for (final StreamingInfo streamingInfo : mStreams) {
-            if (streamingInfo.getStream() == kinesisVideoProducerStream) {
-                streamingInfoToBeRemoved = streamingInfo;
-                break;
+    public void removeStream(@Nonnull KinesisVideoProducerStream kinesisVideoProducerStream) {
+        final StreamingInfo streamingInfo = mStreams.remove(kinesisVideoProducerStream);
+        if (streamingInfo != null) {
+            mStreamsByHandle.remove(streamingInfo.getStreamHandle(), streamingInfo);
+        }
+    }
+
+    /**
+     * Returns the number of the registered streams
+     */
+    public int getStreamCount() {
+        return mStreams.size();
+    }
+
+    /**
+     * Returns the cache key for the stream's control plane results. The access key is part of the key as the same
+     * stream name can refer to different streams in different accounts.
+     */
+    @Nonnull
+    private String getCacheKey(@Nonnull final String streamName,
+                               @Nullable final KinesisVideoCredentialsProvider credentialsProvider) {
+        String accessKey = "";
+        if (credentialsProvider != null) {
+            try {
+                final KinesisVideoCredentials credentials = credentialsProvider.getCredentials();
+                if (credentials != null) {
+                    accessKey = credentials.getAccessKey();
+                }
+            } catch (final KinesisVideoException e) {
+                log.error("Getting credentials threw an exception.", e);
             }
         }
 
-        if (streamingInfoToBeRemoved != null) {
-            mStreams.remove(streamingInfoToBeRemoved);
+        return accessKey + "/" + streamName;
+    }
+
+    @Nonnull
+    private String getDataEndpointCacheKey(@Nonnull final String streamName,
+                                           @Nonnull final String apiName,
+                                           @Nullable final KinesisVideoCredentialsProvider credentialsProvider) {
+        return getCacheKey(streamName, credentialsProvider) + "/" + apiName;
+    }
+
+    /**
+     * Schedules a control plane call.
+     * <p>
+     * When many calls are pending, for example when all the streams reconnect after a network outage, the calls are
+     * spread out with a random admission delay proportional to the backlog. Combined with the coalescing of the
+     * identical calls this keeps the control plane load close to the number of distinct calls instead of the number
+     * of streams.
+     *
+     * @param task Task performing the call
+     * @param delay Delay in nanoseconds requested by the producer
+     */
+    protected void scheduleServiceCall(@Nonnull final Runnable task, final long delay) {
+        final int pending = pendingServiceCalls.incrementAndGet();
+        final long jitter = getAdmissionJitter(pending);
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                pendingServiceCalls.decrementAndGet();
+                task.run();
+            }
+        }, delay + jitter, TimeUnit.NANOSECONDS);
+    }
+
+    private long getAdmissionJitter(final int pendingCalls) {
+        final long maxJitter = configuration.getServiceCallMaxJitterInMillis() * Time.NANOS_IN_A_MILLISECOND;
+        if (pendingCalls <= ADMISSION_BURST_SIZE || maxJitter <= 0) {
+            return 0;
         }
+
+        final long spread = Math.min(maxJitter, (pendingCalls - ADMISSION_BURST_SIZE)
+                * ADMISSION_SPREAD_PER_CALL_IN_MILLIS * Time.NANOS_IN_A_MILLISECOND);
+        return ThreadLocalRandom.current().nextLong(spread + 1);
     }
 
     private long calculateRelativeServiceCallAfter(final long absoluteCallAfter) {
@@ -631,24 +852,12 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
         }
 
         // De-serialize the bytes into AWSCredentials object
-        final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(authData);
-        KinesisVideoCredentials credentials = null;
+        final KinesisVideoCredentials credentials;
         try {
-            final ObjectInput objectInput = new ObjectInputStream(byteArrayInputStream);
-            credentials = (KinesisVideoCredentials) objectInput.readObject();
-            objectInput.close();
-        } catch (final IOException e) {
-            log.error(e);
-            return null;
-        } catch (final ClassNotFoundException e) {
+            credentials = KinesisVideoCredentialsCodec.decode(authData);
+        } catch (final KinesisVideoException e) {
             log.error(e);
             return null;
-        } finally {
-            try {
-                byteArrayInputStream.close();
-            } catch (final IOException e) {
-                log.error(e);
-            }
         }
 
         // Create a static credentials provider
@@ -671,6 +880,8 @@ public class DefaultServiceCallbacksImpl implements ServiceCallbacks {
             return HTTP_RESOURCE_IN_USE;
         } else if (e.getClass().getName().endsWith(ACCESS_DENIED)) {
             return HTTP_ACCESS_DENIED;
+        } else if (e.getClass().getName().endsWith(SERVICE_UNAVAILABLE)) {
+            return HTTP_SERVICE_UNAVAILABLE;
         } else {
             // Try to analyze the cause
             final Throwable cause = e.getCause();
@@ -0,0 +1,210 @@
+package com.amazonaws.kinesisvideo.internal.service;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Concurrent TTL cache for the results of the control plane calls.
+ * <p>
+ * Only one load per key is in flight at any time - concurrent callers for the same key share the result of the
+ * ongoing load instead of issuing their own call. Failed loads are cached for a shorter duration so that a failing
+ * endpoint is not hammered by every stream at once.
+ * <p>
+ * NOTE: A cache with both TTLs set to 0 only coalesces the concurrent identical calls.
+ *
+ * @param <K> key type
+ * @param <V> cached value type
+ */
+class ServiceCallResultCache<K, V> {
+    /**
+     * Starts the actual service call on a cache miss, without waiting for its result.
+     */
+    interface AsyncLoader<V> {
+        @Nonnull
+        CompletableFuture<V> load();
+    }
+
+    /**
+     * Receives the result of {@link #get(Object, AsyncLoader, Callback)}.
+     */
+    interface Callback<V> {
+        /**
+         * @param value Loaded or cached value. Null if the call failed.
+         * @param error Error of the call. Null if the call succeeded.
+         */
+        void onResult(@Nullable V value, @Nullable KinesisVideoException error);
+    }
+
+    /**
+     * Internal class holding a result, which might be still loading, and its expiration.
+     */
+    private static final class Entry<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<V>();
+        private volatile long expiresAtNanos;
+    }
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+    private final long ttlNanos;
+    private final long errorTtlNanos;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param ttlMillis Duration for which a successful result is returned from the cache
+     * @param errorTtlMillis Duration for which a failed result is returned from the cache. 0 disables error caching.
+     */
+    ServiceCallResultCache(final long ttlMillis, final long errorTtlMillis) {
+        Preconditions.checkArgument(ttlMillis >= 0 && errorTtlMillis >= 0, "TTL must not be negative");
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.errorTtlNanos = TimeUnit.MILLISECONDS.toNanos(errorTtlMillis);
+    }
+
+    /**
+     * Delivers the cached result for the key or starts loading it with the loader.
+     * <p>
+     * The callback is invoked on the thread completing the load, or on the calling thread if the result is
+     * available already.
+     *
+     * @param key Cache key
+     * @param loader Loader to start on a miss
+     * @param callback Callback to deliver the result to
+     */
+    void get(@Nonnull final K key, @Nonnull final AsyncLoader<V> loader, @Nonnull final Callback<V> callback) {
+        final Entry<V> newEntry = new Entry<V>();
+        final Entry<V> entry = lookup(key, newEntry);
+        if (entry != newEntry) {
+            entry.result.whenComplete(new BiConsumer<V, Throwable>() {
+                @Override
+                public void accept(final V value, final Throwable throwable) {
+                    callback.onResult(value, throwable == null ? null : toKinesisVideoException(throwable));
+                }
+            });
+            return;
+        }
+
+        CompletableFuture<V> load;
+        try {
+            load = loader.load();
+        } catch (final RuntimeException e) {
+            load = new CompletableFuture<V>();
+            load.completeExceptionally(e);
+        }
+
+        load.whenComplete(new BiConsumer<V, Throwable>() {
+            @Override
+            public void accept(final V value, final Throwable throwable) {
+                final Throwable error = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+                if (error == null) {
+                    complete(key, newEntry, ttlNanos);
+                    newEntry.result.complete(value);
+                    callback.onResult(value, null);
+                } else if (error instanceof KinesisVideoException) {
+                    complete(key, newEntry, errorTtlNanos);
+                    newEntry.result.completeExceptionally(error);
+                    callback.onResult(null, (KinesisVideoException) error);
+                } else {
+                    // Unexpected errors are never cached
+                    complete(key, newEntry, 0);
+                    newEntry.result.completeExceptionally(error);
+                    callback.onResult(null, new KinesisVideoException(error));
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the cached result for the key. An ongoing load is not affected but its result won't be cached.
+     *
+     * @param key Cache key
+     */
+    void invalidate(@Nonnull final K key) {
+        entries.remove(key);
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of calls served from a completed cached result
+     */
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of calls which joined a load already in flight
+     */
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Returns the number of calls which resulted in a load
+     */
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the live entry for the key or the new entry after registering it for the calling thread to load.
+     */
+    @Nonnull
+    private Entry<V> lookup(@Nonnull final K key, @Nonnull final Entry<V> newEntry) {
+        while (true) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.result.isDone()) {
+                    coalescedCount.incrementAndGet();
+                    return entry;
+                }
+
+                if (System.nanoTime() - entry.expiresAtNanos < 0) {
+                    hitCount.incrementAndGet();
+                    return entry;
+                }
+
+                // Expired
+                entries.remove(key, entry);
+            }
+
+            if (entries.putIfAbsent(key, newEntry) == null) {
+                missCount.incrementAndGet();
+                return newEntry;
+            }
+        }
+    }
+
+    private void complete(@Nonnull final K key, @Nonnull final Entry<V> entry, final long ttl) {
+        entry.expiresAtNanos = System.nanoTime() + ttl;
+        if (ttl == 0) {
+            entries.remove(key, entry);
+        }
+    }
+
+    @Nonnull
+    private static KinesisVideoException toKinesisVideoException(@Nullable final Throwable throwable) {
+        if (throwable instanceof KinesisVideoException) {
+            // Wrap so that the stack trace of this caller is preserved while keeping the original as the cause
+            // for the status code mapping.
+            return new KinesisVideoException(throwable.getMessage() == null ? "Shared service call error"
+                    : throwable.getMessage(), throwable);
+        }
+
+        return new KinesisVideoException(throwable == null ? new IllegalStateException() : throwable);
+    }
+}
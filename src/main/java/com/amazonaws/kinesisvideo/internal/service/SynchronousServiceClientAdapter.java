@@ -0,0 +1,198 @@
+package com.amazonaws.kinesisvideo.internal.service;
+
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsProvider;
+import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfiguration;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.producer.client.AsyncKinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.producer.StreamDescription;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Exposes a synchronous {@link KinesisVideoServiceClient} as an {@link AsyncKinesisVideoServiceClient}. The
+ * asynchronous calls run on the calling thread and return completed futures.
+ */
+final class SynchronousServiceClientAdapter implements AsyncKinesisVideoServiceClient {
+    /**
+     * A synchronous call of the adapted client.
+     */
+    private interface SynchronousCall<T> {
+        T call() throws KinesisVideoException;
+    }
+
+    private final KinesisVideoServiceClient delegate;
+
+    private SynchronousServiceClientAdapter(@Nonnull final KinesisVideoServiceClient delegate) {
+        this.delegate = Preconditions.checkNotNull(delegate);
+    }
+
+    /**
+     * Returns the client itself if it is asynchronous already, or its adapter
+     */
+    @Nonnull
+    static AsyncKinesisVideoServiceClient of(@Nonnull final KinesisVideoServiceClient serviceClient) {
+        return serviceClient instanceof AsyncKinesisVideoServiceClient
+                ? (AsyncKinesisVideoServiceClient) serviceClient
+                : new SynchronousServiceClientAdapter(serviceClient);
+    }
+
+    @Override
+    public void initialize(@Nonnull final KinesisVideoClientConfiguration configuration)
+            throws KinesisVideoException {
+        delegate.initialize(configuration);
+    }
+
+    @Override
+    public String createStream(@Nonnull final String streamName,
+                               @Nonnull final String deviceName,
+                               @Nonnull final String contentType,
+                               @Nullable final String kmsKeyId,
+                               final long retentionPeriodInHours,
+                               final long timeoutInMillis,
+                               @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        return delegate.createStream(streamName, deviceName, contentType, kmsKeyId, retentionPeriodInHours,
+                timeoutInMillis, kinesisVideoCredentialsProvider);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<String> createStreamAsync(@Nonnull final String streamName,
+                                                       @Nonnull final String deviceName,
+                                                       @Nonnull final String contentType,
+                                                       @Nullable final String kmsKeyId,
+                                                       final long retentionPeriodInHours,
+                                                       final long timeoutInMillis,
+                                                       @Nullable final KinesisVideoCredentialsProvider
+                                                               kinesisVideoCredentialsProvider) {
+        return complete(new SynchronousCall<String>() {
+            @Override
+            public String call() throws KinesisVideoException {
+                return createStream(streamName, deviceName, contentType, kmsKeyId, retentionPeriodInHours,
+                        timeoutInMillis, kinesisVideoCredentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public StreamDescription describeStream(@Nonnull final String streamName,
+                                            final long timeoutInMillis,
+                                            @Nullable final KinesisVideoCredentialsProvider
+                                                    kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        return delegate.describeStream(streamName, timeoutInMillis, kinesisVideoCredentialsProvider);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<StreamDescription> describeStreamAsync(@Nonnull final String streamName,
+                                                                    final long timeoutInMillis,
+                                                                    @Nullable final KinesisVideoCredentialsProvider
+                                                                            kinesisVideoCredentialsProvider) {
+        return complete(new SynchronousCall<StreamDescription>() {
+            @Override
+            public StreamDescription call() throws KinesisVideoException {
+                return describeStream(streamName, timeoutInMillis, kinesisVideoCredentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public void deleteStream(@Nonnull final String streamName,
+                             @Nonnull final String version,
+                             final Date creationTime,
+                             final long timeoutInMillis,
+                             @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        delegate.deleteStream(streamName, version, creationTime, timeoutInMillis, kinesisVideoCredentialsProvider);
+    }
+
+    @Override
+    public void tagStream(@Nonnull final String streamArn,
+                          @Nullable final Map<String, String> tags,
+                          final long timeoutInMillis,
+                          @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        delegate.tagStream(streamArn, tags, timeoutInMillis, kinesisVideoCredentialsProvider);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> tagStreamAsync(@Nonnull final String streamArn,
+                                                  @Nullable final Map<String, String> tags,
+                                                  final long timeoutInMillis,
+                                                  @Nullable final KinesisVideoCredentialsProvider
+                                                          kinesisVideoCredentialsProvider) {
+        return complete(new SynchronousCall<Void>() {
+            @Override
+            public Void call() throws KinesisVideoException {
+                tagStream(streamArn, tags, timeoutInMillis, kinesisVideoCredentialsProvider);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public String getDataEndpoint(@Nonnull final String streamName,
+                                  @Nonnull final String apiName,
+                                  final long timeoutInMillis,
+                                  @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        return delegate.getDataEndpoint(streamName, apiName, timeoutInMillis, kinesisVideoCredentialsProvider);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<String> getDataEndpointAsync(@Nonnull final String streamName,
+                                                          @Nonnull final String apiName,
+                                                          final long timeoutInMillis,
+                                                          @Nullable final KinesisVideoCredentialsProvider
+                                                                  kinesisVideoCredentialsProvider) {
+        return complete(new SynchronousCall<String>() {
+            @Override
+            public String call() throws KinesisVideoException {
+                return getDataEndpoint(streamName, apiName, timeoutInMillis, kinesisVideoCredentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public void putMedia(@Nonnull final String streamName,
+                         @Nonnull final String containerType,
+                         final long streamStartTimeInMillis,
+                         final boolean absoluteFragmentTimes,
+                         final boolean ackRequired,
+                         @Nonnull final String dataEndpoint,
+                         final long timeoutInMillis,
+                         @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider,
+                         @Nonnull final InputStream dataStream,
+                         @Nonnull final Consumer<InputStream> acksConsumer,
+                         @Nullable final Consumer<Exception> completionCallback)
+            throws KinesisVideoException {
+        delegate.putMedia(streamName, containerType, streamStartTimeInMillis, absoluteFragmentTimes, ackRequired,
+                dataEndpoint, timeoutInMillis, kinesisVideoCredentialsProvider, dataStream, acksConsumer,
+                completionCallback);
+    }
+
+    @Nonnull
+    private static <T> CompletableFuture<T> complete(@Nonnull final SynchronousCall<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        try {
+            result.complete(call.call());
+        } catch (final KinesisVideoException e) {
+            result.completeExceptionally(e);
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+}
@@ -9,9 +9,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
 import com.amazonaws.kinesisvideo.internal.producer.ServiceCallbacks;
+import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
 import com.amazonaws.kinesisvideo.internal.service.DefaultServiceCallbacksImpl;
 import com.amazonaws.kinesisvideo.java.auth.JavaCredentialsProviderImpl;
 import com.amazonaws.kinesisvideo.java.service.JavaKinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.java.service.ResilientKinesisVideoServiceClient;
 import com.amazonaws.kinesisvideo.producer.DeviceInfo;
 import com.amazonaws.kinesisvideo.producer.StorageInfo;
 import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
@@ -101,7 +103,9 @@ public final class KinesisVideoJavaClientFactory {
 
         final Logger log = LogManager.getLogger(KinesisVideoJavaClientFactory.class);
 
-        final JavaKinesisVideoServiceClient serviceClient = new JavaKinesisVideoServiceClient(log);
+        // The retries are scheduled on the callbacks executor without holding its threads while they wait
+        final KinesisVideoServiceClient serviceClient = new ResilientKinesisVideoServiceClient(log,
+                new JavaKinesisVideoServiceClient(log), executor);
 
         final KinesisVideoClient kinesisVideoClient = new JavaKinesisVideoClient(log,
                 configuration,
@@ -129,7 +133,9 @@ public final class KinesisVideoJavaClientFactory {
 
         final Logger log =  LogManager.getLogger(KinesisVideoJavaClientFactory.class);
 
-        final JavaKinesisVideoServiceClient serviceClient = new JavaKinesisVideoServiceClient(log);
+        // The retries are scheduled on the callbacks executor without holding its threads while they wait
+        final KinesisVideoServiceClient serviceClient = new ResilientKinesisVideoServiceClient(log,
+                new JavaKinesisVideoServiceClient(log), executor);
 
         final KinesisVideoClient kinesisVideoClient = new JavaKinesisVideoClient(log,
                 configuration,
@@ -156,7 +162,9 @@ public final class KinesisVideoJavaClientFactory {
         final KinesisVideoClient kinesisVideoClient = new JavaKinesisVideoClient(log,
                 configuration,
                 serviceCallbacks == null ? new DefaultServiceCallbacksImpl(log, executor, configuration,
-                        new JavaKinesisVideoServiceClient(log)) : serviceCallbacks,
+                        new ResilientKinesisVideoServiceClient(log, new JavaKinesisVideoServiceClient(log),
+                                executor))
+                        : serviceCallbacks,
                 executor,
                 streamCallbacks == null ? new DefaultStreamCallbacks() : streamCallbacks);
 
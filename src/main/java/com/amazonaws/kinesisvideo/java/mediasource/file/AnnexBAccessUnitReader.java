@@ -0,0 +1,414 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Splits an Annex-B H.264/H.265 elementary stream into access units.
+ * <p>
+ * The stream is read into a sliding direct buffer and the start codes are found by testing eight bytes at a time for
+ * a zero byte, so the bytes between the start codes are only looked at once. An access unit is returned as a slice of
+ * the buffer including its start codes, so the payload is copied once, from the channel into the buffer. Only the
+ * tail of an incomplete access unit is moved when the buffer is compacted.
+ */
+final class AnnexBAccessUnitReader implements Closeable {
+    /**
+     * Default initial size of the read buffer
+     */
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+
+    private static final int H264_SLICE = 1;
+    private static final int H264_IDR = 5;
+    private static final int H264_SEI = 6;
+    private static final int H264_SPS = 7;
+    private static final int H264_PPS = 8;
+    private static final int H264_AUD = 9;
+
+    private static final int H265_VCL_MAX = 31;
+    private static final int H265_IRAP_MIN = 16;
+    private static final int H265_IRAP_MAX = 23;
+    private static final int H265_VPS = 32;
+    private static final int H265_SPS = 33;
+    private static final int H265_PPS = 34;
+    private static final int H265_AUD = 35;
+    private static final int H265_PREFIX_SEI = 39;
+
+    /**
+     * Access unit read from the stream
+     */
+    static final class AccessUnit {
+        private final ByteBuffer data;
+        private final boolean keyFrame;
+        private final byte[] codecPrivateData;
+
+        private AccessUnit(@Nonnull final ByteBuffer data, final boolean keyFrame,
+                           @Nullable final byte[] codecPrivateData) {
+            this.data = data;
+            this.keyFrame = keyFrame;
+            this.codecPrivateData = codecPrivateData;
+        }
+
+        /**
+         * Returns the Annex-B data of the access unit. Valid until the next access unit is read.
+         */
+        @Nonnull
+        ByteBuffer getData() {
+            return data;
+        }
+
+        /**
+         * Returns whether the access unit is an IDR or IRAP picture
+         */
+        boolean isKeyFrame() {
+            return keyFrame;
+        }
+
+        /**
+         * Returns the Annex-B parameter sets if they have changed ahead of this access unit, otherwise null
+         */
+        @Nullable
+        byte[] getCodecPrivateData() {
+            return codecPrivateData;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final AnnexBMediaSourceConfiguration.Codec codec;
+
+    private ByteBuffer buffer;
+    private int limit;
+    private boolean endOfStream;
+
+    // Start of the current access unit, -1 before the first start code
+    private int accessUnitStart = -1;
+    // Where the start code scan continues
+    private int scanPosition;
+    // Payload start and type of the current NAL unit, -1 if there is none
+    private int nalStart = -1;
+    private int nalType;
+    private boolean accessUnitHasPicture;
+    private boolean accessUnitKeyFrame;
+
+    private final byte[][] parameterSets = new byte[3][];
+    private boolean parameterSetsChanged;
+    private long compactedByteCount;
+
+    AnnexBAccessUnitReader(@Nonnull final ReadableByteChannel channel,
+                           @Nonnull final AnnexBMediaSourceConfiguration.Codec codec,
+                           final int bufferSize) {
+        Preconditions.checkArgument(bufferSize >= 16, "Buffer size is too small");
+        this.channel = Preconditions.checkNotNull(channel);
+        this.codec = Preconditions.checkNotNull(codec);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns the next access unit or null at the end of the stream. The previous access unit is no longer valid.
+     */
+    @Nullable
+    AccessUnit next() throws IOException {
+        while (true) {
+            final int startCode = findStartCode(scanPosition, limit);
+            if (startCode >= 0) {
+                final int codeStart = trimLeadingZeros(startCode);
+                final int payloadStart = startCode + 3;
+                if (payloadStart + 3 > limit && !endOfStream) {
+                    // The NAL header is not read yet
+                    scanPosition = codeStart;
+                    readMore();
+                    continue;
+                }
+
+                final AccessUnit accessUnit = onStartCode(codeStart, payloadStart);
+                if (accessUnit != null) {
+                    return accessUnit;
+                }
+
+                continue;
+            }
+
+            // Keep the last bytes as they may begin a start code
+            scanPosition = Math.max(scanPosition, limit - 3);
+            if (endOfStream) {
+                return finish();
+            }
+
+            readMore();
+        }
+    }
+
+    /**
+     * Returns the number of the bytes moved while compacting the buffer
+     */
+    long getCompactedByteCount() {
+        return compactedByteCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Nullable
+    private AccessUnit onStartCode(final int codeStart, final int payloadStart) {
+        scanPosition = payloadStart;
+        if (nalStart >= 0) {
+            endNal(nalStart, codeStart);
+        }
+
+        final int type = nalType(payloadStart);
+        AccessUnit accessUnit = null;
+        if (accessUnitStart < 0) {
+            accessUnitStart = codeStart;
+        } else if (accessUnitHasPicture && startsAccessUnit(type, payloadStart)) {
+            accessUnit = emit(codeStart);
+            accessUnitStart = codeStart;
+        }
+
+        nalStart = payloadStart;
+        nalType = type;
+        if (isPicture(type)) {
+            accessUnitHasPicture = true;
+            accessUnitKeyFrame |= isKeyFrame(type);
+        }
+
+        return accessUnit;
+    }
+
+    @Nullable
+    private AccessUnit finish() {
+        if (nalStart < 0) {
+            return null;
+        }
+
+        endNal(nalStart, limit);
+        nalStart = -1;
+        final AccessUnit accessUnit = accessUnitHasPicture ? emit(limit) : null;
+        accessUnitStart = limit;
+        scanPosition = limit;
+        return accessUnit;
+    }
+
+    @Nonnull
+    private AccessUnit emit(final int end) {
+        final ByteBuffer data = buffer.duplicate();
+        data.limit(end);
+        data.position(accessUnitStart);
+
+        byte[] codecPrivateData = null;
+        if (parameterSetsChanged && hasParameterSets()) {
+            codecPrivateData = getCodecPrivateData();
+            parameterSetsChanged = false;
+        }
+
+        final AccessUnit accessUnit = new AccessUnit(data.slice(), accessUnitKeyFrame, codecPrivateData);
+        accessUnitHasPicture = false;
+        accessUnitKeyFrame = false;
+        return accessUnit;
+    }
+
+    private void endNal(final int start, final int end) {
+        final int index = parameterSetIndex(nalType);
+        if (index < 0) {
+            return;
+        }
+
+        // The parameter sets are small and outlive the buffer, so they are copied
+        final byte[] parameterSet = new byte[end - start];
+        final ByteBuffer data = buffer.duplicate();
+        data.position(start);
+        data.get(parameterSet);
+        if (!Arrays.equals(parameterSet, parameterSets[index])) {
+            parameterSets[index] = parameterSet;
+            parameterSetsChanged = true;
+        }
+    }
+
+    private boolean hasParameterSets() {
+        return parameterSets[1] != null && parameterSets[2] != null
+                && (codec == AnnexBMediaSourceConfiguration.Codec.H264 || parameterSets[0] != null);
+    }
+
+    @Nonnull
+    private byte[] getCodecPrivateData() {
+        final ByteArrayOutputStream codecPrivateData = new ByteArrayOutputStream();
+        for (final byte[] parameterSet : parameterSets) {
+            if (parameterSet != null) {
+                codecPrivateData.write(START_CODE, 0, START_CODE.length);
+                codecPrivateData.write(parameterSet, 0, parameterSet.length);
+            }
+        }
+
+        return codecPrivateData.toByteArray();
+    }
+
+    /**
+     * Returns the index of the VPS, SPS and PPS in the parameter sets or -1
+     */
+    private int parameterSetIndex(final int type) {
+        if (codec == AnnexBMediaSourceConfiguration.Codec.H264) {
+            return type == H264_SPS ? 1 : type == H264_PPS ? 2 : -1;
+        }
+
+        return type >= H265_VPS && type <= H265_PPS ? type - H265_VPS : -1;
+    }
+
+    private int nalType(final int payloadStart) {
+        if (payloadStart >= limit) {
+            return -1;
+        }
+
+        final int header = buffer.get(payloadStart) & 0xFF;
+        return codec == AnnexBMediaSourceConfiguration.Codec.H264 ? header & 0x1F : (header >> 1) & 0x3F;
+    }
+
+    private boolean isPicture(final int type) {
+        return codec == AnnexBMediaSourceConfiguration.Codec.H264
+                ? type >= H264_SLICE && type <= H264_IDR
+                : type >= 0 && type <= H265_VCL_MAX;
+    }
+
+    private boolean isKeyFrame(final int type) {
+        return codec == AnnexBMediaSourceConfiguration.Codec.H264
+                ? type == H264_IDR
+                : type >= H265_IRAP_MIN && type <= H265_IRAP_MAX;
+    }
+
+    /**
+     * Returns whether the NAL unit begins a new access unit following one which already has a picture.
+     */
+    private boolean startsAccessUnit(final int type, final int payloadStart) {
+        if (codec == AnnexBMediaSourceConfiguration.Codec.H264) {
+            if (type == H264_SEI || type == H264_SPS || type == H264_PPS || type == H264_AUD
+                    || (type >= 14 && type <= 18)) {
+                return true;
+            }
+
+            // The first slice of a picture has first_mb_in_slice 0, coded as a single set bit
+            return isPicture(type) && payloadStart + 1 < limit && (buffer.get(payloadStart + 1) & 0x80) != 0;
+        }
+
+        if ((type >= H265_VPS && type <= H265_AUD) || type == H265_PREFIX_SEI
+                || (type >= 41 && type <= 44) || (type >= 48 && type <= 55)) {
+            return true;
+        }
+
+        // first_slice_segment_in_pic_flag follows the two byte header
+        return isPicture(type) && payloadStart + 2 < limit && (buffer.get(payloadStart + 2) & 0x80) != 0;
+    }
+
+    /**
+     * Returns the index of the first byte of the next 00 00 01 sequence or -1.
+     */
+    private int findStartCode(final int from, final int to) {
+        int index = from;
+        while (index + 8 + 2 <= to) {
+            final long word = buffer.getLong(index);
+
+            // Skip the words without a zero byte, as every start code begins with one
+            if (((word - ONES) & ~word & HIGH_BITS) == 0) {
+                index += 8;
+                continue;
+            }
+
+            final int found = findStartCodeBytes(index, index + 8);
+            if (found >= 0) {
+                return found;
+            }
+
+            index += 8;
+        }
+
+        return findStartCodeBytes(index, to - 2);
+    }
+
+    private int findStartCodeBytes(final int from, final int to) {
+        for (int index = from; index < to; index++) {
+            if (buffer.get(index) == 0 && buffer.get(index + 1) == 0 && buffer.get(index + 2) == 1) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Includes the zero bytes ahead of a start code, e.g. of a four byte start code, into it.
+     */
+    private int trimLeadingZeros(final int startCode) {
+        final int lowerBound = Math.max(nalStart, Math.max(accessUnitStart, 0));
+        int codeStart = startCode;
+        while (codeStart > lowerBound && buffer.get(codeStart - 1) == 0) {
+            codeStart--;
+        }
+
+        return codeStart;
+    }
+
+    /**
+     * Reads more data, compacting or growing the buffer when it is full.
+     */
+    private void readMore() throws IOException {
+        if (limit == buffer.capacity()) {
+            makeRoom();
+        }
+
+        final ByteBuffer target = buffer.duplicate();
+        target.position(limit);
+        final int read = channel.read(target);
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void makeRoom() throws IOException {
+        final int keepFrom = accessUnitStart >= 0 ? accessUnitStart : Math.max(0, scanPosition);
+        if (keepFrom == 0) {
+            if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+                throw new IOException("Access unit is larger than " + MAX_BUFFER_SIZE + " bytes");
+            }
+
+            final ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(MAX_BUFFER_SIZE, buffer.capacity() * 2));
+            final ByteBuffer data = buffer.duplicate();
+            data.position(0);
+            data.limit(limit);
+            grown.put(data);
+            compactedByteCount += limit;
+            buffer = grown;
+            return;
+        }
+
+        final ByteBuffer data = buffer.duplicate();
+        data.position(keepFrom);
+        data.limit(limit);
+        final ByteBuffer target = buffer.duplicate();
+        target.clear();
+        target.put(data);
+        compactedByteCount += limit - keepFrom;
+
+        limit -= keepFrom;
+        scanPosition = Math.max(0, scanPosition - keepFrom);
+        if (accessUnitStart >= 0) {
+            accessUnitStart -= keepFrom;
+        }
+
+        if (nalStart >= 0) {
+            nalStart -= keepFrom;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static com.amazonaws.kinesisvideo.producer.Time.NANOS_IN_A_TIME_UNIT;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_TRACK_ID;
+
+/**
+ * Frame source sending the access units of an Annex-B elementary stream.
+ * <p>
+ * With the {@link AnnexBMediaSourceConfiguration.Pacing#FRAME_RATE} pacing a dedicated thread reads the next access
+ * unit ahead and it is sent on a tick of the shared {@link FramePacingScheduler}, so slow storage never holds up the
+ * ticks of the other sources. An access unit which is not read yet by its tick is sent on a later one. With the
+ * {@link AnnexBMediaSourceConfiguration.Pacing#LIVE} pacing the dedicated thread waits for the access units and sends
+ * them.
+ * The parameter sets are passed on as codec private data whenever they change.
+ */
+class AnnexBFrameSource {
+    private final Log log = LogFactory.getLog(AnnexBFrameSource.class);
+    private final AnnexBAccessUnitReader reader;
+    private final AnnexBMediaSourceConfiguration.Pacing pacing;
+    private final long frameDurationNanos;
+    private final FramePacingScheduler scheduler;
+    private final CompletableFuture<Long> endOfStream;
+
+    private MediaSourceSink mediaSourceSink;
+    private volatile boolean isRunning;
+    private FramePacingScheduler.PacedSource pacedSource;
+    private AnnexBAccessUnitReader.AccessUnit prefetchedAccessUnit;
+    private boolean isPrefetched;
+    private int frameIndex;
+    private long startNanos;
+
+    /**
+     * @param reader Access unit reader. Closed by the frame source.
+     * @param pacing How the access units are timed
+     * @param fps Frame rate of the stream
+     * @param scheduler Scheduler pacing the frame rate mode
+     * @param endOfStream Completed with the number of the frames sent at the end of the stream
+     */
+    AnnexBFrameSource(@Nonnull final AnnexBAccessUnitReader reader,
+                      @Nonnull final AnnexBMediaSourceConfiguration.Pacing pacing,
+                      final int fps,
+                      @Nonnull final FramePacingScheduler scheduler,
+                      @Nonnull final CompletableFuture<Long> endOfStream) {
+        Preconditions.checkArgument(fps > 0, "Frame rate must be positive");
+        this.reader = Preconditions.checkNotNull(reader);
+        this.pacing = Preconditions.checkNotNull(pacing);
+        this.frameDurationNanos = Duration.ofSeconds(1L).toNanos() / fps;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        this.endOfStream = Preconditions.checkNotNull(endOfStream);
+    }
+
+    void onMediaSourceSink(final MediaSourceSink mediaSourceSink) {
+        this.mediaSourceSink = mediaSourceSink;
+    }
+
+    synchronized void start() {
+        Preconditions.checkState(!isRunning, "Frame source is already running");
+        isRunning = true;
+        startNanos = System.nanoTime();
+
+        final Thread readerThread;
+        if (pacing == AnnexBMediaSourceConfiguration.Pacing.FRAME_RATE) {
+            // Keep the average rate when a tick has been delayed
+            pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
+                @Override
+                public void onTick(final long tickIndex) {
+                    sendPrefetchedAccessUnit();
+                }
+            }, frameDurationNanos, FramePacingScheduler.CatchUpPolicy.BURST);
+            readerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (isRunning) {
+                        prefetchNextAccessUnit();
+                    }
+                }
+            }, "KVS-AnnexBReader");
+        } else {
+            readerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (isRunning) {
+                        sendNextAccessUnit();
+                    }
+                }
+            }, "KVS-AnnexBReader");
+        }
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+
+        stopOnEnd();
+    }
+
+    /**
+     * Returns the pacing metrics of the frame rate mode or null
+     */
+    @Nullable
+    synchronized FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
+    }
+
+    private void sendNextAccessUnit() {
+        try {
+            final AnnexBAccessUnitReader.AccessUnit accessUnit = reader.next();
+            if (!isRunning) {
+                return;
+            }
+
+            if (accessUnit == null) {
+                onEndOfStream();
+                return;
+            }
+
+            send(accessUnit);
+        } catch (final IOException e) {
+            fail(e);
+        } catch (final KinesisVideoException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Reads the next access unit on the reader thread once the previous one has been sent, as the data of an access
+     * unit are only valid until the next one is read
+     */
+    private void prefetchNextAccessUnit() {
+        synchronized (this) {
+            while (isRunning && isPrefetched) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(e);
+                    return;
+                }
+            }
+
+            if (!isRunning) {
+                return;
+            }
+        }
+
+        try {
+            final AnnexBAccessUnitReader.AccessUnit accessUnit = reader.next();
+            synchronized (this) {
+                prefetchedAccessUnit = accessUnit;
+                isPrefetched = true;
+            }
+        } catch (final IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Sends the access unit read ahead on a tick of the shared scheduler, which must not block on the stream
+     */
+    private void sendPrefetchedAccessUnit() {
+        final AnnexBAccessUnitReader.AccessUnit accessUnit;
+        synchronized (this) {
+            if (!isRunning || !isPrefetched) {
+                return;
+            }
+
+            accessUnit = prefetchedAccessUnit;
+        }
+
+        try {
+            if (accessUnit == null) {
+                onEndOfStream();
+                return;
+            }
+
+            send(accessUnit);
+        } catch (final KinesisVideoException e) {
+            fail(e);
+        }
+
+        // Lets the reader thread read the next access unit into the buffer
+        synchronized (this) {
+            prefetchedAccessUnit = null;
+            isPrefetched = false;
+            notifyAll();
+        }
+    }
+
+    private void onEndOfStream() {
+        log.info("Sent all " + frameIndex + " frames of the elementary stream");
+        stopOnEnd();
+        endOfStream.complete((long) frameIndex);
+    }
+
+    private void send(@Nonnull final AnnexBAccessUnitReader.AccessUnit accessUnit) throws KinesisVideoException {
+        if (mediaSourceSink == null) {
+            frameIndex++;
+            return;
+        }
+
+        if (accessUnit.getCodecPrivateData() != null) {
+            mediaSourceSink.onCodecPrivateData(accessUnit.getCodecPrivateData(), DEFAULT_TRACK_ID);
+        }
+
+        final long timestamp = pacing == AnnexBMediaSourceConfiguration.Pacing.FRAME_RATE
+                ? frameIndex * frameDurationNanos / NANOS_IN_A_TIME_UNIT
+                : (System.nanoTime() - startNanos) / NANOS_IN_A_TIME_UNIT;
+
+        // The producer copies the data while putting the frame, before the reader reuses the buffer
+        mediaSourceSink.onFrame(new KinesisVideoFrame(frameIndex,
+                accessUnit.isKeyFrame() ? FRAME_FLAG_KEY_FRAME : FRAME_FLAG_NONE,
+                timestamp,
+                timestamp,
+                frameDurationNanos / NANOS_IN_A_TIME_UNIT,
+                accessUnit.getData(),
+                DEFAULT_TRACK_ID));
+        frameIndex++;
+    }
+
+    private void fail(@Nonnull final Exception e) {
+        if (!isRunning) {
+            // Stopped while reading
+            return;
+        }
+
+        log.error("Sending the elementary stream failed after " + frameIndex + " frames", e);
+        stopOnEnd();
+        endOfStream.completeExceptionally(e);
+    }
+
+    private synchronized void stopOnEnd() {
+        isRunning = false;
+        if (pacedSource != null) {
+            pacedSource.cancel();
+        }
+
+        // Releases the reader thread waiting for the prefetched access unit to be sent
+        notifyAll();
+
+        // Also releases a reader thread blocked on a pipe
+        try {
+            reader.close();
+        } catch (final IOException e) {
+            log.warn("Closing the elementary stream failed", e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.client.mediasource.MediaSourceState;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSource;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceConfiguration;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamInfo;
+import com.amazonaws.kinesisvideo.producer.TrackInfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+import static com.amazonaws.kinesisvideo.producer.StreamInfo.NalAdaptationFlags.NAL_ADAPTATION_ANNEXB_CPD_AND_FRAME_NALS;
+import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_AN_HOUR;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_BITRATE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_GOP_DURATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_TRACK_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.KEYFRAME_FRAGMENTATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NOT_ADAPTIVE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NO_KMS_KEY_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECALCULATE_METRICS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECOVER_ON_FAILURE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.REQUEST_FRAGMENT_ACKS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.USE_FRAME_TIMECODES;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VERSION_ZERO;
+
+/**
+ * MediaSource reading a raw Annex-B H.264/H.265 elementary stream from a file or a named pipe.
+ * <p>
+ * The stream is split into access units which are sent as frames. The IDR/IRAP pictures are marked as key frames and
+ * the SPS/PPS/VPS found in the stream are passed on as codec private data. The producer converts the Annex-B NAL
+ * units of both to the AVCC format.
+ */
+public class AnnexBMediaSource implements MediaSource {
+    private final String streamName;
+    private final CompletableFuture<Boolean> future;
+    private final CompletableFuture<Long> endOfStream = new CompletableFuture<Long>();
+    private final FramePacingScheduler scheduler;
+
+    private AnnexBMediaSourceConfiguration configuration;
+    private MediaSourceState mediaSourceState;
+    private MediaSourceSink mediaSourceSink;
+    private AnnexBFrameSource frameSource;
+
+    public AnnexBMediaSource(@Nonnull final String streamName) {
+        this(streamName, new CompletableFuture<Boolean>());
+    }
+
+    public AnnexBMediaSource(@Nonnull final String streamName, final CompletableFuture<Boolean> future) {
+        this(streamName, future, FramePacingScheduler.getShared());
+    }
+
+    public AnnexBMediaSource(@Nonnull final String streamName,
+                             final CompletableFuture<Boolean> future,
+                             @Nonnull final FramePacingScheduler scheduler) {
+        this.streamName = streamName;
+        this.future = future;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+    }
+
+    @Override
+    public MediaSourceState getMediaSourceState() {
+        return mediaSourceState;
+    }
+
+    @Override
+    public MediaSourceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public StreamInfo getStreamInfo() throws KinesisVideoException {
+        final TrackInfo[] trackInfoList = configuration.getTrackInfoList() != null
+                ? configuration.getTrackInfoList()
+                : new TrackInfo[] {new TrackInfo(DEFAULT_TRACK_ID, configuration.getCodec().getCodecId(),
+                        "video", null, MkvTrackInfoType.VIDEO)};
+
+        return new StreamInfo(VERSION_ZERO,
+                streamName,
+                StreamInfo.StreamingType.STREAMING_TYPE_REALTIME,
+                configuration.getContentType(),
+                NO_KMS_KEY_ID,
+                configuration.getRetentionPeriodInHours() * HUNDREDS_OF_NANOS_IN_AN_HOUR,
+                NOT_ADAPTIVE,
+                configuration.getLatencyPressure(),
+                DEFAULT_GOP_DURATION,
+                KEYFRAME_FRAGMENTATION,
+                USE_FRAME_TIMECODES,
+                configuration.isAbsoluteTimecode(),
+                REQUEST_FRAGMENT_ACKS,
+                RECOVER_ON_FAILURE,
+                DEFAULT_BITRATE,
+                configuration.getFps(),
+                configuration.getBufferDuration(),
+                configuration.getReplayDuration(),
+                configuration.getStalenessDuration(),
+                configuration.getTimecodeScale(),
+                RECALCULATE_METRICS,
+                null,
+                NAL_ADAPTATION_ANNEXB_CPD_AND_FRAME_NALS,
+                null,
+                trackInfoList);
+    }
+
+    @Override
+    public void initialize(@Nonnull final MediaSourceSink mediaSourceSink) throws KinesisVideoException {
+        this.mediaSourceSink = mediaSourceSink;
+    }
+
+    @Override
+    public void configure(final MediaSourceConfiguration configuration) {
+        Preconditions.checkState(this.configuration == null);
+
+        if (!(configuration instanceof AnnexBMediaSourceConfiguration)) {
+            throw new IllegalStateException("Configuration must be an instance of AnnexBMediaSourceConfiguration");
+        }
+
+        this.configuration = (AnnexBMediaSourceConfiguration) configuration;
+        Preconditions.checkNotNull(this.configuration.getFilePath(), "Elementary stream path must be set");
+    }
+
+    @Override
+    public void start() throws KinesisVideoException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(configuration.getFilePath()), StandardOpenOption.READ);
+        } catch (final IOException e) {
+            throw new KinesisVideoException("Failed to open elementary stream " + configuration.getFilePath(), e);
+        }
+
+        mediaSourceState = MediaSourceState.RUNNING;
+        frameSource = new AnnexBFrameSource(
+                new AnnexBAccessUnitReader(channel, configuration.getCodec(),
+                        AnnexBAccessUnitReader.DEFAULT_BUFFER_SIZE),
+                configuration.getPacing(),
+                configuration.getFps(),
+                scheduler,
+                endOfStream);
+        frameSource.onMediaSourceSink(mediaSourceSink);
+        frameSource.start();
+    }
+
+    @Override
+    public void stop() throws KinesisVideoException {
+        if (frameSource != null) {
+            frameSource.stop();
+        }
+
+        try {
+            if (null != mediaSourceSink && null != mediaSourceSink.getProducerStream()) {
+                mediaSourceSink.getProducerStream().stopStreamSync();
+            }
+        } finally {
+            mediaSourceState = MediaSourceState.STOPPED;
+            future.complete(true);
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        return mediaSourceState == MediaSourceState.STOPPED;
+    }
+
+    @Override
+    public void free() throws KinesisVideoException {
+        // No-op
+    }
+
+    @Override
+    public MediaSourceSink getMediaSourceSink() {
+        return mediaSourceSink;
+    }
+
+    @Nullable
+    @Override
+    public StreamCallbacks getStreamCallbacks() {
+        return null;
+    }
+
+    /**
+     * Returns a future completed with the number of the frames sent at the end of the elementary stream, or
+     * exceptionally if the stream could not be read
+     */
+    @Nonnull
+    public CompletableFuture<Long> getEndOfStreamFuture() {
+        return endOfStream;
+    }
+
+    /**
+     * Returns the pacing metrics of the frame rate mode or null
+     */
+    @Nullable
+    public FramePacingScheduler.PacedSource getPacing() {
+        return frameSource != null ? frameSource.getPacing() : null;
+    }
+}
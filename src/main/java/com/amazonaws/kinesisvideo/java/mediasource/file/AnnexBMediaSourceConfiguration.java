@@ -0,0 +1,126 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.internal.mediasource.multitrack.MultiTrackMediaSourceConfiguration;
+
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RELATIVE_TIMECODES;
+
+public class AnnexBMediaSourceConfiguration extends MultiTrackMediaSourceConfiguration {
+    private static final String MEDIA_SOURCE_TYPE = "AnnexBMediaSource";
+    private static final String MEDIA_SOURCE_DESCRIPTION = "Media Source reading an Annex-B elementary stream. ";
+
+    /**
+     * Video codec of the elementary stream
+     */
+    public enum Codec {
+        H264("video/h264", "V_MPEG4/ISO/AVC"),
+        H265("video/h265", "V_MPEGH/ISO/HEVC");
+
+        private final String contentType;
+        private final String codecId;
+
+        Codec(final String contentType, final String codecId) {
+            this.contentType = contentType;
+            this.codecId = codecId;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getCodecId() {
+            return codecId;
+        }
+    }
+
+    /**
+     * How the access units are timed
+     */
+    public enum Pacing {
+        /**
+         * Send the access units at the configured frame rate, e.g. when reading a recorded file
+         */
+        FRAME_RATE,
+
+        /**
+         * Send every access unit as soon as it is read and time it on arrival, e.g. when reading a pipe from a live
+         * encoder
+         */
+        LIVE
+    }
+
+    private final Builder builder;
+
+    protected AnnexBMediaSourceConfiguration(final Builder builder) {
+        super(builder);
+        this.builder = builder;
+    }
+
+    /**
+     * Returns the path of the elementary stream file or named pipe
+     */
+    public String getFilePath() {
+        return builder.filePath;
+    }
+
+    public Codec getCodec() {
+        return builder.codec;
+    }
+
+    public Pacing getPacing() {
+        return builder.pacing;
+    }
+
+    @Override
+    public String getMediaSourceType() {
+        return MEDIA_SOURCE_TYPE;
+    }
+
+    @Override
+    public String getMediaSourceDescription() {
+        return MEDIA_SOURCE_DESCRIPTION;
+    }
+
+    public static class AnnexBBuilder extends Builder<AnnexBBuilder> {
+        public AnnexBBuilder() {
+            super(AnnexBBuilder.class);
+        }
+    }
+
+    protected static class Builder<T extends Builder<T>>
+            extends MultiTrackMediaSourceConfiguration.Builder<T> {
+        private String filePath;
+        private Codec codec = Codec.H264;
+        private Pacing pacing = Pacing.FRAME_RATE;
+
+        public Builder(final Class<?> builder) {
+            super();
+
+            // Elementary streams carry no timestamps, the frames are timed from the stream start
+            withAbsoluteTimecode(RELATIVE_TIMECODES);
+        }
+
+        public T withFilePath(final String filePath) {
+            this.filePath = filePath;
+            return (T) this;
+        }
+
+        public T withCodec(final Codec codec) {
+            this.codec = codec;
+            return (T) this;
+        }
+
+        public T withPacing(final Pacing pacing) {
+            this.pacing = pacing;
+            return (T) this;
+        }
+
+        @Override
+        public AnnexBMediaSourceConfiguration build() {
+            if (contentType == null) {
+                withContentType(codec.getContentType());
+            }
+
+            return new AnnexBMediaSourceConfiguration(this);
+        }
+    }
+}
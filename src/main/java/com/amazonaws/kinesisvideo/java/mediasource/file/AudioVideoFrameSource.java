@@ -2,24 +2,22 @@ package com.amazonaws.kinesisvideo.java.mediasource.file;
 
 import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
 import com.amazonaws.kinesisvideo.internal.mediasource.OnStreamDataAvailable;
 import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.File;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
@@ -37,7 +35,30 @@ public class AudioVideoFrameSource {
     private static final String DELIMITER = "-";
     private static final int INFO_LENGTH = 4;
     private static final String VIDEO_TYPE = "video";
-    private final ExecutorService executor = Executors.newFixedThreadPool(1);
+
+    /**
+     * Frame attributes parsed from the file name
+     */
+    private static final class FrameInfo {
+        private final long timecode;
+        private final long trackId;
+        private final int flags;
+
+        private FrameInfo(final String fileName) {
+            // fileName format: timecode-mediaType-isKeyFrame-frame, timecode is offset from beginning
+            // 10000-audio-false-frame or 10999-video-true-frame
+            final String[] infos = fileName.split(DELIMITER);
+            Preconditions.checkState(infos.length == INFO_LENGTH);
+
+            timecode = Long.parseLong(infos[0]);
+            trackId = VIDEO_TYPE.equals(infos[1]) ? VIDEO_TRACK_ID : AUDIO_TRACK_ID;
+            flags = VIDEO_TYPE.equals(infos[1]) && Boolean.parseBoolean(infos[2])
+                    ? FRAME_FLAG_KEY_FRAME
+                    : FRAME_FLAG_NONE;
+        }
+    }
+
+    private final FramePacingScheduler scheduler;
     private final int fps;
     private final AudioVideoFileMediaSourceConfiguration configuration;
 
@@ -48,11 +69,30 @@ public class AudioVideoFrameSource {
     private int frameIndex = 0;
     private long frameStartMillis = 0;
     private List<String> fileNames = new ArrayList<>();
+    private final List<FrameInfo> frameInfos = new ArrayList<>();
+    private final ReadAheadFileReader fileReader;
+    private long loopStartMillis = -1;
+    private int lastFileIndex = -1;
+    private FramePacingScheduler.PacedSource pacedSource;
 
     public AudioVideoFrameSource(final AudioVideoFileMediaSourceConfiguration configuration) {
+        this(configuration, FramePacingScheduler.getShared());
+    }
+
+    public AudioVideoFrameSource(final AudioVideoFileMediaSourceConfiguration configuration,
+                                 final FramePacingScheduler scheduler) {
         this.configuration = configuration;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
         getTotalFiles(new File(configuration.getDir()));
         this.fps = configuration.getFps();
+
+        final List<Path> files = new ArrayList<>(fileNames.size());
+        for (final String fileName : fileNames) {
+            frameInfos.add(new FrameInfo(fileName));
+            files.add(Paths.get(configuration.getDir() + "/" + fileName));
+        }
+
+        this.fileReader = new ReadAheadFileReader(files, ReadAheadFileReader.DEFAULT_READ_AHEAD_FRAMES, true);
     }
 
     private void getTotalFiles(final File fileDirectory) {
@@ -75,6 +115,7 @@ public class AudioVideoFrameSource {
         }
 
         isRunning = true;
+        fileReader.start();
         startFrameGenerator();
     }
 
@@ -87,70 +128,68 @@ public class AudioVideoFrameSource {
         this.mkvDataAvailableCallback = onMkvDataAvailable;
     }
 
+    /**
+     * Returns the pacing metrics of the running frame generator or null if it has not been started
+     */
+    @Nullable
+    public FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
+    }
+
     private void startFrameGenerator() {
-        executor.execute(new Runnable() {
+        // One frame per tick, at the average frame rate of a loop over all the files. Keep that rate when a tick has
+        // been delayed.
+        pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
             @Override
-            public void run() {
-                try {
-                    generateFrameAndNotifyListener();
-                } catch (final KinesisVideoException e) {
-                    log.error("Failed to keep generating frames with Exception", e);
-                }
+            public void onTick(final long tickIndex) throws KinesisVideoException {
+                generateFrameAndNotifyListener();
             }
-        });
+        }, Math.max(1, Duration.ofMillis(durationInMillis).toNanos() / frameInfos.size()),
+                FramePacingScheduler.CatchUpPolicy.BURST);
     }
 
     private void generateFrameAndNotifyListener() throws KinesisVideoException {
-        while (isRunning) {
-            final long startTime = System.currentTimeMillis();
-            for (final String fileName : fileNames) {
-                if (mkvDataAvailableCallback != null) {
-                    frameIndex++;
-                    mkvDataAvailableCallback.onFrameDataAvailable(createKinesisVideoFrameFromFile(fileName,
-                            startTime));
-                }
-            }
+        // Ticks of the shared scheduler must not block, a frame which is not ready is sent on a later tick
+        final ReadAheadFileReader.Frame frame = fileReader.next(0);
+        if (frame == null || !isRunning) {
+            return;
+        }
 
-            try {
-                Thread.sleep(durationInMillis);
-            } catch (final InterruptedException e) {
-                log.error("Frame interval wait interrupted by Exception ", e);
-            }
+        if (loopStartMillis < 0 || frame.getIndex() <= lastFileIndex) {
+            // The timecodes of a loop follow the ones of the previous loop, even if it was sent late
+            final long now = System.currentTimeMillis();
+            loopStartMillis = loopStartMillis < 0 ? now : Math.max(loopStartMillis + durationInMillis, now);
         }
-    }
 
-    private KinesisVideoFrame createKinesisVideoFrameFromFile(final String fileName, final long startTime) {
-        // fileName format: timecode-mediaType-isKeyFrame-frame, timecode is offset from beginning
-        // 10000-audio-false-frame or 10999-video-true-frame
-        final String[] infos = fileName.split("-");
-        Preconditions.checkState(infos.length == INFO_LENGTH);
+        lastFileIndex = frame.getIndex();
+        if (mkvDataAvailableCallback != null) {
+            frameIndex++;
+            mkvDataAvailableCallback.onFrameDataAvailable(createKinesisVideoFrame(
+                    frameInfos.get(frame.getIndex()), frame.getData(), loopStartMillis));
+        }
+    }
 
+    private KinesisVideoFrame createKinesisVideoFrame(final FrameInfo frameInfo,
+                                                      final ByteBuffer data,
+                                                      final long startTime) {
         final long timestamp = startTime * HUNDREDS_OF_NANOS_IN_A_MILLISECOND
-                + Long.parseLong(infos[0]) / NANOS_IN_A_TIME_UNIT
+                + frameInfo.timecode / NANOS_IN_A_TIME_UNIT
                 - frameStartMillis * HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
 
-        final long trackId = VIDEO_TYPE.equals(infos[1]) ? VIDEO_TRACK_ID : AUDIO_TRACK_ID;
-        final int isKeyFrame = VIDEO_TYPE.equals(infos[1]) && Boolean.parseBoolean(infos[2])
-                ? FRAME_FLAG_KEY_FRAME
-                : FRAME_FLAG_NONE;
-        final Path path = Paths.get(configuration.getDir() + "/" + fileName);
-        try {
-            final byte[] bytes = Files.readAllBytes(path);
-            return new KinesisVideoFrame(frameIndex,
-                    isKeyFrame,
-                    timestamp,
-                    timestamp,
-                    FRAME_DURATION_0_MS * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
-                    ByteBuffer.wrap(bytes),
-                    trackId);
-        } catch (final IOException e) {
-            log.error("Read file failed with Exception ", e);
-        }
-
-        return null;
+        return new KinesisVideoFrame(frameIndex,
+                frameInfo.flags,
+                timestamp,
+                timestamp,
+                FRAME_DURATION_0_MS * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
+                data,
+                frameInfo.trackId);
     }
 
     private void stopFrameGenerator() {
+        if (pacedSource != null) {
+            pacedSource.cancel();
+        }
 
+        fileReader.stop();
     }
 }
@@ -2,21 +2,21 @@ package com.amazonaws.kinesisvideo.java.mediasource.file;
 
 import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
 import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
 import com.amazonaws.kinesisvideo.internal.mediasource.OnStreamDataAvailable;
 
 import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
 import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
@@ -29,12 +29,13 @@ import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_A_MI
 public class ImageFrameSource {
     public static final int METADATA_INTERVAL = 8;
     private static final long FRAME_DURATION_20_MS = 20L;
-    private final ExecutorService executor = Executors.newFixedThreadPool(1);
+    private final FramePacingScheduler scheduler;
     private final int fps;
     private final ImageFileMediaSourceConfiguration configuration;
 
-    private final int totalFiles;
+    private final ReadAheadFileReader fileReader;
     private OnStreamDataAvailable mkvDataAvailableCallback;
+    private FramePacingScheduler.PacedSource pacedSource;
     private boolean isRunning = false;
     private int frameCounter;
     private final Log log = LogFactory.getLog(ImageFrameSource.class);
@@ -42,14 +43,26 @@ public class ImageFrameSource {
     private int metadataCount = 0;
 
     public ImageFrameSource(final ImageFileMediaSourceConfiguration configuration) {
+        this(configuration, FramePacingScheduler.getShared());
+    }
+
+    public ImageFrameSource(final ImageFileMediaSourceConfiguration configuration,
+                            final FramePacingScheduler scheduler) {
         this.configuration = configuration;
-        this.totalFiles = getTotalFiles(configuration.getStartFileIndex(), configuration.getEndFileIndex());
+        this.scheduler = Preconditions.checkNotNull(scheduler);
         this.fps = configuration.getFps();
+        this.fileReader = new ReadAheadFileReader(getFiles(configuration.getStartFileIndex(),
+                configuration.getEndFileIndex()), ReadAheadFileReader.DEFAULT_READ_AHEAD_FRAMES, true);
     }
 
-    private int getTotalFiles(final int startIndex, final int endIndex) {
+    private List<Path> getFiles(final int startIndex, final int endIndex) {
         Preconditions.checkState(endIndex >= startIndex);
-        return endIndex - startIndex + 1;
+        final List<Path> files = new ArrayList<>(endIndex - startIndex + 1);
+        for (int index = startIndex; index <= endIndex; index++) {
+            files.add(Paths.get(configuration.getDir() + String.format(configuration.getFilenameFormat(), index)));
+        }
+
+        return files;
     }
 
     public void start() {
@@ -58,6 +71,7 @@ public class ImageFrameSource {
         }
 
         isRunning = true;
+        fileReader.start();
         startFrameGenerator();
     }
 
@@ -70,65 +84,58 @@ public class ImageFrameSource {
         this.mkvDataAvailableCallback = onMkvDataAvailable;
     }
 
+    /**
+     * Returns the pacing metrics of the running frame generator or null if it has not been started
+     */
+    @Nullable
+    public FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
+    }
+
     private void startFrameGenerator() {
-        executor.execute(new Runnable() {
+        pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
             @Override
-            public void run() {
-                try {
-                    generateFrameAndNotifyListener();
-                } catch (final KinesisVideoException e) {
-                    log.error("Failed to keep generating frames with Exception", e);
-                }
+            public void onTick(final long tickIndex) throws KinesisVideoException {
+                generateFrameAndNotifyListener();
             }
-        });
+        }, Duration.ofSeconds(1L).toNanos() / fps, FramePacingScheduler.CatchUpPolicy.SKIP);
     }
 
     private void generateFrameAndNotifyListener() throws KinesisVideoException {
-        while (isRunning) {
-            if (mkvDataAvailableCallback != null) {
-                mkvDataAvailableCallback.onFrameDataAvailable(createKinesisVideoFrameFromImage(frameCounter));
-                if (isMetadataReady()) {
-                    mkvDataAvailableCallback.onFragmentMetadataAvailable(metadataName + metadataCount,
-                            Integer.toString(metadataCount++), false);
-                }
-            }
+        // Only pick up a frame which is already read, the tick runs on a shared pacing thread
+        final ReadAheadFileReader.Frame frame = fileReader.next(0);
+        if (frame == null) {
+            log.warn("Frame data is not ready, skipping the frame");
+            return;
+        }
 
-            frameCounter++;
-            try {
-                Thread.sleep(Duration.ofSeconds(1L).toMillis() / fps);
-            } catch (final InterruptedException e) {
-                log.error("Frame interval wait interrupted by Exception ", e);
+        if (mkvDataAvailableCallback != null) {
+            mkvDataAvailableCallback.onFrameDataAvailable(createKinesisVideoFrame(frame.getData()));
+            if (isMetadataReady()) {
+                mkvDataAvailableCallback.onFragmentMetadataAvailable(metadataName + metadataCount,
+                        Integer.toString(metadataCount++), false);
             }
         }
+
+        frameCounter++;
     }
 
     private boolean isMetadataReady() {
         return frameCounter % METADATA_INTERVAL == 0;
     }
 
-    private KinesisVideoFrame createKinesisVideoFrameFromImage(final long index) {
-        final String filename = String.format(
-                configuration.getFilenameFormat(),
-                index % totalFiles + configuration.getStartFileIndex());
-        final Path path = Paths.get(configuration.getDir() + filename);
+    private KinesisVideoFrame createKinesisVideoFrame(final ByteBuffer data) {
         final long currentTimeMs = System.currentTimeMillis();
 
         final int flags = isKeyFrame() ? FRAME_FLAG_KEY_FRAME : FRAME_FLAG_NONE;
 
-        try {
-            final byte[] data = Files.readAllBytes(path);
-            return new KinesisVideoFrame(
-                    frameCounter,
-                    flags,
-                    currentTimeMs * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
-                    currentTimeMs * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
-                    FRAME_DURATION_20_MS * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
-                    ByteBuffer.wrap(data));
-        } catch (final IOException e) {
-            log.error("Read file failed with Exception ", e);
-        }
-
-        return null;
+        return new KinesisVideoFrame(
+                frameCounter,
+                flags,
+                currentTimeMs * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
+                currentTimeMs * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
+                FRAME_DURATION_20_MS * HUNDREDS_OF_NANOS_IN_A_MILLISECOND,
+                data);
     }
 
     private boolean isKeyFrame() {
@@ -137,6 +144,10 @@ public class ImageFrameSource {
 
 
     private void stopFrameGenerator() {
-        executor.shutdown();
+        if (pacedSource != null) {
+            pacedSource.cancel();
+        }
+
+        fileReader.stop();
     }
 }
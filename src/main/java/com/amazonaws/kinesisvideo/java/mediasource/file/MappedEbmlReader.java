@@ -0,0 +1,212 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads EBML elements from a memory-mapped file.
+ * <p>
+ * The file is mapped in windows which move forward with the read position, so files larger than a single mapping can
+ * be read. The payloads are returned as slices of the mapping without copying. A slice stays valid after the window
+ * has moved on.
+ */
+final class MappedEbmlReader implements Closeable {
+    /**
+     * Returned by {@link #readSize()} for the elements of unknown size
+     */
+    static final long UNKNOWN_SIZE = -1;
+
+    /**
+     * Default size of the mapped window
+     */
+    static final long DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final int MAX_ID_LENGTH = 4;
+    private static final int MAX_SIZE_LENGTH = 8;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    MappedEbmlReader(@Nonnull final Path file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedEbmlReader(@Nonnull final Path file, final long windowSize) throws IOException {
+        Preconditions.checkArgument(windowSize > 0 && windowSize <= Integer.MAX_VALUE, "Invalid window size");
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    void setPosition(final long position) {
+        Preconditions.checkArgument(position >= 0 && position <= size, "Position is out of the file");
+        this.position = position;
+    }
+
+    boolean hasRemaining() {
+        return position < size;
+    }
+
+    void skip(final long length) throws IOException {
+        if (length < 0 || position + length > size) {
+            throw new EOFException("Element at " + position + " of size " + length + " runs past the end of the file");
+        }
+
+        position += length;
+    }
+
+    /**
+     * Reads an element id. The id keeps its length marker bits, as the ids are written in the Matroska specification.
+     */
+    long readId() throws IOException {
+        final int length = vintLength(MAX_ID_LENGTH);
+        return readUnsigned(length);
+    }
+
+    /**
+     * Reads an element data size.
+     *
+     * @return Size or {@link #UNKNOWN_SIZE}
+     */
+    long readSize() throws IOException {
+        final int length = vintLength(MAX_SIZE_LENGTH);
+        final long value = readUnsigned(length) & valueMask(length);
+        return value == valueMask(length) ? UNKNOWN_SIZE : value;
+    }
+
+    /**
+     * Reads a variable length integer without its length marker, e.g. a block track number.
+     */
+    long readVint() throws IOException {
+        final int length = vintLength(MAX_SIZE_LENGTH);
+        return readUnsigned(length) & valueMask(length);
+    }
+
+    /**
+     * Reads a signed variable length integer as used by the EBML lacing.
+     */
+    long readSignedVint() throws IOException {
+        final int length = vintLength(MAX_SIZE_LENGTH);
+        return (readUnsigned(length) & valueMask(length)) - ((1L << (7 * length - 1)) - 1);
+    }
+
+    long readUnsigned(final int length) throws IOException {
+        Preconditions.checkArgument(length >= 0 && length <= 8, "Invalid integer length");
+        final ByteBuffer buffer = map(length);
+        final int offset = offset();
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer.get(offset + i) & 0xFF);
+        }
+
+        position += length;
+        return value;
+    }
+
+    double readFloat(final int length) throws IOException {
+        if (length == 4) {
+            return Float.intBitsToFloat((int) readUnsigned(4));
+        } else if (length == 8) {
+            return Double.longBitsToDouble(readUnsigned(8));
+        } else if (length == 0) {
+            return 0;
+        }
+
+        throw new IOException("Invalid float length " + length + " at " + position);
+    }
+
+    @Nonnull
+    String readString(final int length) throws IOException {
+        final ByteBuffer data = slice(length);
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+
+        // The strings may be zero padded
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] == 0) {
+            end--;
+        }
+
+        return new String(bytes, 0, end, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the next bytes as a read-only slice of the mapping and moves past them.
+     */
+    @Nonnull
+    ByteBuffer slice(final long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Element at " + position + " of size " + length + " is too large");
+        }
+
+        final ByteBuffer buffer = map((int) length).duplicate();
+        buffer.position(offset());
+        buffer.limit(offset() + (int) length);
+        position += length;
+        return buffer.slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int vintLength(final int maxLength) throws IOException {
+        final int first = map(1).get(offset()) & 0xFF;
+        final int length = Integer.numberOfLeadingZeros(first) - 24 + 1;
+        if (first == 0 || length > maxLength) {
+            throw new IOException("Invalid EBML variable length integer at " + position);
+        }
+
+        return length;
+    }
+
+    private static long valueMask(final int length) {
+        return (1L << (7 * length)) - 1;
+    }
+
+    private int offset() {
+        return (int) (position - windowStart);
+    }
+
+    /**
+     * Makes sure the window covers the next bytes.
+     */
+    @Nonnull
+    private MappedByteBuffer map(final int length) throws IOException {
+        if (position + length > size) {
+            throw new EOFException("Element at " + position + " of size " + length + " runs past the end of the file");
+        }
+
+        if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+            final long mappedSize = Math.min(Math.max(windowSize, length), size - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, mappedSize);
+            windowStart = position;
+        }
+
+        return window;
+    }
+}
@@ -0,0 +1,441 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Incremental MKV/WebM demuxer over a memory-mapped file.
+ * <p>
+ * The header is parsed up to the first cluster, after which the frames are read one block at a time so the memory use
+ * does not depend on the file size. The frame data are slices of the mapping. Clusters of unknown size, as written by
+ * live encoders, and concatenated segments are supported.
+ */
+final class MkvFileDemuxer implements Closeable {
+    private static final long ID_EBML = 0x1A45DFA3L;
+    private static final long ID_SEGMENT = 0x18538067L;
+    private static final long ID_INFO = 0x1549A966L;
+    private static final long ID_TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long ID_TRACKS = 0x1654AE6BL;
+    private static final long ID_TRACK_ENTRY = 0xAEL;
+    private static final long ID_TRACK_NUMBER = 0xD7L;
+    private static final long ID_TRACK_TYPE = 0x83L;
+    private static final long ID_CODEC_ID = 0x86L;
+    private static final long ID_NAME = 0x536EL;
+    private static final long ID_CODEC_PRIVATE = 0x63A2L;
+    private static final long ID_DEFAULT_DURATION = 0x23E383L;
+    private static final long ID_CLUSTER = 0x1F43B675L;
+    private static final long ID_CLUSTER_TIMECODE = 0xE7L;
+    private static final long ID_SIMPLE_BLOCK = 0xA3L;
+    private static final long ID_BLOCK_GROUP = 0xA0L;
+    private static final long ID_BLOCK = 0xA1L;
+    private static final long ID_BLOCK_DURATION = 0x9BL;
+    private static final long ID_REFERENCE_BLOCK = 0xFBL;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+    private static final int TRACK_TYPE_AUDIO = 2;
+    private static final long DEFAULT_TIMECODE_SCALE_NANOS = 1000000;
+
+    private static final int LACING_NONE = 0;
+    private static final int LACING_XIPH = 1;
+    private static final int LACING_FIXED = 2;
+    private static final int LACING_EBML = 3;
+    private static final int SIMPLE_BLOCK_KEY_FRAME = 0x80;
+
+    /**
+     * Track parsed from the Tracks element
+     */
+    static final class Track {
+        private long number;
+        private MkvTrackInfoType type = MkvTrackInfoType.UNKNOWN;
+        private String codecId;
+        private String name;
+        private byte[] codecPrivateData;
+        private long defaultDurationNanos;
+
+        long getNumber() {
+            return number;
+        }
+
+        @Nonnull
+        MkvTrackInfoType getType() {
+            return type;
+        }
+
+        @Nullable
+        String getCodecId() {
+            return codecId;
+        }
+
+        @Nullable
+        String getName() {
+            return name;
+        }
+
+        @Nullable
+        byte[] getCodecPrivateData() {
+            return codecPrivateData;
+        }
+
+        long getDefaultDurationNanos() {
+            return defaultDurationNanos;
+        }
+    }
+
+    /**
+     * Frame read from a block
+     */
+    static final class Frame {
+        private final long trackNumber;
+        private final long timecodeNanos;
+        private final long durationNanos;
+        private final boolean keyFrame;
+        private final ByteBuffer data;
+
+        private Frame(final long trackNumber, final long timecodeNanos, final long durationNanos,
+                      final boolean keyFrame, @Nonnull final ByteBuffer data) {
+            this.trackNumber = trackNumber;
+            this.timecodeNanos = timecodeNanos;
+            this.durationNanos = durationNanos;
+            this.keyFrame = keyFrame;
+            this.data = data;
+        }
+
+        long getTrackNumber() {
+            return trackNumber;
+        }
+
+        long getTimecodeNanos() {
+            return timecodeNanos;
+        }
+
+        long getDurationNanos() {
+            return durationNanos;
+        }
+
+        boolean isKeyFrame() {
+            return keyFrame;
+        }
+
+        @Nonnull
+        ByteBuffer getData() {
+            return data;
+        }
+    }
+
+    private final MappedEbmlReader reader;
+    private final Queue<Frame> lacedFrames = new ArrayDeque<Frame>();
+
+    private List<Track> tracks = Collections.emptyList();
+    private long timecodeScaleNanos = DEFAULT_TIMECODE_SCALE_NANOS;
+    private long segmentEnd;
+    private long clusterEnd;
+    private boolean inCluster;
+    private long clusterTimecode;
+
+    MkvFileDemuxer(@Nonnull final Path file) throws IOException {
+        this(new MappedEbmlReader(file));
+    }
+
+    MkvFileDemuxer(@Nonnull final MappedEbmlReader reader) throws IOException {
+        this.reader = reader;
+        this.segmentEnd = reader.getSize();
+        try {
+            readHeader();
+        } catch (final IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    List<Track> getTracks() {
+        return tracks;
+    }
+
+    long getTimecodeScaleNanos() {
+        return timecodeScaleNanos;
+    }
+
+    /**
+     * Returns the next frame in the file order or null at the end of the file.
+     */
+    @Nullable
+    Frame next() throws IOException {
+        while (lacedFrames.isEmpty()) {
+            if (inCluster && reader.getPosition() >= clusterEnd) {
+                inCluster = false;
+            }
+
+            if (!reader.hasRemaining()) {
+                return null;
+            }
+
+            final long id = reader.readId();
+            final long size = reader.readSize();
+            if (enterContainer(id, size)) {
+                continue;
+            }
+
+            if (inCluster && id == ID_CLUSTER_TIMECODE) {
+                clusterTimecode = reader.readUnsigned((int) requireSize(size));
+            } else if (inCluster && id == ID_SIMPLE_BLOCK) {
+                final long blockEnd = reader.getPosition() + requireSize(size);
+                readBlock(blockEnd, true, false, -1);
+                reader.setPosition(blockEnd);
+            } else if (inCluster && id == ID_BLOCK_GROUP) {
+                readBlockGroup(reader.getPosition() + requireSize(size));
+            } else if (id == ID_INFO) {
+                readInfo(reader.getPosition() + requireSize(size));
+            } else if (id == ID_TRACKS) {
+                readTracks(reader.getPosition() + requireSize(size));
+            } else {
+                reader.skip(requireSize(size));
+            }
+        }
+
+        return lacedFrames.poll();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readHeader() throws IOException {
+        while (reader.hasRemaining()) {
+            final long elementStart = reader.getPosition();
+            final long id = reader.readId();
+            final long size = reader.readSize();
+            if (id == ID_CLUSTER) {
+                // The frames are read by next()
+                reader.setPosition(elementStart);
+                break;
+            }
+
+            if (enterContainer(id, size)) {
+                continue;
+            }
+
+            if (id == ID_INFO) {
+                readInfo(reader.getPosition() + requireSize(size));
+            } else if (id == ID_TRACKS) {
+                readTracks(reader.getPosition() + requireSize(size));
+            } else {
+                reader.skip(requireSize(size));
+            }
+        }
+
+        if (tracks.isEmpty()) {
+            throw new IOException("MKV file has no tracks");
+        }
+    }
+
+    /**
+     * Steps into the segment and cluster elements rather than skipping them.
+     *
+     * @return whether the element has been entered
+     */
+    private boolean enterContainer(final long id, final long size) {
+        if (id == ID_SEGMENT) {
+            segmentEnd = size == MappedEbmlReader.UNKNOWN_SIZE
+                    ? reader.getSize()
+                    : Math.min(reader.getSize(), reader.getPosition() + size);
+            inCluster = false;
+            return true;
+        }
+
+        if (id == ID_CLUSTER) {
+            // A cluster of unknown size ends where the next cluster or the segment starts
+            clusterEnd = size == MappedEbmlReader.UNKNOWN_SIZE ? segmentEnd : reader.getPosition() + size;
+            clusterTimecode = 0;
+            inCluster = true;
+            return true;
+        }
+
+        if (id == ID_EBML) {
+            inCluster = false;
+        }
+
+        return false;
+    }
+
+    private void readInfo(final long end) throws IOException {
+        while (reader.getPosition() < end) {
+            final long id = reader.readId();
+            final long size = requireSize(reader.readSize());
+            if (id == ID_TIMECODE_SCALE) {
+                timecodeScaleNanos = reader.readUnsigned((int) size);
+            } else {
+                reader.skip(size);
+            }
+        }
+    }
+
+    private void readTracks(final long end) throws IOException {
+        final List<Track> parsedTracks = new ArrayList<Track>();
+        while (reader.getPosition() < end) {
+            final long id = reader.readId();
+            final long size = requireSize(reader.readSize());
+            if (id == ID_TRACK_ENTRY) {
+                parsedTracks.add(readTrackEntry(reader.getPosition() + size));
+            } else {
+                reader.skip(size);
+            }
+        }
+
+        tracks = Collections.unmodifiableList(parsedTracks);
+    }
+
+    @Nonnull
+    private Track readTrackEntry(final long end) throws IOException {
+        final Track track = new Track();
+        while (reader.getPosition() < end) {
+            final long id = reader.readId();
+            final long size = requireSize(reader.readSize());
+            if (id == ID_TRACK_NUMBER) {
+                track.number = reader.readUnsigned((int) size);
+            } else if (id == ID_TRACK_TYPE) {
+                final long type = reader.readUnsigned((int) size);
+                track.type = type == TRACK_TYPE_VIDEO
+                        ? MkvTrackInfoType.VIDEO
+                        : type == TRACK_TYPE_AUDIO ? MkvTrackInfoType.AUDIO : MkvTrackInfoType.UNKNOWN;
+            } else if (id == ID_CODEC_ID) {
+                track.codecId = reader.readString((int) size);
+            } else if (id == ID_NAME) {
+                track.name = reader.readString((int) size);
+            } else if (id == ID_CODEC_PRIVATE) {
+                // The track info is handed to the native code as a heap array
+                final ByteBuffer data = reader.slice(size);
+                track.codecPrivateData = new byte[data.remaining()];
+                data.get(track.codecPrivateData);
+            } else if (id == ID_DEFAULT_DURATION) {
+                track.defaultDurationNanos = reader.readUnsigned((int) size);
+            } else {
+                reader.skip(size);
+            }
+        }
+
+        return track;
+    }
+
+    private void readBlockGroup(final long end) throws IOException {
+        long blockStart = -1;
+        long blockEnd = -1;
+        boolean referencesOtherFrames = false;
+        long durationTicks = -1;
+        while (reader.getPosition() < end) {
+            final long id = reader.readId();
+            final long size = requireSize(reader.readSize());
+            if (id == ID_BLOCK) {
+                blockStart = reader.getPosition();
+                blockEnd = blockStart + size;
+            } else if (id == ID_REFERENCE_BLOCK) {
+                referencesOtherFrames = true;
+            } else if (id == ID_BLOCK_DURATION) {
+                durationTicks = reader.readUnsigned((int) size);
+                continue;
+            }
+
+            reader.skip(size);
+        }
+
+        if (blockStart >= 0) {
+            reader.setPosition(blockStart);
+            readBlock(blockEnd, false, !referencesOtherFrames, durationTicks);
+        }
+
+        reader.setPosition(end);
+    }
+
+    private void readBlock(final long end,
+                           final boolean simpleBlock,
+                           final boolean blockGroupKeyFrame,
+                           final long durationTicks) throws IOException {
+        final long trackNumber = reader.readVint();
+        final short relativeTimecode = (short) reader.readUnsigned(2);
+        final int flags = (int) reader.readUnsigned(1);
+        final boolean keyFrame = simpleBlock ? (flags & SIMPLE_BLOCK_KEY_FRAME) != 0 : blockGroupKeyFrame;
+        final int lacing = (flags >> 1) & 0x03;
+
+        final long timecodeNanos = (clusterTimecode + relativeTimecode) * timecodeScaleNanos;
+        final long defaultDurationNanos = defaultDurationNanos(trackNumber);
+
+        if (lacing == LACING_NONE) {
+            final long durationNanos = durationTicks >= 0 ? durationTicks * timecodeScaleNanos : defaultDurationNanos;
+            lacedFrames.add(new Frame(trackNumber, timecodeNanos, durationNanos, keyFrame,
+                    reader.slice(end - reader.getPosition())));
+            return;
+        }
+
+        final int frameCount = (int) reader.readUnsigned(1) + 1;
+        final long[] frameSizes = new long[frameCount];
+        long lacedSize = 0;
+        for (int i = 0; i < frameCount - 1; i++) {
+            if (lacing == LACING_XIPH) {
+                long laceSize = 0;
+                long laceByte;
+                do {
+                    laceByte = reader.readUnsigned(1);
+                    laceSize += laceByte;
+                } while (laceByte == 0xFF);
+                frameSizes[i] = laceSize;
+            } else if (lacing == LACING_EBML) {
+                frameSizes[i] = i == 0 ? reader.readVint() : frameSizes[i - 1] + reader.readSignedVint();
+            }
+
+            lacedSize += frameSizes[i];
+        }
+
+        final long payloadSize = end - reader.getPosition();
+        if (lacing == LACING_FIXED) {
+            if (payloadSize % frameCount != 0) {
+                throw new IOException("Fixed-size laced block at " + reader.getPosition() + " is not evenly divided");
+            }
+
+            for (int i = 0; i < frameCount; i++) {
+                frameSizes[i] = payloadSize / frameCount;
+            }
+        } else {
+            frameSizes[frameCount - 1] = payloadSize - lacedSize;
+        }
+
+        for (int i = 0; i < frameCount; i++) {
+            if (frameSizes[i] < 0 || reader.getPosition() + frameSizes[i] > end) {
+                throw new IOException("Invalid lace size in the block ending at " + end);
+            }
+
+            // The laced frames share the block timecode, space them out by the track's default duration
+            lacedFrames.add(new Frame(trackNumber, timecodeNanos + i * defaultDurationNanos, defaultDurationNanos,
+                    keyFrame, reader.slice(frameSizes[i])));
+        }
+    }
+
+    private long defaultDurationNanos(final long trackNumber) {
+        for (final Track track : tracks) {
+            if (track.number == trackNumber) {
+                return track.defaultDurationNanos;
+            }
+        }
+
+        return 0;
+    }
+
+    private long requireSize(final long size) throws IOException {
+        if (size == MappedEbmlReader.UNKNOWN_SIZE) {
+            throw new IOException("Element of unknown size at " + reader.getPosition() + " is not supported");
+        }
+
+        return size;
+    }
+}
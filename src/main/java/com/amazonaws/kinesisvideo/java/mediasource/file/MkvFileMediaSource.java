@@ -0,0 +1,305 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.client.mediasource.MediaSourceState;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSource;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceConfiguration;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.DefaultOnStreamDataAvailable;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamInfo;
+import com.amazonaws.kinesisvideo.producer.TrackInfo;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_AN_HOUR;
+import static com.amazonaws.kinesisvideo.producer.Time.NANOS_IN_A_TIME_UNIT;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_BITRATE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.DEFAULT_GOP_DURATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.KEYFRAME_FRAGMENTATION;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NOT_ADAPTIVE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.NO_KMS_KEY_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECALCULATE_METRICS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RECOVER_ON_FAILURE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.REQUEST_FRAGMENT_ACKS;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.USE_FRAME_TIMECODES;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VERSION_ZERO;
+
+/**
+ * MediaSource replaying a recorded MKV/WebM file through the producer.
+ * <p>
+ * Unlike sending the raw file with {@link com.amazonaws.kinesisvideo.client.stream.PutMediaManager}, the frames go
+ * through the producer buffering, fragmenting and ACK handling. The tracks, including their codec private data, are
+ * taken from the file. With the {@link MkvFileMediaSourceConfiguration.Pacing#AS_FAST_AS_POSSIBLE} pacing the stream is
+ * created in the offline mode, in which the producer holds the frames back while its buffer is full, so large archives
+ * can be bulk loaded.
+ */
+public class MkvFileMediaSource implements MediaSource {
+    private static final String DEFAULT_CONTENT_TYPE = "video/x-matroska";
+
+    private final String streamName;
+    private final CompletableFuture<Boolean> future;
+    private final CompletableFuture<Long> endOfFile = new CompletableFuture<Long>();
+    private final FramePacingScheduler scheduler;
+
+    private MkvFileMediaSourceConfiguration configuration;
+    private MediaSourceState mediaSourceState;
+    private MediaSourceSink mediaSourceSink;
+    private MkvFrameSource frameSource;
+
+    public MkvFileMediaSource(@Nonnull final String streamName) {
+        this(streamName, new CompletableFuture<Boolean>());
+    }
+
+    public MkvFileMediaSource(@Nonnull final String streamName, final CompletableFuture<Boolean> future) {
+        this(streamName, future, FramePacingScheduler.getShared());
+    }
+
+    public MkvFileMediaSource(@Nonnull final String streamName,
+                              final CompletableFuture<Boolean> future,
+                              @Nonnull final FramePacingScheduler scheduler) {
+        this.streamName = streamName;
+        this.future = future;
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+    }
+
+    @Override
+    public MediaSourceState getMediaSourceState() {
+        return mediaSourceState;
+    }
+
+    @Override
+    public MediaSourceConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public StreamInfo getStreamInfo() throws KinesisVideoException {
+        final MkvFileDemuxer demuxer = openFile();
+        try {
+            final TrackInfo[] trackInfoList = configuration.getTrackInfoList() != null
+                    ? configuration.getTrackInfoList()
+                    : getTrackInfoList(demuxer.getTracks());
+            final String contentType = configuration.getContentType() != null
+                    ? configuration.getContentType()
+                    : getContentType(demuxer.getTracks());
+            final StreamInfo.StreamingType streamingType =
+                    configuration.getPacing() == MkvFileMediaSourceConfiguration.Pacing.REAL_TIME
+                            ? StreamInfo.StreamingType.STREAMING_TYPE_REALTIME
+                            : StreamInfo.StreamingType.STREAMING_TYPE_OFFLINE;
+
+            return new StreamInfo(VERSION_ZERO,
+                    streamName,
+                    streamingType,
+                    contentType,
+                    NO_KMS_KEY_ID,
+                    configuration.getRetentionPeriodInHours() * HUNDREDS_OF_NANOS_IN_AN_HOUR,
+                    NOT_ADAPTIVE,
+                    configuration.getLatencyPressure(),
+                    DEFAULT_GOP_DURATION,
+                    KEYFRAME_FRAGMENTATION,
+                    USE_FRAME_TIMECODES,
+                    configuration.isAbsoluteTimecode(),
+                    REQUEST_FRAGMENT_ACKS,
+                    RECOVER_ON_FAILURE,
+                    DEFAULT_BITRATE,
+                    configuration.getFps(),
+                    configuration.getBufferDuration(),
+                    configuration.getReplayDuration(),
+                    configuration.getStalenessDuration(),
+                    // Keep the timecode resolution of the file
+                    Math.max(1, demuxer.getTimecodeScaleNanos() / NANOS_IN_A_TIME_UNIT),
+                    RECALCULATE_METRICS,
+                    null,
+                    configuration.getNalAdaptationFlag(),
+                    null,
+                    trackInfoList);
+        } finally {
+            closeFile(demuxer);
+        }
+    }
+
+    @Override
+    public void initialize(@Nonnull final MediaSourceSink mediaSourceSink) throws KinesisVideoException {
+        this.mediaSourceSink = mediaSourceSink;
+    }
+
+    @Override
+    public void configure(final MediaSourceConfiguration configuration) {
+        Preconditions.checkState(this.configuration == null);
+
+        if (!(configuration instanceof MkvFileMediaSourceConfiguration)) {
+            throw new IllegalStateException("Configuration must be an instance of MkvFileMediaSourceConfiguration");
+        }
+
+        this.configuration = (MkvFileMediaSourceConfiguration) configuration;
+        Preconditions.checkNotNull(this.configuration.getFilePath(), "MKV file path must be set");
+    }
+
+    @Override
+    public void start() throws KinesisVideoException {
+        mediaSourceState = MediaSourceState.RUNNING;
+        frameSource = new MkvFrameSource(openFile(), configuration.getPacing(), scheduler, endOfFile);
+        frameSource.onStreamDataAvailable(new DefaultOnStreamDataAvailable(mediaSourceSink));
+        frameSource.start();
+    }
+
+    @Override
+    public void stop() throws KinesisVideoException {
+        if (frameSource != null) {
+            frameSource.stop();
+        }
+
+        try {
+            if (null != mediaSourceSink && null != mediaSourceSink.getProducerStream()) {
+                mediaSourceSink.getProducerStream().stopStreamSync();
+            }
+        } finally {
+            mediaSourceState = MediaSourceState.STOPPED;
+            future.complete(true);
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        return mediaSourceState == MediaSourceState.STOPPED;
+    }
+
+    @Override
+    public void free() throws KinesisVideoException {
+        // No-op
+    }
+
+    @Override
+    public MediaSourceSink getMediaSourceSink() {
+        return mediaSourceSink;
+    }
+
+    @Nullable
+    @Override
+    public StreamCallbacks getStreamCallbacks() {
+        return null;
+    }
+
+    /**
+     * Returns a future completed with the number of the frames sent once the whole file has been handed to the
+     * producer, or exceptionally if the file could not be read. Stop the media source afterwards to drain the stream.
+     */
+    @Nonnull
+    public CompletableFuture<Long> getEndOfFileFuture() {
+        return endOfFile;
+    }
+
+    /**
+     * Returns the pacing metrics of the real-time replay or null
+     */
+    @Nullable
+    public FramePacingScheduler.PacedSource getPacing() {
+        return frameSource != null ? frameSource.getPacing() : null;
+    }
+
+    @Nonnull
+    private MkvFileDemuxer openFile() throws KinesisVideoException {
+        try {
+            return new MkvFileDemuxer(Paths.get(configuration.getFilePath()));
+        } catch (final IOException e) {
+            throw new KinesisVideoException("Failed to read MKV file " + configuration.getFilePath(), e);
+        }
+    }
+
+    private static void closeFile(@Nonnull final MkvFileDemuxer demuxer) throws KinesisVideoException {
+        try {
+            demuxer.close();
+        } catch (final IOException e) {
+            throw new KinesisVideoException(e);
+        }
+    }
+
+    @Nonnull
+    private static TrackInfo[] getTrackInfoList(@Nonnull final List<MkvFileDemuxer.Track> tracks) {
+        final List<TrackInfo> trackInfoList = new ArrayList<TrackInfo>(tracks.size());
+        for (final MkvFileDemuxer.Track track : tracks) {
+            trackInfoList.add(new TrackInfo(track.getNumber(), track.getCodecId(), track.getName(),
+                    track.getCodecPrivateData(), track.getType()));
+        }
+
+        return trackInfoList.toArray(new TrackInfo[trackInfoList.size()]);
+    }
+
+    @Nonnull
+    private static String getContentType(@Nonnull final List<MkvFileDemuxer.Track> tracks) {
+        final Set<String> contentTypes = new LinkedHashSet<String>();
+        for (final MkvFileDemuxer.Track track : tracks) {
+            final String contentType = contentTypeFromCodecId(track.getCodecId());
+            if (contentType != null) {
+                contentTypes.add(contentType);
+            }
+        }
+
+        if (contentTypes.isEmpty()) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        for (final String contentType : contentTypes) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+
+            builder.append(contentType);
+        }
+
+        return builder.toString();
+    }
+
+    @Nullable
+    private static String contentTypeFromCodecId(@Nullable final String codecId) {
+        if (codecId == null) {
+            return null;
+        }
+
+        if (codecId.equals("V_MPEG4/ISO/AVC")) {
+            return "video/h264";
+        }
+
+        if (codecId.equals("V_MPEGH/ISO/HEVC")) {
+            return "video/h265";
+        }
+
+        if (codecId.equals("V_VP8")) {
+            return "video/x-vnd.on2.vp8";
+        }
+
+        if (codecId.equals("V_VP9")) {
+            return "video/x-vnd.on2.vp9";
+        }
+
+        if (codecId.startsWith("A_AAC")) {
+            return "audio/aac";
+        }
+
+        if (codecId.equals("A_OPUS")) {
+            return "audio/opus";
+        }
+
+        if (codecId.equals("A_VORBIS")) {
+            return "audio/vorbis";
+        }
+
+        if (codecId.equals("A_MPEG/L3")) {
+            return "audio/mpeg";
+        }
+
+        return null;
+    }
+}
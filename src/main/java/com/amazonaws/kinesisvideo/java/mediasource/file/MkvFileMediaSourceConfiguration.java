@@ -0,0 +1,87 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.internal.mediasource.multitrack.MultiTrackMediaSourceConfiguration;
+
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.RELATIVE_TIMECODES;
+
+public class MkvFileMediaSourceConfiguration extends MultiTrackMediaSourceConfiguration {
+    private static final String MEDIA_SOURCE_TYPE = "MkvFileMediaSource";
+    private static final String MEDIA_SOURCE_DESCRIPTION = "Media Source replaying the frames of an MKV file. ";
+
+    /**
+     * How fast the frames are handed to the producer
+     */
+    public enum Pacing {
+        /**
+         * At the pace given by the frame timecodes
+         */
+        REAL_TIME,
+
+        /**
+         * As fast as the producer accepts them, e.g. to bulk load an archive
+         */
+        AS_FAST_AS_POSSIBLE
+    }
+
+    private final Builder builder;
+
+    protected MkvFileMediaSourceConfiguration(final Builder builder) {
+        super(builder);
+        this.builder = builder;
+    }
+
+    public String getFilePath() {
+        return builder.filePath;
+    }
+
+    public Pacing getPacing() {
+        return builder.pacing;
+    }
+
+    @Override
+    public String getMediaSourceType() {
+        return MEDIA_SOURCE_TYPE;
+    }
+
+    @Override
+    public String getMediaSourceDescription() {
+        return MEDIA_SOURCE_DESCRIPTION;
+    }
+
+    public static class MkvFileBuilder extends Builder<MkvFileBuilder> {
+        public MkvFileBuilder() {
+            super(MkvFileBuilder.class);
+        }
+    }
+
+    protected static class Builder<T extends Builder<T>>
+            extends MultiTrackMediaSourceConfiguration.Builder<T> {
+        private String filePath;
+        private Pacing pacing = Pacing.REAL_TIME;
+
+        public Builder(final Class<?> builder) {
+            super();
+
+            // The original timecodes of the file are relative to its start
+            withAbsoluteTimecode(RELATIVE_TIMECODES);
+        }
+
+        public T withFilePath(final String filePath) {
+            this.filePath = filePath;
+            return (T) this;
+        }
+
+        public T withPacing(final Pacing pacing) {
+            this.pacing = pacing;
+            return (T) this;
+        }
+
+        /**
+         * The content type and the track info list are taken from the file unless they are set explicitly.
+         */
+        @Override
+        public MkvFileMediaSourceConfiguration build() {
+            return new MkvFileMediaSourceConfiguration(this);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.internal.mediasource.OnStreamDataAvailable;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static com.amazonaws.kinesisvideo.producer.Time.NANOS_IN_A_TIME_UNIT;
+
+/**
+ * Frame source replaying the frames of an MKV file with their original timecodes and track ids.
+ * <p>
+ * In the real-time mode the frames are handed out on the shared {@link FramePacingScheduler} once the time elapsed
+ * since the start has caught up with their timecode. Otherwise a dedicated thread hands them out as fast as the
+ * producer accepts them.
+ */
+class MkvFrameSource {
+    /**
+     * Tick period of the real-time pacing. The frames due within a tick are sent together.
+     */
+    private static final long REAL_TIME_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Log log = LogFactory.getLog(MkvFrameSource.class);
+    private final MkvFileDemuxer demuxer;
+    private final MkvFileMediaSourceConfiguration.Pacing pacing;
+    private final FramePacingScheduler scheduler;
+    private final CompletableFuture<Long> endOfFile;
+    private final Set<Long> keyFrameTracks = new HashSet<Long>();
+
+    private OnStreamDataAvailable streamDataAvailable;
+    private volatile boolean isRunning;
+    private FramePacingScheduler.PacedSource pacedSource;
+    private Thread readerThread;
+    private int frameIndex;
+    private long startNanos;
+    private long firstTimecodeNanos = -1;
+    private MkvFileDemuxer.Frame pendingFrame;
+
+    /**
+     * @param demuxer Demuxer positioned at the first frame. Closed by the frame source.
+     * @param pacing How fast the frames are handed out
+     * @param scheduler Scheduler pacing the real-time mode
+     * @param endOfFile Completed with the number of the frames sent once the whole file has been sent
+     */
+    MkvFrameSource(@Nonnull final MkvFileDemuxer demuxer,
+                   @Nonnull final MkvFileMediaSourceConfiguration.Pacing pacing,
+                   @Nonnull final FramePacingScheduler scheduler,
+                   @Nonnull final CompletableFuture<Long> endOfFile) {
+        this.demuxer = Preconditions.checkNotNull(demuxer);
+        this.pacing = Preconditions.checkNotNull(pacing);
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        this.endOfFile = Preconditions.checkNotNull(endOfFile);
+
+        // The fragments start on the video key frames. Audio frames are only key frames in audio-only files.
+        for (final MkvFileDemuxer.Track track : demuxer.getTracks()) {
+            if (track.getType() == MkvTrackInfoType.VIDEO) {
+                keyFrameTracks.add(track.getNumber());
+            }
+        }
+
+        if (keyFrameTracks.isEmpty()) {
+            for (final MkvFileDemuxer.Track track : demuxer.getTracks()) {
+                keyFrameTracks.add(track.getNumber());
+            }
+        }
+    }
+
+    void onStreamDataAvailable(final OnStreamDataAvailable streamDataAvailable) {
+        this.streamDataAvailable = streamDataAvailable;
+    }
+
+    synchronized void start() {
+        Preconditions.checkState(!isRunning, "Frame source is already running");
+        isRunning = true;
+        startNanos = System.nanoTime();
+
+        if (pacing == MkvFileMediaSourceConfiguration.Pacing.REAL_TIME) {
+            pacedSource = scheduler.schedule(new FramePacingScheduler.Tick() {
+                @Override
+                public void onTick(final long tickIndex) {
+                    sendDueFrames();
+                }
+            }, REAL_TIME_TICK_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+        } else {
+            readerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    sendAllFrames();
+                }
+            }, "KVS-MkvFileReader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+        }
+    }
+
+    synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+
+        isRunning = false;
+        if (pacedSource != null) {
+            pacedSource.cancel();
+            closeDemuxer();
+        }
+
+        // The reader thread closes the demuxer once it notices the stop
+    }
+
+    /**
+     * Returns the pacing metrics of the real-time mode or null
+     */
+    @Nullable
+    synchronized FramePacingScheduler.PacedSource getPacing() {
+        return pacedSource;
+    }
+
+    private void sendDueFrames() {
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        try {
+            while (isRunning) {
+                final MkvFileDemuxer.Frame frame = pendingFrame != null ? pendingFrame : demuxer.next();
+                pendingFrame = null;
+                if (frame == null) {
+                    complete();
+                    return;
+                }
+
+                if (firstTimecodeNanos < 0) {
+                    firstTimecodeNanos = frame.getTimecodeNanos();
+                }
+
+                if (frame.getTimecodeNanos() - firstTimecodeNanos > elapsedNanos) {
+                    pendingFrame = frame;
+                    return;
+                }
+
+                send(frame);
+            }
+        } catch (final IOException e) {
+            fail(e);
+        } catch (final KinesisVideoException e) {
+            fail(e);
+        }
+    }
+
+    private void sendAllFrames() {
+        try {
+            while (isRunning) {
+                final MkvFileDemuxer.Frame frame = demuxer.next();
+                if (frame == null) {
+                    complete();
+                    return;
+                }
+
+                send(frame);
+            }
+        } catch (final IOException e) {
+            fail(e);
+        } catch (final KinesisVideoException e) {
+            fail(e);
+        } finally {
+            closeDemuxer();
+        }
+    }
+
+    private void send(@Nonnull final MkvFileDemuxer.Frame frame) throws KinesisVideoException {
+        if (!frame.getData().hasRemaining()) {
+            log.warn("Skipping an empty frame of track " + frame.getTrackNumber());
+            return;
+        }
+
+        final int flags = frame.isKeyFrame() && keyFrameTracks.contains(frame.getTrackNumber())
+                ? FRAME_FLAG_KEY_FRAME
+                : FRAME_FLAG_NONE;
+
+        // The producer timestamps are in hundreds of nanos. Matroska only stores the presentation timecodes.
+        final long timestamp = frame.getTimecodeNanos() / NANOS_IN_A_TIME_UNIT;
+        if (streamDataAvailable != null) {
+            streamDataAvailable.onFrameDataAvailable(new KinesisVideoFrame(frameIndex,
+                    flags,
+                    timestamp,
+                    timestamp,
+                    frame.getDurationNanos() / NANOS_IN_A_TIME_UNIT,
+                    frame.getData(),
+                    frame.getTrackNumber()));
+        }
+
+        frameIndex++;
+    }
+
+    private void complete() {
+        log.info("Sent all " + frameIndex + " frames of the MKV file");
+        stopOnEnd();
+        endOfFile.complete((long) frameIndex);
+    }
+
+    private void fail(@Nonnull final Exception e) {
+        if (!isRunning) {
+            // Stopped while reading
+            return;
+        }
+
+        log.error("Sending the MKV file frames failed after " + frameIndex + " frames", e);
+        stopOnEnd();
+        endOfFile.completeExceptionally(e);
+    }
+
+    private synchronized void stopOnEnd() {
+        isRunning = false;
+        if (pacedSource != null) {
+            pacedSource.cancel();
+            closeDemuxer();
+        }
+    }
+
+    private void closeDemuxer() {
+        try {
+            demuxer.close();
+        } catch (final IOException e) {
+            log.warn("Closing the MKV file failed", e);
+        }
+    }
+}
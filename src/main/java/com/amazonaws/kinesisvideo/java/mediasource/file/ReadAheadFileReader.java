@@ -0,0 +1,174 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads an indexed sequence of frame files ahead of the frame pacing thread.
+ * <p>
+ * A dedicated I/O thread memory-maps the next files, faults them into memory and queues them into a bounded
+ * read-ahead ring, so the pacing thread only picks up ready buffers. The mapped buffers are direct, which also lets
+ * {@link com.amazonaws.kinesisvideo.producer.KinesisVideoFrame#getData()} hand them to the producer without a copy.
+ * <p>
+ * A mapping is only referenced by its queued frame, so it is released once the read position has passed the file
+ * instead of the whole sequence staying mapped. Looping maps the files again on every pass.
+ */
+final class ReadAheadFileReader {
+    /**
+     * Default number of the frames read ahead
+     */
+    static final int DEFAULT_READ_AHEAD_FRAMES = 8;
+
+    /**
+     * Data of a frame file ready to be sent
+     */
+    static final class Frame {
+        private final int index;
+        private final ByteBuffer data;
+
+        private Frame(final int index, @Nonnull final ByteBuffer data) {
+            this.index = index;
+            this.data = data;
+        }
+
+        /**
+         * Returns the index of the file in the playback order
+         */
+        int getIndex() {
+            return index;
+        }
+
+        @Nonnull
+        ByteBuffer getData() {
+            return data;
+        }
+    }
+
+    private final Log log = LogFactory.getLog(ReadAheadFileReader.class);
+    private final List<Path> files;
+    private final boolean loop;
+    private final BlockingQueue<Frame> readAhead;
+    private final AtomicLong underrunCount = new AtomicLong();
+
+    private Thread ioThread;
+    private volatile boolean isRunning;
+
+    /**
+     * @param files Frame files in the playback order
+     * @param readAheadFrames Max number of the frames kept ready
+     * @param loop Whether to restart from the first file after the last one
+     */
+    ReadAheadFileReader(@Nonnull final List<Path> files, final int readAheadFrames, final boolean loop) {
+        Preconditions.checkArgument(!files.isEmpty(), "No frame files to read");
+        Preconditions.checkArgument(readAheadFrames > 0, "Read ahead must be positive");
+        this.files = new ArrayList<Path>(files);
+        this.loop = loop;
+        this.readAhead = new ArrayBlockingQueue<Frame>(readAheadFrames);
+    }
+
+    synchronized void start() {
+        Preconditions.checkState(!isRunning, "Reader is already running");
+        isRunning = true;
+        ioThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readFiles();
+            }
+        }, "KVS-FrameFileReader");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    synchronized void stop() {
+        isRunning = false;
+        if (ioThread != null) {
+            ioThread.interrupt();
+            ioThread = null;
+        }
+
+        readAhead.clear();
+    }
+
+    /**
+     * Returns the next frame. Files which failed to read are skipped.
+     *
+     * @param timeoutInMillis Max time to wait for the frame to become ready
+     * @return Frame or null if it was not ready in time or there are no more files
+     */
+    @Nullable
+    Frame next(final long timeoutInMillis) {
+        try {
+            final Frame frame = readAhead.poll(timeoutInMillis, TimeUnit.MILLISECONDS);
+            if (frame == null && isRunning) {
+                underrunCount.incrementAndGet();
+            }
+
+            return frame;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of times the frame data was not ready when the pacing thread asked for it
+     */
+    long getUnderrunCount() {
+        return underrunCount.get();
+    }
+
+    private void readFiles() {
+        int index = 0;
+        int readsInPass = 0;
+        while (isRunning) {
+            try {
+                final MappedByteBuffer mappedFile = map(index);
+
+                // Fault the pages in on this thread rather than on the pacing thread
+                mappedFile.load();
+
+                readAhead.put(new Frame(index, mappedFile));
+                readsInPass++;
+            } catch (final IOException e) {
+                log.error("Read file " + files.get(index) + " failed with Exception ", e);
+            } catch (final InterruptedException e) {
+                break;
+            }
+
+            index++;
+            if (index == files.size()) {
+                if (!loop || readsInPass == 0) {
+                    // Avoid spinning over files which can't be read
+                    break;
+                }
+
+                index = 0;
+                readsInPass = 0;
+            }
+        }
+    }
+
+    @Nonnull
+    private MappedByteBuffer map(final int index) throws IOException {
+        try (final FileChannel channel = FileChannel.open(files.get(index), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed and is unmapped once the frame is collected
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
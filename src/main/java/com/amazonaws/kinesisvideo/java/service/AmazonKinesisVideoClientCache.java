@@ -0,0 +1,415 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSSessionCredentials;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideo;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of control-plane {@link AmazonKinesisVideo} clients.
+ * <p>
+ * Building an {@link AmazonKinesisVideo} client creates a new HTTP connection pool, TLS context and endpoint
+ * resolver, so a client is reused for every call that shares the same credentials, region, endpoint and timeout.
+ * Entries are kept in least-recently-used order, are evicted when the cache grows past its capacity or when they
+ * have not been used for the idle timeout, and are only shut down once no caller holds a lease on them.
+ * <p>
+ * A missing client is created outside of the lock, so the calls with the other keys are not held while it is built.
+ * The concurrent misses of the same key wait for the one creating the client instead of building their own.
+ * <p>
+ * NOTE: Idle eviction is performed lazily on every acquire, so no extra thread is needed.
+ */
+public final class AmazonKinesisVideoClientCache {
+    /**
+     * Default max number of cached clients
+     */
+    public static final int DEFAULT_MAX_CLIENTS = 16;
+
+    /**
+     * Default duration after which an unused client is evicted
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Creates a new client for the given key on a cache miss.
+     */
+    public interface ClientFactory {
+        @Nonnull
+        AmazonKinesisVideo create(@Nonnull final Key key);
+    }
+
+    /**
+     * A leased client. Must be released once the service call has completed.
+     */
+    public final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(@Nonnull final Entry entry) {
+            this.entry = entry;
+        }
+
+        @Nonnull
+        public AmazonKinesisVideo getClient() {
+            return entry.client;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(entry);
+            }
+        }
+    }
+
+    /**
+     * Cache key. Credentials are compared by value so that credentials deserialized from the same token share a
+     * client while rotated credentials get a new one.
+     */
+    public static final class Key {
+        private final AWSCredentials credentials;
+        private final String accessKey;
+        private final String secretKey;
+        private final String sessionToken;
+        private final String region;
+        private final String endpoint;
+        private final int timeoutInMillis;
+
+        public Key(@Nullable final AWSCredentials credentials,
+                   @Nonnull final String region,
+                   @Nonnull final String endpoint,
+                   final int timeoutInMillis) {
+            this.credentials = credentials;
+            this.accessKey = credentials == null ? null : credentials.getAWSAccessKeyId();
+            this.secretKey = credentials == null ? null : credentials.getAWSSecretKey();
+            this.sessionToken = credentials instanceof AWSSessionCredentials
+                    ? ((AWSSessionCredentials) credentials).getSessionToken()
+                    : null;
+            this.region = Preconditions.checkNotNull(region);
+            this.endpoint = Preconditions.checkNotNull(endpoint);
+            this.timeoutInMillis = timeoutInMillis;
+        }
+
+        @Nullable
+        public AWSCredentials getCredentials() {
+            return credentials;
+        }
+
+        @Nonnull
+        public String getRegion() {
+            return region;
+        }
+
+        @Nonnull
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getTimeoutInMillis() {
+            return timeoutInMillis;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) o;
+            return timeoutInMillis == other.timeoutInMillis
+                    && Objects.equals(accessKey, other.accessKey)
+                    && Objects.equals(secretKey, other.secretKey)
+                    && Objects.equals(sessionToken, other.sessionToken)
+                    && region.equals(other.region)
+                    && endpoint.equals(other.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accessKey, secretKey, sessionToken, region, endpoint, timeoutInMillis);
+        }
+
+        @Override
+        public String toString() {
+            // Never print the secrets
+            return "Key{accessKey=" + accessKey + ", region=" + region + ", endpoint=" + endpoint
+                    + ", timeoutInMillis=" + timeoutInMillis + "}";
+        }
+    }
+
+    /**
+     * Internal class holding a cached client and its lease count
+     */
+    private static final class Entry {
+        private final Key key;
+        private final AmazonKinesisVideo client;
+        private int leases;
+        private long lastUsedNanos;
+        private boolean retired;
+
+        private Entry(@Nonnull final Key key, @Nonnull final AmazonKinesisVideo client, final long nowNanos) {
+            this.key = key;
+            this.client = client;
+            this.lastUsedNanos = nowNanos;
+        }
+    }
+
+    private final Logger log;
+    private final ClientFactory clientFactory;
+    private final int maxClients;
+    private final long idleTimeoutNanos;
+
+    /**
+     * Access-ordered map used as the LRU list. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    /**
+     * Clients being created by the first caller which missed them, awaited by the others. Guarded by {@code this}.
+     */
+    private final Map<Key, CompletableFuture<Void>> creations = new HashMap<Key, CompletableFuture<Void>>();
+
+    private boolean isClosed;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public AmazonKinesisVideoClientCache(@Nonnull final Logger log,
+                                         @Nonnull final ClientFactory clientFactory) {
+        this(log, clientFactory, DEFAULT_MAX_CLIENTS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public AmazonKinesisVideoClientCache(@Nonnull final Logger log,
+                                         @Nonnull final ClientFactory clientFactory,
+                                         final int maxClients,
+                                         final long idleTimeoutMillis) {
+        Preconditions.checkArgument(maxClients > 0, "Max clients must be positive");
+        Preconditions.checkArgument(idleTimeoutMillis > 0, "Idle timeout must be positive");
+        this.log = Preconditions.checkNotNull(log);
+        this.clientFactory = Preconditions.checkNotNull(clientFactory);
+        this.maxClients = maxClients;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * Leases a client for the key, creating it on a miss.
+     *
+     * @param key Cache key
+     * @return Lease which must be closed when the call completes
+     */
+    @Nonnull
+    public Lease acquire(@Nonnull final Key key) {
+        Preconditions.checkNotNull(key);
+        while (true) {
+            final List<Entry> evicted = new ArrayList<Entry>();
+            Lease lease = null;
+            CompletableFuture<Void> creation;
+            boolean isCreator = false;
+
+            synchronized (this) {
+                Preconditions.checkState(!isClosed, "Client cache is closed");
+                final long now = System.nanoTime();
+                evictIdle(now, evicted);
+
+                final Entry entry = entries.get(key);
+                creation = creations.get(key);
+                if (entry != null) {
+                    hitCount.incrementAndGet();
+                    lease = lease(entry, now);
+                } else if (creation == null) {
+                    missCount.incrementAndGet();
+                    creation = new CompletableFuture<Void>();
+                    creations.put(key, creation);
+                    isCreator = true;
+                }
+            }
+
+            shutdown(evicted);
+            if (lease != null) {
+                return lease;
+            }
+
+            if (isCreator) {
+                return create(key, creation);
+            }
+
+            // Another caller is creating the client, leased from the cache once it is done
+            try {
+                creation.join();
+            } catch (final CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    /**
+     * Evicts all the cached clients and fails the later acquires. Clients that are currently leased are shut down on
+     * release.
+     */
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+        }
+
+        clear();
+    }
+
+    /**
+     * Evicts all the cached clients. Clients that are currently leased are shut down on release.
+     */
+    public void clear() {
+        final List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            for (final Entry entry : entries.values()) {
+                retire(entry, evicted);
+            }
+
+            entries.clear();
+        }
+
+        shutdown(evicted);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the ratio of the acquires served from the cache
+     * @return hit rate in the [0, 1] range or 0 if there have been no requests
+     */
+    public double getHitRate() {
+        final long hits = hitCount.get();
+        final long total = hits + missCount.get();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Nonnull
+    private Lease create(@Nonnull final Key key, @Nonnull final CompletableFuture<Void> creation) {
+        final AmazonKinesisVideo client;
+        try {
+            client = clientFactory.create(key);
+        } catch (final RuntimeException e) {
+            synchronized (this) {
+                creations.remove(key);
+            }
+
+            creation.completeExceptionally(e);
+            throw e;
+        }
+
+        final List<Entry> evicted = new ArrayList<Entry>();
+        final Lease lease;
+        synchronized (this) {
+            creations.remove(key);
+            final Entry entry = new Entry(key, client, System.nanoTime());
+            lease = lease(entry, entry.lastUsedNanos);
+            if (isClosed) {
+                // Shut down once released
+                retire(entry, evicted);
+            } else {
+                entries.put(key, entry);
+                evictOverCapacity(evicted);
+            }
+        }
+
+        creation.complete(null);
+        shutdown(evicted);
+        return lease;
+    }
+
+    @Nonnull
+    private Lease lease(@Nonnull final Entry entry, final long nowNanos) {
+        entry.leases++;
+        entry.lastUsedNanos = nowNanos;
+        return new Lease(entry);
+    }
+
+    private void release(@Nonnull final Entry entry) {
+        final boolean shutdown;
+        synchronized (this) {
+            entry.leases--;
+            entry.lastUsedNanos = System.nanoTime();
+            shutdown = entry.retired && entry.leases == 0;
+        }
+
+        if (shutdown) {
+            shutdownClient(entry);
+        }
+    }
+
+    private void evictIdle(final long nowNanos, @Nonnull final List<Entry> evicted) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next().getValue();
+            if (entry.leases == 0 && nowNanos - entry.lastUsedNanos > idleTimeoutNanos) {
+                iterator.remove();
+                retire(entry, evicted);
+            }
+        }
+    }
+
+    private void evictOverCapacity(@Nonnull final List<Entry> evicted) {
+        final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxClients && iterator.hasNext()) {
+            final Entry entry = iterator.next().getValue();
+            iterator.remove();
+            retire(entry, evicted);
+        }
+    }
+
+    private void retire(@Nonnull final Entry entry, @Nonnull final List<Entry> evicted) {
+        entry.retired = true;
+        evictionCount.incrementAndGet();
+        if (entry.leases == 0) {
+            evicted.add(entry);
+        }
+    }
+
+    private void shutdown(@Nonnull final List<Entry> evicted) {
+        for (final Entry entry : evicted) {
+            shutdownClient(entry);
+        }
+    }
+
+    private void shutdownClient(@Nonnull final Entry entry) {
+        log.debug("Shutting down evicted control plane client {}", entry.key);
+        try {
+            entry.client.shutdown();
+        } catch (final RuntimeException e) {
+            log.error("Shutting down the control plane client threw an exception", e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consecutive-failure circuit breaker guarding the calls of a single API for a single stream, so a failing stream
+ * does not short-circuit the calls of the other streams sharing the endpoint.
+ * <p>
+ * The breaker opens after the configured number of consecutive failures and short-circuits the calls for the open
+ * duration. After that a single trial call is let through - its success closes the breaker while its failure opens it
+ * again for another open duration.
+ */
+class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    /**
+     * @param failureThreshold Number of consecutive failures opening the breaker. 0 disables the breaker.
+     * @param openDurationMillis Duration for which the calls are short-circuited
+     */
+    CircuitBreaker(final int failureThreshold, final long openDurationMillis) {
+        Preconditions.checkArgument(failureThreshold >= 0, "Failure threshold must not be negative");
+        Preconditions.checkArgument(openDurationMillis >= 0, "Open duration must not be negative");
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+    }
+
+    /**
+     * Returns whether a call may proceed. A call allowed through must report its outcome.
+     */
+    synchronized boolean allowCall() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                    return false;
+                }
+
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (failureThreshold > 0 && (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Reports a call which completed without telling anything about the endpoint health, for example a call
+     * rejected by the service as invalid.
+     */
+    synchronized void onNeutral() {
+        trialInFlight = false;
+        if (state == State.HALF_OPEN) {
+            // The endpoint did respond
+            consecutiveFailures = 0;
+            state = State.CLOSED;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
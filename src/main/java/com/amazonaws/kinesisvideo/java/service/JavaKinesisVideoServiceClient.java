@@ -37,6 +37,7 @@ import com.amazonaws.services.kinesisvideo.model.TagStreamResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Date;
@@ -46,25 +47,16 @@ import static com.amazonaws.ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
 import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_AN_HOUR;
 import static com.amazonaws.util.StringUtils.isNullOrEmpty;
 
-public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceClient {
+public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceClient, Closeable {
     private static final int RECEIVE_TIMEOUT_1HR = 60 * 60 * 1000;
     private static final String ABSOLUTE_TIMECODE = "ABSOLUTE";
     private static final String RELATIVE_TIMECODE = "RELATIVE";
+    private static final int CONNECTION_MAX_IDLE_MILLIS = 60 * 1000;
 
     private final Logger log;
+    private final AmazonKinesisVideoClientCache clientCache;
     private KinesisVideoClientConfiguration configuration;
 
-    private static AmazonKinesisVideo createAmazonKinesisVideoClient(
-            final KinesisVideoCredentialsProvider credentialsProvider,
-            final Region region,
-            final String endpoint,
-            final int timeoutInMillis)
-            throws KinesisVideoException {
-
-        final AWSCredentials credentials = createAwsCredentials(credentialsProvider);
-        return createAwsKinesisVideoClient(credentials, region, endpoint, timeoutInMillis);
-    }
-
     private static AmazonKinesisVideo createAmazonKinesisVideoClient(
             final AWSCredentialsProvider awsCredentialsProvider,
             final Region region,
@@ -79,8 +71,7 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
     private static AmazonKinesisVideo createAwsKinesisVideoClient(final AWSCredentials credentials,
             final Region region,
             final String endpoint,
-            final int timeoutInMillis)
-            throws KinesisVideoException {
+            final int timeoutInMillis) {
 
         final ClientConfiguration clientConfiguration = createClientConfiguration(timeoutInMillis);
         final AmazonKinesisVideo amazonKinesisVideoClient = AmazonKinesisVideoClient.builder()
@@ -222,11 +213,38 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
                 .withConnectionTimeout(timeoutInMillis)
                 .withMaxConnections(DEFAULT_MAX_CONNECTIONS)
                 .withSocketTimeout(timeoutInMillis)
+                .withTcpKeepAlive(true)
+                .withConnectionMaxIdleMillis(CONNECTION_MAX_IDLE_MILLIS)
                 .withUserAgentPrefix(VersionUtil.getUserAgent());
     }
 
     public JavaKinesisVideoServiceClient(@Nonnull final Logger log) {
+        this(log, AmazonKinesisVideoClientCache.DEFAULT_MAX_CLIENTS,
+                AmazonKinesisVideoClientCache.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param log Logger to use
+     * @param maxCachedClients Max number of control plane clients to keep around
+     * @param clientIdleTimeoutMillis Duration after which an unused control plane client is shut down
+     */
+    public JavaKinesisVideoServiceClient(@Nonnull final Logger log,
+            final int maxCachedClients,
+            final long clientIdleTimeoutMillis) {
         this.log = Preconditions.checkNotNull(log);
+        this.clientCache = new AmazonKinesisVideoClientCache(log,
+                new AmazonKinesisVideoClientCache.ClientFactory() {
+                    @Nonnull
+                    @Override
+                    public AmazonKinesisVideo create(@Nonnull final AmazonKinesisVideoClientCache.Key key) {
+                        return createAwsKinesisVideoClient(key.getCredentials(),
+                                Region.getRegion(Regions.fromName(key.getRegion())),
+                                key.getEndpoint(),
+                                key.getTimeoutInMillis());
+                    }
+                },
+                maxCachedClients,
+                clientIdleTimeoutMillis);
     }
 
     @Nonnull
@@ -241,6 +259,23 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
                 timeoutInMillis);
     }
 
+    /**
+     * Returns the cache of the control plane clients, mostly for the hit-rate metrics. Reached through
+     * {@link ResilientKinesisVideoServiceClient#getDelegate()} when the client is decorated.
+     */
+    @Nonnull
+    public AmazonKinesisVideoClientCache getClientCache() {
+        return clientCache;
+    }
+
+    /**
+     * Shuts down the cached control plane clients. Called when the service callbacks are freed.
+     */
+    @Override
+    public void close() {
+        clientCache.close();
+    }
+
     @Override
     public void initialize(@Nonnull final KinesisVideoClientConfiguration kinesisVideoClientConfiguration)
             throws KinesisVideoException {
@@ -257,10 +292,6 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
             final long timeoutInMillis,
             @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
             throws KinesisVideoException {
-        final AmazonKinesisVideo serviceClient = createAmazonKinesisVideoClient(credentialsProvider,
-                Region.getRegion(Regions.fromName(configuration.getRegion())),
-                configuration.getEndpoint(),
-                (int) timeoutInMillis);
 
         final CreateStreamRequest createStreamRequest = new CreateStreamRequest()
                 .withStreamName(streamName)
@@ -273,8 +304,8 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
         log.debug("calling create stream: {}", createStreamRequest.toString());
 
         final CreateStreamResult createStreamResult;
-        try {
-            createStreamResult = serviceClient.createStream(createStreamRequest);
+        try (final AmazonKinesisVideoClientCache.Lease lease = leaseClient(credentialsProvider, timeoutInMillis)) {
+            createStreamResult = lease.getClient().createStream(createStreamRequest);
         } catch (final AmazonClientException e) {
             // Wrap into an KinesisVideoException object
             log.error("Service call failed.", e);
@@ -291,10 +322,6 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
             final long timeoutInMillis,
             @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
             throws KinesisVideoException {
-        final AmazonKinesisVideo serviceClient = createAmazonKinesisVideoClient(credentialsProvider,
-                Region.getRegion(Regions.fromName(configuration.getRegion())),
-                configuration.getEndpoint(),
-                (int) timeoutInMillis);
 
         final DescribeStreamRequest describeStreamRequest = new DescribeStreamRequest()
                 .withStreamName(streamName);
@@ -302,8 +329,8 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
         log.debug("calling describe stream: {}", describeStreamRequest.toString());
 
         final DescribeStreamResult describeStreamResult;
-        try {
-            describeStreamResult = serviceClient.describeStream(describeStreamRequest);
+        try (final AmazonKinesisVideoClientCache.Lease lease = leaseClient(credentialsProvider, timeoutInMillis)) {
+            describeStreamResult = lease.getClient().describeStream(describeStreamRequest);
         } catch (final AmazonClientException e) {
             log.error("Service call failed.", e);
             throw new KinesisVideoException(e);
@@ -324,10 +351,6 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
             final Date creationTime,
             final long timeoutInMillis,
             @Nullable final KinesisVideoCredentialsProvider credentialsProvider) throws KinesisVideoException {
-        final AmazonKinesisVideo serviceClient = createAmazonKinesisVideoClient(credentialsProvider,
-                Region.getRegion(Regions.fromName(configuration.getRegion())),
-                configuration.getEndpoint(),
-                (int) timeoutInMillis);
 
         final StreamDescription streamDescription = describeStream(streamName, timeoutInMillis, credentialsProvider);
 
@@ -338,8 +361,8 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
         log.debug("calling delete stream: {}", deleteStreamRequest.toString());
 
         final DeleteStreamResult deleteStreamResult;
-        try {
-            deleteStreamResult = serviceClient.deleteStream(deleteStreamRequest);
+        try (final AmazonKinesisVideoClientCache.Lease lease = leaseClient(credentialsProvider, timeoutInMillis)) {
+            deleteStreamResult = lease.getClient().deleteStream(deleteStreamRequest);
         } catch (final AmazonClientException e) {
             log.error("Service call failed.", e);
             throw new KinesisVideoException(e);
@@ -354,10 +377,6 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
             final long timeoutInMillis,
             @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
             throws KinesisVideoException {
-        final AmazonKinesisVideo serviceClient = createAmazonKinesisVideoClient(credentialsProvider,
-                Region.getRegion(Regions.fromName(configuration.getRegion())),
-                configuration.getEndpoint(),
-                (int) timeoutInMillis);
 
         final TagStreamRequest tagStreamRequest = new TagStreamRequest()
                 .withStreamARN(streamArn)
@@ -366,8 +385,8 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
         log.debug("calling tag resource: {}", tagStreamRequest.toString());
 
         final TagStreamResult tagStreamResult;
-        try {
-            tagStreamResult = serviceClient.tagStream(tagStreamRequest);
+        try (final AmazonKinesisVideoClientCache.Lease lease = leaseClient(credentialsProvider, timeoutInMillis)) {
+            tagStreamResult = lease.getClient().tagStream(tagStreamRequest);
         } catch (final AmazonClientException e) {
             log.error("Service call failed.", e);
             throw new KinesisVideoException(e);
@@ -382,10 +401,6 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
             final long timeoutInMillis,
             @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
             throws KinesisVideoException {
-        final AmazonKinesisVideo serviceClient = createAmazonKinesisVideoClient(credentialsProvider,
-                Region.getRegion(Regions.fromName(configuration.getRegion())),
-                configuration.getEndpoint(),
-                (int) timeoutInMillis);
 
         final GetDataEndpointRequest getDataEndpointRequest = new GetDataEndpointRequest()
                 .withStreamName(streamName)
@@ -395,8 +410,8 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
 
         final GetDataEndpointResult getDataEndpointResult;
 
-        try {
-            getDataEndpointResult = serviceClient.getDataEndpoint(getDataEndpointRequest);
+        try (final AmazonKinesisVideoClientCache.Lease lease = leaseClient(credentialsProvider, timeoutInMillis)) {
+            getDataEndpointResult = lease.getClient().getDataEndpoint(getDataEndpointRequest);
         } catch (final AmazonClientException e) {
             log.error("Service call failed.", e);
             throw new KinesisVideoException(e);
@@ -450,6 +465,18 @@ public final class JavaKinesisVideoServiceClient implements KinesisVideoServiceC
         putMediaClient.putMediaInBackground();
     }
 
+    @Nonnull
+    private AmazonKinesisVideoClientCache.Lease leaseClient(
+            @Nullable final KinesisVideoCredentialsProvider credentialsProvider,
+            final long timeoutInMillis)
+            throws KinesisVideoException {
+        final AWSCredentials credentials = createAwsCredentials(credentialsProvider);
+        return clientCache.acquire(new AmazonKinesisVideoClientCache.Key(credentials,
+                configuration.getRegion(),
+                configuration.getEndpoint(),
+                (int) timeoutInMillis));
+    }
+
     private static StreamDescription toStreamDescription(@Nonnull final DescribeStreamResult result) {
         Preconditions.checkNotNull(result);
         return new StreamDescription(
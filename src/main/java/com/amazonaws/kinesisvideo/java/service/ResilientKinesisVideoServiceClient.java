@@ -0,0 +1,573 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsProvider;
+import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfiguration;
+import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfigurationDefaults;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.internal.producer.client.AsyncKinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.producer.StreamDescription;
+import com.amazonaws.retry.RetryUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link KinesisVideoServiceClient} decorator making the control plane calls resilient to a degraded endpoint.
+ * <p>
+ * Every control plane call goes through:
+ * <ul>
+ *     <li>token bucket admission, which queues the calls over the configured rate for at most the call timeout;</li>
+ *     <li>a circuit breaker per API and stream, which short-circuits the calls failing consistently;</li>
+ *     <li>retries of the transient failures with decorrelated jitter backoff within the call timeout.</li>
+ * </ul>
+ * Only the transient failures - throttling, 5xx and network errors - are retried and count towards opening the
+ * breaker. Errors like a missing stream are part of the normal producer flow and are returned as is. The calls which
+ * are not admitted in time or short-circuited fail with a {@link ServiceUnavailableException}.
+ * <p>
+ * The admission waits and the retry backoffs are scheduled rather than slept, so the asynchronous calls never hold
+ * the calling thread, e.g. one of the service callbacks executor, while they wait. The synchronous calls block until
+ * the asynchronous ones complete.
+ * <p>
+ * NOTE: Put media is a long-running streaming call and is passed through to the decorated client.
+ */
+public class ResilientKinesisVideoServiceClient implements AsyncKinesisVideoServiceClient, Closeable {
+    /**
+     * Lower bound of the retry backoff
+     */
+    private static final long BASE_BACKOFF_MILLIS = 100;
+
+    /**
+     * Upper bound of the retry backoff
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * A single attempt of a control plane call.
+     */
+    private interface ServiceCall<T> {
+        T call() throws KinesisVideoException;
+    }
+
+    private final Logger log;
+    private final KinesisVideoServiceClient delegate;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers =
+            new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private volatile KinesisVideoClientConfiguration configuration;
+
+    /**
+     * Admission control. Null if the rate is unlimited.
+     */
+    private volatile TokenBucket admission;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong shortCircuitCount = new AtomicLong();
+    private final AtomicLong admissionRejectedCount = new AtomicLong();
+    private final AtomicLong totalQueueTimeNanos = new AtomicLong();
+    private final AtomicLong maxQueueTimeNanos = new AtomicLong();
+
+    /**
+     * Creates a client waiting for the admissions and the retries on a daemon thread of its own
+     */
+    public ResilientKinesisVideoServiceClient(@Nonnull final Logger log,
+                                              @Nonnull final KinesisVideoServiceClient delegate) {
+        this(log, delegate, Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("KVS-ServiceCallRetry-%d")
+                .setDaemon(true)
+                .build()), true);
+    }
+
+    /**
+     * @param scheduler Scheduler running the attempts which had to wait for their admission or their retry
+     */
+    public ResilientKinesisVideoServiceClient(@Nonnull final Logger log,
+                                              @Nonnull final KinesisVideoServiceClient delegate,
+                                              @Nonnull final ScheduledExecutorService scheduler) {
+        this(log, delegate, scheduler, false);
+    }
+
+    private ResilientKinesisVideoServiceClient(@Nonnull final Logger log,
+                                               @Nonnull final KinesisVideoServiceClient delegate,
+                                               @Nonnull final ScheduledExecutorService scheduler,
+                                               final boolean ownsScheduler) {
+        this.log = Preconditions.checkNotNull(log);
+        this.delegate = Preconditions.checkNotNull(delegate);
+        this.scheduler = Preconditions.checkNotNull(scheduler);
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    /**
+     * Returns the decorated client, e.g. the {@link JavaKinesisVideoServiceClient} holding the control plane client
+     * cache metrics
+     */
+    @Nonnull
+    public KinesisVideoServiceClient getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Stops the scheduler created by this client and closes the decorated client
+     */
+    @Override
+    public void close() throws IOException {
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    @Override
+    public void initialize(@Nonnull final KinesisVideoClientConfiguration configuration)
+            throws KinesisVideoException {
+        delegate.initialize(configuration);
+
+        this.configuration = Preconditions.checkNotNull(configuration);
+        final double rate = configuration.getServiceCallRateLimitPerSecond();
+        this.admission = rate > 0
+                ? new TokenBucket(rate, (int) Math.max(1, Math.ceil(rate)))
+                : null;
+    }
+
+    @Override
+    public String createStream(@Nonnull final String streamName,
+                               @Nonnull final String deviceName,
+                               @Nonnull final String contentType,
+                               @Nullable final String kmsKeyId,
+                               final long retentionPeriodInHours,
+                               final long timeoutInMillis,
+                               @Nullable final KinesisVideoCredentialsProvider kinesisVideoCredentialsProvider)
+            throws KinesisVideoException {
+        return await(createStreamAsync(streamName, deviceName, contentType, kmsKeyId, retentionPeriodInHours,
+                timeoutInMillis, kinesisVideoCredentialsProvider));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<String> createStreamAsync(@Nonnull final String streamName,
+                                                       @Nonnull final String deviceName,
+                                                       @Nonnull final String contentType,
+                                                       @Nullable final String kmsKeyId,
+                                                       final long retentionPeriodInHours,
+                                                       final long timeoutInMillis,
+                                                       @Nullable final KinesisVideoCredentialsProvider
+                                                               kinesisVideoCredentialsProvider) {
+        return execute("CreateStream", streamName, timeoutInMillis, new ServiceCall<String>() {
+            @Override
+            public String call() throws KinesisVideoException {
+                return delegate.createStream(streamName, deviceName, contentType, kmsKeyId, retentionPeriodInHours,
+                        timeoutInMillis, kinesisVideoCredentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public StreamDescription describeStream(@Nonnull final String streamName,
+                                            final long timeoutInMillis,
+                                            @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
+            throws KinesisVideoException {
+        return await(describeStreamAsync(streamName, timeoutInMillis, credentialsProvider));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<StreamDescription> describeStreamAsync(@Nonnull final String streamName,
+                                                                    final long timeoutInMillis,
+                                                                    @Nullable final KinesisVideoCredentialsProvider
+                                                                            credentialsProvider) {
+        return execute("DescribeStream", streamName, timeoutInMillis, new ServiceCall<StreamDescription>() {
+            @Override
+            public StreamDescription call() throws KinesisVideoException {
+                return delegate.describeStream(streamName, timeoutInMillis, credentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public void deleteStream(@Nonnull final String streamName,
+                             @Nonnull final String version,
+                             final Date creationTime,
+                             final long timeoutInMillis,
+                             @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
+            throws KinesisVideoException {
+        await(execute("DeleteStream", streamName, timeoutInMillis, new ServiceCall<Void>() {
+            @Override
+            public Void call() throws KinesisVideoException {
+                delegate.deleteStream(streamName, version, creationTime, timeoutInMillis, credentialsProvider);
+                return null;
+            }
+        }));
+    }
+
+    @Override
+    public void tagStream(@Nonnull final String streamArn,
+                          @Nullable final Map<String, String> tags,
+                          final long timeoutInMillis,
+                          @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
+            throws KinesisVideoException {
+        await(tagStreamAsync(streamArn, tags, timeoutInMillis, credentialsProvider));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> tagStreamAsync(@Nonnull final String streamArn,
+                                                  @Nullable final Map<String, String> tags,
+                                                  final long timeoutInMillis,
+                                                  @Nullable final KinesisVideoCredentialsProvider
+                                                          credentialsProvider) {
+        return execute("TagStream", streamArn, timeoutInMillis, new ServiceCall<Void>() {
+            @Override
+            public Void call() throws KinesisVideoException {
+                delegate.tagStream(streamArn, tags, timeoutInMillis, credentialsProvider);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public String getDataEndpoint(@Nonnull final String streamName,
+                                  @Nonnull final String apiName,
+                                  final long timeoutInMillis,
+                                  @Nullable final KinesisVideoCredentialsProvider credentialsProvider)
+            throws KinesisVideoException {
+        return await(getDataEndpointAsync(streamName, apiName, timeoutInMillis, credentialsProvider));
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<String> getDataEndpointAsync(@Nonnull final String streamName,
+                                                          @Nonnull final String apiName,
+                                                          final long timeoutInMillis,
+                                                          @Nullable final KinesisVideoCredentialsProvider
+                                                                  credentialsProvider) {
+        return execute("GetDataEndpoint", streamName, timeoutInMillis, new ServiceCall<String>() {
+            @Override
+            public String call() throws KinesisVideoException {
+                return delegate.getDataEndpoint(streamName, apiName, timeoutInMillis, credentialsProvider);
+            }
+        });
+    }
+
+    @Override
+    public void putMedia(@Nonnull final String streamName,
+                         @Nonnull final String containerType,
+                         final long streamStartTimeInMillis,
+                         final boolean absoluteFragmentTimes,
+                         final boolean ackRequired,
+                         @Nonnull final String dataEndpoint,
+                         final long timeoutInMillis,
+                         @Nullable final KinesisVideoCredentialsProvider credentialsProvider,
+                         @Nonnull final InputStream dataStream,
+                         @Nonnull final Consumer<InputStream> acksConsumer,
+                         @Nullable final Consumer<Exception> completionCallback)
+            throws KinesisVideoException {
+        delegate.putMedia(streamName, containerType, streamStartTimeInMillis, absoluteFragmentTimes, ackRequired,
+                dataEndpoint, timeoutInMillis, credentialsProvider, dataStream, acksConsumer, completionCallback);
+    }
+
+    /**
+     * Returns the number of the control plane call attempts, including the retries
+     */
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * Returns the number of the retried control plane calls
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Returns the number of the calls failed without calling the service as their circuit breaker was open
+     */
+    public long getShortCircuitCount() {
+        return shortCircuitCount.get();
+    }
+
+    /**
+     * Returns the number of the calls failed as they could not be admitted within their timeout
+     */
+    public long getAdmissionRejectedCount() {
+        return admissionRejectedCount.get();
+    }
+
+    /**
+     * Returns the total time the calls spent waiting for admission in milliseconds
+     */
+    public long getTotalQueueTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalQueueTimeNanos.get());
+    }
+
+    /**
+     * Returns the max time a call spent waiting for admission in milliseconds
+     */
+    public long getMaxQueueTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxQueueTimeNanos.get());
+    }
+
+    @Nullable
+    CircuitBreaker.State getCircuitBreakerState(@Nonnull final String apiName, @Nonnull final String resource) {
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(getCircuitBreakerKey(apiName, resource));
+        return circuitBreaker == null ? null : circuitBreaker.getState();
+    }
+
+    /**
+     * Starts a control plane call, the first attempt running on the calling thread if it is admitted right away
+     *
+     * @param resource Stream the call is for, the calls of every API and stream have their own circuit breaker
+     */
+    @Nonnull
+    private <T> CompletableFuture<T> execute(@Nonnull final String apiName,
+                                             @Nonnull final String resource,
+                                             final long timeoutInMillis,
+                                             @Nonnull final ServiceCall<T> serviceCall) {
+        Preconditions.checkState(configuration != null, "Service client should be initialized first");
+
+        final long timeout = timeoutInMillis > 0
+                ? timeoutInMillis
+                : KinesisVideoClientConfigurationDefaults.DEFAULT_SERVICE_CALL_TIMEOUT_IN_MILLIS;
+        final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        final Call<T> call = new Call<T>(apiName, resource, deadlineNanos, serviceCall);
+        call.admit();
+        return call.result;
+    }
+
+    /**
+     * Attempts of a control plane call, each waiting for its admission
+     */
+    private final class Call<T> implements Runnable {
+        private final CompletableFuture<T> result = new CompletableFuture<T>();
+        private final String apiName;
+        private final String resource;
+        private final long deadlineNanos;
+        private final ServiceCall<T> serviceCall;
+        private final CircuitBreaker circuitBreaker;
+        private final int maxRetries;
+        private long backoffMillis = BASE_BACKOFF_MILLIS;
+        private int attempt;
+
+        private Call(@Nonnull final String apiName,
+                     @Nonnull final String resource,
+                     final long deadlineNanos,
+                     @Nonnull final ServiceCall<T> serviceCall) {
+            this.apiName = apiName;
+            this.resource = resource;
+            this.deadlineNanos = deadlineNanos;
+            this.serviceCall = serviceCall;
+            this.circuitBreaker = getCircuitBreaker(getCircuitBreakerKey(apiName, resource));
+            this.maxRetries = configuration.getServiceCallMaxRetries();
+        }
+
+        /**
+         * Runs the next attempt now or once it is admitted
+         */
+        private void admit() {
+            try {
+                final long waitNanos = reserveAdmission(apiName, deadlineNanos);
+                if (waitNanos > 0) {
+                    schedule(this, waitNanos);
+                } else {
+                    run();
+                }
+            } catch (final KinesisVideoException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!circuitBreaker.allowCall()) {
+                shortCircuitCount.incrementAndGet();
+                result.completeExceptionally(new ServiceUnavailableException(apiName + " call for " + resource
+                        + " short-circuited as it is failing"));
+                return;
+            }
+
+            callCount.incrementAndGet();
+            try {
+                final T value = serviceCall.call();
+                circuitBreaker.onSuccess();
+                result.complete(value);
+            } catch (final KinesisVideoException e) {
+                if (!isTransient(e)) {
+                    circuitBreaker.onNeutral();
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                circuitBreaker.onFailure();
+
+                backoffMillis = getDecorrelatedBackoff(backoffMillis);
+                if (attempt >= maxRetries
+                        || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) - deadlineNanos > 0) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                log.warn("{} call failed with a transient error, retrying in {} ms", apiName, backoffMillis, e);
+                attempt++;
+                retryCount.incrementAndGet();
+                try {
+                    schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            admit();
+                        }
+                    }, TimeUnit.MILLISECONDS.toNanos(backoffMillis));
+                } catch (final KinesisVideoException retryException) {
+                    result.completeExceptionally(e);
+                }
+            } catch (final RuntimeException e) {
+                circuitBreaker.onNeutral();
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Reserves the admission of an attempt
+     *
+     * @return Nanoseconds to wait before making the attempt
+     * @throws ServiceUnavailableException The attempt can not be admitted before the deadline
+     */
+    private long reserveAdmission(@Nonnull final String apiName, final long deadlineNanos)
+            throws KinesisVideoException {
+        final TokenBucket tokenBucket = admission;
+        if (tokenBucket == null) {
+            return 0;
+        }
+
+        final long waitNanos = tokenBucket.reserve(Math.max(0, deadlineNanos - System.nanoTime()));
+        if (waitNanos < 0) {
+            admissionRejectedCount.incrementAndGet();
+            throw new ServiceUnavailableException(apiName + " call could not be admitted within its timeout");
+        }
+
+        totalQueueTimeNanos.addAndGet(waitNanos);
+        long max;
+        while ((max = maxQueueTimeNanos.get()) < waitNanos) {
+            if (maxQueueTimeNanos.compareAndSet(max, waitNanos)) {
+                break;
+            }
+        }
+
+        return waitNanos;
+    }
+
+    private void schedule(@Nonnull final Runnable task, final long delayNanos) throws KinesisVideoException {
+        try {
+            scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (final RejectedExecutionException e) {
+            throw new KinesisVideoException(e);
+        }
+    }
+
+    @Nonnull
+    private CircuitBreaker getCircuitBreaker(@Nonnull final String key) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(key);
+        if (circuitBreaker == null) {
+            final CircuitBreaker newCircuitBreaker = new CircuitBreaker(
+                    configuration.getCircuitBreakerFailureThreshold(),
+                    configuration.getCircuitBreakerOpenDurationInMillis());
+            circuitBreaker = circuitBreakers.putIfAbsent(key, newCircuitBreaker);
+            if (circuitBreaker == null) {
+                circuitBreaker = newCircuitBreaker;
+            }
+        }
+
+        return circuitBreaker;
+    }
+
+    /**
+     * Decorrelated jitter - the next backoff is random between the base and the triple of the previous one.
+     */
+    private static long getDecorrelatedBackoff(final long previousBackoffMillis) {
+        final long upperBound = Math.max(BASE_BACKOFF_MILLIS + 1, previousBackoffMillis * 3);
+        return Math.min(MAX_BACKOFF_MILLIS, ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MILLIS, upperBound));
+    }
+
+    /**
+     * Waits for an asynchronous call, rethrowing its failure
+     */
+    private static <T> T await(@Nonnull final CompletableFuture<T> future) throws KinesisVideoException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KinesisVideoException(e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof KinesisVideoException) {
+                throw (KinesisVideoException) cause;
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            throw new KinesisVideoException(cause);
+        }
+    }
+
+    @Nonnull
+    private static String getCircuitBreakerKey(@Nonnull final String apiName, @Nonnull final String resource) {
+        return apiName + "/" + resource;
+    }
+
+    /**
+     * Returns whether the failure is likely to go away on a retry.
+     */
+    static boolean isTransient(@Nullable final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause != null) {
+            if (cause instanceof AmazonServiceException) {
+                final AmazonServiceException serviceException = (AmazonServiceException) cause;
+                return RetryUtils.isThrottlingException(serviceException)
+                        || RetryUtils.isRetryableServiceException(serviceException)
+                        || serviceException.getStatusCode() >= 500;
+            }
+
+            if (cause instanceof AmazonClientException) {
+                // Client side failure to get a response, e.g. a connection or a socket timeout
+                return ((AmazonClientException) cause).isRetryable();
+            }
+
+            if (cause instanceof IOException) {
+                return true;
+            }
+
+            cause = cause.getCause();
+        }
+
+        return false;
+    }
+}
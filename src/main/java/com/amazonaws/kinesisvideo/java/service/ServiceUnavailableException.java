@@ -0,0 +1,13 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+
+/**
+ * Control plane call failed without calling the service, as the call could not be admitted in time or its circuit
+ * breaker was open. Reported to the producer as a 503 which it retries.
+ */
+public class ServiceUnavailableException extends KinesisVideoException {
+    public ServiceUnavailableException(final String message) {
+        super(message);
+    }
+}
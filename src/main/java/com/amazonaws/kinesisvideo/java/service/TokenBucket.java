@@ -0,0 +1,58 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter with reservations.
+ * <p>
+ * A caller which finds the bucket empty reserves the next token and waits for it outside of the lock, so the
+ * waiting callers are admitted in the reservation order at the configured rate.
+ */
+class TokenBucket {
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param ratePerSecond Sustained rate of the admitted calls
+     * @param capacity Max number of calls admitted in a burst
+     */
+    TokenBucket(final double ratePerSecond, final int capacity) {
+        Preconditions.checkArgument(ratePerSecond > 0, "Rate must be positive");
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves a token if it becomes available within the max wait.
+     *
+     * @param maxWaitNanos Max duration the caller is willing to wait
+     * @return Duration the caller has to wait before proceeding or -1 if no token could be reserved
+     */
+    synchronized long reserve(final long maxWaitNanos) {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+
+        final long waitNanos = (long) Math.ceil((1 - tokens) / tokensPerNano);
+        if (waitNanos > maxWaitNanos) {
+            return -1;
+        }
+
+        // Borrow from the future refill
+        tokens -= 1;
+        return waitNanos;
+    }
+}
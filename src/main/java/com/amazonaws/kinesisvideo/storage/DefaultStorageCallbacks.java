@@ -5,6 +5,6 @@ import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
 public class DefaultStorageCallbacks implements StorageCallbacks {
     @Override
     public void storageOverflowPressure(long remainingSize) {
-        // TODO: Add actual storage overflow callback later
+        // No-op, install a StoragePressurePolicy to degrade the streams as the content store fills up
     }
 }
@@ -0,0 +1,538 @@
+package com.amazonaws.kinesisvideo.stream.cache;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of MKV fragments keyed by stream and fragment number, held off-heap.
+ * <p>
+ * The fragments are stored in the pages of a single direct arena allocated up front, so the cache never holds more
+ * than its capacity nor fragments the heap. The least recently used fragments are evicted to make room, but a new
+ * fragment is only admitted if it has been asked for more often than the fragments it would evict, as estimated by a
+ * TinyLFU frequency sketch; a scan of fragments read once does not flush the ones the workers keep re-reading.
+ * <p>
+ * The fills are single-flight: the first caller missing a fragment becomes its filler, the concurrent callers wait
+ * for its fill rather than fetching the fragment again. The fragments handed out are pinned until closed, an evicted
+ * fragment keeps its pages until then.
+ */
+public final class FragmentCache {
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+    private final int pageSize;
+    private final int pageCount;
+    private final ByteBuffer arena;
+    private final int[] freePages;
+    private final FrequencySketch sketch;
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private final Map<Key, Lookup> fills = new HashMap<Key, Lookup>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong joinedFillCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong rejectionCount = new AtomicLong();
+    private int freePageCount;
+    private long usedBytes;
+
+    public FragmentCache(final long capacityBytes) {
+        this(capacityBytes, DEFAULT_PAGE_SIZE);
+    }
+
+    public FragmentCache(final long capacityBytes, final int pageSize) {
+        Preconditions.checkArgument(pageSize > 0, "Page size must be positive");
+        Preconditions.checkArgument(capacityBytes >= pageSize && capacityBytes / pageSize * pageSize <= Integer.MAX_VALUE,
+                "Capacity must hold at least a page and at most " + Integer.MAX_VALUE + " bytes");
+        this.pageSize = pageSize;
+        this.pageCount = (int) (capacityBytes / pageSize);
+        this.arena = ByteBuffer.allocateDirect(pageCount * pageSize);
+        this.freePages = new int[pageCount];
+        for (int i = 0; i < pageCount; i++) {
+            freePages[i] = pageCount - 1 - i;
+        }
+
+        this.freePageCount = pageCount;
+        this.sketch = new FrequencySketch(pageCount);
+    }
+
+    /**
+     * Looks the fragment up. The lookup completes right away on a hit, or with the fill of another caller; otherwise
+     * the caller is the filler and has to either {@link Lookup#fill} or {@link Lookup#abandon} it.
+     */
+    @Nonnull
+    public Lookup lookup(@Nonnull final String streamName, @Nonnull final String fragmentNumber) {
+        final Key key = new Key(Preconditions.checkNotNull(streamName), Preconditions.checkNotNull(fragmentNumber));
+        synchronized (this) {
+            sketch.increment(key);
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hitCount.incrementAndGet();
+                entry.referenceCount++;
+                return new Lookup(key, false, CompletableFuture.completedFuture(new CachedFragment(entry)));
+            }
+
+            missCount.incrementAndGet();
+            final Lookup fill = fills.get(key);
+            if (fill != null) {
+                joinedFillCount.incrementAndGet();
+                fill.joinedCount++;
+                final CompletableFuture<CachedFragment> joined = new CompletableFuture<CachedFragment>();
+                fill.joined.add(joined);
+                return new Lookup(key, false, joined);
+            }
+
+            final Lookup lookup = new Lookup(key, true, new CompletableFuture<CachedFragment>());
+            fills.put(key, lookup);
+            return lookup;
+        }
+    }
+
+    /**
+     * Drops all the fragments, the pinned ones keep their pages until closed
+     */
+    public synchronized void invalidateAll() {
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            iterator.remove();
+            release(entry);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of misses which waited for the fill of another caller
+     */
+    public long getJoinedFillCount() {
+        return joinedFillCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the number of fills not admitted, or too large for the cache
+     */
+    public long getRejectionCount() {
+        return rejectionCount.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getCapacityBytes() {
+        return (long) pageCount * pageSize;
+    }
+
+    /**
+     * Stores the data of a fill in the arena, or in a heap copy when not admitted
+     */
+    private void store(@Nonnull final Lookup lookup, @Nonnull final ByteBuffer data) {
+        final int size = data.remaining();
+        final int neededPages = (size + pageSize - 1) / pageSize;
+        int[] pages = null;
+        synchronized (this) {
+            if (neededPages <= pageCount && makeRoom(lookup.key, neededPages)) {
+                pages = new int[neededPages];
+                for (int i = 0; i < neededPages; i++) {
+                    pages[i] = freePages[--freePageCount];
+                }
+            } else {
+                rejectionCount.incrementAndGet();
+            }
+        }
+
+        final Entry entry;
+        if (pages == null) {
+            final ByteBuffer copy = ByteBuffer.allocate(size);
+            copy.put(data.duplicate()).flip();
+            entry = new Entry(lookup.key, null, copy, size);
+        } else {
+            // The reserved pages are copied into outside of the lock
+            final ByteBuffer source = data.duplicate();
+            for (final int page : pages) {
+                final ByteBuffer target = arena.duplicate();
+                target.position(page * pageSize);
+                final ByteBuffer chunk = source.duplicate();
+                chunk.limit(chunk.position() + Math.min(pageSize, source.remaining()));
+                target.put(chunk);
+                source.position(chunk.limit());
+            }
+
+            entry = new Entry(lookup.key, pages, null, size);
+        }
+
+        synchronized (this) {
+            fills.remove(lookup.key);
+            // Pinned for the filler and the callers who joined, and held by the cache when admitted
+            entry.referenceCount = 1 + lookup.joinedCount + (pages == null ? 0 : 1);
+            if (pages != null) {
+                entries.put(lookup.key, entry);
+                usedBytes += size;
+            }
+        }
+
+        lookup.future.complete(new CachedFragment(entry));
+        for (final CompletableFuture<CachedFragment> joined : lookup.joined) {
+            joined.complete(new CachedFragment(entry));
+        }
+    }
+
+    /**
+     * Evicts the least recently used fragments if the candidate is more frequent than each of them. The pinned
+     * fragments are skipped, evicting them would not free their pages until they are closed.
+     *
+     * @return false if the candidate is not admitted or the pinned fragments hold too many pages
+     */
+    private boolean makeRoom(@Nonnull final Key candidate, final int neededPages) {
+        if (freePageCount >= neededPages) {
+            return true;
+        }
+
+        final int frequency = sketch.frequency(candidate);
+        final List<Entry> victims = new ArrayList<Entry>();
+        int reclaimable = freePageCount;
+        for (final Entry victim : entries.values()) {
+            if (reclaimable >= neededPages) {
+                break;
+            }
+
+            // Only held by the cache
+            if (victim.referenceCount != 1) {
+                continue;
+            }
+
+            if (frequency <= sketch.frequency(victim.key)) {
+                return false;
+            }
+
+            victims.add(victim);
+            reclaimable += victim.pages.length;
+        }
+
+        if (reclaimable < neededPages) {
+            return false;
+        }
+
+        for (final Entry victim : victims) {
+            entries.remove(victim.key);
+            evictionCount.incrementAndGet();
+            release(victim);
+        }
+
+        return true;
+    }
+
+    /**
+     * Drops the cache's reference to an entry it has removed
+     */
+    private void release(@Nonnull final Entry entry) {
+        usedBytes -= entry.size;
+        unpin(entry);
+    }
+
+    private synchronized void unpin(@Nonnull final Entry entry) {
+        if (--entry.referenceCount == 0 && entry.pages != null) {
+            for (final int page : entry.pages) {
+                freePages[freePageCount++] = page;
+            }
+        }
+    }
+
+    private synchronized void abandon(@Nonnull final Lookup lookup, @Nonnull final Throwable cause) {
+        fills.remove(lookup.key);
+        lookup.future.completeExceptionally(cause);
+        for (final CompletableFuture<CachedFragment> joined : lookup.joined) {
+            joined.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Lookup of a fragment, to be filled by the caller if it is the filler
+     */
+    public final class Lookup {
+        private final Key key;
+        private final boolean isFiller;
+        private final CompletableFuture<CachedFragment> future;
+        private final List<CompletableFuture<CachedFragment>> joined = new ArrayList<CompletableFuture<CachedFragment>>();
+        private int joinedCount;
+        private boolean isDone;
+
+        private Lookup(@Nonnull final Key key, final boolean isFiller,
+                       @Nonnull final CompletableFuture<CachedFragment> future) {
+            this.key = key;
+            this.isFiller = isFiller;
+            this.future = future;
+        }
+
+        /**
+         * Returns whether the caller has to fill the fragment
+         */
+        public boolean isFiller() {
+            return isFiller;
+        }
+
+        /**
+         * Returns the fragment, pinned until it is closed
+         */
+        @Nonnull
+        public CompletableFuture<CachedFragment> getFragment() {
+            return future;
+        }
+
+        /**
+         * Completes the fill with the fragment data, which are copied. The data of a fill which was abandoned
+         * meanwhile, e.g. by a read being cancelled while its response completes, are ignored.
+         *
+         * @return Whether the fill was completed
+         */
+        public boolean fill(@Nonnull final ByteBuffer data) {
+            Preconditions.checkNotNull(data);
+            synchronized (FragmentCache.this) {
+                Preconditions.checkState(isFiller, "Lookup is not a fill");
+                if (isDone) {
+                    return false;
+                }
+
+                isDone = true;
+            }
+
+            store(this, data);
+            return true;
+        }
+
+        /**
+         * Fails the fill, and the callers waiting for it
+         */
+        public void abandon(@Nonnull final Throwable cause) {
+            synchronized (FragmentCache.this) {
+                if (!isFiller || isDone) {
+                    return;
+                }
+
+                isDone = true;
+                FragmentCache.this.abandon(this, cause);
+            }
+        }
+    }
+
+    /**
+     * Fragment handed out by the cache, pinned until closed
+     */
+    public final class CachedFragment implements Closeable {
+        private final Entry entry;
+        private boolean isClosed;
+
+        private CachedFragment(@Nonnull final Entry entry) {
+            this.entry = entry;
+        }
+
+        public int getSize() {
+            return entry.size;
+        }
+
+        /**
+         * Returns whether the fragment is held in the arena rather than a heap copy
+         */
+        public boolean isCached() {
+            return entry.pages != null;
+        }
+
+        /**
+         * Returns a channel reading the fragment, valid until the fragment is closed
+         */
+        @Nonnull
+        public ReadableByteChannel openChannel() {
+            return new ReadableByteChannel() {
+                private int position;
+                private boolean isChannelOpen = true;
+
+                @Override
+                public int read(final ByteBuffer destination) throws IOException {
+                    if (!isChannelOpen || isClosed) {
+                        throw new ClosedChannelException();
+                    }
+
+                    if (position == entry.size) {
+                        return -1;
+                    }
+
+                    final int length = Math.min(destination.remaining(), entry.size - position);
+                    final ByteBuffer source;
+                    if (entry.pages == null) {
+                        source = entry.heapData.duplicate();
+                        source.position(position);
+                        source.limit(position + length);
+                    } else {
+                        // Reads within a single page, the channel is read in a loop
+                        final int offsetInPage = position % pageSize;
+                        source = arena.duplicate();
+                        final int start = entry.pages[position / pageSize] * pageSize + offsetInPage;
+                        source.limit(start + Math.min(length, pageSize - offsetInPage)).position(start);
+                    }
+
+                    final int read = source.remaining();
+                    destination.put(source);
+                    position += read;
+                    return read;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return isChannelOpen;
+                }
+
+                @Override
+                public void close() {
+                    isChannelOpen = false;
+                }
+            };
+        }
+
+        /**
+         * Unpins the fragment
+         */
+        @Override
+        public void close() {
+            synchronized (FragmentCache.this) {
+                if (isClosed) {
+                    return;
+                }
+
+                isClosed = true;
+                unpin(entry);
+            }
+        }
+    }
+
+    /**
+     * Fragment stored in the arena pages, or on the heap when not admitted
+     */
+    private static final class Entry {
+        private final Key key;
+        private final int[] pages;
+        private final ByteBuffer heapData;
+        private final int size;
+        private int referenceCount;
+
+        private Entry(@Nonnull final Key key, final int[] pages, final ByteBuffer heapData, final int size) {
+            this.key = key;
+            this.pages = pages;
+            this.heapData = heapData;
+            this.size = size;
+        }
+    }
+
+    private static final class Key {
+        private final String streamName;
+        private final String fragmentNumber;
+
+        private Key(@Nonnull final String streamName, @Nonnull final String fragmentNumber) {
+            this.streamName = streamName;
+            this.fragmentNumber = fragmentNumber;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            final Key key = (Key) other;
+            return streamName.equals(key.streamName) && fragmentNumber.equals(key.fragmentNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * streamName.hashCode() + fragmentNumber.hashCode();
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often the keys are looked up. The counters are halved once
+     * the sample reaches ten times their number, so the estimates follow the recent popularity.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(final int expectedEntries) {
+            final int width = Integer.highestOneBit(Math.max(16, expectedEntries * 4) - 1) << 1;
+            counters = new byte[DEPTH * width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        private void increment(@Nonnull final Key key) {
+            final int hash = spread(key.hashCode());
+            boolean isAdded = false;
+            for (int i = 0; i < DEPTH; i++) {
+                final int index = indexOf(hash, i);
+                if (counters[index] < MAX_COUNT) {
+                    counters[index]++;
+                    isAdded = true;
+                }
+            }
+
+            if (isAdded && ++additions == sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+
+                additions /= 2;
+            }
+        }
+
+        private int frequency(@Nonnull final Key key) {
+            final int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[indexOf(hash, i)]);
+            }
+
+            return frequency;
+        }
+
+        private int indexOf(final int hash, final int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+
+        private static int spread(final int hash) {
+            final int h = hash * 0x45D9F3B;
+            return h ^ (h >>> 16);
+        }
+    }
+}
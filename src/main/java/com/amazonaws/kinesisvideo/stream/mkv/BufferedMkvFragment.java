@@ -0,0 +1,44 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Fragment with the tracks it was sent with and copies of its frames, as returned by {@link MkvFragmentIterator}
+ */
+public final class BufferedMkvFragment {
+    private final MkvFragment fragment;
+    private final List<MkvTrack> tracks;
+    private final List<MkvFrame> frames;
+    private final long dataSize;
+
+    BufferedMkvFragment(@Nonnull final MkvFragment fragment, @Nonnull final List<MkvTrack> tracks,
+                        @Nonnull final List<MkvFrame> frames, final long dataSize) {
+        this.fragment = fragment;
+        this.tracks = tracks;
+        this.frames = frames;
+        this.dataSize = dataSize;
+    }
+
+    @Nonnull
+    public MkvFragment getFragment() {
+        return fragment;
+    }
+
+    @Nonnull
+    public List<MkvTrack> getTracks() {
+        return tracks;
+    }
+
+    @Nonnull
+    public List<MkvFrame> getFrames() {
+        return frames;
+    }
+
+    /**
+     * Returns the size of the frame data held by the fragment
+     */
+    public long getDataSize() {
+        return dataSize;
+    }
+}
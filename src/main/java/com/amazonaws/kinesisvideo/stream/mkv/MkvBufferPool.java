@@ -0,0 +1,106 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of direct buffers shared by the stream parsers.
+ * <p>
+ * The buffers are sized in powers of two from {@link #MIN_BUFFER_SIZE}, so a parser growing its buffer for a large
+ * frame gets one a later parser can reuse. Only a bounded number of free buffers is kept per size, the others are left
+ * to the garbage collector.
+ */
+public final class MkvBufferPool {
+    public static final int MIN_BUFFER_SIZE = 64 * 1024;
+    public static final int MAX_BUFFER_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FREE_BUFFERS_PER_SIZE = 8;
+
+    private static final int SIZE_CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE)
+            - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE) + 1;
+    private static final MkvBufferPool SHARED = new MkvBufferPool(DEFAULT_MAX_FREE_BUFFERS_PER_SIZE);
+
+    private final int maxFreeBuffersPerSize;
+    private final Queue<ByteBuffer>[] freeBuffers;
+    private final AtomicInteger[] freeBufferCounts;
+    private final AtomicLong allocatedBufferCount = new AtomicLong();
+    private final AtomicLong allocatedByteCount = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    public MkvBufferPool(final int maxFreeBuffersPerSize) {
+        Preconditions.checkArgument(maxFreeBuffersPerSize >= 0);
+        this.maxFreeBuffersPerSize = maxFreeBuffersPerSize;
+        freeBuffers = new Queue[SIZE_CLASS_COUNT];
+        freeBufferCounts = new AtomicInteger[SIZE_CLASS_COUNT];
+        for (int i = 0; i < SIZE_CLASS_COUNT; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            freeBufferCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Returns the pool used by the parsers which are not given one
+     */
+    @Nonnull
+    public static MkvBufferPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns a cleared direct buffer of at least the capacity
+     *
+     * @throws IllegalArgumentException if the capacity exceeds {@link #MAX_BUFFER_SIZE}
+     */
+    @Nonnull
+    public ByteBuffer acquire(final int minCapacity) {
+        Preconditions.checkArgument(minCapacity <= MAX_BUFFER_SIZE,
+                "Buffer of " + minCapacity + " bytes exceeds the maximum of " + MAX_BUFFER_SIZE);
+        final int sizeClass = sizeClass(minCapacity);
+        final ByteBuffer buffer = freeBuffers[sizeClass].poll();
+        if (buffer != null) {
+            freeBufferCounts[sizeClass].decrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        final int capacity = MIN_BUFFER_SIZE << sizeClass;
+        allocatedBufferCount.incrementAndGet();
+        allocatedByteCount.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Returns a buffer acquired from this pool. The buffer, and any slice of it, must no longer be used.
+     */
+    public void release(@Nonnull final ByteBuffer buffer) {
+        Preconditions.checkArgument(buffer.isDirect() && Integer.bitCount(buffer.capacity()) == 1
+                && buffer.capacity() >= MIN_BUFFER_SIZE && buffer.capacity() <= MAX_BUFFER_SIZE);
+        final int sizeClass = sizeClass(buffer.capacity());
+        if (freeBufferCounts[sizeClass].incrementAndGet() <= maxFreeBuffersPerSize) {
+            freeBuffers[sizeClass].offer(buffer);
+        } else {
+            freeBufferCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    public long getAllocatedBufferCount() {
+        return allocatedBufferCount.get();
+    }
+
+    public long getAllocatedByteCount() {
+        return allocatedByteCount.get();
+    }
+
+    private static int sizeClass(final int capacity) {
+        if (capacity <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+
+        return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,114 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fragment of a GetMedia response, which is a segment holding a single cluster.
+ * <p>
+ * The Kinesis Video tags preceding the cluster are known when the fragment starts, the ones following it, such as
+ * {@link #TAG_MILLIS_BEHIND_NOW} and {@link #TAG_CONTINUATION_TOKEN}, only when it ends.
+ */
+public final class MkvFragment {
+    public static final String TAG_PREFIX = "AWS_KINESISVIDEO_";
+    public static final String TAG_FRAGMENT_NUMBER = "AWS_KINESISVIDEO_FRAGMENT_NUMBER";
+    public static final String TAG_SERVER_TIMESTAMP = "AWS_KINESISVIDEO_SERVER_TIMESTAMP";
+    public static final String TAG_PRODUCER_TIMESTAMP = "AWS_KINESISVIDEO_PRODUCER_TIMESTAMP";
+    public static final String TAG_MILLIS_BEHIND_NOW = "AWS_KINESISVIDEO_MILLIS_BEHIND_NOW";
+    public static final String TAG_CONTINUATION_TOKEN = "AWS_KINESISVIDEO_CONTINUATION_TOKEN";
+    public static final String TAG_ERROR_CODE = "AWS_KINESISVIDEO_ERROR_CODE";
+    public static final String TAG_ERROR_ID = "AWS_KINESISVIDEO_ERROR_ID";
+
+    private final Map<String, String> tags = new LinkedHashMap<String, String>();
+    private long timecode;
+    private long timecodeScaleNanos;
+    private boolean started;
+    private long frameCount;
+
+    MkvFragment() {
+    }
+
+    /**
+     * Returns the timecode of the cluster, in units of the timecode scale
+     */
+    public long getTimecode() {
+        return timecode;
+    }
+
+    public long getTimecodeNanos() {
+        return timecode * timecodeScaleNanos;
+    }
+
+    public long getTimecodeScaleNanos() {
+        return timecodeScaleNanos;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the Kinesis Video tags received so far, by name
+     */
+    @Nonnull
+    public Map<String, String> getTags() {
+        return Collections.unmodifiableMap(tags);
+    }
+
+    @Nullable
+    public String getTag(@Nonnull final String name) {
+        return tags.get(name);
+    }
+
+    @Nullable
+    public String getFragmentNumber() {
+        return tags.get(TAG_FRAGMENT_NUMBER);
+    }
+
+    @Nullable
+    public String getContinuationToken() {
+        return tags.get(TAG_CONTINUATION_TOKEN);
+    }
+
+    /**
+     * Returns the time the fragment is behind the tip of the stream, or -1 when not yet received
+     */
+    public long getMillisBehindNow() {
+        final String value = tags.get(TAG_MILLIS_BEHIND_NOW);
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    void start(final long clusterTimecode, final long timecodeScaleNanos) {
+        this.timecode = clusterTimecode;
+        this.timecodeScaleNanos = timecodeScaleNanos;
+        started = true;
+    }
+
+    void addTag(@Nonnull final String name, @Nonnull final String value) {
+        tags.put(name, value);
+    }
+
+    void onFrame() {
+        frameCount++;
+    }
+
+    @Override
+    public String toString() {
+        return "MkvFragment{timecode=" + timecode + ", frameCount=" + frameCount + ", tags=" + tags + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Pull-based iterator of the fragments of an MKV stream.
+ * <p>
+ * The stream is only parsed as far as needed to complete the fragment asked for, so a consumer iterating slowly leaves
+ * the rest of the stream unread; over a {@link com.amazonaws.kinesisvideo.http.FlowControlledAsyncResponseConsumer}
+ * this stops the socket reads once its buffer is full. At most one fragment is held at a time, with copies of its
+ * frames. The read failures are thrown as {@link UncheckedIOException}.
+ */
+public final class MkvFragmentIterator implements Iterator<BufferedMkvFragment>, Closeable {
+    private final MkvStreamParser parser;
+    private List<MkvTrack> tracks = Collections.emptyList();
+    private List<MkvFrame> frames;
+    private long dataSize;
+    private BufferedMkvFragment next;
+    private boolean isEnded;
+
+    public MkvFragmentIterator(@Nonnull final ReadableByteChannel channel) {
+        this(channel, MkvBufferPool.getShared());
+    }
+
+    public MkvFragmentIterator(@Nonnull final ReadableByteChannel channel, @Nonnull final MkvBufferPool bufferPool) {
+        Preconditions.checkNotNull(channel);
+        parser = new MkvStreamParser(channel, new MkvStreamVisitor() {
+            @Override
+            public void onTracks(@Nonnull final List<MkvTrack> parsedTracks) {
+                tracks = parsedTracks;
+            }
+
+            @Override
+            public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+                frames = new ArrayList<MkvFrame>();
+                dataSize = 0;
+            }
+
+            @Override
+            public void onFrame(@Nonnull final MkvFragment fragment, @Nonnull final MkvFrame frame) {
+                frames.add(frame.copy());
+                dataSize += frame.getDataSize();
+            }
+
+            @Override
+            public void onFragmentEnd(@Nonnull final MkvFragment fragment) {
+                next = new BufferedMkvFragment(fragment, tracks, Collections.unmodifiableList(frames), dataSize);
+                frames = null;
+            }
+        }, bufferPool);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (next == null && !isEnded) {
+                isEnded = !parser.parseNext();
+            }
+        } catch (final IOException e) {
+            isEnded = true;
+            throw new UncheckedIOException(e);
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public BufferedMkvFragment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final BufferedMkvFragment fragment = next;
+        next = null;
+        return fragment;
+    }
+
+    /**
+     * Returns the stream offset parsed up to
+     */
+    public long getOffset() {
+        return parser.getOffset();
+    }
+
+    /**
+     * Closes the channel, which stops the transfer of the rest of the stream
+     */
+    @Override
+    public void close() throws IOException {
+        isEnded = true;
+        next = null;
+        parser.close();
+    }
+}
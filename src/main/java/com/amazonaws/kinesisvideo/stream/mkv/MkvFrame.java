@@ -0,0 +1,104 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+
+/**
+ * Frame read from a SimpleBlock or a Block.
+ * <p>
+ * The instance is reused by the parser and its data stay in the parser's buffer, so it is only valid during the
+ * {@link MkvStreamVisitor#onFrame} callback. The data are not touched unless asked for; {@link #copyData()} and
+ * {@link #copy()} are there for the consumers keeping them past the callback.
+ */
+public final class MkvFrame {
+    private ByteBuffer buffer;
+    private int dataPosition;
+    private int dataSize;
+    private long trackNumber;
+    private long timecodeNanos;
+    private long durationNanos;
+    private boolean keyFrame;
+    private boolean laced;
+
+    MkvFrame() {
+    }
+
+    public long getTrackNumber() {
+        return trackNumber;
+    }
+
+    public long getTimecodeNanos() {
+        return timecodeNanos;
+    }
+
+    /**
+     * Returns the duration of a Block, or 0 when the block does not give one
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public boolean isKeyFrame() {
+        return keyFrame;
+    }
+
+    /**
+     * Returns whether the block holds several laced frames, which are then returned together as the data
+     */
+    public boolean isLaced() {
+        return laced;
+    }
+
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * Returns a read-only view of the data in the parser's buffer
+     */
+    @Nonnull
+    public ByteBuffer getData() {
+        final ByteBuffer data = buffer.duplicate();
+        data.limit(dataPosition + dataSize).position(dataPosition);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    @Nonnull
+    public byte[] copyData() {
+        final byte[] data = new byte[dataSize];
+        getData().get(data);
+        return data;
+    }
+
+    /**
+     * Returns a frame holding a copy of the data, which stays valid after the callback
+     */
+    @Nonnull
+    public MkvFrame copy() {
+        final MkvFrame copy = new MkvFrame();
+        copy.set(ByteBuffer.wrap(copyData()), 0, dataSize, trackNumber, timecodeNanos, durationNanos, keyFrame, laced);
+        return copy;
+    }
+
+    void set(@Nonnull final ByteBuffer buffer, final int dataPosition, final int dataSize, final long trackNumber,
+             final long timecodeNanos, final long durationNanos, final boolean keyFrame, final boolean laced) {
+        this.buffer = buffer;
+        this.dataPosition = dataPosition;
+        this.dataSize = dataSize;
+        this.trackNumber = trackNumber;
+        this.timecodeNanos = timecodeNanos;
+        this.durationNanos = durationNanos;
+        this.keyFrame = keyFrame;
+        this.laced = laced;
+    }
+
+    void clear() {
+        buffer = null;
+    }
+
+    @Override
+    public String toString() {
+        return "MkvFrame{trackNumber=" + trackNumber + ", timecodeNanos=" + timecodeNanos + ", keyFrame=" + keyFrame
+                + ", dataSize=" + dataSize + "}";
+    }
+}
@@ -0,0 +1,622 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Incremental EBML/MKV parser over a stream such as the body of a GetMedia response.
+ * <p>
+ * The stream is read into a pooled direct buffer in which the elements are parsed in place. Only the elements carrying
+ * the tracks, the tags and the frames are descended into, everything else is skipped by its size, and the frames are
+ * handed to the visitor as views of the buffer. The buffer only grows to hold the largest block, so an endless stream of
+ * fragments is parsed in constant memory. The segments and clusters of unknown size, as sent by GetMedia, end with the
+ * first element of a higher level. A fragment ends with the tags following its cluster, so it is reported without
+ * waiting for the next one.
+ * <p>
+ * The parser is not thread safe; it calls the visitor on the thread calling {@link #parseNext()} or {@link #parse()}.
+ */
+public final class MkvStreamParser implements Closeable {
+    private static final long ID_EBML = 0x1A45DFA3L;
+    private static final long ID_SEGMENT = 0x18538067L;
+    private static final long ID_SEEK_HEAD = 0x114D9B74L;
+    private static final long ID_INFO = 0x1549A966L;
+    private static final long ID_TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long ID_TRACKS = 0x1654AE6BL;
+    private static final long ID_TRACK_ENTRY = 0xAEL;
+    private static final long ID_TRACK_NUMBER = 0xD7L;
+    private static final long ID_TRACK_TYPE = 0x83L;
+    private static final long ID_CODEC_ID = 0x86L;
+    private static final long ID_NAME = 0x536EL;
+    private static final long ID_CODEC_PRIVATE = 0x63A2L;
+    private static final long ID_CHAPTERS = 0x1043A770L;
+    private static final long ID_ATTACHMENTS = 0x1941A469L;
+    private static final long ID_CUES = 0x1C53BB6BL;
+    private static final long ID_TAGS = 0x1254C367L;
+    private static final long ID_TAG = 0x7373L;
+    private static final long ID_SIMPLE_TAG = 0x67C8L;
+    private static final long ID_TAG_NAME = 0x45A3L;
+    private static final long ID_TAG_STRING = 0x4487L;
+    private static final long ID_CLUSTER = 0x1F43B675L;
+    private static final long ID_CLUSTER_TIMECODE = 0xE7L;
+    private static final long ID_SIMPLE_BLOCK = 0xA3L;
+    private static final long ID_BLOCK_GROUP = 0xA0L;
+    private static final long ID_BLOCK = 0xA1L;
+    private static final long ID_BLOCK_DURATION = 0x9BL;
+    private static final long ID_REFERENCE_BLOCK = 0xFBL;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+    private static final int TRACK_TYPE_AUDIO = 2;
+    private static final long DEFAULT_TIMECODE_SCALE_NANOS = 1000000;
+
+    private static final int MAX_ID_LENGTH = 4;
+    private static final int MAX_SIZE_LENGTH = 8;
+    private static final int MAX_UNSIGNED_LENGTH = 8;
+    private static final int MAX_VALUE_SIZE = 1024 * 1024;
+    private static final int BLOCK_HEADER_SIZE = 3;
+    private static final int SIMPLE_BLOCK_KEY_FRAME = 0x80;
+    private static final int BLOCK_LACING = 0x06;
+    private static final long UNKNOWN_END = -1;
+
+    /**
+     * Master element being descended into
+     */
+    private static final class Master {
+        private final long id;
+        private final long end;
+
+        private Master(final long id, final long end) {
+            this.id = id;
+            this.end = end;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final MkvStreamVisitor visitor;
+    private final MkvBufferPool bufferPool;
+    private final Deque<Master> masters = new ArrayDeque<Master>();
+    private final MkvFrame frame = new MkvFrame();
+
+    private ByteBuffer buffer;
+    private long offset;
+    private boolean endOfInput;
+
+    private long timecodeScaleNanos = DEFAULT_TIMECODE_SCALE_NANOS;
+    private List<MkvTrack> tracks;
+    private MkvTrack track;
+    private boolean inSimpleTag;
+    private String tagName;
+    private String tagValue;
+    private MkvFragment fragment;
+    private long fragmentCount;
+    private long frameCount;
+
+    public MkvStreamParser(@Nonnull final InputStream inputStream, @Nonnull final MkvStreamVisitor visitor) {
+        this(inputStream, visitor, MkvBufferPool.getShared());
+    }
+
+    public MkvStreamParser(@Nonnull final InputStream inputStream, @Nonnull final MkvStreamVisitor visitor,
+                           @Nonnull final MkvBufferPool bufferPool) {
+        this(Channels.newChannel(Preconditions.checkNotNull(inputStream)), visitor, bufferPool);
+    }
+
+    /**
+     * @param channel Channel read straight into the parser's buffer
+     */
+    public MkvStreamParser(@Nonnull final ReadableByteChannel channel, @Nonnull final MkvStreamVisitor visitor,
+                           @Nonnull final MkvBufferPool bufferPool) {
+        this.channel = Preconditions.checkNotNull(channel);
+        this.visitor = Preconditions.checkNotNull(visitor);
+        this.bufferPool = Preconditions.checkNotNull(bufferPool);
+        buffer = bufferPool.acquire(MkvBufferPool.MIN_BUFFER_SIZE);
+        buffer.limit(0);
+    }
+
+    /**
+     * Parses the stream up to its end
+     *
+     * @throws EOFException if the stream ends within an element
+     */
+    public void parse() throws IOException {
+        while (parseNext()) {
+            // Keeps parsing
+        }
+    }
+
+    /**
+     * Parses the next element, calling the visitor for the events it completes
+     *
+     * @return false once the stream has ended
+     * @throws EOFException if the stream ends within an element
+     */
+    public boolean parseNext() throws IOException {
+        Preconditions.checkState(buffer != null, "Parser is closed");
+        if (!ensure(1)) {
+            finish();
+            return false;
+        }
+
+        final long elementOffset = offset;
+        final int idLength = vintLength(buffer.position(), MAX_ID_LENGTH);
+        require(idLength + 1);
+        final int sizeLength = vintLength(buffer.position() + idLength, MAX_SIZE_LENGTH);
+        require(idLength + sizeLength);
+
+        final long id = readUnsigned(buffer.position(), idLength);
+        final long size = readVint(buffer.position() + idLength, sizeLength);
+        final boolean isUnknownSize = size == (1L << (7 * sizeLength)) - 1;
+        endMasters(elementOffset, id);
+        // After the masters ended, so the offset is the end of a fragment ended by the next element
+        advance(idLength + sizeLength);
+        onElement(elementOffset, id, size, isUnknownSize);
+        endCompletedMasters();
+        return true;
+    }
+
+    /**
+     * Returns the stream offset following the parsed elements, the end of the fragment in
+     * {@link MkvStreamVisitor#onFragmentEnd}
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getFragmentCount() {
+        return fragmentCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns the buffer to the pool and closes the stream. To stop a parser blocked in a read from another thread,
+     * close the stream instead.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        final ByteBuffer released = buffer;
+        buffer = null;
+        frame.clear();
+        bufferPool.release(released);
+        channel.close();
+    }
+
+    private void onElement(final long elementOffset, final long id, final long size, final boolean isUnknownSize)
+            throws IOException {
+        if (isMaster(id)) {
+            masters.push(new Master(id, isUnknownSize ? UNKNOWN_END : offset + size));
+            onMasterStart(id);
+            return;
+        }
+
+        if (isUnknownSize) {
+            throw new IOException("Element " + Long.toHexString(id) + " of unknown size at offset " + elementOffset
+                    + " can not be skipped");
+        }
+
+        if (id == ID_SIMPLE_BLOCK) {
+            final int length = checkSize(elementOffset, size, MkvBufferPool.MAX_BUFFER_SIZE);
+            require(length);
+            onBlock(elementOffset, buffer.position(), length, true, 0, false);
+            advance(length);
+        } else if (id == ID_BLOCK_GROUP) {
+            final int length = checkSize(elementOffset, size, MkvBufferPool.MAX_BUFFER_SIZE);
+            require(length);
+            onBlockGroup(elementOffset, buffer.position(), length);
+            advance(length);
+        } else if (isValueRead(id)) {
+            final int length = checkSize(elementOffset, size, MAX_VALUE_SIZE);
+            require(length);
+            onValue(elementOffset, id, buffer.position(), length);
+            advance(length);
+        } else {
+            skip(size);
+        }
+    }
+
+    private boolean isMaster(final long id) {
+        return id == ID_SEGMENT || id == ID_INFO || id == ID_TRACKS || id == ID_TRACK_ENTRY || id == ID_TAGS
+                || id == ID_TAG || id == ID_SIMPLE_TAG || id == ID_CLUSTER;
+    }
+
+    /**
+     * Returns whether the value is needed in the current context, the others are skipped
+     */
+    private boolean isValueRead(final long id) {
+        if (id == ID_TIMECODE_SCALE || id == ID_CLUSTER_TIMECODE) {
+            return true;
+        } else if (id == ID_TRACK_NUMBER || id == ID_TRACK_TYPE || id == ID_CODEC_ID || id == ID_NAME
+                || id == ID_CODEC_PRIVATE) {
+            return track != null;
+        } else if (id == ID_TAG_NAME || id == ID_TAG_STRING) {
+            return inSimpleTag;
+        }
+
+        return false;
+    }
+
+    private void onMasterStart(final long id) {
+        if (id == ID_SEGMENT) {
+            endFragment();
+            fragment = new MkvFragment();
+            timecodeScaleNanos = DEFAULT_TIMECODE_SCALE_NANOS;
+        } else if (id == ID_TRACKS) {
+            tracks = new ArrayList<MkvTrack>();
+        } else if (id == ID_TRACK_ENTRY) {
+            track = new MkvTrack();
+        } else if (id == ID_SIMPLE_TAG) {
+            inSimpleTag = true;
+            tagName = null;
+            tagValue = null;
+        } else if (id == ID_CLUSTER) {
+            // Another cluster of the segment starts another fragment
+            if (fragment == null || fragment.isStarted()) {
+                endFragment();
+                fragment = new MkvFragment();
+            }
+        }
+    }
+
+    private void onMasterEnd(@Nonnull final Master master) {
+        if (master.id == ID_TRACK_ENTRY) {
+            if (tracks != null && track != null) {
+                tracks.add(track);
+            }
+
+            track = null;
+        } else if (master.id == ID_TRACKS) {
+            if (tracks != null) {
+                visitor.onTracks(Collections.unmodifiableList(tracks));
+            }
+
+            tracks = null;
+        } else if (master.id == ID_SIMPLE_TAG) {
+            if (tagName != null && tagValue != null) {
+                if (fragment != null && tagName.startsWith(MkvFragment.TAG_PREFIX)) {
+                    fragment.addTag(tagName, tagValue);
+                }
+
+                visitor.onTag(tagName, tagValue);
+            }
+
+            inSimpleTag = false;
+            tagName = null;
+            tagValue = null;
+        } else if (master.id == ID_TAGS || master.id == ID_SEGMENT) {
+            // The tags following the cluster are the last element of a GetMedia fragment
+            if (master.id == ID_SEGMENT || (fragment != null && fragment.isStarted())) {
+                endFragment();
+            }
+        }
+    }
+
+    private void endFragment() {
+        if (fragment != null && fragment.isStarted()) {
+            visitor.onFragmentEnd(fragment);
+        }
+
+        fragment = null;
+    }
+
+    /**
+     * Ends the masters of known size the element follows, and the ones of unknown size an element of its level ends
+     */
+    private void endMasters(final long elementOffset, final long id) {
+        while (!masters.isEmpty()) {
+            final Master master = masters.peek();
+            final boolean isEnded = master.end == UNKNOWN_END
+                    ? isEndedBy(master.id, id)
+                    : elementOffset >= master.end;
+            if (!isEnded) {
+                return;
+            }
+
+            masters.pop();
+            onMasterEnd(master);
+        }
+    }
+
+    /**
+     * Ends the masters of known size as soon as their last child is parsed, rather than when the next element arrives
+     */
+    private void endCompletedMasters() {
+        while (!masters.isEmpty() && masters.peek().end != UNKNOWN_END && offset >= masters.peek().end) {
+            onMasterEnd(masters.pop());
+        }
+    }
+
+    private static boolean isEndedBy(final long masterId, final long id) {
+        if (id == ID_EBML || id == ID_SEGMENT) {
+            return true;
+        }
+
+        if (masterId == ID_SEGMENT) {
+            return false;
+        }
+
+        return id == ID_CLUSTER || id == ID_TAGS || id == ID_TRACKS || id == ID_INFO || id == ID_CUES
+                || id == ID_SEEK_HEAD || id == ID_CHAPTERS || id == ID_ATTACHMENTS;
+    }
+
+    private void finish() throws IOException {
+        for (final Master master : masters) {
+            if (master.end != UNKNOWN_END && master.end > offset) {
+                throw new EOFException("Stream ended within the element " + Long.toHexString(master.id)
+                        + " ending at offset " + master.end);
+            }
+        }
+
+        while (!masters.isEmpty()) {
+            onMasterEnd(masters.pop());
+        }
+
+        endFragment();
+    }
+
+    private void onValue(final long elementOffset, final long id, final int position, final int length)
+            throws IOException {
+        if (id == ID_TIMECODE_SCALE) {
+            timecodeScaleNanos = readUnsigned(elementOffset, position, length);
+        } else if (id == ID_CLUSTER_TIMECODE) {
+            if (fragment == null || fragment.isStarted()) {
+                throw new IOException("Cluster timecode outside of a cluster at offset " + elementOffset);
+            }
+
+            fragment.start(readUnsigned(elementOffset, position, length), timecodeScaleNanos);
+            fragmentCount++;
+            visitor.onFragmentStart(fragment);
+        } else if (id == ID_TRACK_NUMBER) {
+            track.setNumber(readUnsigned(elementOffset, position, length));
+        } else if (id == ID_TRACK_TYPE) {
+            final long type = readUnsigned(elementOffset, position, length);
+            track.setType(type == TRACK_TYPE_VIDEO
+                    ? MkvTrackInfoType.VIDEO
+                    : type == TRACK_TYPE_AUDIO ? MkvTrackInfoType.AUDIO : MkvTrackInfoType.UNKNOWN);
+        } else if (id == ID_CODEC_ID) {
+            track.setCodecId(readString(position, length));
+        } else if (id == ID_NAME) {
+            track.setName(readString(position, length));
+        } else if (id == ID_CODEC_PRIVATE) {
+            track.setCodecPrivateData(readBytes(position, length));
+        } else if (id == ID_TAG_NAME) {
+            tagName = readString(position, length);
+        } else if (id == ID_TAG_STRING) {
+            tagValue = readString(position, length);
+        }
+    }
+
+    /**
+     * Finds the block of the buffered group, which is a key frame unless it references another block
+     */
+    private void onBlockGroup(final long elementOffset, final int position, final int length) throws IOException {
+        final int end = position + length;
+        int child = position;
+        int blockPosition = -1;
+        int blockLength = 0;
+        long duration = 0;
+        boolean isReferenced = false;
+        while (child < end) {
+            final int idLength = vintLength(child, MAX_ID_LENGTH);
+            if (child + idLength >= end) {
+                throw new IOException("Invalid block group at offset " + elementOffset);
+            }
+
+            final int sizeLength = vintLength(child + idLength, MAX_SIZE_LENGTH);
+            final int payload = child + idLength + sizeLength;
+            if (payload > end) {
+                throw new IOException("Invalid block group at offset " + elementOffset);
+            }
+
+            final long id = readUnsigned(child, idLength);
+            final long size = readVint(child + idLength, sizeLength);
+            if (size > end - payload) {
+                throw new IOException("Invalid block group at offset " + elementOffset);
+            }
+
+            if (id == ID_BLOCK) {
+                blockPosition = payload;
+                blockLength = (int) size;
+            } else if (id == ID_BLOCK_DURATION) {
+                duration = readUnsigned(elementOffset, payload, (int) size);
+            } else if (id == ID_REFERENCE_BLOCK) {
+                isReferenced = true;
+            }
+
+            child = payload + (int) size;
+        }
+
+        if (blockPosition >= 0) {
+            onBlock(elementOffset, blockPosition, blockLength, false, duration, isReferenced);
+        }
+    }
+
+    private void onBlock(final long elementOffset, final int position, final int length, final boolean isSimpleBlock,
+                         final long duration, final boolean isReferenced) throws IOException {
+        if (fragment == null || !fragment.isStarted()) {
+            throw new IOException("Block before the cluster timecode at offset " + elementOffset);
+        }
+
+        final int trackLength = length > 0 ? vintLength(position, MAX_SIZE_LENGTH) : 0;
+        if (trackLength == 0 || length < trackLength + BLOCK_HEADER_SIZE) {
+            throw new IOException("Invalid block at offset " + elementOffset);
+        }
+
+        final long trackNumber = readVint(position, trackLength);
+        final short relativeTimecode = buffer.getShort(position + trackLength);
+        final int flags = buffer.get(position + trackLength + 2) & 0xFF;
+        final boolean isKeyFrame = isSimpleBlock ? (flags & SIMPLE_BLOCK_KEY_FRAME) != 0 : !isReferenced;
+        final int dataPosition = position + trackLength + BLOCK_HEADER_SIZE;
+
+        frame.set(buffer, dataPosition, length - trackLength - BLOCK_HEADER_SIZE, trackNumber,
+                (fragment.getTimecode() + relativeTimecode) * timecodeScaleNanos, duration * timecodeScaleNanos,
+                isKeyFrame, (flags & BLOCK_LACING) != 0);
+        fragment.onFrame();
+        frameCount++;
+        try {
+            visitor.onFrame(fragment, frame);
+        } finally {
+            frame.clear();
+        }
+    }
+
+    /**
+     * Makes the bytes available from the buffer position, reading the stream as needed
+     *
+     * @return false if the stream ends first
+     */
+    private boolean ensure(final int length) throws IOException {
+        while (buffer.remaining() < length) {
+            if (endOfInput) {
+                return false;
+            }
+
+            if (length > buffer.capacity()) {
+                grow(length);
+            } else if (buffer.capacity() - buffer.position() < length) {
+                buffer.compact();
+                buffer.flip();
+            }
+
+            // Reads past the limit, leaving the parsed position where it is
+            final int position = buffer.position();
+            buffer.position(buffer.limit());
+            buffer.limit(buffer.capacity());
+            final int read;
+            try {
+                read = channel.read(buffer);
+            } finally {
+                buffer.limit(buffer.position());
+                buffer.position(position);
+            }
+
+            if (read < 0) {
+                endOfInput = true;
+            }
+        }
+
+        return true;
+    }
+
+    private void require(final int length) throws IOException {
+        if (!ensure(length)) {
+            throw new EOFException("Stream ended within the element at offset " + offset);
+        }
+    }
+
+    /**
+     * Moves to a pooled buffer large enough for the block, which is the only copy made
+     */
+    private void grow(final int length) {
+        final ByteBuffer grown = bufferPool.acquire(length);
+        grown.put(buffer);
+        grown.flip();
+        bufferPool.release(buffer);
+        buffer = grown;
+    }
+
+    private void skip(final long size) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining() && !ensure(1)) {
+                throw new EOFException("Stream ended within the element at offset " + offset);
+            }
+
+            final int skipped = (int) Math.min(remaining, buffer.remaining());
+            advance(skipped);
+            remaining -= skipped;
+        }
+    }
+
+    private void advance(final int length) {
+        buffer.position(buffer.position() + length);
+        offset += length;
+    }
+
+    private int vintLength(final int position, final int maxLength) throws IOException {
+        final int firstByte = buffer.get(position) & 0xFF;
+        final int vintLength = Integer.numberOfLeadingZeros(firstByte) - (Integer.SIZE - Byte.SIZE) + 1;
+        if (vintLength > maxLength) {
+            throw new IOException("Invalid EBML variable size integer at offset "
+                    + (offset + position - buffer.position()));
+        }
+
+        return vintLength;
+    }
+
+    /**
+     * Reads a variable size integer without its length marker
+     */
+    private long readVint(final int position, final int length) {
+        long value = buffer.get(position) & (0xFF >> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+        }
+
+        return value;
+    }
+
+    private long readUnsigned(final int position, final int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (buffer.get(position + i) & 0xFF);
+        }
+
+        return value;
+    }
+
+    private long readUnsigned(final long elementOffset, final int position, final int length) throws IOException {
+        if (length > MAX_UNSIGNED_LENGTH) {
+            throw new IOException("Invalid unsigned integer at offset " + elementOffset);
+        }
+
+        return readUnsigned(position, length);
+    }
+
+    @Nonnull
+    private byte[] readBytes(final int position, final int length) {
+        final byte[] bytes = new byte[length];
+        final ByteBuffer source = buffer.duplicate();
+        source.position(position);
+        source.get(bytes);
+        return bytes;
+    }
+
+    @Nonnull
+    private String readString(final int position, final int length) {
+        // Strings may be padded with zeros
+        int end = length;
+        while (end > 0 && buffer.get(position + end - 1) == 0) {
+            end--;
+        }
+
+        return new String(readBytes(position, end), StandardCharsets.UTF_8);
+    }
+
+    private static int checkSize(final long elementOffset, final long size, final int maxSize) throws IOException {
+        if (size > maxSize) {
+            throw new IOException("Element of " + size + " bytes at offset " + elementOffset + " exceeds the maximum of "
+                    + maxSize);
+        }
+
+        return (int) size;
+    }
+}
@@ -0,0 +1,40 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receives the events of an {@link MkvStreamParser}, on the thread calling the parser
+ */
+public interface MkvStreamVisitor {
+    /**
+     * Called at the end of each Tracks element, which GetMedia repeats in every fragment
+     */
+    default void onTracks(@Nonnull final List<MkvTrack> tracks) {
+    }
+
+    /**
+     * Called once the cluster timecode is known, with the tags preceding the cluster
+     */
+    default void onFragmentStart(@Nonnull final MkvFragment fragment) {
+    }
+
+    /**
+     * @param frame Frame only valid during the call
+     */
+    default void onFrame(@Nonnull final MkvFragment fragment, @Nonnull final MkvFrame frame) {
+    }
+
+    /**
+     * Called for every SimpleTag, whether it belongs to a fragment or not, such as the error tags of GetMedia
+     */
+    default void onTag(@Nonnull final String name, @Nonnull final String value) {
+    }
+
+    /**
+     * Called once the tags following the cluster are read, or when the segment of the fragment ends or another cluster
+     * starts first
+     */
+    default void onFragmentEnd(@Nonnull final MkvFragment fragment) {
+    }
+}
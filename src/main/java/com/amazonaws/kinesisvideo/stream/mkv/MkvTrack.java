@@ -0,0 +1,69 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Track parsed from a TrackEntry element
+ */
+public final class MkvTrack {
+    private long number;
+    private MkvTrackInfoType type = MkvTrackInfoType.UNKNOWN;
+    private String codecId;
+    private String name;
+    private byte[] codecPrivateData;
+
+    MkvTrack() {
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    @Nonnull
+    public MkvTrackInfoType getType() {
+        return type;
+    }
+
+    @Nullable
+    public String getCodecId() {
+        return codecId;
+    }
+
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public byte[] getCodecPrivateData() {
+        return codecPrivateData;
+    }
+
+    void setNumber(final long number) {
+        this.number = number;
+    }
+
+    void setType(@Nonnull final MkvTrackInfoType type) {
+        this.type = type;
+    }
+
+    void setCodecId(@Nullable final String codecId) {
+        this.codecId = codecId;
+    }
+
+    void setName(@Nullable final String name) {
+        this.name = name;
+    }
+
+    void setCodecPrivateData(@Nullable final byte[] codecPrivateData) {
+        this.codecPrivateData = codecPrivateData;
+    }
+
+    @Override
+    public String toString() {
+        return "MkvTrack{number=" + number + ", type=" + type + ", codecId=" + codecId + ", name=" + name + "}";
+    }
+}
@@ -0,0 +1,175 @@
+package com.amazonaws.kinesisvideo.stream.spill;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Finds the fragment boundaries of an MKV stream as it passes by in arbitrary chunks.
+ * <p>
+ * Only the Segment and Cluster elements are descended into, every other element is skipped by its size without being
+ * buffered, so the scanner keeps no more state than the element being parsed. The elements of unknown size, which the
+ * streaming producers use for the segment and the clusters, are handled alike.
+ */
+final class MkvFragmentScanner {
+    private static final long ID_EBML = 0x1A45DFA3L;
+    private static final long ID_SEGMENT = 0x18538067L;
+    private static final long ID_CLUSTER = 0x1F43B675L;
+    private static final long ID_CLUSTER_TIMECODE = 0xE7L;
+
+    private static final int MAX_ID_LENGTH = 4;
+    private static final int MAX_SIZE_LENGTH = 8;
+    private static final int MAX_TIMECODE_LENGTH = 8;
+
+    /**
+     * Receives the elements delimiting the fragments, at the stream offset of their first byte
+     */
+    interface Listener {
+        void onHeader(long offset);
+
+        void onCluster(long offset);
+
+        /**
+         * @param offset Offset following the timecode element
+         * @param timecode Timecode of the current cluster
+         */
+        void onClusterTimecode(long offset, long timecode);
+    }
+
+    private enum State {
+        ID,
+        SIZE,
+        SKIP,
+        TIMECODE
+    }
+
+    private final Listener listener;
+
+    private State state = State.ID;
+    private long offset;
+    private long elementOffset;
+    private long id;
+    private int length;
+    private int read;
+    private long value;
+    private long remaining;
+
+    MkvFragmentScanner(@Nonnull final Listener listener) {
+        this.listener = Preconditions.checkNotNull(listener);
+    }
+
+    /**
+     * Returns the offset of the element whose header is only partially scanned, or the offset following the scanned
+     * bytes. The bytes from there on may still turn out to start a fragment.
+     */
+    long getPendingOffset() {
+        return (state == State.ID && read > 0) || state == State.SIZE ? elementOffset : offset;
+    }
+
+    void scan(@Nonnull final byte[] buffer, final int bufferOffset, final int bufferLength) throws IOException {
+        final int end = bufferOffset + bufferLength;
+        int index = bufferOffset;
+        while (index < end) {
+            if (state == State.SKIP) {
+                final int skipped = (int) Math.min(remaining, end - index);
+                index += skipped;
+                offset += skipped;
+                remaining -= skipped;
+                if (remaining == 0) {
+                    state = State.ID;
+                }
+
+                continue;
+            }
+
+            final int b = buffer[index++] & 0xFF;
+            offset++;
+            switch (state) {
+                case ID:
+                    if (read == 0) {
+                        elementOffset = offset - 1;
+                        length = vintLength(b, MAX_ID_LENGTH);
+                        id = 0;
+                    }
+
+                    // The marker bit is part of the id
+                    id = (id << 8) | b;
+                    if (++read == length) {
+                        read = 0;
+                        state = State.SIZE;
+                    }
+                    break;
+                case SIZE:
+                    if (read == 0) {
+                        length = vintLength(b, MAX_SIZE_LENGTH);
+                        value = b & (0xFF >> length);
+                    } else {
+                        value = (value << 8) | b;
+                    }
+
+                    if (++read == length) {
+                        read = 0;
+                        onElement(isUnknownSize(value, length));
+                    }
+                    break;
+                case TIMECODE:
+                    value = (value << 8) | b;
+                    if (--remaining == 0) {
+                        listener.onClusterTimecode(offset, value);
+                        state = State.ID;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+    }
+
+    private void onElement(final boolean isUnknownSize) throws IOException {
+        if (id == ID_SEGMENT) {
+            state = State.ID;
+        } else if (id == ID_CLUSTER) {
+            listener.onCluster(elementOffset);
+            state = State.ID;
+        } else if (id == ID_CLUSTER_TIMECODE) {
+            if (isUnknownSize || value > MAX_TIMECODE_LENGTH) {
+                throw new IOException("Invalid cluster timecode at offset " + elementOffset);
+            }
+
+            remaining = value;
+            value = 0;
+            if (remaining == 0) {
+                listener.onClusterTimecode(offset, 0);
+                state = State.ID;
+            } else {
+                state = State.TIMECODE;
+            }
+        } else {
+            if (id == ID_EBML) {
+                listener.onHeader(elementOffset);
+            }
+
+            if (isUnknownSize) {
+                throw new IOException("Element " + Long.toHexString(id) + " of unknown size at offset "
+                        + elementOffset + " can not be skipped");
+            }
+
+            remaining = value;
+            state = remaining == 0 ? State.ID : State.SKIP;
+        }
+    }
+
+    private int vintLength(final int firstByte, final int maxLength) throws IOException {
+        final int vintLength = Integer.numberOfLeadingZeros(firstByte) - (Integer.SIZE - Byte.SIZE) + 1;
+        if (vintLength > maxLength) {
+            throw new IOException("Invalid EBML variable size integer at offset " + (offset - 1));
+        }
+
+        return vintLength;
+    }
+
+    private static boolean isUnknownSize(final long size, final int sizeLength) {
+        return size == (1L << (7 * sizeLength)) - 1;
+    }
+}
@@ -0,0 +1,1024 @@
+package com.amazonaws.kinesisvideo.stream.spill;
+
+import com.amazonaws.kinesisvideo.common.preconditions.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of an MKV stream kept in memory-mapped segment files, so the stream can be sent again from the
+ * last fragment the service has not persisted yet.
+ * <p>
+ * The bytes are stored as records of at most a segment each, checksummed and typed so the fragment boundaries and
+ * cluster timecodes found by the {@link MkvFragmentScanner} are kept along with the data. The EBML header and the
+ * segment information preceding the clusters are also stored aside, since a resumed session has to start with them.
+ * {@link #acknowledge(long)} releases the fragments up to a persisted timecode and the segments holding only released
+ * fragments are deleted. The disk usage is bounded by the segment count: when the log is full the oldest segment is
+ * dropped even if it was not acknowledged and the lost bytes are counted.
+ * <p>
+ * On opening, the log recovers the segments of the directory: the records are checked up to the first invalid one,
+ * which is where the writer crashed, and unless the stream had ended the fragment cut short is dropped. The
+ * acknowledged position is restored from its checkpoint.
+ * <p>
+ * The mapped segments are not unmapped explicitly, Java 8 has no API to do so, and are released with their buffers.
+ */
+public final class SegmentSpillLog implements Closeable {
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default maximum number of segment files
+     */
+    public static final int DEFAULT_MAX_SEGMENT_COUNT = 32;
+
+    /**
+     * Timecode of the fragments whose cluster timecode has not been seen yet
+     */
+    public static final long UNKNOWN_TIMECODE = -1;
+
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final int MAX_HEADER_SIZE = 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String HEADER_PREFIX = "header-";
+    private static final String HEADER_SUFFIX = ".mkv";
+    private static final String CHECKPOINT_FILE = "ack.checkpoint";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String OFFSET_FORMAT = "%020d";
+    private static final int SEGMENT_MAGIC = 0x4B565350;
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final int TIMECODE_SIZE = 8;
+    private static final int CHECKPOINT_SIZE = 20;
+    private static final byte RECORD_DATA = 1;
+    private static final byte RECORD_FRAGMENT_START = 2;
+    private static final byte RECORD_FRAGMENT_TIMECODE = 3;
+    private static final byte RECORD_END_OF_STREAM = 4;
+
+    private static final Logger log = LogManager.getLogger(SegmentSpillLog.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegmentCount;
+    private final boolean forceOnFragment;
+    private final MkvFragmentScanner scanner;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+    private final ArrayDeque<Fragment> fragments = new ArrayDeque<Fragment>();
+    private final TreeMap<Long, byte[]> headers = new TreeMap<Long, byte[]>();
+    private final List<ScanEvent> scanEvents = new ArrayList<ScanEvent>();
+    private final CRC32 crc = new CRC32();
+    private final byte[] carry = new byte[12];
+    private final byte[] timecodeBuffer = new byte[TIMECODE_SIZE];
+    private final AtomicLong droppedByteCount = new AtomicLong();
+    private final AtomicLong droppedFragmentCount = new AtomicLong();
+    private final AtomicLong acknowledgedFragmentCount = new AtomicLong();
+
+    private long scannerBase;
+    private long endOffset;
+    private long ackedOffset;
+    private long ackedTimecode = UNKNOWN_TIMECODE;
+    private int carryLength;
+    private Fragment currentFragment;
+    private boolean isFragmentPending;
+    private long headerOffset = -1;
+    private ByteArrayOutputStream headerCapture;
+    private boolean isEndOfStream;
+    private boolean isClosed;
+
+    private static final class Segment {
+        private final Path path;
+        private final long baseOffset;
+        private final MappedByteBuffer buffer;
+        private int writePosition = SEGMENT_HEADER_SIZE;
+        private long endOffset;
+        private boolean isDeleted;
+
+        private Segment(final Path path, final long baseOffset, final MappedByteBuffer buffer) {
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.buffer = buffer;
+            this.endOffset = baseOffset;
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+    }
+
+    private static final class Fragment {
+        private final long offset;
+        private final Segment segment;
+        private final int position;
+        private long timecode = UNKNOWN_TIMECODE;
+
+        private Fragment(final long offset, final Segment segment, final int position) {
+            this.offset = offset;
+            this.segment = segment;
+            this.position = position;
+        }
+    }
+
+    private static final class ScanEvent {
+        private static final int HEADER = 0;
+        private static final int CLUSTER = 1;
+        private static final int CLUSTER_TIMECODE = 2;
+
+        private final int type;
+        private final long offset;
+        private final long timecode;
+
+        private ScanEvent(final int type, final long offset, final long timecode) {
+            this.type = type;
+            this.offset = offset;
+            this.timecode = timecode;
+        }
+    }
+
+    private SegmentSpillLog(final Builder builder) throws IOException {
+        this.directory = builder.mDirectory;
+        this.segmentSize = builder.mSegmentSize;
+        this.maxSegmentCount = builder.mMaxSegmentCount;
+        this.forceOnFragment = builder.mForceOnFragment;
+        this.scanner = new MkvFragmentScanner(new MkvFragmentScanner.Listener() {
+            @Override
+            public void onHeader(final long offset) {
+                scanEvents.add(new ScanEvent(ScanEvent.HEADER, scannerBase + offset, UNKNOWN_TIMECODE));
+            }
+
+            @Override
+            public void onCluster(final long offset) {
+                scanEvents.add(new ScanEvent(ScanEvent.CLUSTER, scannerBase + offset, UNKNOWN_TIMECODE));
+            }
+
+            @Override
+            public void onClusterTimecode(final long offset, final long timecode) {
+                scanEvents.add(new ScanEvent(ScanEvent.CLUSTER_TIMECODE, scannerBase + offset, timecode));
+            }
+        });
+
+        synchronized (this) {
+            recover();
+            scannerBase = endOffset;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Appends the next bytes of the MKV stream
+     */
+    public synchronized void append(@Nonnull final byte[] buffer, final int offset, final int length)
+            throws IOException {
+        Preconditions.checkNotNull(buffer);
+        Preconditions.checkArgument(offset >= 0 && length >= 0 && offset + length <= buffer.length);
+        checkWritable();
+
+        scanEvents.clear();
+        scanner.scan(buffer, offset, length);
+
+        // The bytes of an element header split by the previous append were held back
+        byte[] data = buffer;
+        int dataOffset = offset;
+        int dataLength = length;
+        if (carryLength > 0) {
+            data = new byte[carryLength + length];
+            System.arraycopy(carry, 0, data, 0, carryLength);
+            System.arraycopy(buffer, offset, data, carryLength, length);
+            dataOffset = 0;
+            dataLength = data.length;
+            carryLength = 0;
+        }
+
+        final long dataStart = endOffset;
+        int position = dataOffset;
+        for (final ScanEvent event : scanEvents) {
+            final int eventPosition = dataOffset + (int) (event.offset - dataStart);
+            writeData(data, position, eventPosition - position);
+            position = eventPosition;
+            onScanEvent(event);
+        }
+
+        // An element whose header is not complete yet may start a fragment, it is written with the next bytes
+        final int writableEnd = dataOffset + (int) (scannerBase + scanner.getPendingOffset() - dataStart);
+        writeData(data, position, writableEnd - position);
+        carryLength = dataOffset + dataLength - writableEnd;
+        System.arraycopy(data, writableEnd, carry, 0, carryLength);
+        notifyAll();
+    }
+
+    /**
+     * Records the end of the MKV stream, the sessions end once they have read everything
+     */
+    public synchronized void markEndOfStream() throws IOException {
+        checkWritable();
+        writeData(carry, 0, carryLength);
+        carryLength = 0;
+        final Segment segment = ensureSegment(RECORD_HEADER_SIZE);
+        writeRecord(segment, RECORD_END_OF_STREAM, carry, 0, 0);
+        segment.buffer.force();
+        isEndOfStream = true;
+        notifyAll();
+    }
+
+    /**
+     * Releases the fragments whose cluster timecode is at most the acknowledged one
+     *
+     * @param timecode Fragment timecode of a persisted acknowledgement
+     * @return Number of released fragments
+     */
+    public synchronized int acknowledge(final long timecode) throws IOException {
+        int count = 0;
+        while (!fragments.isEmpty()) {
+            final Fragment fragment = fragments.peekFirst();
+            if (fragment.timecode == UNKNOWN_TIMECODE || fragment.timecode > timecode) {
+                break;
+            }
+
+            fragments.removeFirst();
+            count++;
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        acknowledgedFragmentCount.addAndGet(count);
+        ackedOffset = fragments.isEmpty() ? endOffset : fragments.peekFirst().offset;
+        ackedTimecode = timecode;
+        writeCheckpoint();
+        releaseSegments();
+        pruneHeaders();
+        return count;
+    }
+
+    /**
+     * Opens a stream of the MKV data to send, starting with the first fragment which has not been acknowledged and
+     * preceded by its header. The stream blocks for the data not appended yet and ends with the end of the MKV stream.
+     * It fails if the data it was to read has been dropped to bound the disk usage.
+     */
+    @Nonnull
+    public synchronized InputStream openSession() throws IOException {
+        if (isClosed) {
+            throw new IOException("Spill log is closed");
+        }
+
+        final long startOffset;
+        byte[] header = null;
+        if (fragments.isEmpty() && headerOffset >= 0) {
+            // The header being appended starts the session
+            startOffset = headerOffset;
+        } else {
+            // Every fragment may have been acknowledged, the session then starts with the next one
+            startOffset = fragments.isEmpty() ? endOffset : fragments.peekFirst().offset;
+            final Map.Entry<Long, byte[]> entry = headers.floorEntry(startOffset);
+            if (entry != null) {
+                header = entry.getValue();
+            } else if (endOffset > 0) {
+                log.warn("No header is stored for the fragment at offset {}, resuming without one", startOffset);
+            }
+        }
+
+        final SessionInputStream session = new SessionInputStream(header);
+        session.seek(startOffset);
+        return session;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (isClosed) {
+            return;
+        }
+
+        isClosed = true;
+        for (final Segment segment : segments) {
+            segment.buffer.force();
+        }
+
+        notifyAll();
+    }
+
+    @Nonnull
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the offset following the last appended byte of the MKV stream
+     */
+    public synchronized long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Returns the offset of the first fragment which has not been acknowledged
+     */
+    public synchronized long getAckedOffset() {
+        return ackedOffset;
+    }
+
+    /**
+     * Returns the last acknowledged timecode or {@link #UNKNOWN_TIMECODE}
+     */
+    public synchronized long getAckedTimecode() {
+        return ackedTimecode;
+    }
+
+    public synchronized int getPendingFragmentCount() {
+        return fragments.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized boolean isEndOfStream() {
+        return isEndOfStream;
+    }
+
+    public long getAcknowledgedFragmentCount() {
+        return acknowledgedFragmentCount.get();
+    }
+
+    /**
+     * Returns the number of bytes which were dropped before being acknowledged to bound the disk usage
+     */
+    public long getDroppedByteCount() {
+        return droppedByteCount.get();
+    }
+
+    public long getDroppedFragmentCount() {
+        return droppedFragmentCount.get();
+    }
+
+    private void checkWritable() throws IOException {
+        if (isClosed) {
+            throw new IOException("Spill log is closed");
+        }
+
+        if (isEndOfStream) {
+            throw new IOException("The stream has already ended");
+        }
+    }
+
+    private void onScanEvent(final ScanEvent event) throws IOException {
+        switch (event.type) {
+            case ScanEvent.HEADER:
+                currentFragment = null;
+                headerOffset = event.offset;
+                headerCapture = new ByteArrayOutputStream();
+                break;
+            case ScanEvent.CLUSTER:
+                if (headerCapture != null) {
+                    storeHeader(headerOffset, headerCapture.toByteArray());
+                }
+
+                headerOffset = -1;
+                headerCapture = null;
+                isFragmentPending = true;
+                if (forceOnFragment && !segments.isEmpty()) {
+                    segments.peekLast().buffer.force();
+                }
+                break;
+            case ScanEvent.CLUSTER_TIMECODE:
+                if (currentFragment != null && currentFragment.timecode == UNKNOWN_TIMECODE) {
+                    currentFragment.timecode = event.timecode;
+                    ByteBuffer.wrap(timecodeBuffer).putLong(event.timecode);
+                    writeRecord(ensureSegment(RECORD_HEADER_SIZE + TIMECODE_SIZE), RECORD_FRAGMENT_TIMECODE,
+                            timecodeBuffer, 0, TIMECODE_SIZE);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected scan event " + event.type);
+        }
+    }
+
+    private void writeData(final byte[] data, final int offset, final int length) throws IOException {
+        int position = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            final Segment segment = ensureSegment(RECORD_HEADER_SIZE + 1);
+            final int recordLength = Math.min(remaining, segment.remaining() - RECORD_HEADER_SIZE);
+            final byte type;
+            if (isFragmentPending) {
+                currentFragment = new Fragment(endOffset, segment, segment.writePosition);
+                fragments.addLast(currentFragment);
+                isFragmentPending = false;
+                type = RECORD_FRAGMENT_START;
+            } else {
+                type = RECORD_DATA;
+            }
+
+            writeRecord(segment, type, data, position, recordLength);
+            if (headerCapture != null) {
+                if (headerCapture.size() + recordLength > MAX_HEADER_SIZE) {
+                    log.warn("No cluster follows the header at offset {}, it is not stored", headerOffset);
+                    headerCapture = null;
+                } else {
+                    headerCapture.write(data, position, recordLength);
+                }
+            }
+
+            endOffset += recordLength;
+            segment.endOffset = endOffset;
+            position += recordLength;
+            remaining -= recordLength;
+        }
+    }
+
+    private void writeRecord(final Segment segment,
+                             final byte type,
+                             final byte[] payload,
+                             final int offset,
+                             final int length) {
+        crc.reset();
+        crc.update(type);
+        crc.update(payload, offset, length);
+
+        // The payload goes first, the checksum covers the record if it is only partially flushed
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.writePosition + RECORD_HEADER_SIZE);
+        buffer.put(payload, offset, length);
+        buffer.position(segment.writePosition);
+        buffer.putInt(length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(type);
+        segment.writePosition += RECORD_HEADER_SIZE + length;
+    }
+
+    @Nonnull
+    private Segment ensureSegment(final int recordSize) throws IOException {
+        final Segment last = segments.peekLast();
+        if (last != null && last.remaining() >= recordSize) {
+            return last;
+        }
+
+        if (last != null) {
+            last.buffer.force();
+        }
+
+        while (segments.size() >= maxSegmentCount) {
+            dropOldestSegment();
+        }
+
+        final Path path = directory.resolve(String.format(Locale.US, OFFSET_FORMAT, endOffset) + SEGMENT_SUFFIX);
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+
+        buffer.putInt(0, SEGMENT_MAGIC);
+        buffer.putInt(4, SEGMENT_VERSION);
+        buffer.putLong(8, endOffset);
+        final Segment segment = new Segment(path, endOffset, buffer);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void dropOldestSegment() {
+        final Segment oldest = segments.removeFirst();
+        final long lostBytes = oldest.endOffset - Math.max(oldest.baseOffset, ackedOffset);
+        int lostFragments = 0;
+        while (!fragments.isEmpty() && fragments.peekFirst().segment == oldest) {
+            fragments.removeFirst();
+            lostFragments++;
+        }
+
+        if (lostBytes > 0) {
+            droppedByteCount.addAndGet(lostBytes);
+            droppedFragmentCount.addAndGet(lostFragments);
+            log.warn("Spill log {} is full, dropped {} bytes and {} fragments which were not acknowledged",
+                    directory, lostBytes, lostFragments);
+        }
+
+        deleteSegment(oldest);
+        pruneHeaders();
+    }
+
+    private void releaseSegments() {
+        while (segments.size() > 1) {
+            final Iterator<Segment> iterator = segments.iterator();
+            final Segment first = iterator.next();
+            if (iterator.next().baseOffset > ackedOffset) {
+                break;
+            }
+
+            segments.removeFirst();
+            deleteSegment(first);
+        }
+    }
+
+    private void deleteSegment(final Segment segment) {
+        segment.isDeleted = true;
+        deleteFile(segment.path);
+    }
+
+    /**
+     * Deletes the headers preceding the one in effect at the first retained offset
+     */
+    private void pruneHeaders() {
+        final long retainedOffset = fragments.isEmpty()
+                ? (headerOffset >= 0 ? headerOffset : endOffset)
+                : fragments.peekFirst().offset;
+        final Long inEffect = headers.floorKey(retainedOffset);
+        if (inEffect == null) {
+            return;
+        }
+
+        final Iterator<Long> iterator = headers.headMap(inEffect, false).keySet().iterator();
+        while (iterator.hasNext()) {
+            deleteFile(headerPath(iterator.next()));
+            iterator.remove();
+        }
+    }
+
+    private void storeHeader(final long offset, final byte[] header) throws IOException {
+        writeAtomically(headerPath(offset), header);
+        headers.put(offset, header);
+        pruneHeaders();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final ByteBuffer checkpoint = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        checkpoint.putLong(ackedOffset);
+        checkpoint.putLong(ackedTimecode);
+        crc.reset();
+        crc.update(checkpoint.array(), 0, checkpoint.position());
+        checkpoint.putInt((int) crc.getValue());
+        writeAtomically(directory.resolve(CHECKPOINT_FILE), checkpoint.array());
+    }
+
+    private void writeAtomically(final Path path, final byte[] content) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            if (forceOnFragment) {
+                channel.force(true);
+            }
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Nonnull
+    private Path headerPath(final long offset) {
+        return directory.resolve(HEADER_PREFIX + String.format(Locale.US, OFFSET_FORMAT, offset) + HEADER_SUFFIX);
+    }
+
+    private static void deleteFile(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            log.warn("Unable to delete spill log file {}", path, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        final List<Path> segmentFiles = new ArrayList<Path>();
+        final List<Path> headerFiles = new ArrayList<Path>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path file : stream) {
+                final String name = file.getFileName().toString();
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    deleteFile(file);
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    segmentFiles.add(file);
+                } else if (name.startsWith(HEADER_PREFIX) && name.endsWith(HEADER_SUFFIX)) {
+                    headerFiles.add(file);
+                }
+            }
+        }
+
+        // The zero padded offsets sort in the order of the stream
+        Collections.sort(segmentFiles);
+        boolean isTruncated = false;
+        boolean isCleanEnd = false;
+        for (final Path file : segmentFiles) {
+            final Segment segment = isTruncated ? null : openSegment(file);
+            if (segment == null || (!segments.isEmpty() && segment.baseOffset != endOffset)) {
+                if (!isTruncated) {
+                    log.warn("Spill log segment {} is not valid, it is dropped with the following ones", file);
+                    isTruncated = true;
+                }
+
+                deleteFile(file);
+                continue;
+            }
+
+            if (segments.isEmpty()) {
+                endOffset = segment.baseOffset;
+                segment.endOffset = endOffset;
+            }
+
+            segments.addLast(segment);
+            isCleanEnd = recoverRecords(segment, isCleanEnd);
+            if (isTornRecord(segment)) {
+                log.warn("Spill log segment {} is truncated at position {}", file, segment.writePosition);
+                isTruncated = true;
+            }
+        }
+
+        if (!isCleanEnd && !segments.isEmpty()) {
+            // The fragment being written has been cut short and the stream will start over with a new header
+            final Fragment last = fragments.peekLast();
+            if (last != null) {
+                fragments.removeLast();
+                truncate(last.segment, last.position, last.offset);
+            } else {
+                truncate(segments.peekFirst(), SEGMENT_HEADER_SIZE, segments.peekFirst().baseOffset);
+            }
+        }
+
+        if (!segments.isEmpty()) {
+            clearTail(segments.peekLast());
+        }
+
+        readCheckpoint();
+        while (!fragments.isEmpty() && fragments.peekFirst().offset < ackedOffset) {
+            fragments.removeFirst();
+        }
+
+        releaseSegments();
+        for (final Path file : headerFiles) {
+            final String name = file.getFileName().toString();
+            final long offset;
+            try {
+                offset = Long.parseLong(name.substring(HEADER_PREFIX.length(),
+                        name.length() - HEADER_SUFFIX.length()));
+            } catch (final NumberFormatException e) {
+                continue;
+            }
+
+            if (offset < endOffset) {
+                headers.put(offset, Files.readAllBytes(file));
+            } else {
+                deleteFile(file);
+            }
+        }
+
+        pruneHeaders();
+        currentFragment = null;
+        if (!segments.isEmpty()) {
+            log.info("Recovered spill log {}: {} bytes, {} fragments to send from offset {}", directory,
+                    endOffset - segments.peekFirst().baseOffset, fragments.size(),
+                    fragments.isEmpty() ? endOffset : fragments.peekFirst().offset);
+        }
+    }
+
+    @Nullable
+    private Segment openSegment(final Path file) throws IOException {
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() < SEGMENT_HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != SEGMENT_VERSION) {
+            return null;
+        }
+
+        return new Segment(file, buffer.getLong(8), buffer);
+    }
+
+    /**
+     * Reads the valid records of the segment
+     *
+     * @return Whether the stream ended with the last record
+     */
+    private boolean recoverRecords(final Segment segment, final boolean isCleanEnd) {
+        final ByteBuffer buffer = segment.buffer;
+        boolean isEnded = isCleanEnd;
+        int position = SEGMENT_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(position);
+            final byte type = buffer.get(position + 8);
+            if (length < 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE
+                    || type < RECORD_DATA || type > RECORD_END_OF_STREAM
+                    || buffer.getInt(position + 4) != checksum(buffer, position + RECORD_HEADER_SIZE, length, type)) {
+                break;
+            }
+
+            final int payload = position + RECORD_HEADER_SIZE;
+            switch (type) {
+                case RECORD_FRAGMENT_START:
+                    currentFragment = new Fragment(endOffset, segment, position);
+                    fragments.addLast(currentFragment);
+                    endOffset += length;
+                    isEnded = false;
+                    break;
+                case RECORD_DATA:
+                    endOffset += length;
+                    isEnded = false;
+                    break;
+                case RECORD_FRAGMENT_TIMECODE:
+                    if (currentFragment != null && length == TIMECODE_SIZE) {
+                        currentFragment.timecode = buffer.getLong(payload);
+                    }
+                    break;
+                default:
+                    currentFragment = null;
+                    isEnded = true;
+                    break;
+            }
+
+            position = payload + length;
+        }
+
+        segment.writePosition = position;
+        segment.endOffset = endOffset;
+        return isEnded;
+    }
+
+    private int checksum(final ByteBuffer buffer, final int position, final int length, final byte type) {
+        crc.reset();
+        crc.update(type);
+        final ByteBuffer payload = buffer.duplicate();
+        payload.position(position);
+        payload.limit(position + length);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static boolean isTornRecord(final Segment segment) {
+        final int end = Math.min(segment.buffer.capacity(), segment.writePosition + RECORD_HEADER_SIZE);
+        for (int i = segment.writePosition; i < end; i++) {
+            if (segment.buffer.get(i) != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void truncate(final Segment segment, final int position, final long offset) {
+        while (segments.peekLast() != segment) {
+            deleteSegment(segments.removeLast());
+        }
+
+        segment.writePosition = position;
+        segment.endOffset = offset;
+        endOffset = offset;
+    }
+
+    /**
+     * Zeroes what follows the last record, so stale records are never taken for new ones after the next crash
+     */
+    private static void clearTail(final Segment segment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        int position = buffer.capacity();
+        for (int i = segment.writePosition; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                position = i;
+                break;
+            }
+        }
+
+        for (int i = position; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+
+        buffer.force();
+    }
+
+    private void readCheckpoint() throws IOException {
+        final Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        final byte[] content = Files.readAllBytes(path);
+        if (content.length != CHECKPOINT_SIZE) {
+            log.warn("Ignoring the invalid spill log checkpoint {}", path);
+            return;
+        }
+
+        final ByteBuffer checkpoint = ByteBuffer.wrap(content);
+        crc.reset();
+        crc.update(content, 0, CHECKPOINT_SIZE - 4);
+        if (checkpoint.getInt(CHECKPOINT_SIZE - 4) != (int) crc.getValue()) {
+            log.warn("Ignoring the corrupted spill log checkpoint {}", path);
+            return;
+        }
+
+        ackedOffset = Math.min(checkpoint.getLong(0), endOffset);
+        ackedTimecode = checkpoint.getLong(8);
+    }
+
+    /**
+     * Session reading the records of the log from a position on
+     */
+    private final class SessionInputStream extends InputStream {
+        private final byte[] prefix;
+        private int prefixPosition;
+        private Segment segment;
+        private int recordPosition;
+        private int payloadPosition;
+        private int payloadRemaining;
+        private boolean isSessionClosed;
+
+        private SessionInputStream(@Nullable final byte[] prefix) {
+            this.prefix = prefix == null ? new byte[0] : prefix;
+        }
+
+        /**
+         * Moves to the offset, called with the log locked
+         */
+        private void seek(final long offset) throws IOException {
+            if (offset == endOffset) {
+                segment = segments.peekLast();
+                recordPosition = segment == null ? SEGMENT_HEADER_SIZE : segment.writePosition;
+                return;
+            }
+
+            for (final Segment candidate : segments) {
+                if (offset >= candidate.baseOffset && offset < candidate.endOffset) {
+                    segment = candidate;
+                    recordPosition = SEGMENT_HEADER_SIZE;
+                    long recordOffset = candidate.baseOffset;
+                    while (true) {
+                        nextRecord();
+                        if (offset < recordOffset + payloadRemaining) {
+                            payloadPosition += (int) (offset - recordOffset);
+                            payloadRemaining -= (int) (offset - recordOffset);
+                            return;
+                        }
+
+                        recordOffset += payloadRemaining;
+                    }
+                }
+            }
+
+            throw new IOException("Offset " + offset + " is no longer in the spill log");
+        }
+
+        private void nextRecord() {
+            final int length = segment.buffer.getInt(recordPosition);
+            final byte type = segment.buffer.get(recordPosition + 8);
+            payloadPosition = recordPosition + RECORD_HEADER_SIZE;
+            payloadRemaining = type == RECORD_DATA || type == RECORD_FRAGMENT_START ? length : 0;
+            recordPosition = payloadPosition + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] buffer = new byte[1];
+            final int read = read(buffer, 0, 1);
+            return read == -1 ? -1 : buffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@Nonnull final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            if (prefixPosition < prefix.length) {
+                final int read = Math.min(length, prefix.length - prefixPosition);
+                System.arraycopy(prefix, prefixPosition, buffer, offset, read);
+                prefixPosition += read;
+                return read;
+            }
+
+            synchronized (SegmentSpillLog.this) {
+                while (payloadRemaining == 0) {
+                    if (isSessionClosed || isClosed) {
+                        throw new IOException("Spill log session is closed");
+                    }
+
+                    if (segment == null) {
+                        segment = segments.peekFirst();
+                        recordPosition = SEGMENT_HEADER_SIZE;
+                    } else if (segment.isDeleted) {
+                        throw new IOException("The data of the session has been dropped from the spill log");
+                    } else if (recordPosition < segment.writePosition) {
+                        nextRecord();
+                    } else if (segment != segments.peekLast()) {
+                        segment = nextSegment(segment);
+                        recordPosition = SEGMENT_HEADER_SIZE;
+                    } else if (isEndOfStream) {
+                        return -1;
+                    } else {
+                        try {
+                            SegmentSpillLog.this.wait();
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Interrupted waiting for the spill log");
+                        }
+                    }
+                }
+
+                final int read = Math.min(length, payloadRemaining);
+                final ByteBuffer payload = segment.buffer.duplicate();
+                payload.position(payloadPosition);
+                payload.get(buffer, offset, read);
+                payloadPosition += read;
+                payloadRemaining -= read;
+                return read;
+            }
+        }
+
+        @Nonnull
+        private Segment nextSegment(final Segment current) {
+            final Iterator<Segment> iterator = segments.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() == current) {
+                    return iterator.next();
+                }
+            }
+
+            // The current one has been dropped, the session can not go on
+            throw new IllegalStateException("Segment is no longer in the spill log");
+        }
+
+        @Override
+        public void close() {
+            synchronized (SegmentSpillLog.this) {
+                isSessionClosed = true;
+                SegmentSpillLog.this.notifyAll();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private Path mDirectory;
+        private int mSegmentSize = DEFAULT_SEGMENT_SIZE;
+        private int mMaxSegmentCount = DEFAULT_MAX_SEGMENT_COUNT;
+        private boolean mForceOnFragment = true;
+
+        public Builder directory(@Nonnull final Path directory) {
+            mDirectory = directory;
+            return this;
+        }
+
+        public Builder segmentSize(final int segmentSize) {
+            mSegmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Bounds the disk usage of the log to the segment count times the segment size
+         */
+        public Builder maxSegmentCount(final int maxSegmentCount) {
+            mMaxSegmentCount = maxSegmentCount;
+            return this;
+        }
+
+        /**
+         * Whether the segments are flushed to the disk at every fragment boundary, otherwise the operating system
+         * writes them back in its own time and a crash of the host may lose the latest fragments
+         */
+        public Builder forceOnFragment(final boolean forceOnFragment) {
+            mForceOnFragment = forceOnFragment;
+            return this;
+        }
+
+        /**
+         * Opens the log, recovering the segments found in the directory
+         */
+        public SegmentSpillLog build() throws IOException {
+            Preconditions.checkNotNull(mDirectory);
+            Preconditions.checkArgument(mSegmentSize >= MIN_SEGMENT_SIZE, "Segment size is too small");
+            Preconditions.checkArgument(mMaxSegmentCount >= 2, "At least two segments are needed");
+            return new SegmentSpillLog(this);
+        }
+    }
+}
@@ -12,9 +12,11 @@ public final class StreamInfoConstants {
     public static final int HTTP_NOT_FOUND = 404;
     public static final int HTTP_RESOURCE_IN_USE = 10003;
     public static final int HTTP_ACCESS_DENIED = 403;
+    public static final int HTTP_SERVICE_UNAVAILABLE = 503;
     public static final String RESOURCE_NOT_FOUND = "ResourceNotFoundException";
     public static final String RESOURCE_IN_USE = "ResourceInUseException";
     public static final String ACCESS_DENIED = "AccessDeniedException";
+    public static final String SERVICE_UNAVAILABLE = "ServiceUnavailableException";
 
     public static final boolean NOT_ADAPTIVE = false;
     public static final boolean KEYFRAME_FRAGMENTATION = true;
@@ -0,0 +1,212 @@
+package com.amazonaws.kinesisvideo.auth;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.producer.AuthInfo;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultAuthCallbacksTest {
+    private static final long LIFETIME_MILLIS = 100 * 1000;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final FakeCredentialsProvider credentialsProvider = new FakeCredentialsProvider();
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final List<Runnable> scheduledTasks = Collections.synchronizedList(new ArrayList<Runnable>());
+    private final List<Long> scheduledDelays = Collections.synchronizedList(new ArrayList<Long>());
+    private DefaultAuthCallbacks authCallbacks;
+
+    /**
+     * Credentials provider returning the queued credentials or failures
+     */
+    private static final class FakeCredentialsProvider implements KinesisVideoCredentialsProvider {
+        private final Deque<Object> results = new ArrayDeque<Object>();
+        private volatile CountDownLatch entered = new CountDownLatch(0);
+        private volatile CountDownLatch release = new CountDownLatch(0);
+
+        @Override
+        public KinesisVideoCredentials getCredentials() throws KinesisVideoException {
+            return getUpdatedCredentials();
+        }
+
+        @Override
+        public KinesisVideoCredentials getUpdatedCredentials() throws KinesisVideoException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                throw new KinesisVideoException(e);
+            }
+
+            final Object result;
+            synchronized (results) {
+                result = results.removeFirst();
+            }
+
+            if (result instanceof KinesisVideoException) {
+                throw (KinesisVideoException) result;
+            }
+
+            return (KinesisVideoCredentials) result;
+        }
+
+        private void add(final Object result) {
+            synchronized (results) {
+                results.addLast(result);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // The initial refresh runs on the calling thread, the later ones when the test runs them
+        when(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(
+                new Answer<ScheduledFuture<?>>() {
+                    @Override
+                    public ScheduledFuture<?> answer(final InvocationOnMock invocation) {
+                        final Runnable task = invocation.getArgument(0);
+                        final long delay = invocation.getArgument(1);
+                        scheduledDelays.add(delay);
+                        if (delay == 0 && scheduledDelays.size() == 1) {
+                            task.run();
+                        } else {
+                            scheduledTasks.add(task);
+                        }
+
+                        return mock(ScheduledFuture.class);
+                    }
+                });
+        authCallbacks = new DefaultAuthCallbacks(credentialsProvider, executor,
+                LogManager.getLogger(DefaultAuthCallbacksTest.class));
+    }
+
+    @Test
+    public void refreshIsScheduledAfterTheFractionOfTheRemainingLifetime() throws Exception {
+        final KinesisVideoCredentials first = credentials("FIRST");
+        credentialsProvider.add(first);
+
+        final AuthInfo authInfo = authCallbacks.getSecurityToken();
+        assertArrayEquals(KinesisVideoCredentialsCodec.encode(first), authInfo.getData());
+        assertEquals(1, authCallbacks.getRefreshCount());
+        assertEquals(2, scheduledDelays.size());
+        final long delay = scheduledDelays.get(1);
+        assertTrue(delay > (long) (0.8 * LIFETIME_MILLIS) - TIMEOUT_MILLIS);
+        assertTrue(delay <= (long) (0.8 * LIFETIME_MILLIS));
+
+        // Handed out without calling the provider until the scheduled refresh runs
+        assertSame(authInfo, authCallbacks.getSecurityToken());
+        final KinesisVideoCredentials second = credentials("SECOND");
+        credentialsProvider.add(second);
+        runNextTask();
+        assertArrayEquals(KinesisVideoCredentialsCodec.encode(second), authCallbacks.getSecurityToken().getData());
+        assertEquals(2, authCallbacks.getRefreshCount());
+        assertEquals(1, scheduledTasks.size());
+    }
+
+    @Test
+    public void failedRefreshIsRetriedAfterFiveSeconds() throws Exception {
+        final KinesisVideoCredentials first = credentials("FIRST");
+        credentialsProvider.add(first);
+        credentialsProvider.add(new KinesisVideoException("Provider failed"));
+        credentialsProvider.add(credentials("SECOND"));
+        authCallbacks.getSecurityToken();
+
+        runNextTask();
+        assertEquals(1, authCallbacks.getRefreshFailureCount());
+        assertEquals(5000L, (long) scheduledDelays.get(2));
+        // The current token is still handed out
+        assertArrayEquals(KinesisVideoCredentialsCodec.encode(first), authCallbacks.getSecurityToken().getData());
+
+        runNextTask();
+        assertEquals(2, authCallbacks.getRefreshCount());
+        assertEquals(1, authCallbacks.getRefreshFailureCount());
+    }
+
+    @Test
+    public void initialFailureHandsOutAnEmptyTokenAndRetries() throws Exception {
+        credentialsProvider.add(new KinesisVideoException("Provider failed"));
+
+        assertNull(authCallbacks.getSecurityToken().getData());
+        assertEquals(1, authCallbacks.getRefreshFailureCount());
+        assertEquals(5000L, (long) scheduledDelays.get(1));
+    }
+
+    @Test
+    public void readsDuringARefreshReturnTheCurrentToken() throws Exception {
+        final KinesisVideoCredentials first = credentials("FIRST");
+        credentialsProvider.add(first);
+        final AuthInfo current = authCallbacks.getSecurityToken();
+
+        // The next refresh blocks in the provider on another thread
+        credentialsProvider.add(credentials("SECOND"));
+        credentialsProvider.entered = new CountDownLatch(1);
+        credentialsProvider.release = new CountDownLatch(1);
+        final ExecutorService threads = Executors.newFixedThreadPool(5);
+        try {
+            final Runnable refresh = scheduledTasks.remove(0);
+            final Future<?> refreshing = threads.submit(refresh);
+            assertTrue(credentialsProvider.entered.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+            final List<Future<AuthInfo>> reads = new ArrayList<Future<AuthInfo>>();
+            for (int i = 0; i < 4; i++) {
+                reads.add(threads.submit(new Callable<AuthInfo>() {
+                    @Override
+                    public AuthInfo call() {
+                        return authCallbacks.getSecurityToken();
+                    }
+                }));
+            }
+
+            for (final Future<AuthInfo> read : reads) {
+                assertSame(current, read.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            }
+
+            assertFalse(refreshing.isDone());
+            credentialsProvider.release.countDown();
+            refreshing.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } finally {
+            credentialsProvider.release.countDown();
+            threads.shutdownNow();
+        }
+
+        assertEquals(2, authCallbacks.getRefreshCount());
+        assertFalse(current == authCallbacks.getSecurityToken());
+    }
+
+    private void runNextTask() {
+        scheduledTasks.remove(0).run();
+    }
+
+    private static KinesisVideoCredentials credentials(final String accessKey) {
+        return new KinesisVideoCredentials(accessKey, "SECRET", "TOKEN",
+                new Date(System.currentTimeMillis() + LIFETIME_MILLIS));
+    }
+}
@@ -0,0 +1,52 @@
+package com.amazonaws.kinesisvideo.auth;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KinesisVideoCredentialsCodecTest {
+    private static final Date EXPIRATION = new Date(1600000000000L);
+
+    @Test
+    public void roundTripWithSessionToken() throws Exception {
+        final KinesisVideoCredentials credentials =
+                new KinesisVideoCredentials("AKID", "SECRET", "SESSION\u00e9TOKEN", EXPIRATION);
+
+        final KinesisVideoCredentials decoded =
+                KinesisVideoCredentialsCodec.decode(KinesisVideoCredentialsCodec.encode(credentials));
+
+        assertEquals("AKID", decoded.getAccessKey());
+        assertEquals("SECRET", decoded.getSecretKey());
+        assertEquals("SESSION\u00e9TOKEN", decoded.getSessionToken());
+        assertEquals(EXPIRATION, decoded.getExpiration());
+    }
+
+    @Test
+    public void roundTripWithoutSessionToken() throws Exception {
+        final KinesisVideoCredentials decoded = KinesisVideoCredentialsCodec.decode(
+                KinesisVideoCredentialsCodec.encode(new KinesisVideoCredentials("AKID", "SECRET")));
+
+        assertEquals("AKID", decoded.getAccessKey());
+        assertNull(decoded.getSessionToken());
+        assertEquals(KinesisVideoCredentials.CREDENTIALS_NEVER_EXPIRE, decoded.getExpiration());
+    }
+
+    @Test(expected = KinesisVideoException.class)
+    public void truncatedTokenIsRejected() throws Exception {
+        final byte[] token = KinesisVideoCredentialsCodec.encode(
+                new KinesisVideoCredentials("AKID", "SECRET", "TOKEN", EXPIRATION));
+        KinesisVideoCredentialsCodec.decode(Arrays.copyOf(token, token.length - 1));
+    }
+
+    @Test(expected = KinesisVideoException.class)
+    public void unknownVersionIsRejected() throws Exception {
+        final byte[] token = KinesisVideoCredentialsCodec.encode(new KinesisVideoCredentials("AKID", "SECRET"));
+        token[0] = 42;
+        KinesisVideoCredentialsCodec.decode(token);
+    }
+}
@@ -0,0 +1,467 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.stream.mkv.MkvFragment;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamParser;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamVisitor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * In-process stand-in of the PutMedia API of the Kinesis Video data plane, for tests running without an AWS account.
+ * <p>
+ * Accepts the chunked uploads of {@link PutMediaClient}, finds the fragments with an {@link MkvStreamParser} and
+ * streams BUFFERING, RECEIVED and PERSISTED acknowledgements back as the service does, the fragment timecode being the
+ * cluster timecode. The reads can be paced to a bandwidth and the acknowledgements delayed. Errors can be injected:
+ * rejected connections, ERROR acknowledgements in place of PERSISTED ones, and connections dropped after a number of
+ * persisted fragments.
+ */
+public final class FakePutMediaServer implements Closeable {
+    public static final int ERROR_ID_INTERNAL_FAILURE = 5000;
+
+    private static final String PUT_MEDIA_PATH = "/putMedia";
+    private static final String CRLF = "\r\n";
+    private static final long FRAGMENT_NUMBER_BASE = 91343852333181432L;
+
+    private final Builder builder;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("FakePutMedia-%d")
+            .setDaemon(true)
+            .build());
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong fragmentCount = new AtomicLong();
+    private final AtomicLong ackCount = new AtomicLong();
+    private final AtomicLong droppedConnectionCount = new AtomicLong();
+    private final List<Long> persistedTimecodes = Collections.synchronizedList(new ArrayList<Long>());
+    private volatile boolean isClosed;
+
+    private FakePutMediaServer(final Builder builder) throws IOException {
+        this.builder = builder;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connections.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the PutMedia URI of the server
+     */
+    public URI getUri() {
+        return URI.create("http://localhost:" + serverSocket.getLocalPort() + PUT_MEDIA_PATH);
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Returns the bytes of MKV data received, without the chunk encoding
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * Returns the fragments received in full, by all the connections
+     */
+    public long getFragmentCount() {
+        return fragmentCount.get();
+    }
+
+    public long getAckCount() {
+        return ackCount.get();
+    }
+
+    public long getDroppedConnectionCount() {
+        return droppedConnectionCount.get();
+    }
+
+    /**
+     * Returns the timecodes of the PERSISTED acknowledgements sent, in the order they were sent
+     */
+    public List<Long> getPersistedTimecodes() {
+        synchronized (persistedTimecodes) {
+            return new ArrayList<Long>(persistedTimecodes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!isClosed) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (final IOException e) {
+                return;
+            }
+
+            final int connection = connectionCount.incrementAndGet();
+            connections.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket, connection);
+                }
+            });
+        }
+    }
+
+    private void serve(final Socket socket, final int connection) {
+        Session session = null;
+        try {
+            final InputStream input = new BufferedInputStream(socket.getInputStream());
+            final OutputStream output = socket.getOutputStream();
+            final Map<String, String> headers = readRequestHead(input);
+            if (connection <= builder.rejectedConnectionCount) {
+                final byte[] body = "{\"message\":\"Injected failure\"}".getBytes(UTF_8);
+                output.write(("HTTP/1.1 " + builder.rejectionStatus + " Injected Failure" + CRLF
+                        + "Content-Type: application/json" + CRLF
+                        + "Content-Length: " + body.length + CRLF
+                        + "Connection: close" + CRLF + CRLF).getBytes(US_ASCII));
+                output.write(body);
+                output.flush();
+                return;
+            }
+
+            if (!"chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                output.write(("HTTP/1.1 400 Bad Request" + CRLF + "Content-Length: 0" + CRLF + CRLF)
+                        .getBytes(US_ASCII));
+                output.flush();
+                return;
+            }
+
+            output.write(("HTTP/1.1 200 OK" + CRLF
+                    + "Content-Type: application/json" + CRLF
+                    + "Transfer-Encoding: chunked" + CRLF + CRLF).getBytes(US_ASCII));
+            output.flush();
+            session = new Session(socket, output);
+            try (final MkvStreamParser parser = new MkvStreamParser(new ChunkedBodyInputStream(input), session)) {
+                parser.parse();
+            }
+
+            session.finish();
+        } catch (final IOException | RuntimeException e) {
+            // The client went away, or the connection was dropped on purpose
+        } finally {
+            if (session != null) {
+                session.acks.shutdownNow();
+            }
+
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static Map<String, String> readRequestHead(final InputStream input) throws IOException {
+        final Map<String, String> headers = new HashMap<String, String>();
+        // The request line, any path is taken for PutMedia
+        readLine(input);
+        String line;
+        while (!(line = readLine(input)).isEmpty()) {
+            final int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+            }
+        }
+
+        return headers;
+    }
+
+    private static String readLine(final InputStream input) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = input.read()) != '\n') {
+            if (read == -1) {
+                throw new EOFException("Connection closed within a line");
+            }
+
+            if (read != '\r') {
+                line.write(read);
+            }
+        }
+
+        return new String(line.toByteArray(), US_ASCII);
+    }
+
+    /**
+     * Acknowledges the fragments of a connection
+     */
+    private final class Session implements MkvStreamVisitor {
+        private final Socket socket;
+        private final OutputStream output;
+        private final ScheduledExecutorService acks = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("FakePutMedia-Acks-%d").setDaemon(true).build());
+        private int persistedCount;
+
+        private Session(final Socket socket, final OutputStream output) {
+            this.socket = socket;
+            this.output = output;
+        }
+
+        @Override
+        public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+            send("BUFFERING", fragment.getTimecode(), fragmentNumberOf(fragment), 0);
+        }
+
+        @Override
+        public void onFragmentEnd(@Nonnull final MkvFragment fragment) {
+            final long index = fragmentCount.incrementAndGet();
+            final long timecode = fragment.getTimecode();
+            final String fragmentNumber = fragmentNumberOf(fragment);
+            final boolean isFailed = builder.errorEveryFragments > 0 && index % builder.errorEveryFragments == 0;
+            acks.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    send("RECEIVED", timecode, fragmentNumber, 0);
+                }
+            }, builder.receivedLatencyMillis, TimeUnit.MILLISECONDS);
+            acks.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (isFailed) {
+                        send("ERROR", timecode, fragmentNumber, builder.errorId);
+                        return;
+                    }
+
+                    send("PERSISTED", timecode, fragmentNumber, 0);
+                    persistedTimecodes.add(timecode);
+                    persistedCount++;
+                    if (persistedCount == builder.dropConnectionAfterFragments) {
+                        droppedConnectionCount.incrementAndGet();
+                        drop();
+                    }
+                }
+            }, builder.persistedLatencyMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Sends the acknowledgements still due and the end of the response
+         */
+        private void finish() throws IOException {
+            acks.shutdown();
+            try {
+                acks.awaitTermination(builder.persistedLatencyMillis + 10000, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while acknowledging the fragments");
+            }
+
+            synchronized (output) {
+                output.write(("0" + CRLF + CRLF).getBytes(US_ASCII));
+                output.flush();
+            }
+        }
+
+        private String fragmentNumberOf(final MkvFragment fragment) {
+            return Long.toString(FRAGMENT_NUMBER_BASE + fragment.getTimecode());
+        }
+
+        private void send(final String eventType, final long timecode, final String fragmentNumber,
+                          final int errorId) {
+            final byte[] ack = ("{\"EventType\":\"" + eventType + "\",\"FragmentTimecode\":" + timecode
+                    + ",\"FragmentNumber\":\"" + fragmentNumber + "\""
+                    + (errorId == 0 ? "" : ",\"ErrorId\":" + errorId) + "}").getBytes(UTF_8);
+            try {
+                synchronized (output) {
+                    output.write((Integer.toHexString(ack.length) + CRLF).getBytes(US_ASCII));
+                    output.write(ack);
+                    output.write(CRLF.getBytes(US_ASCII));
+                    output.flush();
+                }
+
+                ackCount.incrementAndGet();
+            } catch (final IOException e) {
+                // The connection is gone, the reading side ends the session
+                acks.shutdownNow();
+            }
+        }
+
+        private void drop() {
+            acks.shutdownNow();
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Decodes a chunked request body, read at the bandwidth of the server
+     */
+    private final class ChunkedBodyInputStream extends InputStream {
+        private final InputStream input;
+        private final long startNanos = System.nanoTime();
+        private long read;
+        private long remainingInChunk;
+        private boolean isInBody;
+        private boolean isEnded;
+
+        private ChunkedBodyInputStream(final InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            while (remainingInChunk == 0) {
+                if (isEnded) {
+                    return -1;
+                }
+
+                if (isInBody) {
+                    // The data of the previous chunk are followed by a line break
+                    readLine(input);
+                }
+
+                isInBody = true;
+                final String sizeLine = readLine(input);
+                final int extension = sizeLine.indexOf(';');
+                remainingInChunk = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension))
+                        .trim(), 16);
+                if (remainingInChunk == 0) {
+                    isEnded = true;
+                    // Trailers, up to the empty line
+                    while (!readLine(input).isEmpty()) {
+                        continue;
+                    }
+                }
+            }
+
+            final int count = input.read(buffer, offset, (int) Math.min(length, remainingInChunk));
+            if (count == -1) {
+                throw new EOFException("Connection closed within a chunk");
+            }
+
+            remainingInChunk -= count;
+            read += count;
+            bytesReceived.addAndGet(count);
+            pace();
+            return count;
+        }
+
+        private void pace() throws InterruptedIOException {
+            if (builder.bandwidthBytesPerSecond <= 0) {
+                return;
+            }
+
+            final long aheadNanos = startNanos + (long) (read * 1e9 / builder.bandwidthBytesPerSecond)
+                    - System.nanoTime();
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while pacing the reads");
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+        private long bandwidthBytesPerSecond;
+        private long receivedLatencyMillis;
+        private long persistedLatencyMillis;
+        private int rejectedConnectionCount;
+        private int rejectionStatus = 503;
+        private int errorEveryFragments;
+        private int errorId = ERROR_ID_INTERNAL_FAILURE;
+        private int dropConnectionAfterFragments;
+
+        /**
+         * Bandwidth the uploads are read at, unlimited by default
+         */
+        public Builder bandwidthBytesPerSecond(final long bandwidthBytesPerSecond) {
+            this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Delays of the RECEIVED and PERSISTED acknowledgements after the end of the fragment
+         */
+        public Builder ackLatencyMillis(final long receivedLatencyMillis, final long persistedLatencyMillis) {
+            this.receivedLatencyMillis = receivedLatencyMillis;
+            this.persistedLatencyMillis = persistedLatencyMillis;
+            return this;
+        }
+
+        /**
+         * Rejects the first connections with the HTTP status
+         */
+        public Builder rejectConnections(final int count, final int status) {
+            this.rejectedConnectionCount = count;
+            this.rejectionStatus = status;
+            return this;
+        }
+
+        /**
+         * Fails every nth fragment received with an ERROR acknowledgement
+         */
+        public Builder errorEveryFragments(final int fragments, final int errorId) {
+            this.errorEveryFragments = fragments;
+            this.errorId = errorId;
+            return this;
+        }
+
+        /**
+         * Drops every connection once that many of its fragments have been persisted
+         */
+        public Builder dropConnectionAfterFragments(final int fragments) {
+            this.dropConnectionAfterFragments = fragments;
+            return this;
+        }
+
+        public FakePutMediaServer start() throws IOException {
+            return new FakePutMediaServer(this);
+        }
+    }
+}
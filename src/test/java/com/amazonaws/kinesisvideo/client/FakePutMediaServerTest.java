@@ -0,0 +1,204 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.encoding.ChunkDecoder;
+import com.amazonaws.kinesisvideo.stream.spill.SegmentSpillLog;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.cluster;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.streamHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FakePutMediaServerTest {
+    private static final int FRAGMENT_COUNT = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakePutMediaServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void everyFragmentIsBufferedReceivedAndPersisted() throws Exception {
+        server = FakePutMediaServer.builder().ackLatencyMillis(5, 20).start();
+        final byte[] mkv = mkv(FRAGMENT_COUNT);
+        final List<JsonObject> acks = Collections.synchronizedList(new ArrayList<JsonObject>());
+        assertNull(putMedia(mkv, acks));
+
+        assertEquals(3 * FRAGMENT_COUNT, acks.size());
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            assertEquals(3, eventTypesOf(acks, i * 1000L).size());
+        }
+
+        // Each fragment is buffered before it is received, and received before it is persisted
+        final List<String> firstFragment = new ArrayList<String>();
+        for (final JsonObject ack : acks) {
+            if (ack.get("FragmentTimecode").getAsLong() == 0) {
+                firstFragment.add(ack.get("EventType").getAsString());
+            }
+        }
+
+        assertEquals(Arrays.asList("BUFFERING", "RECEIVED", "PERSISTED"), firstFragment);
+        assertEquals(FRAGMENT_COUNT, server.getFragmentCount());
+        assertEquals(mkv.length, server.getBytesReceived());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    public void injectedErrorsReplaceThePersistedAcks() throws Exception {
+        server = FakePutMediaServer.builder()
+                .errorEveryFragments(4, FakePutMediaServer.ERROR_ID_INTERNAL_FAILURE)
+                .start();
+        final List<JsonObject> acks = Collections.synchronizedList(new ArrayList<JsonObject>());
+        assertNull(putMedia(mkv(FRAGMENT_COUNT), acks));
+
+        final List<Long> failed = new ArrayList<Long>();
+        for (final JsonObject ack : acks) {
+            if ("ERROR".equals(ack.get("EventType").getAsString())) {
+                assertEquals(FakePutMediaServer.ERROR_ID_INTERNAL_FAILURE, ack.get("ErrorId").getAsInt());
+                failed.add(ack.get("FragmentTimecode").getAsLong());
+            }
+        }
+
+        assertEquals(Arrays.asList(3000L, 7000L), failed);
+        assertEquals(FRAGMENT_COUNT - 2, server.getPersistedTimecodes().size());
+    }
+
+    @Test
+    public void rejectedConnectionFailsTheUpload() throws Exception {
+        server = FakePutMediaServer.builder().rejectConnections(1, 503).start();
+        final List<JsonObject> acks = Collections.synchronizedList(new ArrayList<JsonObject>());
+        assertNotNull(putMedia(mkv(FRAGMENT_COUNT), acks));
+        assertTrue(acks.isEmpty());
+
+        // Only the first connection is rejected
+        assertNull(putMedia(mkv(FRAGMENT_COUNT), acks));
+        assertEquals(3 * FRAGMENT_COUNT, acks.size());
+    }
+
+    @Test
+    public void resumableUploadOutlivesDroppedConnections() throws Exception {
+        server = FakePutMediaServer.builder()
+                .ackLatencyMillis(0, 5)
+                .dropConnectionAfterFragments(3)
+                .start();
+        try (final SegmentSpillLog spillLog = SegmentSpillLog.builder()
+                .directory(folder.newFolder().toPath())
+                .build();
+             final ResumablePutMediaClient client = ResumablePutMediaClient.builder()
+                     .putMediaDestinationUri(server.getUri())
+                     .streamName("stream")
+                     .mkvStream(new ByteArrayInputStream(mkv(FRAGMENT_COUNT)))
+                     .spillLog(spillLog)
+                     .receiveTimeout(10000)
+                     .reconnectDelay(10, 100)
+                     .build()) {
+            client.putMediaInBackground().get(30, TimeUnit.SECONDS);
+            assertTrue(client.getSessionCount() >= 4);
+        }
+
+        final List<Long> expected = new ArrayList<Long>();
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            expected.add(i * 1000L);
+        }
+
+        assertTrue(new HashSet<Long>(server.getPersistedTimecodes()).containsAll(expected));
+        assertTrue(server.getDroppedConnectionCount() >= 3);
+    }
+
+    /**
+     * Uploads the stream and waits for the end of the response
+     *
+     * @return Exception the upload completed with
+     */
+    private Exception putMedia(final byte[] mkv, final List<JsonObject> acks) throws Exception {
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicReference<Exception> completion = new AtomicReference<Exception>();
+        final PutMediaClient client = PutMediaClient.builder()
+                .putMediaDestinationUri(server.getUri())
+                .streamName("stream")
+                .mkvStream(new ByteArrayInputStream(mkv))
+                .receiveTimeout(10000)
+                .receiveAcks(new Consumer<InputStream>() {
+                    @Override
+                    public void accept(final InputStream inputStream) {
+                        ChunkDecoder.decodeAckInResponseBody(inputStream, new Consumer<String>() {
+                            @Override
+                            public void accept(final String ack) {
+                                acks.add(JsonParser.parseString(ack).getAsJsonObject());
+                            }
+                        });
+                    }
+                })
+                .receiveCompletion(new Consumer<Exception>() {
+                    @Override
+                    public void accept(final Exception exception) {
+                        // The sender only completes on failures, the receiver always does
+                        if (completion.get() == null) {
+                            completion.set(exception);
+                        }
+
+                        completed.countDown();
+                    }
+                })
+                .build();
+        client.putMediaInBackground();
+        assertTrue(completed.await(30, TimeUnit.SECONDS));
+        return completion.get();
+    }
+
+    private static List<String> eventTypesOf(final List<JsonObject> acks, final long timecode) {
+        final List<String> eventTypes = new ArrayList<String>();
+        synchronized (acks) {
+            for (final JsonObject ack : acks) {
+                if (ack.get("FragmentTimecode").getAsLong() == timecode) {
+                    eventTypes.add(ack.get("EventType").getAsString());
+                }
+            }
+        }
+
+        return eventTypes;
+    }
+
+    /**
+     * Returns a PutMedia stream of fragments a second apart, each of a cluster of unknown size with five frames
+     */
+    private static byte[] mkv(final int fragmentCount) {
+        final ByteArrayOutputStream mkv = new ByteArrayOutputStream();
+        final byte[] header = streamHeader();
+        mkv.write(header, 0, header.length);
+        for (int i = 0; i < fragmentCount; i++) {
+            final byte[] cluster = cluster(i * 1000L, 5, 1000);
+            mkv.write(cluster, 0, cluster.length);
+        }
+
+        return mkv.toByteArray();
+    }
+}
@@ -0,0 +1,293 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.http.HttpClient;
+import com.amazonaws.kinesisvideo.http.SharedHttpClients;
+import com.amazonaws.kinesisvideo.signing.KinesisVideoSigner;
+import com.amazonaws.kinesisvideo.stream.cache.FragmentCache;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvFragment;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvStreamVisitor;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_SEGMENT;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.clusterHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.concat;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ebmlHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.simpleBlock;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.tags;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.unknownSizeHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelFragmentReaderTest {
+    private static final int FRAGMENT_COUNT = 20;
+    private static final String FAILING_FRAGMENT = "13";
+    private static final KinesisVideoSigner NO_SIGNING = new KinesisVideoSigner() {
+        @Override
+        public void sign(final HttpClient httpClient) {
+            // The stand-in does not check the signatures
+        }
+    };
+
+    private final SharedHttpClients sharedHttpClients = new SharedHttpClients(
+            SharedHttpClients.DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT,
+            SharedHttpClients.DEFAULT_KEEP_ALIVE_MILLIS,
+            SharedHttpClients.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private final ExecutorService serverExecutor = Executors.newFixedThreadPool(8);
+    private HttpServer server;
+    private URI uri;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/listFragments", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                respond(exchange, 200, listFragments(readJson(exchange)).toString().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        server.createContext("/getMediaForFragmentList", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final JsonArray fragments = readJson(exchange).getAsJsonArray("Fragments");
+                final ByteArrayOutputStream media = new ByteArrayOutputStream();
+                for (final JsonElement fragment : fragments) {
+                    if (FAILING_FRAGMENT.equals(fragment.getAsString())) {
+                        respond(exchange, 500, new byte[0]);
+                        return;
+                    }
+
+                    media.write(fragment(Integer.parseInt(fragment.getAsString())));
+                }
+
+                // The first fragments are the slowest, so the batches complete out of order
+                sleep(fragments.get(0).getAsInt() < 4 ? 300 : 10);
+                respondChunked(exchange, media.toByteArray());
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() {
+        sharedHttpClients.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void fragmentsOfTheRangeAreDeliveredInOrder() throws IOException {
+        final ParallelFragmentReader reader = reader(4, 6);
+        final List<String> delivered = new ArrayList<String>();
+        final List<Long> timecodes = new ArrayList<Long>();
+        reader.read(0, FRAGMENT_COUNT * 1000L - 1, new MkvStreamVisitor() {
+            @Override
+            public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+                delivered.add(fragment.getFragmentNumber());
+                timecodes.add(fragment.getTimecode());
+            }
+        });
+
+        final List<String> expected = new ArrayList<String>();
+        final List<Long> expectedTimecodes = new ArrayList<Long>();
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            if (!FAILING_FRAGMENT.equals(Integer.toString(i))) {
+                expected.add(Integer.toString(i));
+                expectedTimecodes.add(i * 1000L);
+            }
+        }
+
+        assertEquals(expected, delivered);
+        assertEquals(expectedTimecodes, timecodes);
+        assertEquals(expected.size(), reader.getFragmentCount());
+        // Two pages of listing and ten batches
+        assertEquals(12, reader.getRequestCount());
+        assertTrue(reader.getOutOfOrderBatchCount() > 0);
+        assertTrue(reader.getMaxReorderBufferSize() > 0);
+        assertTrue(reader.getMaxReorderBufferSize() <= 6);
+        assertEquals(0, reader.getReorderBufferSize());
+        long bytes = 0;
+        for (final String fragmentNumber : expected) {
+            bytes += fragment(Integer.parseInt(fragmentNumber)).length;
+        }
+
+        // The media are sent chunked, without a content length
+        assertEquals(bytes, reader.getBytesReceived());
+        assertTrue(reader.getThroughputBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void failedBatchFailsTheRead() throws IOException {
+        final ParallelFragmentReader reader = reader(2, 2);
+        final List<String> fragmentNumbers = new ArrayList<String>();
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            fragmentNumbers.add(Integer.toString(i));
+        }
+
+        final List<String> delivered = new ArrayList<String>();
+        try {
+            reader.read(fragmentNumbers, new MkvStreamVisitor() {
+                @Override
+                public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+                    delivered.add(fragment.getFragmentNumber());
+                }
+            });
+            fail("Expected an IOException");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("500"));
+        }
+
+        // Fragments are only delivered in order, up to the failed batch
+        assertEquals(fragmentNumbers.subList(0, delivered.size()), delivered);
+        assertTrue(delivered.size() <= 12);
+        assertEquals(0, reader.getReorderBufferSize());
+    }
+
+    @Test
+    public void repeatedReadsAreServedFromTheCache() throws IOException {
+        final FragmentCache cache = new FragmentCache(1024 * 1024, 4096);
+        final ParallelFragmentReader reader = reader(4, 6, cache);
+        final List<String> fragmentNumbers = new ArrayList<String>();
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            if (!FAILING_FRAGMENT.equals(Integer.toString(i))) {
+                fragmentNumbers.add(Integer.toString(i));
+            }
+        }
+
+        final List<String> delivered = new ArrayList<String>();
+        final MkvStreamVisitor visitor = new MkvStreamVisitor() {
+            @Override
+            public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+                delivered.add(fragment.getFragmentNumber());
+                assertEquals(Long.parseLong(fragment.getFragmentNumber()) * 1000L, fragment.getTimecode());
+            }
+        };
+        reader.read(fragmentNumbers, visitor);
+        final long requestCount = reader.getRequestCount();
+        reader.read(fragmentNumbers, visitor);
+
+        final List<String> expected = new ArrayList<String>(fragmentNumbers);
+        expected.addAll(fragmentNumbers);
+        assertEquals(expected, delivered);
+        assertEquals(requestCount, reader.getRequestCount());
+        assertEquals(fragmentNumbers.size(), cache.getEntryCount());
+        assertEquals(fragmentNumbers.size(), cache.getHitCount());
+        assertEquals(fragmentNumbers.size(), cache.getMissCount());
+        assertEquals(0, reader.getReorderBufferSize());
+    }
+
+    private ParallelFragmentReader reader(final int concurrency, final int reorderWindow) {
+        return reader(concurrency, reorderWindow, null);
+    }
+
+    private ParallelFragmentReader reader(final int concurrency, final int reorderWindow, final FragmentCache cache) {
+        return ParallelFragmentReader.builder()
+                .archivedMediaUri(uri)
+                .streamName("stream")
+                .signWith(NO_SIGNING)
+                .concurrency(concurrency)
+                .fragmentsPerRequest(2)
+                .reorderWindow(reorderWindow)
+                .sharedHttpClients(sharedHttpClients)
+                .fragmentCache(cache)
+                .build();
+    }
+
+    /**
+     * Lists the fragments in a random order, ten per page, leaving out the one failing to be read
+     */
+    private static JsonObject listFragments(final JsonObject request) {
+        final int start = request.has("NextToken") ? request.get("NextToken").getAsInt() : 0;
+        final List<Integer> page = new ArrayList<Integer>();
+        for (int i = start; i < Math.min(FRAGMENT_COUNT, start + 10); i++) {
+            if (!FAILING_FRAGMENT.equals(Integer.toString(i))) {
+                page.add(i);
+            }
+        }
+
+        Collections.shuffle(page, new Random(start));
+        final JsonArray fragments = new JsonArray();
+        for (final int fragmentNumber : page) {
+            final JsonObject fragment = new JsonObject();
+            fragment.addProperty("FragmentNumber", Integer.toString(fragmentNumber));
+            fragment.addProperty("ProducerTimestamp", fragmentNumber);
+            fragments.add(fragment);
+        }
+
+        final JsonObject response = new JsonObject();
+        response.add("Fragments", fragments);
+        if (start + 10 < FRAGMENT_COUNT) {
+            response.addProperty("NextToken", Integer.toString(start + 10));
+        }
+
+        return response;
+    }
+
+    private static JsonObject readJson(final HttpExchange exchange) throws IOException {
+        try (final InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(),
+                StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(reader).getAsJsonObject();
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body)
+            throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (final OutputStream response = exchange.getResponseBody()) {
+            response.write(body);
+        }
+    }
+
+    private static void respondChunked(final HttpExchange exchange, final byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (final OutputStream response = exchange.getResponseBody()) {
+            for (int offset = 0; offset < body.length; offset += 1000) {
+                response.write(body, offset, Math.min(1000, body.length - offset));
+                response.flush();
+            }
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns a fragment as sent by GetMediaForFragmentList, a second long per fragment number
+     */
+    private static byte[] fragment(final int fragmentNumber) {
+        return concat(ebmlHeader("matroska"), unknownSizeHeader(ID_SEGMENT),
+                tags(MkvFragment.TAG_FRAGMENT_NUMBER, Integer.toString(fragmentNumber)),
+                clusterHeader(fragmentNumber * 1000L), simpleBlock(0, 0x80, new byte[2000]));
+    }
+}
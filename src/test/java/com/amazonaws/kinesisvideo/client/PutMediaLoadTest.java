@@ -0,0 +1,290 @@
+package com.amazonaws.kinesisvideo.client;
+
+import com.amazonaws.kinesisvideo.common.function.Consumer;
+import com.amazonaws.kinesisvideo.encoding.ChunkDecoder;
+import com.amazonaws.kinesisvideo.stream.spill.SegmentSpillLog;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.cluster;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.streamHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Offline load tests of the PutMedia upload path against {@link FakePutMediaServer}: sustained throughput, ACK latency
+ * and reconnects. They only run with the load-tests profile:
+ * <pre>
+ * mvn test -P load-tests
+ * </pre>
+ * The assertions are loose, the measurements are logged.
+ */
+public class PutMediaLoadTest {
+    private static final Logger log = LogManager.getLogger(PutMediaLoadTest.class);
+    private static final int FRAMES_PER_FRAGMENT = 25;
+    private static final int FRAME_SIZE = 4000;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakePutMediaServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void sustainedThroughputIsBoundByTheLink() throws Exception {
+        final long bandwidth = 8 * MEGABYTE;
+        server = FakePutMediaServer.builder()
+                .bandwidthBytesPerSecond(bandwidth)
+                .ackLatencyMillis(20, 100)
+                .start();
+        final GeneratedMkvStream mkv = new GeneratedMkvStream(80);
+        final Upload upload = putMedia(mkv);
+
+        final double throughput = server.getBytesReceived() * 1e9 / upload.getElapsedNanos();
+        log.info("Sustained throughput over a {} MiB/s link: {} MiB/s, {} fragments",
+                bandwidth / MEGABYTE, format(throughput / MEGABYTE), server.getFragmentCount());
+        assertEquals(mkv.getBytesRead(), server.getBytesReceived());
+        assertTrue(throughput <= bandwidth * 1.1);
+        assertTrue(throughput >= bandwidth * 0.5);
+    }
+
+    @Test
+    public void unboundThroughput() throws Exception {
+        server = FakePutMediaServer.builder().start();
+        final GeneratedMkvStream mkv = new GeneratedMkvStream(400);
+        final Upload upload = putMedia(mkv);
+
+        final double throughput = server.getBytesReceived() * 1e9 / upload.getElapsedNanos();
+        log.info("Loopback throughput: {} MiB/s, {} fragments", format(throughput / MEGABYTE),
+                server.getFragmentCount());
+        assertEquals(400, server.getFragmentCount());
+        assertEquals(400, upload.getPersistedLatencies().size());
+    }
+
+    @Test
+    public void persistedAckLatency() throws Exception {
+        server = FakePutMediaServer.builder()
+                .bandwidthBytesPerSecond(16 * MEGABYTE)
+                .ackLatencyMillis(20, 100)
+                .start();
+        final Upload upload = putMedia(new GeneratedMkvStream(100));
+
+        final List<Long> latencies = new ArrayList<Long>(upload.getPersistedLatencies());
+        Collections.sort(latencies);
+        log.info("PERSISTED latency from the end of the fragment, ms: p50 {}, p90 {}, p99 {}, max {}",
+                millis(percentile(latencies, 50)), millis(percentile(latencies, 90)),
+                millis(percentile(latencies, 99)), millis(latencies.get(latencies.size() - 1)));
+        assertEquals(100, latencies.size());
+        assertTrue(percentile(latencies, 50) >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(percentile(latencies, 99) < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void resumableUploadThroughDroppedConnections() throws Exception {
+        final int fragmentCount = 200;
+        server = FakePutMediaServer.builder()
+                .bandwidthBytesPerSecond(32 * MEGABYTE)
+                .ackLatencyMillis(5, 20)
+                .dropConnectionAfterFragments(20)
+                .start();
+        final long start = System.nanoTime();
+        final long sessionCount;
+        try (final SegmentSpillLog spillLog = SegmentSpillLog.builder()
+                .directory(folder.newFolder().toPath())
+                .build();
+             final ResumablePutMediaClient client = ResumablePutMediaClient.builder()
+                     .putMediaDestinationUri(server.getUri())
+                     .streamName("stream")
+                     .mkvStream(new GeneratedMkvStream(fragmentCount))
+                     .spillLog(spillLog)
+                     .receiveTimeout(10000)
+                     .reconnectDelay(10, 200)
+                     .build()) {
+            client.putMediaInBackground().get(120, TimeUnit.SECONDS);
+            sessionCount = client.getSessionCount();
+        }
+
+        final long elapsedNanos = System.nanoTime() - start;
+        final HashSet<Long> persisted = new HashSet<Long>(server.getPersistedTimecodes());
+        log.info("Resumed upload of {} fragments in {} ms: {} sessions, {} dropped connections, "
+                        + "{} fragments received including the resent ones",
+                fragmentCount, millis(elapsedNanos), sessionCount, server.getDroppedConnectionCount(),
+                server.getFragmentCount());
+        for (int i = 0; i < fragmentCount; i++) {
+            assertTrue(persisted.contains(i * 1000L));
+        }
+
+        assertTrue(server.getDroppedConnectionCount() >= fragmentCount / 20 - 1);
+        assertTrue(sessionCount > server.getDroppedConnectionCount());
+    }
+
+    /**
+     * Uploads the stream, recording the latency of every PERSISTED acknowledgement
+     */
+    private Upload putMedia(final GeneratedMkvStream mkv) throws Exception {
+        final Upload upload = new Upload(mkv);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicReference<Exception> completion = new AtomicReference<Exception>();
+        final PutMediaClient client = PutMediaClient.builder()
+                .putMediaDestinationUri(server.getUri())
+                .streamName("stream")
+                .mkvStream(mkv)
+                .receiveTimeout(10000)
+                .receiveAcks(new Consumer<InputStream>() {
+                    @Override
+                    public void accept(final InputStream inputStream) {
+                        ChunkDecoder.decodeAckInResponseBody(inputStream, new Consumer<String>() {
+                            @Override
+                            public void accept(final String ack) {
+                                upload.onAck(JsonParser.parseString(ack).getAsJsonObject());
+                            }
+                        });
+                    }
+                })
+                .receiveCompletion(new Consumer<Exception>() {
+                    @Override
+                    public void accept(final Exception exception) {
+                        if (completion.get() == null) {
+                            completion.set(exception);
+                        }
+
+                        completed.countDown();
+                    }
+                })
+                .build();
+        client.putMediaInBackground();
+        assertTrue(completed.await(120, TimeUnit.SECONDS));
+        assertNull(completion.get());
+        upload.complete();
+        return upload;
+    }
+
+    private static long percentile(final List<Long> sorted, final int percentile) {
+        return sorted.get(Math.min(sorted.size() - 1, sorted.size() * percentile / 100));
+    }
+
+    private static String millis(final long nanos) {
+        return format(nanos / 1e6);
+    }
+
+    private static String format(final double value) {
+        return String.format("%.1f", value);
+    }
+
+    private static final class Upload {
+        private final GeneratedMkvStream mkv;
+        private final long startNanos = System.nanoTime();
+        private final List<Long> persistedLatencies = Collections.synchronizedList(new ArrayList<Long>());
+        private long elapsedNanos;
+
+        Upload(final GeneratedMkvStream mkv) {
+            this.mkv = mkv;
+        }
+
+        void onAck(final JsonObject ack) {
+            if ("PERSISTED".equals(ack.get("EventType").getAsString())) {
+                final int fragment = (int) (ack.get("FragmentTimecode").getAsLong() / 1000);
+                persistedLatencies.add(System.nanoTime() - mkv.getFragmentEndNanos(fragment));
+            }
+        }
+
+        void complete() {
+            elapsedNanos = System.nanoTime() - startNanos;
+        }
+
+        long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        List<Long> getPersistedLatencies() {
+            return persistedLatencies;
+        }
+    }
+
+    /**
+     * PutMedia stream of fragments a second apart generated as it is read, recording when each fragment was read to
+     * the end
+     */
+    private static final class GeneratedMkvStream extends InputStream {
+        private final int fragmentCount;
+        private final AtomicLong[] fragmentEndNanos;
+        private final AtomicLong bytesRead = new AtomicLong();
+        private ByteBuffer current = ByteBuffer.allocate(0);
+        private int nextFragment = -1;
+
+        GeneratedMkvStream(final int fragmentCount) {
+            this.fragmentCount = fragmentCount;
+            this.fragmentEndNanos = new AtomicLong[fragmentCount];
+            for (int i = 0; i < fragmentCount; i++) {
+                fragmentEndNanos[i] = new AtomicLong();
+            }
+        }
+
+        long getFragmentEndNanos(final int fragment) {
+            return fragmentEndNanos[fragment].get();
+        }
+
+        long getBytesRead() {
+            return bytesRead.get();
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+
+            while (!current.hasRemaining()) {
+                if (nextFragment > 0) {
+                    fragmentEndNanos[nextFragment - 1].set(System.nanoTime());
+                }
+
+                if (nextFragment == fragmentCount) {
+                    return -1;
+                }
+
+                current = ByteBuffer.wrap(nextFragment < 0
+                        ? streamHeader()
+                        : cluster(nextFragment * 1000L, FRAMES_PER_FRAGMENT, FRAME_SIZE));
+                nextFragment++;
+            }
+
+            final int read = Math.min(length, current.remaining());
+            current.get(buffer, offset, read);
+            bytesRead.addAndGet(read);
+            return read;
+        }
+    }
+}
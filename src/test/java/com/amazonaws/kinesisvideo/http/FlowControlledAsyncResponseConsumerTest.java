@@ -0,0 +1,171 @@
+package com.amazonaws.kinesisvideo.http;
+
+import com.amazonaws.kinesisvideo.stream.mkv.BufferedMkvFragment;
+import com.amazonaws.kinesisvideo.stream.mkv.MkvFragmentIterator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.entity.ContentType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_SEGMENT;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.clusterHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.concat;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ebmlHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.simpleBlock;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.unknownSizeHeader;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FlowControlledAsyncResponseConsumerTest {
+    private static final int FRAGMENT_COUNT = 400;
+    private static final int FRAME_SIZE = 32 * 1024;
+    private static final int MAX_BUFFERED_BYTES = 64 * 1024;
+
+    private final SharedHttpClients sharedHttpClients = new SharedHttpClients(
+            SharedHttpClients.DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT,
+            SharedHttpClients.DEFAULT_KEEP_ALIVE_MILLIS,
+            SharedHttpClients.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger sentFragmentCount = new AtomicInteger();
+    private final CountDownLatch senderFailed = new CountDownLatch(1);
+    private HttpServer server;
+    private URI uri;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/getMedia", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream request = exchange.getRequestBody();
+                while (request.read() != -1) {
+                    // Drains the request
+                }
+
+                // Chunked, as GetMedia streams the fragments
+                exchange.sendResponseHeaders(200, 0);
+                try (final OutputStream response = exchange.getResponseBody()) {
+                    for (int i = 0; i < FRAGMENT_COUNT; i++) {
+                        response.write(fragment(i));
+                        response.flush();
+                        sentFragmentCount.incrementAndGet();
+                    }
+                } catch (final IOException e) {
+                    senderFailed.countDown();
+                    throw e;
+                }
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/getMedia");
+    }
+
+    @After
+    public void tearDown() {
+        sharedHttpClients.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void slowReaderSuspendsTheSocketReads() throws Exception {
+        final FlowControlledAsyncResponseConsumer consumer = new FlowControlledAsyncResponseConsumer(MAX_BUFFERED_BYTES);
+        execute(uri, consumer);
+        try (final MkvFragmentIterator fragments = new MkvFragmentIterator(consumer.getContentChannel())) {
+            assertTrue(fragments.hasNext());
+            Thread.sleep(500);
+            // The server is held back by the socket buffers rather than the consumer
+            assertTrue(sentFragmentCount.get() < FRAGMENT_COUNT);
+            assertTrue(consumer.getSuspendCount() > 0);
+
+            int count = 0;
+            while (fragments.hasNext()) {
+                final BufferedMkvFragment fragment = fragments.next();
+                assertEquals(count * 1000L, fragment.getFragment().getTimecode());
+                assertEquals(1, fragment.getFrames().size());
+                assertEquals((byte) count, fragment.getFrames().get(0).getData().get(FRAME_SIZE - 1));
+                count++;
+            }
+
+            assertEquals(FRAGMENT_COUNT, count);
+        }
+
+        assertEquals(MAX_BUFFERED_BYTES, consumer.getMaxBufferedBytes());
+        assertEquals(0, consumer.getBufferedBytes());
+    }
+
+    @Test
+    public void closingTheIteratorCancelsTheResponse() throws Exception {
+        final FlowControlledAsyncResponseConsumer consumer = new FlowControlledAsyncResponseConsumer(MAX_BUFFERED_BYTES);
+        execute(uri, consumer);
+        final MkvFragmentIterator fragments = new MkvFragmentIterator(consumer.getContentChannel());
+        fragments.next();
+        fragments.next();
+        fragments.close();
+
+        assertTrue(senderFailed.await(10, TimeUnit.SECONDS));
+        assertFalse(consumer.getContentChannel().isOpen());
+        assertFalse(fragments.hasNext());
+    }
+
+    @Test
+    public void errorResponseFailsTheIterator() throws Exception {
+        final FlowControlledAsyncResponseConsumer consumer = new FlowControlledAsyncResponseConsumer(MAX_BUFFERED_BYTES);
+        execute(uri.resolve("/missing"), consumer);
+        try (final MkvFragmentIterator fragments = new MkvFragmentIterator(consumer.getContentChannel())) {
+            fragments.hasNext();
+            fail("Expected an UncheckedIOException");
+        } catch (final UncheckedIOException e) {
+            assertTrue(e.getCause().getMessage().contains("404"));
+        }
+    }
+
+    private void execute(final URI target, final FlowControlledAsyncResponseConsumer consumer) {
+        KinesisVideoApacheHttpAsyncClient.builder()
+                .withUri(target)
+                .withMethod(HttpMethodName.POST)
+                .withContentType(ContentType.APPLICATION_JSON)
+                .withContentInJson("{}")
+                .withSocketTimeoutInMillis(30000)
+                .withHttpAsyncResponseConsumer(consumer)
+                .withSharedHttpClients(sharedHttpClients)
+                .build()
+                .executeRequest();
+    }
+
+    /**
+     * Returns a fragment of a single frame, whose bytes are the fragment index
+     */
+    private static byte[] fragment(final int index) {
+        final byte[] frame = new byte[FRAME_SIZE];
+        Arrays.fill(frame, (byte) index);
+        return concat(ebmlHeader("webm"), unknownSizeHeader(ID_SEGMENT), clusterHeader(index * 1000L),
+                simpleBlock(0, 0x80, frame));
+    }
+}
@@ -0,0 +1,171 @@
+package com.amazonaws.kinesisvideo.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedHttpClientsTest {
+    private static final byte[] RESPONSE = "{}".getBytes(StandardCharsets.UTF_8);
+
+    private final SharedHttpClients sharedHttpClients = new SharedHttpClients(
+            SharedHttpClients.DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT,
+            SharedHttpClients.DEFAULT_KEEP_ALIVE_MILLIS,
+            SharedHttpClients.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private HttpServer server;
+    private URI uri;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream request = exchange.getRequestBody();
+                while (request.read() != -1) {
+                    // Drains the request so the connection is kept alive
+                }
+
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                try (final OutputStream response = exchange.getResponseBody()) {
+                    response.write(RESPONSE);
+                }
+            }
+        });
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/getMedia");
+    }
+
+    @After
+    public void tearDown() {
+        sharedHttpClients.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void requestsReuseTheConnectionOfTheEndpoint() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            try (final CloseableHttpResponse response = KinesisVideoApacheHttpClient.builder()
+                    .withUri(uri)
+                    .withMethod(HttpMethodName.POST)
+                    .withContentType(ContentType.APPLICATION_JSON)
+                    .withContentInJson("{}")
+                    .withSharedHttpClients(sharedHttpClients)
+                    .build()
+                    .executeRequest()) {
+                assertEquals(200, response.getStatusLine().getStatusCode());
+                EntityUtils.consume(response.getEntity());
+            }
+        }
+
+        final SharedHttpClients.EndpointMetrics metrics = sharedHttpClients.getMetrics(uri);
+        assertEquals(3, metrics.getRequestCount());
+        assertEquals(1, metrics.getConnectionCount());
+        assertEquals(2, metrics.getReusedConnectionCount());
+    }
+
+    @Test
+    public void asyncRequestsShareTheReactorAndConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final CompletableFuture<HttpResponse> future = new CompletableFuture<HttpResponse>();
+            KinesisVideoApacheHttpAsyncClient.builder()
+                    .withUri(uri)
+                    .withMethod(HttpMethodName.POST)
+                    .withContentType(ContentType.APPLICATION_JSON)
+                    .withContentInJson("{}")
+                    .withHttpAsyncResponseConsumer(new BasicAsyncResponseConsumer())
+                    .withFutureCallback(new FutureCallback<HttpResponse>() {
+                        @Override
+                        public void completed(final HttpResponse response) {
+                            future.complete(response);
+                        }
+
+                        @Override
+                        public void failed(final Exception e) {
+                            future.completeExceptionally(e);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            future.cancel(false);
+                        }
+                    })
+                    .withSharedHttpClients(sharedHttpClients)
+                    .build()
+                    .executeRequest();
+            assertEquals(200, future.get(10, TimeUnit.SECONDS).getStatusLine().getStatusCode());
+        }
+
+        assertSame(sharedHttpClients.getAsyncClient(uri), sharedHttpClients.getAsyncClient(uri));
+        final SharedHttpClients.EndpointMetrics metrics = sharedHttpClients.getMetrics(uri);
+        assertEquals(3, metrics.getRequestCount());
+        assertEquals(1, metrics.getConnectionCount());
+    }
+
+    @Test
+    public void requestWaitingForAPooledConnectionTimesOut() throws IOException {
+        final SharedHttpClients singleConnection = new SharedHttpClients(1,
+                SharedHttpClients.DEFAULT_KEEP_ALIVE_MILLIS,
+                SharedHttpClients.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        try (final CloseableHttpResponse leased = request(singleConnection, 1000).executeRequest()) {
+            final long startMillis = System.currentTimeMillis();
+            try {
+                request(singleConnection, 200).executeRequest();
+                fail("Expected the request to time out waiting for the connection");
+            } catch (final RuntimeException e) {
+                assertTrue(e.getCause() instanceof ConnectionPoolTimeoutException);
+            }
+
+            assertTrue(System.currentTimeMillis() - startMillis < 5000);
+            EntityUtils.consume(leased.getEntity());
+        } finally {
+            singleConnection.close();
+        }
+    }
+
+    @Test
+    public void clientsAreKeyedByEndpoint() {
+        final URI otherPath = URI.create(uri.toString() + "/other");
+        final URI otherHost = URI.create("https://kinesisvideo.us-west-2.amazonaws.com/getMedia");
+        assertSame(sharedHttpClients.getClient(uri), sharedHttpClients.getClient(otherPath));
+        assertNotSame(sharedHttpClients.getClient(uri), sharedHttpClients.getClient(otherHost));
+        assertSame(sharedHttpClients.getClient(otherHost),
+                sharedHttpClients.getClient(URI.create("https://kinesisvideo.us-west-2.amazonaws.com:443/")));
+    }
+
+    private KinesisVideoApacheHttpClient request(final SharedHttpClients clients,
+                                                 final int connectionRequestTimeoutInMillis) {
+        return KinesisVideoApacheHttpClient.builder()
+                .withUri(uri)
+                .withMethod(HttpMethodName.POST)
+                .withContentType(ContentType.APPLICATION_JSON)
+                .withContentInJson("{}")
+                .withConnectionRequestTimeoutInMillis(connectionRequestTimeoutInMillis)
+                .withSharedHttpClients(clients)
+                .build();
+    }
+}
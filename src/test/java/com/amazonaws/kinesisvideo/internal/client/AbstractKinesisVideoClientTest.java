@@ -0,0 +1,137 @@
+package com.amazonaws.kinesisvideo.internal.client;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSource;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceConfiguration;
+import com.amazonaws.kinesisvideo.producer.DeviceInfo;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class AbstractKinesisVideoClientTest {
+    private static final int MEDIA_SOURCE_COUNT = 20;
+    private static final int PARALLELISM = 4;
+
+    /**
+     * Client registering the media sources with a delay standing in for the control plane round-trips.
+     */
+    private static class TestKinesisVideoClient extends AbstractKinesisVideoClient {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private volatile MediaSource failingMediaSource;
+
+        TestKinesisVideoClient() {
+            super(LogManager.getLogger(AbstractKinesisVideoClientTest.class));
+        }
+
+        @Override
+        public void registerMediaSource(final MediaSource mediaSource) throws KinesisVideoException {
+            final int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(10);
+                if (mediaSource == failingMediaSource) {
+                    throw new KinesisVideoException("Failed to create the stream");
+                }
+
+                super.registerMediaSource(mediaSource);
+            } catch (final InterruptedException e) {
+                throw new KinesisVideoException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public MediaSource createMediaSource(final String streamName,
+                                            final MediaSourceConfiguration mediaSourceConfiguration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<MediaSourceConfiguration.Builder<? extends MediaSourceConfiguration>>
+                listSupportedConfigurations() {
+            return Collections.emptyList();
+        }
+    }
+
+    @Test
+    public void mediaSourcesAreRegisteredWithBoundedParallelism() throws Exception {
+        final TestKinesisVideoClient client = new TestKinesisVideoClient();
+        client.initialize(mock(DeviceInfo.class));
+
+        final List<MediaSource> mediaSources = createMediaSources();
+        final MediaSource failingMediaSource = mediaSources.get(3);
+        client.failingMediaSource = failingMediaSource;
+
+        final Map<MediaSource, CompletableFuture<Void>> registrations =
+                client.registerMediaSources(mediaSources, PARALLELISM);
+
+        assertEquals(new ArrayList<MediaSource>(registrations.keySet()), mediaSources);
+        for (final Map.Entry<MediaSource, CompletableFuture<Void>> registration : registrations.entrySet()) {
+            try {
+                registration.getValue().get(10, TimeUnit.SECONDS);
+                assertTrue(registration.getKey() != failingMediaSource);
+            } catch (final ExecutionException e) {
+                assertTrue(registration.getKey() == failingMediaSource);
+                assertTrue(e.getCause() instanceof KinesisVideoException);
+            }
+        }
+
+        assertEquals(MEDIA_SOURCE_COUNT - 1, client.mMediaSources.size());
+        assertTrue(client.maxInFlight.get() <= PARALLELISM);
+        assertTrue(client.maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void registrationRequiresInitialization() throws Exception {
+        try {
+            new TestKinesisVideoClient().registerMediaSources(createMediaSources(), PARALLELISM);
+            fail("Expected the registration to fail");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void nullMediaSourceFailsBeforeAnyRegistration() throws Exception {
+        final TestKinesisVideoClient client = new TestKinesisVideoClient();
+        client.initialize(mock(DeviceInfo.class));
+        final List<MediaSource> mediaSources = createMediaSources();
+        mediaSources.set(MEDIA_SOURCE_COUNT / 2, null);
+
+        try {
+            client.registerMediaSources(mediaSources, PARALLELISM);
+            fail("Expected the registration to fail");
+        } catch (final NullPointerException e) {
+            // expected
+        }
+
+        // Leaves a registration which would have been scheduled the time to start
+        Thread.sleep(100);
+        assertEquals(0, client.maxInFlight.get());
+        assertTrue(client.mMediaSources.isEmpty());
+    }
+
+    private static List<MediaSource> createMediaSources() {
+        final List<MediaSource> mediaSources = new ArrayList<MediaSource>();
+        for (int i = 0; i < MEDIA_SOURCE_COUNT; i++) {
+            mediaSources.add(mock(MediaSource.class));
+        }
+
+        return mediaSources;
+    }
+}
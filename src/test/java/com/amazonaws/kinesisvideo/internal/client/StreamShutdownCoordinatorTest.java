@@ -0,0 +1,96 @@
+package com.amazonaws.kinesisvideo.internal.client;
+
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.kinesisvideo.internal.producer.ReadResult.INVALID_UPLOAD_HANDLE_VALUE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamShutdownCoordinatorTest {
+    private static final long DEADLINE_IN_MILLIS = 500;
+
+    @Test
+    public void stuckStreamIsTornDownAtTheDeadline() throws Exception {
+        final KinesisVideoProducerStream stopped = mockStream("stopped");
+        final KinesisVideoProducerStream failed = mockStream("failed");
+        final KinesisVideoProducerStream stuck = mockStream("stuck");
+
+        doThrow(new ProducerException("Stopping failed", 0)).when(failed).stopStreamSync();
+
+        // Stopping only completes once the stream is closed
+        final CountDownLatch closed = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                closed.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(stuck).stopStreamSync();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                closed.countDown();
+                return null;
+            }
+        }).when(stuck).streamClosed(INVALID_UPLOAD_HANDLE_VALUE);
+
+        final AtomicInteger progressReports = new AtomicInteger();
+        final StreamShutdownCoordinator coordinator = new StreamShutdownCoordinator(
+                LogManager.getLogger(StreamShutdownCoordinatorTest.class),
+                2,
+                DEADLINE_IN_MILLIS,
+                new StreamShutdownCoordinator.ProgressListener() {
+                    @Override
+                    public void onStreamCompleted(@Nonnull final String streamName,
+                                                  @Nonnull final StreamShutdownCoordinator.Outcome outcome,
+                                                  final long durationInMillis,
+                                                  final int completed,
+                                                  final int total) {
+                        assertEquals(3, total);
+                        progressReports.incrementAndGet();
+                    }
+                });
+
+        final StreamShutdownCoordinator.Report report = coordinator.stop(Arrays.asList(stopped, failed, stuck));
+
+        assertEquals(StreamShutdownCoordinator.Outcome.STOPPED, report.getOutcomes().get(stopped));
+        assertEquals(StreamShutdownCoordinator.Outcome.FAILED, report.getOutcomes().get(failed));
+        assertEquals(StreamShutdownCoordinator.Outcome.FORCED, report.getOutcomes().get(stuck));
+        assertEquals(3, progressReports.get());
+        assertTrue(report.getDurationInMillis() < TimeUnit.SECONDS.toMillis(5));
+        verify(stuck).streamClosed(INVALID_UPLOAD_HANDLE_VALUE);
+        verify(stopped, never()).streamClosed(INVALID_UPLOAD_HANDLE_VALUE);
+    }
+
+    @Test
+    public void emptyShutdownCompletesImmediately() {
+        final StreamShutdownCoordinator.Report report = new StreamShutdownCoordinator(
+                LogManager.getLogger(StreamShutdownCoordinatorTest.class))
+                .stop(Arrays.<KinesisVideoProducerStream>asList());
+
+        assertTrue(report.getOutcomes().isEmpty());
+    }
+
+    private static KinesisVideoProducerStream mockStream(final String streamName) {
+        final KinesisVideoProducerStream stream = mock(KinesisVideoProducerStream.class);
+        when(stream.getStreamName()).thenReturn(streamName);
+        return stream;
+    }
+}
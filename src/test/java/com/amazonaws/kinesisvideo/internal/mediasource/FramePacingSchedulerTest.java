@@ -0,0 +1,129 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FramePacingSchedulerTest {
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(2);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void tickWorkDoesNotDriftTheRate() throws Exception {
+        final int ticks = 20;
+        final CountDownLatch done = new CountDownLatch(ticks);
+        final long startNanos = System.nanoTime();
+        final FramePacingScheduler.PacedSource source = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                sleep(4);
+                done.countDown();
+            }
+        }, PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+
+        assertTrue(done.await(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        source.cancel();
+
+        // Sleeping between the ticks would have taken 20 * 14 ms
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < 250);
+        assertTrue(source.getTickCount() >= ticks);
+    }
+
+    @Test
+    public void skipPolicyDropsMissedTicks() throws Exception {
+        final List<Long> indexes = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(3);
+        final FramePacingScheduler.PacedSource source = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                indexes.add(tickIndex);
+                if (tickIndex == 0) {
+                    sleep(55);
+                }
+
+                done.countDown();
+            }
+        }, PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+
+        assertTrue(done.await(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        source.cancel();
+
+        assertEquals(0L, (long) indexes.get(0));
+        assertTrue("Next tick " + indexes.get(1), indexes.get(1) >= 5);
+        assertEquals(indexes.get(1) - 1, source.getSkippedTickCount());
+    }
+
+    @Test
+    public void burstPolicyRunsMissedTicksLate() throws Exception {
+        final List<Long> indexes = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(6);
+        final FramePacingScheduler.PacedSource source = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                indexes.add(tickIndex);
+                if (tickIndex == 0) {
+                    sleep(55);
+                }
+
+                done.countDown();
+            }
+        }, PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.BURST);
+
+        assertTrue(done.await(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        source.cancel();
+
+        for (int i = 0; i < 6; i++) {
+            assertEquals(i, (long) indexes.get(i));
+        }
+
+        assertEquals(0, source.getSkippedTickCount());
+        assertTrue(source.getLateTickCount() >= 4);
+        assertTrue(source.getMaxJitterNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+
+    @Test
+    public void cancelledSourceStopsTicking() throws Exception {
+        final AtomicInteger tickCount = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(2);
+        final FramePacingScheduler.PacedSource source = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                tickCount.incrementAndGet();
+                started.countDown();
+            }
+        }, PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+
+        assertTrue(started.await(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        source.cancel();
+        final int ticksAtCancel = tickCount.get();
+        sleep(50);
+
+        assertTrue(source.isCancelled());
+        assertTrue(tickCount.get() <= ticksAtCancel + 1);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
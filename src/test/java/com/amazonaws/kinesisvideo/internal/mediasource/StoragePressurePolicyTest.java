@@ -0,0 +1,186 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureLevel;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StoragePressurePolicyTest {
+    private static final long STORAGE_SIZE = 10000;
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(1);
+    private final StorageCallbacks applicationStorageCallbacks = mock(StorageCallbacks.class);
+    private final BackpressureStorageCallbacks storageSource = mock(BackpressureStorageCallbacks.class);
+    private long nowNanos;
+
+    @Before
+    public void setUp() {
+        when(storageSource.getStorageSize()).thenReturn(STORAGE_SIZE);
+        when(storageSource.pollAvailableStorageSize()).thenReturn(MediaSourceSink.BUDGET_UNKNOWN);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void lowPriorityStreamsReachEveryTierFirst() {
+        final StoragePressurePolicy policy = createPolicy(0);
+        final StreamBackpressureMonitor low = addStream(policy, "low", 0.5);
+        final StreamBackpressureMonitor normal = addStream(policy, "normal", 1);
+        final StreamBackpressureMonitor high = addStream(policy, "high", 2);
+
+        evaluate(policy, 2500);
+        assertEquals(StoragePressurePolicy.Action.DROP_NON_KEY_FRAMES, policy.getAction("low"));
+        assertEquals(StoragePressurePolicy.Action.REDUCE_BITRATE, policy.getAction("normal"));
+        assertEquals(StoragePressurePolicy.Action.NONE, policy.getAction("high"));
+        assertEquals(BackpressureLevel.DEGRADE, low.getBackpressureLevel());
+        assertEquals(BackpressureLevel.NONE, high.getBackpressureLevel());
+
+        evaluate(policy, 500);
+        assertEquals(StoragePressurePolicy.Action.EVICT, policy.getAction("low"));
+        assertEquals(StoragePressurePolicy.Action.THROTTLE, policy.getAction("normal"));
+        assertEquals(StoragePressurePolicy.Action.THROTTLE, policy.getAction("high"));
+        assertEquals(BackpressureLevel.PAUSE, normal.getBackpressureLevel());
+        assertEquals(BackpressureLevel.PAUSE, high.getBackpressureLevel());
+
+        evaluate(policy, STORAGE_SIZE);
+        assertEquals(StoragePressurePolicy.Action.NONE, policy.getAction("low"));
+        assertEquals(BackpressureLevel.NONE, low.getBackpressureLevel());
+        assertEquals(1, policy.getActionCount(StoragePressurePolicy.Action.REDUCE_BITRATE));
+        assertEquals(1, policy.getActionCount(StoragePressurePolicy.Action.DROP_NON_KEY_FRAMES));
+        assertEquals(2, policy.getActionCount(StoragePressurePolicy.Action.THROTTLE));
+        assertEquals(1, policy.getActionCount(StoragePressurePolicy.Action.EVICT));
+    }
+
+    @Test
+    public void fallingTrendEscalatesEarly() {
+        final StoragePressurePolicy policy = createPolicy(StoragePressurePolicy.DEFAULT_TREND_HORIZON_MILLIS);
+        addStream(policy, "stream", StoragePressurePolicy.DEFAULT_PRIORITY);
+
+        evaluate(policy, 6000);
+        assertEquals(StoragePressurePolicy.Action.NONE, policy.getAction("stream"));
+
+        // Falling by 10000 bytes per second, smoothed
+        evaluate(policy, 5000);
+        assertEquals(-3000, policy.getAvailableSizeTrend(), 1);
+        assertEquals(2000, policy.getProjectedAvailableSize(), 1);
+        assertEquals(StoragePressurePolicy.Action.REDUCE_BITRATE, policy.getAction("stream"));
+    }
+
+    @Test
+    public void actionDoesNotFlapAroundTheThreshold() {
+        final StoragePressurePolicy policy = createPolicy(0);
+        addStream(policy, "stream", StoragePressurePolicy.DEFAULT_PRIORITY);
+
+        evaluate(policy, 2500);
+        assertEquals(StoragePressurePolicy.Action.REDUCE_BITRATE, policy.getAction("stream"));
+
+        // Above the threshold but within the resume margin
+        evaluate(policy, 3200);
+        assertEquals(StoragePressurePolicy.Action.REDUCE_BITRATE, policy.getAction("stream"));
+
+        evaluate(policy, 3600);
+        assertEquals(StoragePressurePolicy.Action.NONE, policy.getAction("stream"));
+        assertEquals(1, policy.getActionCount(StoragePressurePolicy.Action.REDUCE_BITRATE));
+    }
+
+    @Test
+    public void sinkDropsNonKeyFramesAndResumesOnAKeyFrame() throws Exception {
+        final StoragePressurePolicy policy = createPolicy(0);
+        final StreamBackpressureMonitor monitor = addStream(policy, "stream", StoragePressurePolicy.DEFAULT_PRIORITY);
+        final KinesisVideoProducerStream producerStream = mock(KinesisVideoProducerStream.class);
+        final ProducerStreamSink sink = new ProducerStreamSink(producerStream, monitor);
+
+        evaluate(policy, 1500);
+        assertEquals(StoragePressurePolicy.Action.DROP_NON_KEY_FRAMES, monitor.getStoragePressureAction());
+        final KinesisVideoFrame keyFrame = frame(0, FRAME_FLAG_KEY_FRAME);
+        final KinesisVideoFrame droppedFrame = frame(1, FRAME_FLAG_NONE);
+        sink.onFrame(keyFrame);
+        sink.onFrame(droppedFrame);
+        verify(producerStream).putFrame(keyFrame);
+        verify(producerStream, never()).putFrame(droppedFrame);
+
+        // The references of the frames following the eased pressure have been dropped
+        evaluate(policy, STORAGE_SIZE);
+        final KinesisVideoFrame awaitingKeyFrame = frame(2, FRAME_FLAG_NONE);
+        final KinesisVideoFrame nextKeyFrame = frame(3, FRAME_FLAG_KEY_FRAME);
+        final KinesisVideoFrame nextFrame = frame(4, FRAME_FLAG_NONE);
+        sink.onFrame(awaitingKeyFrame);
+        sink.onFrame(nextKeyFrame);
+        sink.onFrame(nextFrame);
+        verify(producerStream, never()).putFrame(awaitingKeyFrame);
+        verify(producerStream).putFrame(nextKeyFrame);
+        verify(producerStream).putFrame(nextFrame);
+        assertEquals(2, policy.getDroppedFrameCount());
+    }
+
+    @Test
+    public void storagePressureIsForwardedAndApplied() {
+        final StoragePressurePolicy policy = createPolicy(0);
+        final StreamBackpressureMonitor monitor = addStream(policy, "stream", StoragePressurePolicy.DEFAULT_PRIORITY);
+
+        policy.storageOverflowPressure(100);
+        verify(applicationStorageCallbacks).storageOverflowPressure(100);
+        assertEquals(StoragePressurePolicy.Action.EVICT, policy.getAction("stream"));
+        assertEquals(1, policy.getStorageOverflowPressureCount());
+
+        policy.removeStream(monitor);
+        assertEquals(StoragePressurePolicy.Action.NONE, monitor.getStoragePressureAction());
+        assertEquals(BackpressureLevel.NONE, monitor.getBackpressureLevel());
+    }
+
+    private StoragePressurePolicy createPolicy(final long trendHorizonMillis) {
+        final StoragePressurePolicy policy = new StoragePressurePolicy(applicationStorageCallbacks,
+                StoragePressurePolicy.DEFAULT_REDUCE_BITRATE_THRESHOLD,
+                StoragePressurePolicy.DEFAULT_DROP_NON_KEY_FRAMES_THRESHOLD,
+                StoragePressurePolicy.DEFAULT_THROTTLE_THRESHOLD,
+                StoragePressurePolicy.DEFAULT_EVICT_THRESHOLD,
+                trendHorizonMillis,
+                scheduler);
+        policy.attach(storageSource);
+        return policy;
+    }
+
+    private StreamBackpressureMonitor addStream(final StoragePressurePolicy policy,
+                                                final String streamName,
+                                                final double priority) {
+        final StreamBackpressureMonitor monitor = new StreamBackpressureMonitor(mock(StreamCallbacks.class),
+                0,
+                null,
+                scheduler,
+                MoreExecutors.directExecutor(),
+                StreamBackpressureMonitor.DEFAULT_DEGRADE_THRESHOLD,
+                StreamBackpressureMonitor.DEFAULT_PAUSE_THRESHOLD);
+        policy.setPriority(streamName, priority);
+        policy.addStream(streamName, monitor);
+        return monitor;
+    }
+
+    private void evaluate(final StoragePressurePolicy policy, final long availableSize) {
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(100);
+        policy.evaluate(availableSize, nowNanos);
+    }
+
+    private static KinesisVideoFrame frame(final int index, final int flags) {
+        return new KinesisVideoFrame(index, flags, index, index, 1, ByteBuffer.allocate(4));
+    }
+}
@@ -0,0 +1,298 @@
+package com.amazonaws.kinesisvideo.internal.mediasource;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureLevel;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.BackpressureListener;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoMetrics;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducer;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoStreamMetrics;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import com.amazonaws.kinesisvideo.producer.StorageCallbacks;
+import com.amazonaws.kinesisvideo.producer.StreamCallbacks;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StreamBackpressureMonitorTest {
+    private static final long BUFFER_DURATION = 1000;
+    private static final long STORAGE_SIZE = 10000;
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(1);
+    private final StreamCallbacks streamCallbacks = mock(StreamCallbacks.class);
+    private final StorageCallbacks applicationStorageCallbacks = mock(StorageCallbacks.class);
+    private final BackpressureStorageCallbacks storageCallbacks =
+            new BackpressureStorageCallbacks(applicationStorageCallbacks);
+    private final List<BackpressureLevel> notifiedLevels =
+            Collections.synchronizedList(new ArrayList<BackpressureLevel>());
+    private final StreamBackpressureMonitor monitor = new StreamBackpressureMonitor(streamCallbacks,
+            BUFFER_DURATION,
+            storageCallbacks,
+            scheduler,
+            MoreExecutors.directExecutor(),
+            StreamBackpressureMonitor.DEFAULT_DEGRADE_THRESHOLD,
+            StreamBackpressureMonitor.DEFAULT_PAUSE_THRESHOLD);
+
+    @After
+    public void tearDown() {
+        monitor.close();
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void bufferDurationPressurePausesUntilTheMetricsShowTheBufferDrained() throws Exception {
+        final KinesisVideoProducerStream producerStream = mockStream(BUFFER_DURATION - 10);
+        monitor.addListener(recordingListener());
+        monitor.attach(producerStream);
+
+        monitor.bufferDurationOverflowPressure(10);
+        verify(streamCallbacks).bufferDurationOverflowPressure(10);
+        assertEquals(BackpressureLevel.PAUSE, monitor.getBackpressureLevel());
+        assertEquals(10, monitor.getRemainingBufferDuration());
+
+        producerStream.getMetrics().setMetrics(0, 0, 100, 100, 0, 0);
+        monitor.pollMetrics();
+        assertEquals(BackpressureLevel.NONE, monitor.getBackpressureLevel());
+        assertEquals(900, monitor.getRemainingBufferDuration());
+        assertEquals(1, monitor.getPauseCount());
+        assertEquals(asList(BackpressureLevel.PAUSE, BackpressureLevel.NONE), notifiedLevels);
+    }
+
+    @Test
+    public void levelDoesNotFlapAroundTheThreshold() throws Exception {
+        monitor.bufferDurationOverflowPressure(200);
+        assertEquals(BackpressureLevel.DEGRADE, monitor.getBackpressureLevel());
+
+        // Above the threshold but within the resume margin
+        monitor.bufferDurationOverflowPressure(270);
+        assertEquals(BackpressureLevel.DEGRADE, monitor.getBackpressureLevel());
+
+        monitor.bufferDurationOverflowPressure(310);
+        assertEquals(BackpressureLevel.NONE, monitor.getBackpressureLevel());
+        assertEquals(1, monitor.getDegradeCount());
+        assertEquals(3, monitor.getBufferDurationOverflowPressureCount());
+    }
+
+    @Test
+    public void storagePressureIsFannedOutToTheMonitors() throws Exception {
+        final KinesisVideoProducer producer = mock(KinesisVideoProducer.class);
+        final KinesisVideoMetrics metrics = new KinesisVideoMetrics();
+        when(producer.getMetrics()).thenReturn(metrics);
+        storageCallbacks.attach(producer, STORAGE_SIZE);
+        storageCallbacks.addMonitor(monitor);
+
+        storageCallbacks.storageOverflowPressure(100);
+        verify(applicationStorageCallbacks).storageOverflowPressure(100);
+        assertEquals(BackpressureLevel.PAUSE, monitor.getBackpressureLevel());
+        assertEquals(100, monitor.getAvailableStorageSize());
+
+        metrics.setMetrics(STORAGE_SIZE, 8000, 2000, 0, 0, 0);
+        monitor.attach(mockStream(0));
+        monitor.pollMetrics();
+        assertEquals(BackpressureLevel.DEGRADE, monitor.getBackpressureLevel());
+        assertEquals(2000, monitor.getAvailableStorageSize());
+        assertEquals(1, storageCallbacks.getStorageOverflowPressureCount());
+    }
+
+    @Test
+    public void offersAreHeldBackWhilePausedAndPutInOrder() throws Exception {
+        final KinesisVideoProducerStream producerStream = mockStream(BUFFER_DURATION);
+        final ProducerStreamSink sink = new ProducerStreamSink(producerStream, monitor, 2);
+        final KinesisVideoFrame first = frame(0);
+        final KinesisVideoFrame second = frame(1);
+
+        monitor.bufferDurationOverflowPressure(0);
+        assertEquals(BackpressureLevel.PAUSE, sink.getBackpressureLevel());
+        final CompletableFuture<Void> firstOffer = sink.offer(first);
+        final CompletableFuture<Void> secondOffer = sink.offer(second);
+        final CompletableFuture<Void> rejectedOffer = sink.offer(frame(2));
+        assertFalse(firstOffer.isDone());
+        assertEquals(2, sink.getPendingOfferCount());
+        verify(producerStream, never()).putFrame(first);
+        try {
+            rejectedOffer.get();
+            fail("Offer over the pending limit must fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof KinesisVideoException);
+        }
+
+        monitor.bufferDurationOverflowPressure(BUFFER_DURATION);
+        firstOffer.get();
+        secondOffer.get();
+        final InOrder inOrder = inOrder(producerStream);
+        inOrder.verify(producerStream).putFrame(first);
+        inOrder.verify(producerStream).putFrame(second);
+        assertEquals(0, sink.getPendingOfferCount());
+
+        // Not paused, put immediately
+        assertTrue(sink.offer(frame(3)).isDone());
+    }
+
+    @Test
+    public void offersHeldBackWhenTheStreamIsClosedFail() throws Exception {
+        final KinesisVideoProducerStream producerStream = mockStream(BUFFER_DURATION);
+        final ProducerStreamSink sink = new ProducerStreamSink(producerStream, monitor, 2);
+        final KinesisVideoFrame frame = frame(0);
+
+        monitor.bufferDurationOverflowPressure(0);
+        final CompletableFuture<Void> offer = sink.offer(frame);
+        assertFalse(offer.isDone());
+
+        // Closing releases the level, the frame must not be put into the stream being freed
+        monitor.close();
+        assertEquals(BackpressureLevel.NONE, sink.getBackpressureLevel());
+        assertFailed(offer);
+        assertFailed(sink.offer(frame(1)));
+        assertEquals(0, sink.getPendingOfferCount());
+        verify(producerStream, never()).putFrame(frame);
+    }
+
+    @Test
+    public void offersHeldBackArePutWhenThePauseEasesBeforeTheNotificationRuns() throws Exception {
+        final CountDownLatch notifierGate = new CountDownLatch(1);
+        final ExecutorService notificationThread = Executors.newSingleThreadExecutor();
+        final StreamBackpressureMonitor asyncMonitor = createGatedMonitor(notificationThread, notifierGate);
+        try {
+            final KinesisVideoProducerStream producerStream = mockStream(BUFFER_DURATION);
+            final ProducerStreamSink sink = new ProducerStreamSink(producerStream, asyncMonitor, 2);
+            final KinesisVideoFrame frame = frame(0);
+
+            // PAUSE and back to NONE before the notifier gets to run
+            asyncMonitor.bufferDurationOverflowPressure(0);
+            final CompletableFuture<Void> offer = sink.offer(frame);
+            asyncMonitor.bufferDurationOverflowPressure(BUFFER_DURATION);
+            assertEquals(BackpressureLevel.NONE, sink.getBackpressureLevel());
+            assertFalse(offer.isDone());
+
+            notifierGate.countDown();
+            offer.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            verify(producerStream).putFrame(frame);
+            assertEquals(0, sink.getPendingOfferCount());
+        } finally {
+            notifierGate.countDown();
+            asyncMonitor.close();
+            notificationThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void offersHeldBackFailWhenTheStreamIsClosedBeforeTheNotificationRuns() throws Exception {
+        final CountDownLatch notifierGate = new CountDownLatch(1);
+        final ExecutorService notificationThread = Executors.newSingleThreadExecutor();
+        final StreamBackpressureMonitor asyncMonitor = createGatedMonitor(notificationThread, notifierGate);
+        try {
+            final KinesisVideoProducerStream producerStream = mockStream(BUFFER_DURATION);
+            final ProducerStreamSink sink = new ProducerStreamSink(producerStream, asyncMonitor, 2);
+            final KinesisVideoFrame frame = frame(0);
+
+            asyncMonitor.bufferDurationOverflowPressure(0);
+            final CompletableFuture<Void> offer = sink.offer(frame);
+
+            // Failed by the close itself, not by the pending notification
+            asyncMonitor.close();
+            assertTrue(offer.isDone());
+            assertFailed(offer);
+            assertEquals(0, sink.getPendingOfferCount());
+
+            notifierGate.countDown();
+            verify(producerStream, never()).putFrame(frame);
+        } finally {
+            notifierGate.countDown();
+            notificationThread.shutdownNow();
+        }
+    }
+
+    private StreamBackpressureMonitor createGatedMonitor(final Executor notificationThread,
+                                                         final CountDownLatch notifierGate) {
+        // Notifies on a real thread once the gate is opened
+        return new StreamBackpressureMonitor(streamCallbacks,
+                BUFFER_DURATION,
+                null,
+                scheduler,
+                new Executor() {
+                    @Override
+                    public void execute(final Runnable notifier) {
+                        notificationThread.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    notifierGate.await();
+                                } catch (final InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    return;
+                                }
+
+                                notifier.run();
+                            }
+                        });
+                    }
+                },
+                StreamBackpressureMonitor.DEFAULT_DEGRADE_THRESHOLD,
+                StreamBackpressureMonitor.DEFAULT_PAUSE_THRESHOLD);
+    }
+
+    private static KinesisVideoProducerStream mockStream(final long overallViewDuration) throws Exception {
+        final KinesisVideoProducerStream producerStream = mock(KinesisVideoProducerStream.class);
+        final KinesisVideoStreamMetrics metrics = new KinesisVideoStreamMetrics();
+        metrics.setMetrics(0, 0, overallViewDuration, overallViewDuration, 0, 0);
+        when(producerStream.getMetrics()).thenReturn(metrics);
+        when(producerStream.getStreamName()).thenReturn("stream");
+        return producerStream;
+    }
+
+    private static void assertFailed(final CompletableFuture<Void> offer) throws InterruptedException {
+        try {
+            offer.get();
+            fail("Offer must fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof KinesisVideoException);
+        }
+    }
+
+    private static KinesisVideoFrame frame(final int index) {
+        return new KinesisVideoFrame(index, 0, index, index, 1, ByteBuffer.allocate(4));
+    }
+
+    private BackpressureListener recordingListener() {
+        return new BackpressureListener() {
+            @Override
+            public void onBackpressureChanged(@Nonnull final BackpressureLevel backpressureLevel) {
+                notifiedLevels.add(backpressureLevel);
+            }
+        };
+    }
+
+    private static List<BackpressureLevel> asList(final BackpressureLevel... levels) {
+        final List<BackpressureLevel> list = new ArrayList<BackpressureLevel>();
+        for (final BackpressureLevel level : levels) {
+            list.add(level);
+        }
+
+        return list;
+    }
+}
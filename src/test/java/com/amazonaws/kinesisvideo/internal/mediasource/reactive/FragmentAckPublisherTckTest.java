@@ -0,0 +1,67 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.reactive;
+
+import com.amazonaws.kinesisvideo.producer.FragmentAckType;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFragmentAck;
+import com.amazonaws.kinesisvideo.producer.ProducerException;
+import com.amazonaws.kinesisvideo.streaming.DefaultStreamCallbacks;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.tck.PublisherVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+/**
+ * Reactive streams TCK run against the fragment ACK publisher
+ */
+public class FragmentAckPublisherTckTest extends PublisherVerification<KinesisVideoFragmentAck> {
+    private static final long TIMEOUT_IN_MILLIS = 300;
+    private static final int MAX_QUEUED_ACKS = 1024;
+    private static final long UPLOAD_HANDLE = 1;
+
+    public FragmentAckPublisherTckTest() {
+        super(new TestEnvironment(TIMEOUT_IN_MILLIS));
+    }
+
+    @Override
+    public Publisher<KinesisVideoFragmentAck> createPublisher(final long elements) {
+        // The publisher is hot, so the ACKs of the stream are received once the subscriber has subscribed
+        return new Publisher<KinesisVideoFragmentAck>() {
+            @Override
+            public void subscribe(final Subscriber<? super KinesisVideoFragmentAck> subscriber) {
+                final FragmentAckPublisher publisher =
+                        new FragmentAckPublisher(new DefaultStreamCallbacks(), MAX_QUEUED_ACKS);
+                publisher.subscribe(subscriber);
+                publishAcks(publisher, elements);
+                publisher.close();
+            }
+        };
+    }
+
+    @Override
+    public Publisher<KinesisVideoFragmentAck> createFailedPublisher() {
+        // The publisher only fails the subscribers falling behind, here by more than a single ACK
+        return new Publisher<KinesisVideoFragmentAck>() {
+            @Override
+            public void subscribe(final Subscriber<? super KinesisVideoFragmentAck> subscriber) {
+                final FragmentAckPublisher publisher = new FragmentAckPublisher(new DefaultStreamCallbacks(), 1);
+                publisher.subscribe(subscriber);
+                publishAcks(publisher, 2);
+            }
+        };
+    }
+
+    @Override
+    public long maxElementsFromPublisher() {
+        return MAX_QUEUED_ACKS;
+    }
+
+    private static void publishAcks(final FragmentAckPublisher publisher, final long count) {
+        try {
+            for (long i = 0; i < count; i++) {
+                publisher.fragmentAckReceived(UPLOAD_HANDLE, new KinesisVideoFragmentAck(
+                        FragmentAckType.FRAGMENT_ACK_TYPE_PERSISTED, i, String.valueOf(i), 0));
+            }
+        } catch (final ProducerException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.reactive;
+
+import com.amazonaws.kinesisvideo.internal.mediasource.ProducerStreamSink;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.tck.SubscriberBlackboxVerification;
+import org.reactivestreams.tck.TestEnvironment;
+
+import java.nio.ByteBuffer;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Reactive streams TCK run against the frame subscriber
+ */
+public class KinesisVideoFrameSubscriberTckTest extends SubscriberBlackboxVerification<KinesisVideoFrame> {
+    private static final long TIMEOUT_IN_MILLIS = 300;
+    private static final int MAX_OUTSTANDING_FRAMES = 4;
+
+    public KinesisVideoFrameSubscriberTckTest() {
+        super(new TestEnvironment(TIMEOUT_IN_MILLIS));
+    }
+
+    @Override
+    public Subscriber<KinesisVideoFrame> createSubscriber() {
+        return new KinesisVideoFrameSubscriber(new ProducerStreamSink(mock(KinesisVideoProducerStream.class)),
+                MAX_OUTSTANDING_FRAMES);
+    }
+
+    @Override
+    public KinesisVideoFrame createElement(final int element) {
+        return new KinesisVideoFrame(element, FRAME_FLAG_NONE, element, element, 1, ByteBuffer.allocate(16));
+    }
+}
@@ -0,0 +1,207 @@
+package com.amazonaws.kinesisvideo.internal.mediasource.synthetic;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_KEY_FRAME;
+import static com.amazonaws.kinesisvideo.producer.FrameFlags.FRAME_FLAG_NONE;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.AUDIO_TRACK_ID;
+import static com.amazonaws.kinesisvideo.util.StreamInfoConstants.VIDEO_TRACK_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class SyntheticFrameSourceTest {
+    private static final int FPS = 30;
+    private static final long FRAME_DURATION = 333333;
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(1);
+    private final MediaSourceSink mediaSourceSink = mock(MediaSourceSink.class);
+    private final List<KinesisVideoFrame> frames = new ArrayList<KinesisVideoFrame>();
+    private final List<Integer> frameSizes = new ArrayList<Integer>();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void sendsGopInDecodeOrder() throws KinesisVideoException {
+        final SyntheticFrameSource frameSource = createFrameSource(new SyntheticMediaSourceConfiguration
+                .SyntheticBuilder()
+                .withFps(FPS)
+                .withGop(8, 2)
+                .build());
+
+        for (int i = 0; i < 9; i++) {
+            frameSource.generateTick(i);
+        }
+
+        assertEquals(9, frames.size());
+        assertEquals(FRAME_FLAG_KEY_FRAME, frames.get(0).getFlags());
+        assertEquals(FRAME_FLAG_KEY_FRAME, frames.get(8).getFlags());
+        for (int i = 1; i < 8; i++) {
+            assertEquals(FRAME_FLAG_NONE, frames.get(i).getFlags());
+        }
+
+        // I0 P3 B1 B2 P6 B4 B5 P7 in decode order, presented a frame late
+        final List<Long> displayIndexes = new ArrayList<Long>();
+        for (int i = 0; i < 9; i++) {
+            final KinesisVideoFrame frame = frames.get(i);
+            assertEquals(i * FRAME_DURATION, frame.getDecodingTs());
+            assertTrue(frame.getPresentationTs() >= frame.getDecodingTs());
+            assertEquals(VIDEO_TRACK_ID, frame.getTrackId());
+            displayIndexes.add(frame.getPresentationTs() / FRAME_DURATION - 1);
+        }
+
+        assertEquals(Arrays.asList(0L, 3L, 1L, 2L, 6L, 4L, 5L, 7L, 8L), displayIndexes);
+    }
+
+    @Test
+    public void weighsFrameSizesByType() throws KinesisVideoException {
+        final SyntheticFrameSource frameSource = createFrameSource(new SyntheticMediaSourceConfiguration
+                .SyntheticBuilder()
+                .withFps(FPS)
+                .withGop(4, 1)
+                .withFrameSizeWeights(8, 4, 2)
+                .withFrameSizeJitter(0)
+                .build());
+
+        for (int i = 0; i < 4; i++) {
+            frameSource.generateTick(i);
+        }
+
+        // I P B P
+        assertEquals(frameSizes.get(1) * 2, frameSizes.get(0), 2);
+        assertEquals(frameSizes.get(2) * 2, frameSizes.get(1), 2);
+        assertEquals(frameSizes.get(1), frameSizes.get(3));
+    }
+
+    @Test
+    public void matchesTargetBitrate() throws KinesisVideoException {
+        final long videoBitrate = 8000000;
+        final SyntheticFrameSource frameSource = createFrameSource(new SyntheticMediaSourceConfiguration
+                .SyntheticBuilder()
+                .withFps(FPS)
+                .withVideoBitrate(videoBitrate)
+                .withGop(0, 2)
+                .build());
+
+        // Ten seconds of frames
+        long bytes = 0;
+        for (int i = 0; i < FPS * 10; i++) {
+            frameSource.generateTick(i);
+        }
+
+        for (final int frameSize : frameSizes) {
+            bytes += frameSize;
+        }
+
+        assertEquals(videoBitrate * 10, bytes * 8, videoBitrate * 10 * 0.02);
+    }
+
+    @Test
+    public void interleavesAudioFrames() throws KinesisVideoException {
+        final SyntheticFrameSource frameSource = createFrameSource(new SyntheticMediaSourceConfiguration
+                .SyntheticBuilder()
+                .withFps(FPS)
+                .withAudioTrack(128000, 20)
+                .build());
+
+        for (int i = 0; i < FPS; i++) {
+            frameSource.generateTick(i);
+        }
+
+        int audioFrames = 0;
+        long lastDecodingTs = -1;
+        for (final KinesisVideoFrame frame : frames) {
+            if (frame.getTrackId() == AUDIO_TRACK_ID) {
+                audioFrames++;
+                assertEquals(FRAME_FLAG_NONE, frame.getFlags());
+            }
+
+            // Within the tick of their video frame
+            assertTrue(frame.getDecodingTs() >= lastDecodingTs - FRAME_DURATION);
+            lastDecodingTs = Math.max(lastDecodingTs, frame.getDecodingTs());
+        }
+
+        // A second of 20 ms frames
+        assertEquals(50, audioFrames);
+        final SyntheticLoadReport report = frameSource.getReport();
+        assertEquals(FPS + 50, report.getSentFrameCount());
+        assertEquals(4128000, report.getOfferedBitrate());
+    }
+
+    @Test
+    public void countsFailedFramesAndGoesOn() throws KinesisVideoException {
+        final SyntheticMediaSourceConfiguration configuration = new SyntheticMediaSourceConfiguration
+                .SyntheticBuilder()
+                .withFps(FPS)
+                .build();
+        final SyntheticFrameSource frameSource = new SyntheticFrameSource(configuration,
+                new SyntheticPayloadPool(configuration), scheduler, 0);
+        frameSource.onMediaSourceSink(mediaSourceSink);
+        doThrow(new KinesisVideoException("Storage full")).when(mediaSourceSink).onFrame(any(KinesisVideoFrame.class));
+
+        frameSource.generateTick(0);
+        frameSource.generateTick(1);
+
+        final SyntheticLoadReport report = frameSource.getReport();
+        assertEquals(2, report.getFailedFrameCount());
+        assertEquals(0, report.getSentFrameCount());
+    }
+
+    @Test
+    public void reportsAchievedRate() throws KinesisVideoException, InterruptedException {
+        final List<SyntheticMediaSource> mediaSources = SyntheticMediaSource.createMediaSources("load", 3,
+                new SyntheticMediaSourceConfiguration.SyntheticBuilder()
+                        .withFps(FPS)
+                        .build());
+        for (final SyntheticMediaSource mediaSource : mediaSources) {
+            mediaSource.initialize(mock(MediaSourceSink.class));
+            mediaSource.start();
+        }
+
+        Thread.sleep(500);
+        for (final SyntheticMediaSource mediaSource : mediaSources) {
+            mediaSource.stop();
+        }
+
+        final SyntheticLoadReport report = SyntheticMediaSource.getReport(mediaSources);
+        assertEquals(3, report.getStreamCount());
+        assertEquals(3 * FPS, report.getOfferedFrameRate(), 0);
+        assertEquals(report.getOfferedFrameRate(), report.getAchievedFrameRate(), report.getOfferedFrameRate() * 0.2);
+        assertEquals(0, report.getFailedFrameCount());
+    }
+
+    private SyntheticFrameSource createFrameSource(final SyntheticMediaSourceConfiguration configuration)
+            throws KinesisVideoException {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                final KinesisVideoFrame frame = invocation.getArgument(0);
+                frames.add(frame);
+                frameSizes.add(frame.getData().remaining());
+                return null;
+            }
+        }).when(mediaSourceSink).onFrame(any(KinesisVideoFrame.class));
+
+        final SyntheticFrameSource frameSource = new SyntheticFrameSource(configuration,
+                new SyntheticPayloadPool(configuration), scheduler, 0);
+        frameSource.onMediaSourceSink(mediaSourceSink);
+        return frameSource;
+    }
+}
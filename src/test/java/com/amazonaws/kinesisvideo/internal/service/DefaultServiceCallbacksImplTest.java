@@ -0,0 +1,107 @@
+package com.amazonaws.kinesisvideo.internal.service;
+
+import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfiguration;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.internal.producer.KinesisVideoProducerStream;
+import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
+import com.amazonaws.kinesisvideo.java.service.ServiceUnavailableException;
+import org.apache.logging.log4j.LogManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultServiceCallbacksImplTest {
+    private ScheduledExecutorService executor;
+    private DefaultServiceCallbacksImpl serviceCallbacks;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        serviceCallbacks = new DefaultServiceCallbacksImpl(LogManager.getLogger(DefaultServiceCallbacksImplTest.class),
+                executor,
+                KinesisVideoClientConfiguration.builder().build(),
+                mock(KinesisVideoServiceClient.class));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void removedStreamIsNotStoppedOnFree() throws Exception {
+        final KinesisVideoProducerStream first = mockStream(1);
+        final KinesisVideoProducerStream second = mockStream(2);
+        serviceCallbacks.addStream(first);
+        serviceCallbacks.addStream(second);
+        assertEquals(2, serviceCallbacks.getStreamCount());
+
+        // The handle is reset once the stream is freed which must not affect the removal
+        when(first.getStreamHandle()).thenReturn(-1L);
+        serviceCallbacks.removeStream(first);
+        assertEquals(1, serviceCallbacks.getStreamCount());
+
+        serviceCallbacks.free();
+
+        verify(first, never()).stopStreamSync();
+        verify(second).stopStreamSync();
+        assertEquals(0, serviceCallbacks.getStreamCount());
+    }
+
+    @Test
+    public void unavailableServiceIsReportedAsRetriable() {
+        assertEquals(503, DefaultServiceCallbacksImpl.getStatusCodeFromException(
+                new KinesisVideoException("Wrapped", new ServiceUnavailableException("Short-circuited"))));
+        assertEquals(400, DefaultServiceCallbacksImpl.getStatusCodeFromException(
+                new KinesisVideoException("Unknown")));
+    }
+
+    @Test
+    public void freeStopsStreamsInParallel() throws Exception {
+        final int streamCount = 4;
+        final CountDownLatch allStopping = new CountDownLatch(streamCount);
+        final Answer<Void> blockingStop = new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                // Only completes if all the stops run at the same time
+                allStopping.countDown();
+                assertTrue(allStopping.await(10, TimeUnit.SECONDS));
+                return null;
+            }
+        };
+
+        for (int i = 0; i < streamCount; i++) {
+            final KinesisVideoProducerStream stream = mockStream(i + 1);
+            doAnswer(blockingStop).when(stream).stopStreamSync();
+            serviceCallbacks.addStream(stream);
+        }
+
+        final long start = System.nanoTime();
+        serviceCallbacks.free();
+
+        assertEquals(0, allStopping.getCount());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private static KinesisVideoProducerStream mockStream(final long streamHandle) {
+        final KinesisVideoProducerStream stream = mock(KinesisVideoProducerStream.class);
+        when(stream.getStreamHandle()).thenReturn(streamHandle);
+        when(stream.getStreamName()).thenReturn("stream-" + streamHandle);
+        return stream;
+    }
+}
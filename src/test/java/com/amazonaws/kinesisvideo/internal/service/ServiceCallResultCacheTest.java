@@ -0,0 +1,136 @@
+package com.amazonaws.kinesisvideo.internal.service;
+
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceCallResultCacheTest {
+    private static final long ONE_MINUTE = 60 * 1000;
+    private static final long SHORT_TTL = 200;
+
+    /**
+     * Loader handing out the load the test completes, counting the calls
+     */
+    private static final class PendingLoader implements ServiceCallResultCache.AsyncLoader<String> {
+        private final List<CompletableFuture<String>> loads = new ArrayList<CompletableFuture<String>>();
+
+        @Nonnull
+        @Override
+        public synchronized CompletableFuture<String> load() {
+            final CompletableFuture<String> load = new CompletableFuture<String>();
+            loads.add(load);
+            return load;
+        }
+
+        private synchronized int getLoadCount() {
+            return loads.size();
+        }
+
+        private synchronized CompletableFuture<String> getLastLoad() {
+            return loads.get(loads.size() - 1);
+        }
+    }
+
+    /**
+     * Callback recording the delivered values and errors
+     */
+    private static final class RecordingCallback implements ServiceCallResultCache.Callback<String> {
+        private final List<String> values = Collections.synchronizedList(new ArrayList<String>());
+        private final List<KinesisVideoException> errors =
+                Collections.synchronizedList(new ArrayList<KinesisVideoException>());
+
+        @Override
+        public void onResult(final String value, final KinesisVideoException error) {
+            if (error == null) {
+                values.add(value);
+            } else {
+                assertNull(value);
+                errors.add(error);
+            }
+        }
+    }
+
+    @Test
+    public void resultIsServedFromTheCacheUntilItsTtlExpires() throws Exception {
+        final ServiceCallResultCache<String, String> cache =
+                new ServiceCallResultCache<String, String>(SHORT_TTL, 0);
+        final PendingLoader loader = new PendingLoader();
+        final RecordingCallback callback = new RecordingCallback();
+
+        cache.get("stream", loader, callback);
+        loader.getLastLoad().complete("endpoint");
+        cache.get("stream", loader, callback);
+        cache.get("other", loader, callback);
+        assertEquals(2, loader.getLoadCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        // Delivered on the calling thread when cached
+        assertEquals(2, callback.values.size());
+
+        Thread.sleep(2 * SHORT_TTL);
+        cache.get("stream", loader, callback);
+        assertEquals(3, loader.getLoadCount());
+        loader.getLastLoad().complete("new-endpoint");
+        assertEquals("new-endpoint", callback.values.get(callback.values.size() - 1));
+    }
+
+    @Test
+    public void errorsAreCachedForTheErrorTtlAndInvalidated() throws Exception {
+        final ServiceCallResultCache<String, String> cache =
+                new ServiceCallResultCache<String, String>(ONE_MINUTE, ONE_MINUTE);
+        final PendingLoader loader = new PendingLoader();
+        final RecordingCallback callback = new RecordingCallback();
+
+        cache.get("stream", loader, callback);
+        loader.getLastLoad().completeExceptionally(new KinesisVideoException("throttled"));
+        cache.get("stream", loader, callback);
+        cache.get("stream", loader, callback);
+        assertEquals(1, loader.getLoadCount());
+        assertEquals(3, callback.errors.size());
+        assertEquals("throttled", callback.errors.get(2).getMessage());
+
+        cache.invalidate("stream");
+        cache.get("stream", loader, callback);
+        assertEquals(2, loader.getLoadCount());
+
+        // Unexpected errors are never cached
+        loader.getLastLoad().completeExceptionally(new IllegalStateException("bug"));
+        cache.get("stream", loader, callback);
+        assertEquals(3, loader.getLoadCount());
+        assertTrue(callback.errors.get(3).getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void inFlightLoadIsFannedOutToCoalescedCallbacks() throws Exception {
+        final ServiceCallResultCache<String, String> coalescer = new ServiceCallResultCache<String, String>(0, 0);
+        final PendingLoader loader = new PendingLoader();
+        final RecordingCallback callback = new RecordingCallback();
+
+        // The later calls return without waiting for the load
+        coalescer.get("stream", loader, callback);
+        coalescer.get("stream", loader, callback);
+        coalescer.get("stream", loader, callback);
+        assertEquals(1, loader.getLoadCount());
+        assertEquals(2, coalescer.getCoalescedCount());
+        assertTrue(callback.values.isEmpty());
+
+        loader.getLastLoad().complete("arn");
+        assertEquals(3, callback.values.size());
+        for (final String value : callback.values) {
+            assertEquals("arn", value);
+        }
+
+        // Nothing is cached with zero TTL
+        coalescer.get("stream", loader, callback);
+        assertEquals(2, loader.getLoadCount());
+    }
+}
@@ -0,0 +1,178 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnexBAccessUnitReaderTest {
+    private static final byte[] START_CODE_4 = {0, 0, 0, 1};
+    private static final byte[] START_CODE_3 = {0, 0, 1};
+
+    private static final byte[] H264_SPS = {0x67, 0x42, 0x00, 0x1E, 0x11};
+    private static final byte[] H264_PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    // The payloads contain emulation prevention bytes and runs without zero bytes
+    private static final byte[] H264_IDR = concat(new byte[] {0x65, (byte) 0x88, 0x00, 0x00, 0x03, 0x01},
+            filler(40));
+    private static final byte[] H264_SLICE = concat(new byte[] {0x41, (byte) 0x9A}, filler(30));
+    // Second slice of the same picture, first_mb_in_slice is not 0
+    private static final byte[] H264_SECOND_SLICE = concat(new byte[] {0x41, 0x1A}, filler(20));
+
+    private static final byte[] H265_VPS = {0x40, 0x01, 0x0C};
+    private static final byte[] H265_SPS = {0x42, 0x01, 0x01};
+    private static final byte[] H265_PPS = {0x44, 0x01, (byte) 0xC1};
+    private static final byte[] H265_IDR = concat(new byte[] {0x26, 0x01, (byte) 0xAF}, filler(25));
+    private static final byte[] H265_TRAIL = concat(new byte[] {0x02, 0x01, (byte) 0xD0}, filler(25));
+
+    @Test
+    public void h264NalUnitsAreGroupedIntoAccessUnits() throws Exception {
+        final byte[] stream = concat(
+                START_CODE_4, H264_SPS, START_CODE_4, H264_PPS, START_CODE_3, H264_IDR,
+                START_CODE_4, H264_SLICE, START_CODE_3, H264_SECOND_SLICE,
+                START_CODE_4, H264_SLICE);
+        final List<byte[]> accessUnits = new ArrayList<byte[]>();
+        final List<Boolean> keyFrames = new ArrayList<Boolean>();
+        final List<byte[]> codecPrivateData = new ArrayList<byte[]>();
+
+        readAll(stream, AnnexBMediaSourceConfiguration.Codec.H264, accessUnits, keyFrames, codecPrivateData);
+
+        assertEquals(3, accessUnits.size());
+        assertArrayEquals(concat(START_CODE_4, H264_SPS, START_CODE_4, H264_PPS, START_CODE_3, H264_IDR),
+                accessUnits.get(0));
+        assertArrayEquals(concat(START_CODE_4, H264_SLICE, START_CODE_3, H264_SECOND_SLICE), accessUnits.get(1));
+        assertArrayEquals(concat(START_CODE_4, H264_SLICE), accessUnits.get(2));
+        assertEquals(Arrays.asList(true, false, false), keyFrames);
+
+        assertArrayEquals(concat(START_CODE_4, H264_SPS, START_CODE_4, H264_PPS), codecPrivateData.get(0));
+        assertNull(codecPrivateData.get(1));
+        assertNull(codecPrivateData.get(2));
+    }
+
+    @Test
+    public void h265ParameterSetsAndIrapPicturesAreDetected() throws Exception {
+        final byte[] stream = concat(
+                START_CODE_4, H265_VPS, START_CODE_4, H265_SPS, START_CODE_4, H265_PPS, START_CODE_4, H265_IDR,
+                START_CODE_4, H265_TRAIL, START_CODE_4, H265_TRAIL);
+        final List<byte[]> accessUnits = new ArrayList<byte[]>();
+        final List<Boolean> keyFrames = new ArrayList<Boolean>();
+        final List<byte[]> codecPrivateData = new ArrayList<byte[]>();
+
+        readAll(stream, AnnexBMediaSourceConfiguration.Codec.H265, accessUnits, keyFrames, codecPrivateData);
+
+        assertEquals(3, accessUnits.size());
+        assertEquals(Arrays.asList(true, false, false), keyFrames);
+        assertArrayEquals(concat(START_CODE_4, H265_VPS, START_CODE_4, H265_SPS, START_CODE_4, H265_PPS),
+                codecPrivateData.get(0));
+        assertArrayEquals(concat(START_CODE_4, H265_TRAIL), accessUnits.get(2));
+    }
+
+    @Test
+    public void accessUnitsSurviveSmallReadsAndBufferCompaction() throws Exception {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final byte[] header = concat(START_CODE_4, H264_SPS, START_CODE_4, H264_PPS, START_CODE_3, H264_IDR);
+        stream.write(header, 0, header.length);
+        for (int i = 0; i < 50; i++) {
+            final byte[] slice = concat(START_CODE_4, H264_SLICE);
+            stream.write(slice, 0, slice.length);
+        }
+
+        final AnnexBAccessUnitReader reader = new AnnexBAccessUnitReader(
+                new ChunkedChannel(stream.toByteArray(), 7), AnnexBMediaSourceConfiguration.Codec.H264, 16);
+        assertArrayEquals(header, toArray(reader.next().getData()));
+        for (int i = 0; i < 50; i++) {
+            final AnnexBAccessUnitReader.AccessUnit accessUnit = reader.next();
+            assertFalse(accessUnit.isKeyFrame());
+            assertArrayEquals(concat(START_CODE_4, H264_SLICE), toArray(accessUnit.getData()));
+        }
+
+        assertNull(reader.next());
+        assertTrue(reader.getCompactedByteCount() > 0);
+    }
+
+    private static void readAll(final byte[] stream,
+                                final AnnexBMediaSourceConfiguration.Codec codec,
+                                final List<byte[]> accessUnits,
+                                final List<Boolean> keyFrames,
+                                final List<byte[]> codecPrivateData) throws IOException {
+        final AnnexBAccessUnitReader reader = new AnnexBAccessUnitReader(new ChunkedChannel(stream, 1024), codec,
+                AnnexBAccessUnitReader.DEFAULT_BUFFER_SIZE);
+        AnnexBAccessUnitReader.AccessUnit accessUnit;
+        while ((accessUnit = reader.next()) != null) {
+            assertTrue(accessUnit.getData().isDirect());
+            accessUnits.add(toArray(accessUnit.getData()));
+            keyFrames.add(accessUnit.isKeyFrame());
+            codecPrivateData.add(accessUnit.getCodecPrivateData());
+        }
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static byte[] filler(final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (0x10 + i % 0x60);
+        }
+
+        return bytes;
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns at most the given number of bytes per read, like a pipe
+     */
+    private static final class ChunkedChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final int chunkSize;
+
+        private ChunkedChannel(final byte[] data, final int chunkSize) {
+            this.data = ByteBuffer.wrap(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(final ByteBuffer target) {
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+
+            final ByteBuffer chunk = data.duplicate();
+            chunk.limit(Math.min(data.limit(), data.position() + Math.min(chunkSize, target.remaining())));
+            final int read = chunk.remaining();
+            target.put(chunk);
+            data.position(data.position() + read);
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
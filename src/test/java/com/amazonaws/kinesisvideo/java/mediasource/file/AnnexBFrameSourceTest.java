@@ -0,0 +1,124 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.internal.client.mediasource.MediaSourceSink;
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AnnexBFrameSourceTest {
+    private static final byte[] START_CODE = {0, 0, 0, 1};
+    private static final byte[] SPS = {0x67, 0x42, 0x00, 0x1E, 0x11};
+    private static final byte[] PPS = {0x68, (byte) 0xCE, 0x3C, (byte) 0x80};
+    private static final byte[] IDR = {0x65, (byte) 0x88, 0x11, 0x22};
+    private static final byte[] SLICE = {0x41, (byte) 0x9A, 0x11, 0x22};
+    private static final long OTHER_SOURCE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(1);
+
+    /**
+     * Channel over the stream which blocks its first read until released, like slow storage
+     */
+    private static final class SlowChannel implements ReadableByteChannel {
+        private final ByteBuffer data;
+        private final CountDownLatch release = new CountDownLatch(1);
+        private boolean isOpen = true;
+
+        private SlowChannel(final byte[] data) {
+            this.data = ByteBuffer.wrap(data);
+        }
+
+        @Override
+        public int read(final ByteBuffer destination) throws IOException {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            if (!data.hasRemaining()) {
+                return -1;
+            }
+
+            final int length = Math.min(destination.remaining(), data.remaining());
+            final ByteBuffer chunk = data.duplicate();
+            chunk.limit(chunk.position() + length);
+            destination.put(chunk);
+            data.position(data.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        public void close() {
+            isOpen = false;
+            release.countDown();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void slowReadDoesNotHoldUpTheOtherSourcesOfTheScheduler() throws Exception {
+        final SlowChannel channel = new SlowChannel(stream(SPS, PPS, IDR, SLICE, SLICE));
+        final CompletableFuture<Long> endOfStream = new CompletableFuture<Long>();
+        final AnnexBFrameSource frameSource = new AnnexBFrameSource(
+                new AnnexBAccessUnitReader(channel, AnnexBMediaSourceConfiguration.Codec.H264, 1024),
+                AnnexBMediaSourceConfiguration.Pacing.FRAME_RATE, 100, scheduler, endOfStream);
+        final MediaSourceSink sink = mock(MediaSourceSink.class);
+        frameSource.onMediaSourceSink(sink);
+        final FramePacingScheduler.PacedSource otherSource = scheduler.schedule(new FramePacingScheduler.Tick() {
+            @Override
+            public void onTick(final long tickIndex) {
+                // Another stream paced by the same scheduler
+            }
+        }, OTHER_SOURCE_PERIOD_NANOS, FramePacingScheduler.CatchUpPolicy.SKIP);
+
+        frameSource.start();
+        try {
+            // The read blocks on the reader thread, the ticks keep running
+            Thread.sleep(200);
+            assertTrue(otherSource.getTickCount() > 10);
+
+            channel.release.countDown();
+            assertEquals(3L, (long) endOfStream.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+            verify(sink, times(3)).onFrame(any(KinesisVideoFrame.class));
+        } finally {
+            frameSource.stop();
+            otherSource.cancel();
+        }
+    }
+
+    private static byte[] stream(final byte[]... nalUnits) {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (final byte[] nalUnit : nalUnits) {
+            stream.write(START_CODE, 0, START_CODE.length);
+            stream.write(nalUnit, 0, nalUnit.length);
+        }
+
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.producer.MkvTrackInfoType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MkvFileDemuxerTest {
+    private static final long MILLIS = 1000000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void tracksAreReadFromTheHeader() throws Exception {
+        try (final MkvFileDemuxer demuxer = new MkvFileDemuxer(writeTestFile())) {
+            final List<MkvFileDemuxer.Track> tracks = demuxer.getTracks();
+            assertEquals(2, tracks.size());
+            assertEquals(MILLIS, demuxer.getTimecodeScaleNanos());
+
+            assertEquals(1, tracks.get(0).getNumber());
+            assertEquals(MkvTrackInfoType.VIDEO, tracks.get(0).getType());
+            assertEquals("V_MPEG4/ISO/AVC", tracks.get(0).getCodecId());
+            assertEquals("video", tracks.get(0).getName());
+            assertArrayEquals(MkvTestFiles.VIDEO_CODEC_PRIVATE_DATA, tracks.get(0).getCodecPrivateData());
+
+            assertEquals(2, tracks.get(1).getNumber());
+            assertEquals(MkvTrackInfoType.AUDIO, tracks.get(1).getType());
+            assertEquals("A_AAC", tracks.get(1).getCodecId());
+            assertEquals(MkvTestFiles.AUDIO_DEFAULT_DURATION_NANOS, tracks.get(1).getDefaultDurationNanos());
+        }
+    }
+
+    @Test
+    public void framesAreReadWithTheirTimecodes() throws Exception {
+        try (final MkvFileDemuxer demuxer = new MkvFileDemuxer(writeTestFile())) {
+            assertFrames(demuxer);
+        }
+    }
+
+    @Test
+    public void framesAreReadAcrossMappedWindows() throws Exception {
+        try (final MkvFileDemuxer demuxer = new MkvFileDemuxer(new MappedEbmlReader(writeTestFile(), 16))) {
+            assertFrames(demuxer);
+        }
+    }
+
+    private void assertFrames(final MkvFileDemuxer demuxer) throws Exception {
+        assertFrame(demuxer.next(), 1, 1000, true, "v0");
+        assertFrame(demuxer.next(), 2, 1005, true, "a0");
+        assertFrame(demuxer.next(), 1, 1033, false, "v1");
+        assertFrame(demuxer.next(), 2, 2000, true, "aa");
+        assertFrame(demuxer.next(), 2, 2020, true, "bbb");
+        assertFrame(demuxer.next(), 1, 2040, true, "v2");
+        assertNull(demuxer.next());
+    }
+
+    private Path writeTestFile() throws Exception {
+        return MkvTestFiles.writeTestFile(folder.newFile("test.mkv").toPath());
+    }
+
+    private static void assertFrame(final MkvFileDemuxer.Frame frame,
+                                    final long trackNumber,
+                                    final long timecodeMillis,
+                                    final boolean keyFrame,
+                                    final String data) {
+        assertEquals(trackNumber, frame.getTrackNumber());
+        assertEquals(timecodeMillis * MILLIS, frame.getTimecodeNanos());
+        assertEquals(keyFrame, frame.isKeyFrame());
+
+        final ByteBuffer buffer = frame.getData();
+        assertTrue(buffer.isDirect());
+        assertFalse(buffer.hasArray());
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertEquals(data, new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
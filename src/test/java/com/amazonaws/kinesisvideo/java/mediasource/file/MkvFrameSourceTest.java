@@ -0,0 +1,94 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import com.amazonaws.kinesisvideo.internal.mediasource.FramePacingScheduler;
+import com.amazonaws.kinesisvideo.internal.mediasource.OnStreamDataAvailable;
+import com.amazonaws.kinesisvideo.producer.FrameFlags;
+import com.amazonaws.kinesisvideo.producer.KinesisVideoFrame;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.amazonaws.kinesisvideo.producer.Time.HUNDREDS_OF_NANOS_IN_A_MILLISECOND;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MkvFrameSourceTest {
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FramePacingScheduler scheduler = new FramePacingScheduler(1);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void fastPacingSendsAllFrames() throws Exception {
+        final List<KinesisVideoFrame> frames = run(MkvFileMediaSourceConfiguration.Pacing.AS_FAST_AS_POSSIBLE);
+
+        assertEquals(6, frames.size());
+        assertFrame(frames.get(0), 0, 1, 1000, true);
+        assertFrame(frames.get(1), 1, 2, 1005, false);
+        assertFrame(frames.get(2), 2, 1, 1033, false);
+        assertFrame(frames.get(3), 3, 2, 2000, false);
+        assertFrame(frames.get(4), 4, 2, 2020, false);
+        assertFrame(frames.get(5), 5, 1, 2040, true);
+        assertEquals(MkvTestFiles.AUDIO_DEFAULT_DURATION_NANOS / 100, frames.get(3).getDuration());
+    }
+
+    @Test
+    public void realTimePacingFollowsTheTimecodes() throws Exception {
+        final long startNanos = System.nanoTime();
+        final List<KinesisVideoFrame> frames = run(MkvFileMediaSourceConfiguration.Pacing.REAL_TIME);
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        assertEquals(6, frames.size());
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis >= 1040);
+    }
+
+    private List<KinesisVideoFrame> run(final MkvFileMediaSourceConfiguration.Pacing pacing) throws Exception {
+        final MkvFileDemuxer demuxer =
+                new MkvFileDemuxer(MkvTestFiles.writeTestFile(folder.newFile("test.mkv").toPath()));
+        final CompletableFuture<Long> endOfFile = new CompletableFuture<Long>();
+        final List<KinesisVideoFrame> frames = Collections.synchronizedList(new ArrayList<KinesisVideoFrame>());
+        final MkvFrameSource frameSource = new MkvFrameSource(demuxer, pacing, scheduler, endOfFile);
+        frameSource.onStreamDataAvailable(new OnStreamDataAvailable() {
+            @Override
+            public void onFrameDataAvailable(final KinesisVideoFrame frame) {
+                frames.add(frame);
+            }
+
+            @Override
+            public void onFragmentMetadataAvailable(final String metadataName, final String metadataValue,
+                                                    final boolean persistent) {
+            }
+        });
+
+        frameSource.start();
+        assertEquals(6L, (long) endOfFile.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        frameSource.stop();
+        return frames;
+    }
+
+    private static void assertFrame(final KinesisVideoFrame frame,
+                                    final int index,
+                                    final long trackId,
+                                    final long timecodeMillis,
+                                    final boolean keyFrame) {
+        assertEquals(index, frame.getIndex());
+        assertEquals(trackId, frame.getTrackId());
+        assertEquals(timecodeMillis * HUNDREDS_OF_NANOS_IN_A_MILLISECOND, frame.getPresentationTs());
+        assertEquals(timecodeMillis * HUNDREDS_OF_NANOS_IN_A_MILLISECOND, frame.getDecodingTs());
+        assertEquals(keyFrame, FrameFlags.isKeyFrame(frame.getFlags()));
+    }
+}
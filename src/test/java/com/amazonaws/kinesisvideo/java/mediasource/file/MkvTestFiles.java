@@ -0,0 +1,72 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_CLUSTER;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_SEGMENT;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.block;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.concat;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ebmlHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.element;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.info;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.uint;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.unknownSizeHeader;
+
+/**
+ * Writes small MKV files for the tests.
+ */
+final class MkvTestFiles {
+    static final byte[] VIDEO_CODEC_PRIVATE_DATA = {1, 2, 3};
+    static final long AUDIO_DEFAULT_DURATION_NANOS = 20000000;
+
+    private MkvTestFiles() {
+    }
+
+    /**
+     * Writes a file with a video track 1 and an audio track 2. The frames are in the file order:
+     * <ul>
+     *     <li>video "v0" key frame at 1000 ms</li>
+     *     <li>audio "a0" at 1005 ms</li>
+     *     <li>video "v1" non-key frame at 1033 ms in a block group</li>
+     *     <li>audio "aa" and "bbb" Xiph-laced at 2000 and 2020 ms in a cluster of unknown size</li>
+     *     <li>video "v2" key frame at 2040 ms</li>
+     * </ul>
+     */
+    static Path writeTestFile(final Path file) throws IOException {
+        final byte[] tracks = element(0x1654AE6B, concat(
+                element(0xAE, concat(
+                        element(0xD7, uint(1, 1)),
+                        element(0x83, uint(1, 1)),
+                        element(0x86, "V_MPEG4/ISO/AVC".getBytes(StandardCharsets.US_ASCII)),
+                        element(0x536E, "video".getBytes(StandardCharsets.US_ASCII)),
+                        element(0x63A2, VIDEO_CODEC_PRIVATE_DATA))),
+                element(0xAE, concat(
+                        element(0xD7, uint(2, 1)),
+                        element(0x83, uint(2, 1)),
+                        element(0x86, "A_AAC".getBytes(StandardCharsets.US_ASCII)),
+                        element(0x23E383, uint(AUDIO_DEFAULT_DURATION_NANOS, 4))))));
+        final byte[] firstCluster = element(0x1F43B675, concat(
+                element(0xE7, uint(1000, 2)),
+                element(0xA3, block(1, 0, 0x80, "v0".getBytes(StandardCharsets.US_ASCII))),
+                element(0xA3, block(2, 5, 0x80, "a0".getBytes(StandardCharsets.US_ASCII))),
+                element(0xA0, concat(
+                        element(0xA1, block(1, 33, 0x00, "v1".getBytes(StandardCharsets.US_ASCII))),
+                        element(0xFB, uint(33, 1))))));
+        final byte[] cues = element(0x1C53BB6B, new byte[] {0, 0, 0});
+        final byte[] secondCluster = concat(
+                unknownSizeHeader(ID_CLUSTER),
+                element(0xE7, uint(2000, 2)),
+                // Xiph lacing of 2 frames, the first one of 2 bytes
+                element(0xA3, block(2, 0, 0x80 | 0x02, concat(new byte[] {1, 2},
+                        "aabbb".getBytes(StandardCharsets.US_ASCII)))),
+                element(0xA3, block(1, 40, 0x80, "v2".getBytes(StandardCharsets.US_ASCII))));
+        final byte[] segment = concat(unknownSizeHeader(ID_SEGMENT), info(), tracks, firstCluster, cues,
+                secondCluster);
+
+        Files.write(file, concat(ebmlHeader("matroska"), segment));
+        return file;
+    }
+}
@@ -0,0 +1,91 @@
+package com.amazonaws.kinesisvideo.java.mediasource.file;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadAheadFileReaderTest {
+    private static final long TIMEOUT_IN_MILLIS = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesAreReadInOrderAndLooped() throws Exception {
+        final List<Path> files = createFiles(3);
+        final ReadAheadFileReader reader = new ReadAheadFileReader(files, 2, true);
+        reader.start();
+        try {
+            for (int i = 0; i < 7; i++) {
+                final ReadAheadFileReader.Frame frame = reader.next(TIMEOUT_IN_MILLIS);
+                assertEquals(i % files.size(), frame.getIndex());
+                assertTrue(frame.getData().isDirect());
+                assertEquals("frame-" + frame.getIndex(), toString(frame.getData()));
+            }
+        } finally {
+            reader.stop();
+        }
+    }
+
+    @Test
+    public void filesAreMappedAgainOnEveryPass() throws Exception {
+        final List<Path> files = createFiles(3);
+        final ReadAheadFileReader reader = new ReadAheadFileReader(files, 1, true);
+        reader.start();
+        try {
+            assertEquals("frame-0", toString(reader.next(TIMEOUT_IN_MILLIS).getData()));
+
+            // The reader is at most mapping the last file, the first one of the next pass is mapped after the change
+            Files.write(files.get(0), "frame-0-changed".getBytes("UTF-8"));
+            assertEquals("frame-1", toString(reader.next(TIMEOUT_IN_MILLIS).getData()));
+            assertEquals("frame-2", toString(reader.next(TIMEOUT_IN_MILLIS).getData()));
+            assertEquals("frame-0-changed", toString(reader.next(TIMEOUT_IN_MILLIS).getData()));
+        } finally {
+            reader.stop();
+        }
+    }
+
+    @Test
+    public void unreadableFileIsSkipped() throws Exception {
+        final List<Path> files = createFiles(3);
+        Files.delete(files.get(1));
+        final ReadAheadFileReader reader = new ReadAheadFileReader(files, 4, false);
+        reader.start();
+        try {
+            assertEquals(0, reader.next(TIMEOUT_IN_MILLIS).getIndex());
+            assertEquals(2, reader.next(TIMEOUT_IN_MILLIS).getIndex());
+            assertNull(reader.next(100));
+            assertEquals(1, reader.getUnderrunCount());
+        } finally {
+            reader.stop();
+        }
+    }
+
+    private List<Path> createFiles(final int count) throws Exception {
+        final List<Path> files = new ArrayList<Path>();
+        for (int i = 0; i < count; i++) {
+            final File file = folder.newFile("frame-" + i);
+            Files.write(file.toPath(), ("frame-" + i).getBytes("UTF-8"));
+            files.add(file.toPath());
+        }
+
+        return files;
+    }
+
+    private static String toString(final ByteBuffer data) throws Exception {
+        final byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,184 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.BasicSessionCredentials;
+import com.amazonaws.services.kinesisvideo.AmazonKinesisVideo;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AmazonKinesisVideoClientCacheTest {
+    private static final String REGION = "us-west-2";
+    private static final String ENDPOINT = "https://kinesisvideo.us-west-2.amazonaws.com";
+    private static final int TIMEOUT = 5000;
+
+    private int created;
+    private AmazonKinesisVideoClientCache cache;
+
+    @Before
+    public void setUp() {
+        created = 0;
+        cache = new AmazonKinesisVideoClientCache(LogManager.getLogger(AmazonKinesisVideoClientCacheTest.class),
+                new AmazonKinesisVideoClientCache.ClientFactory() {
+                    @Nonnull
+                    @Override
+                    public AmazonKinesisVideo create(@Nonnull final AmazonKinesisVideoClientCache.Key key) {
+                        created++;
+                        return mock(AmazonKinesisVideo.class);
+                    }
+                }, 2, AmazonKinesisVideoClientCache.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void sameCredentialsShareClient() {
+        final AmazonKinesisVideo first;
+        try (final AmazonKinesisVideoClientCache.Lease lease = cache.acquire(key("AK", "SK", null, TIMEOUT))) {
+            first = lease.getClient();
+        }
+
+        try (final AmazonKinesisVideoClientCache.Lease lease = cache.acquire(key("AK", "SK", null, TIMEOUT))) {
+            assertSame(first, lease.getClient());
+        }
+
+        assertEquals(1, created);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0);
+    }
+
+    @Test
+    public void rotatedCredentialsAndTimeoutsGetNewClients() {
+        final AmazonKinesisVideoClientCache.Lease first = cache.acquire(key("AK", "SK", "TOKEN1", TIMEOUT));
+        final AmazonKinesisVideoClientCache.Lease second = cache.acquire(key("AK", "SK", "TOKEN2", TIMEOUT));
+        final AmazonKinesisVideoClientCache.Lease third = cache.acquire(key("AK", "SK", "TOKEN2", TIMEOUT + 1));
+
+        assertNotSame(first.getClient(), second.getClient());
+        assertNotSame(second.getClient(), third.getClient());
+        assertEquals(3, created);
+
+        first.close();
+        second.close();
+        third.close();
+    }
+
+    @Test
+    public void evictedClientIsShutDownOnlyAfterRelease() {
+        final AmazonKinesisVideoClientCache.Lease leased = cache.acquire(key("AK1", "SK", null, TIMEOUT));
+        cache.acquire(key("AK2", "SK", null, TIMEOUT)).close();
+        cache.acquire(key("AK3", "SK", null, TIMEOUT)).close();
+
+        // The first client is the least recently used one and got evicted while still leased
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        verify(leased.getClient(), never()).shutdown();
+
+        leased.close();
+        verify(leased.getClient()).shutdown();
+    }
+
+    @Test
+    public void clientIsCreatedOnceOutsideOfTheLock() throws Exception {
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger slowCreated = new AtomicInteger();
+        final AmazonKinesisVideoClientCache slowCache = new AmazonKinesisVideoClientCache(
+                LogManager.getLogger(AmazonKinesisVideoClientCacheTest.class),
+                new AmazonKinesisVideoClientCache.ClientFactory() {
+                    @Nonnull
+                    @Override
+                    public AmazonKinesisVideo create(@Nonnull final AmazonKinesisVideoClientCache.Key key) {
+                        if (key.getCredentials().getAWSAccessKeyId().equals("SLOW")) {
+                            slowCreated.incrementAndGet();
+                            creating.countDown();
+                            try {
+                                release.await();
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+
+                        return mock(AmazonKinesisVideo.class);
+                    }
+                });
+        final ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            final List<Future<AmazonKinesisVideo>> acquires = new ArrayList<Future<AmazonKinesisVideo>>();
+            for (int i = 0; i < 2; i++) {
+                acquires.add(threads.submit(new Callable<AmazonKinesisVideo>() {
+                    @Override
+                    public AmazonKinesisVideo call() {
+                        try (final AmazonKinesisVideoClientCache.Lease lease =
+                                     slowCache.acquire(key("SLOW", "SK", null, TIMEOUT))) {
+                            return lease.getClient();
+                        }
+                    }
+                }));
+            }
+
+            assertTrue(creating.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+            // Another key is served while the slow client is being created
+            slowCache.acquire(key("AK", "SK", null, TIMEOUT)).close();
+
+            release.countDown();
+            assertSame(acquires.get(0).get(TIMEOUT, TimeUnit.MILLISECONDS),
+                    acquires.get(1).get(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertEquals(1, slowCreated.get());
+            assertEquals(2, slowCache.size());
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closedCacheShutsDownItsClients() {
+        final AmazonKinesisVideoClientCache.Lease idle = cache.acquire(key("AK1", "SK", null, TIMEOUT));
+        idle.close();
+        final AmazonKinesisVideoClientCache.Lease leased = cache.acquire(key("AK2", "SK", null, TIMEOUT));
+
+        cache.close();
+        verify(idle.getClient()).shutdown();
+        verify(leased.getClient(), never()).shutdown();
+        leased.close();
+        verify(leased.getClient()).shutdown();
+        assertEquals(0, cache.size());
+
+        try {
+            cache.acquire(key("AK1", "SK", null, TIMEOUT));
+            fail("Expected the closed cache to fail the acquire");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static AmazonKinesisVideoClientCache.Key key(final String accessKey,
+                                                         final String secretKey,
+                                                         final String sessionToken,
+                                                         final int timeout) {
+        return new AmazonKinesisVideoClientCache.Key(sessionToken == null
+                ? new BasicAWSCredentials(accessKey, secretKey)
+                : new BasicSessionCredentials(accessKey, secretKey, sessionToken),
+                REGION, ENDPOINT, timeout);
+    }
+}
@@ -0,0 +1,185 @@
+package com.amazonaws.kinesisvideo.java.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.kinesisvideo.auth.KinesisVideoCredentialsProvider;
+import com.amazonaws.kinesisvideo.client.KinesisVideoClientConfiguration;
+import com.amazonaws.kinesisvideo.common.exception.KinesisVideoException;
+import com.amazonaws.kinesisvideo.internal.producer.client.KinesisVideoServiceClient;
+import com.amazonaws.services.kinesisvideo.model.ResourceNotFoundException;
+import org.apache.logging.log4j.LogManager;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResilientKinesisVideoServiceClientTest {
+    private static final String STREAM_NAME = "stream";
+    private static final String API_NAME = "PUT_MEDIA";
+    private static final long TIMEOUT_IN_MILLIS = 10000;
+
+    private final KinesisVideoServiceClient delegate = mock(KinesisVideoServiceClient.class);
+
+    @Test
+    public void transientFailureIsRetried() throws Exception {
+        final ResilientKinesisVideoServiceClient client = createClient(KinesisVideoClientConfiguration.builder()
+                .withServiceCallMaxRetries(2)
+                .build());
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenThrow(serviceError(503))
+                .thenReturn("endpoint");
+
+        assertEquals("endpoint", client.getDataEndpoint(STREAM_NAME, API_NAME, TIMEOUT_IN_MILLIS, null));
+        assertEquals(1, client.getRetryCount());
+        assertEquals(2, client.getCallCount());
+    }
+
+    @Test
+    public void retriesAreBoundedByMaxRetries() throws Exception {
+        final ResilientKinesisVideoServiceClient client = createClient(KinesisVideoClientConfiguration.builder()
+                .withServiceCallMaxRetries(1)
+                .withCircuitBreakerFailureThreshold(0)
+                .build());
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenThrow(serviceError(500));
+
+        try {
+            client.getDataEndpoint(STREAM_NAME, API_NAME, TIMEOUT_IN_MILLIS, null);
+            fail("Expected the call to fail");
+        } catch (final KinesisVideoException e) {
+            // expected
+        }
+
+        assertEquals(1, client.getRetryCount());
+        verify(delegate, times(2)).getDataEndpoint(anyString(), anyString(), anyLong(),
+                nullable(KinesisVideoCredentialsProvider.class));
+    }
+
+    @Test
+    public void nonTransientFailureIsNotRetried() throws Exception {
+        final ResilientKinesisVideoServiceClient client = createClient(KinesisVideoClientConfiguration.builder()
+                .build());
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenThrow(new KinesisVideoException(new ResourceNotFoundException("not found")));
+
+        try {
+            client.getDataEndpoint(STREAM_NAME, API_NAME, TIMEOUT_IN_MILLIS, null);
+            fail("Expected the call to fail");
+        } catch (final KinesisVideoException e) {
+            assertTrue(e.getCause() instanceof ResourceNotFoundException);
+        }
+
+        assertEquals(0, client.getRetryCount());
+        assertFalse(ResilientKinesisVideoServiceClient.isTransient(serviceError(404)));
+    }
+
+    @Test
+    public void openCircuitShortCircuitsCalls() throws Exception {
+        final KinesisVideoClientConfiguration configuration = KinesisVideoClientConfiguration.builder()
+                .withServiceCallMaxRetries(0)
+                .withCircuitBreakerFailureThreshold(2)
+                .withCircuitBreakerOpenDurationInMillis(60 * 1000)
+                .build();
+        final ResilientKinesisVideoServiceClient client = createClient(configuration);
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenThrow(serviceError(503));
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                client.getDataEndpoint(STREAM_NAME, API_NAME, TIMEOUT_IN_MILLIS, null);
+                fail("Expected the call to fail");
+            } catch (final KinesisVideoException e) {
+                // Short-circuited calls are reported as retriable
+                assertEquals(i >= 2, e instanceof ServiceUnavailableException);
+            }
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreakerState("GetDataEndpoint", STREAM_NAME));
+        assertEquals(2, client.getShortCircuitCount());
+        verify(delegate, times(2)).getDataEndpoint(anyString(), anyString(), anyLong(),
+                nullable(KinesisVideoCredentialsProvider.class));
+
+        // The breaker of another stream is still closed
+        when(delegate.getDataEndpoint(eq("other"), anyString(), anyLong(),
+                nullable(KinesisVideoCredentialsProvider.class)))
+                .thenReturn("endpoint");
+        assertEquals("endpoint", client.getDataEndpoint("other", API_NAME, TIMEOUT_IN_MILLIS, null));
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreakerState("GetDataEndpoint", "other"));
+    }
+
+    @Test
+    public void retryIsScheduledWithoutHoldingTheCallingThread() throws Exception {
+        final ResilientKinesisVideoServiceClient client = createClient(KinesisVideoClientConfiguration.builder()
+                .withServiceCallMaxRetries(2)
+                .build());
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenThrow(serviceError(503))
+                .thenReturn("endpoint");
+
+        // The first attempt failed on this thread and the retry waits for its backoff on the scheduler
+        final CompletableFuture<String> endpoint = client.getDataEndpointAsync(STREAM_NAME, API_NAME,
+                TIMEOUT_IN_MILLIS, null);
+        assertFalse(endpoint.isDone());
+        assertEquals("endpoint", endpoint.get(TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, client.getRetryCount());
+    }
+
+    @Test
+    public void callsOverTheRateAreRejectedAfterTheirTimeout() throws Exception {
+        final ResilientKinesisVideoServiceClient client = createClient(KinesisVideoClientConfiguration.builder()
+                .withServiceCallRateLimitPerSecond(1)
+                .build());
+        when(delegate.getDataEndpoint(anyString(), anyString(), anyLong(), nullable(KinesisVideoCredentialsProvider.class)))
+                .thenReturn("endpoint");
+
+        client.getDataEndpoint(STREAM_NAME, API_NAME, TIMEOUT_IN_MILLIS, null);
+        try {
+            client.getDataEndpoint(STREAM_NAME, API_NAME, 100, null);
+            fail("Expected the call to be rejected");
+        } catch (final ServiceUnavailableException e) {
+            // expected
+        }
+
+        assertEquals(1, client.getAdmissionRejectedCount());
+    }
+
+    @Test
+    public void circuitBreakerClosesAfterSuccessfulTrial() throws Exception {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+        assertTrue(circuitBreaker.allowCall());
+        circuitBreaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // Open duration elapsed - only one trial is let through
+        assertTrue(circuitBreaker.allowCall());
+        assertFalse(circuitBreaker.allowCall());
+        circuitBreaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private ResilientKinesisVideoServiceClient createClient(final KinesisVideoClientConfiguration configuration)
+            throws KinesisVideoException {
+        final ResilientKinesisVideoServiceClient client = new ResilientKinesisVideoServiceClient(
+                LogManager.getLogger(ResilientKinesisVideoServiceClientTest.class), delegate);
+        client.initialize(configuration);
+        return client;
+    }
+
+    private static KinesisVideoException serviceError(final int statusCode) {
+        final AmazonServiceException exception = new AmazonServiceException("Service error");
+        exception.setStatusCode(statusCode);
+        return new KinesisVideoException(exception);
+    }
+}
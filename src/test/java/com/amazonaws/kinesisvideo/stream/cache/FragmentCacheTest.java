@@ -0,0 +1,235 @@
+package com.amazonaws.kinesisvideo.stream.cache;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FragmentCacheTest {
+    private static final int PAGE_SIZE = 1024;
+    private static final String STREAM = "stream";
+
+    @Test
+    public void filledFragmentIsReadFromTheArena() throws Exception {
+        final FragmentCache cache = new FragmentCache(8 * PAGE_SIZE, PAGE_SIZE);
+        final FragmentCache.Lookup miss = cache.lookup(STREAM, "1");
+        assertTrue(miss.isFiller());
+        miss.fill(ByteBuffer.wrap(data(1, 2500)));
+        try (final FragmentCache.CachedFragment fragment = miss.getFragment().get()) {
+            assertTrue(fragment.isCached());
+            assertArrayEquals(data(1, 2500), read(fragment));
+        }
+
+        final FragmentCache.Lookup hit = cache.lookup(STREAM, "1");
+        assertFalse(hit.isFiller());
+        try (final FragmentCache.CachedFragment fragment = hit.getFragment().get()) {
+            assertArrayEquals(data(1, 2500), read(fragment));
+        }
+
+        assertTrue(cache.lookup("other", "1").isFiller());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(2500, cache.getUsedBytes());
+    }
+
+    @Test
+    public void concurrentMissesShareOneFill() throws Exception {
+        final FragmentCache cache = new FragmentCache(8 * PAGE_SIZE, PAGE_SIZE);
+        final int callers = 8;
+        final CountDownLatch looked = new CountDownLatch(callers);
+        final ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            final List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        final FragmentCache.Lookup lookup = cache.lookup(STREAM, "7");
+                        looked.countDown();
+                        if (lookup.isFiller()) {
+                            // Leaves the other callers the time to join the fill
+                            assertTrue(looked.await(10, TimeUnit.SECONDS));
+                            lookup.fill(ByteBuffer.wrap(data(7, 3000)));
+                        }
+
+                        try (final FragmentCache.CachedFragment fragment = lookup.getFragment().get()) {
+                            return read(fragment);
+                        }
+                    }
+                }));
+            }
+
+            for (final Future<byte[]> result : results) {
+                assertArrayEquals(data(7, 3000), result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(callers, cache.getMissCount());
+        assertEquals(callers - 1, cache.getJoinedFillCount());
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    @Test
+    public void abandonedFillFailsTheJoinedCallers() throws Exception {
+        final FragmentCache cache = new FragmentCache(8 * PAGE_SIZE, PAGE_SIZE);
+        final FragmentCache.Lookup filler = cache.lookup(STREAM, "1");
+        final FragmentCache.Lookup joined = cache.lookup(STREAM, "1");
+        filler.abandon(new IOException("Request failed"));
+        try {
+            joined.getFragment().get();
+            fail("Expected an ExecutionException");
+        } catch (final ExecutionException e) {
+            assertEquals("Request failed", e.getCause().getMessage());
+        }
+
+        // The next miss fills it again
+        assertTrue(cache.lookup(STREAM, "1").isFiller());
+    }
+
+    @Test
+    public void responseCompletingAfterTheFillWasAbandonedIsIgnored() throws Exception {
+        final FragmentCache cache = new FragmentCache(8 * PAGE_SIZE, PAGE_SIZE);
+        final FragmentCache.Lookup filler = cache.lookup(STREAM, "1");
+        filler.abandon(new IOException("Read cancelled"));
+
+        assertFalse(filler.fill(ByteBuffer.wrap(new byte[PAGE_SIZE])));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void frequentFragmentEvictsTheLeastRecentlyUsed() throws Exception {
+        final FragmentCache cache = new FragmentCache(4 * PAGE_SIZE, PAGE_SIZE);
+        fill(cache, "a");
+        fill(cache, "b");
+        close(cache.lookup(STREAM, "a"));
+
+        // Asked for more often than b, the least recently used
+        for (int i = 0; i < 3; i++) {
+            cache.lookup(STREAM, "c").abandon(new IOException("Request failed"));
+        }
+
+        fill(cache, "c");
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.lookup(STREAM, "b").isFiller());
+        assertFalse(cache.lookup(STREAM, "a").isFiller());
+        assertFalse(cache.lookup(STREAM, "c").isFiller());
+    }
+
+    @Test
+    public void fragmentReadOnceIsNotAdmitted() throws Exception {
+        final FragmentCache cache = new FragmentCache(4 * PAGE_SIZE, PAGE_SIZE);
+        fill(cache, "a");
+        fill(cache, "b");
+        close(cache.lookup(STREAM, "a"));
+        close(cache.lookup(STREAM, "b"));
+
+        final FragmentCache.Lookup lookup = cache.lookup(STREAM, "c");
+        lookup.fill(ByteBuffer.wrap(data(3, 2 * PAGE_SIZE)));
+        try (final FragmentCache.CachedFragment fragment = lookup.getFragment().get()) {
+            // Still handed to the filler, from the heap
+            assertFalse(fragment.isCached());
+            assertArrayEquals(data(3, 2 * PAGE_SIZE), read(fragment));
+        }
+
+        assertEquals(1, cache.getRejectionCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(2, cache.getEntryCount());
+    }
+
+    @Test
+    public void pinnedFragmentIsNotEvicted() throws Exception {
+        final FragmentCache cache = new FragmentCache(6 * PAGE_SIZE, PAGE_SIZE);
+        fill(cache, "a");
+        fill(cache, "b");
+        fill(cache, "c");
+        final FragmentCache.CachedFragment pinned = cache.lookup(STREAM, "a").getFragment().get();
+        close(cache.lookup(STREAM, "b"));
+        close(cache.lookup(STREAM, "c"));
+
+        // The pinned a is the least recently used, only b has to make room
+        for (int i = 0; i < 3; i++) {
+            cache.lookup(STREAM, "d").abandon(new IOException("Request failed"));
+        }
+
+        fill(cache, "d");
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(0, cache.getRejectionCount());
+        pinned.close();
+        assertFalse(cache.lookup(STREAM, "a").isFiller());
+        assertTrue(cache.lookup(STREAM, "b").isFiller());
+        assertFalse(cache.lookup(STREAM, "c").isFiller());
+    }
+
+    @Test
+    public void evictedFragmentKeepsItsPagesWhilePinned() throws Exception {
+        final FragmentCache cache = new FragmentCache(2 * PAGE_SIZE, PAGE_SIZE);
+        final FragmentCache.Lookup lookup = cache.lookup(STREAM, "a");
+        lookup.fill(ByteBuffer.wrap(data(1, 2 * PAGE_SIZE)));
+        final FragmentCache.CachedFragment pinned = lookup.getFragment().get();
+        cache.invalidateAll();
+        assertEquals(0, cache.getUsedBytes());
+
+        // No page is free until the pinned fragment is closed
+        final FragmentCache.Lookup other = cache.lookup(STREAM, "b");
+        other.fill(ByteBuffer.wrap(data(2, PAGE_SIZE)));
+        close(other);
+        assertEquals(1, cache.getRejectionCount());
+        assertArrayEquals(data(1, 2 * PAGE_SIZE), read(pinned));
+        pinned.close();
+
+        final FragmentCache.Lookup refill = cache.lookup(STREAM, "b");
+        refill.fill(ByteBuffer.wrap(data(2, PAGE_SIZE)));
+        close(refill);
+        assertEquals(1, cache.getEntryCount());
+    }
+
+    private static void fill(final FragmentCache cache, final String fragmentNumber) throws Exception {
+        final FragmentCache.Lookup lookup = cache.lookup(STREAM, fragmentNumber);
+        assertTrue(lookup.isFiller());
+        lookup.fill(ByteBuffer.wrap(data(fragmentNumber.charAt(0), 2 * PAGE_SIZE)));
+        close(lookup);
+    }
+
+    private static void close(final FragmentCache.Lookup lookup) throws Exception {
+        lookup.getFragment().get().close();
+    }
+
+    private static byte[] read(final FragmentCache.CachedFragment fragment) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(fragment.getSize());
+        try (final ReadableByteChannel channel = fragment.openChannel()) {
+            while (channel.read(buffer) >= 0 && buffer.hasRemaining()) {
+                // Reads a page at a time
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private static byte[] data(final int seed, final int size) {
+        final byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+
+        return data;
+    }
+}
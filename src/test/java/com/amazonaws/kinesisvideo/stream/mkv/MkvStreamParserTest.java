@@ -0,0 +1,300 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_CLUSTER;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_SEGMENT;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.block;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.clusterHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.concat;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ebmlHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.element;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.info;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.simpleBlock;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.tags;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.unknownSizeHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.videoTracks;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MkvStreamParserTest {
+
+    /**
+     * Records the events as strings, and the frame data
+     */
+    private static final class RecordingVisitor implements MkvStreamVisitor {
+        private final List<String> events = new ArrayList<String>();
+        private final List<byte[]> frames = new ArrayList<byte[]>();
+        private final List<MkvFragment> endedFragments = new ArrayList<MkvFragment>();
+
+        @Override
+        public void onTracks(@Nonnull final List<MkvTrack> tracks) {
+            for (final MkvTrack track : tracks) {
+                events.add("track " + track.getNumber() + " " + track.getType() + " " + track.getCodecId());
+            }
+        }
+
+        @Override
+        public void onFragmentStart(@Nonnull final MkvFragment fragment) {
+            events.add("start " + fragment.getFragmentNumber() + " " + fragment.getTimecodeNanos());
+        }
+
+        @Override
+        public void onFrame(@Nonnull final MkvFragment fragment, @Nonnull final MkvFrame frame) {
+            assertTrue(frame.getData().isDirect());
+            events.add("frame " + frame.getTrackNumber() + " " + frame.getTimecodeNanos() + " " + frame.isKeyFrame());
+            frames.add(frame.copyData());
+        }
+
+        @Override
+        public void onTag(@Nonnull final String name, @Nonnull final String value) {
+            events.add("tag " + name + "=" + value);
+        }
+
+        @Override
+        public void onFragmentEnd(@Nonnull final MkvFragment fragment) {
+            events.add("end " + fragment.getFrameCount() + " " + fragment.getMillisBehindNow());
+            endedFragments.add(fragment);
+        }
+    }
+
+    @Test
+    public void fragmentsAreReportedWithTheirFramesAndTags() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(fragment("1001", 2000, 250, payload(10, 1), payload(20, 2)));
+        stream.write(fragment("1002", 4000, 0, payload(30, 3), payload(40, 4)));
+
+        final RecordingVisitor visitor = new RecordingVisitor();
+        // Chunks of a few bytes split every element header and frame
+        try (final MkvStreamParser parser = new MkvStreamParser(new ChunkedInputStream(stream.toByteArray(), 7),
+                visitor)) {
+            parser.parse();
+            assertEquals(2, parser.getFragmentCount());
+            assertEquals(4, parser.getFrameCount());
+            assertEquals(stream.size(), parser.getOffset());
+        }
+
+        assertEquals(Arrays.asList(
+                "track 1 VIDEO V_MPEG4/ISO/AVC",
+                "tag AWS_KINESISVIDEO_FRAGMENT_NUMBER=1001",
+                "tag AWS_KINESISVIDEO_SERVER_TIMESTAMP=1600000002.000",
+                "start 1001 2000000000",
+                "frame 1 2000000000 true",
+                "frame 1 2033000000 false",
+                "tag AWS_KINESISVIDEO_MILLIS_BEHIND_NOW=250",
+                "end 2 250",
+                "track 1 VIDEO V_MPEG4/ISO/AVC",
+                "tag AWS_KINESISVIDEO_FRAGMENT_NUMBER=1002",
+                "tag AWS_KINESISVIDEO_SERVER_TIMESTAMP=1600000004.000",
+                "start 1002 4000000000",
+                "frame 1 4000000000 true",
+                "frame 1 4033000000 false",
+                "tag AWS_KINESISVIDEO_MILLIS_BEHIND_NOW=0",
+                "end 2 0"), visitor.events);
+        assertArrayEquals(payload(10, 1), visitor.frames.get(0));
+        assertArrayEquals(payload(20, 2), visitor.frames.get(1));
+        assertArrayEquals(payload(40, 4), visitor.frames.get(3));
+        assertEquals("1600000004.000",
+                visitor.endedFragments.get(1).getTag(MkvFragment.TAG_SERVER_TIMESTAMP));
+    }
+
+    @Test
+    public void errorTagsOutsideOfAFragmentAreReported() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(fragment("1001", 0, 0, payload(10, 1), payload(10, 2)));
+        stream.write(ebmlHeader("matroska"));
+        stream.write(unknownSizeHeader(ID_SEGMENT));
+        stream.write(tags("AWS_KINESISVIDEO_ERROR_CODE", "4000", "AWS_KINESISVIDEO_ERROR_ID", "7"));
+
+        final RecordingVisitor visitor = new RecordingVisitor();
+        try (final MkvStreamParser parser = new MkvStreamParser(new ByteArrayInputStream(stream.toByteArray()),
+                visitor)) {
+            parser.parse();
+        }
+
+        assertEquals(1, visitor.endedFragments.size());
+        assertEquals(Arrays.asList("tag AWS_KINESISVIDEO_ERROR_CODE=4000", "tag AWS_KINESISVIDEO_ERROR_ID=7"),
+                visitor.events.subList(visitor.events.size() - 2, visitor.events.size()));
+    }
+
+    @Test
+    public void blockGroupsAndFramesLargerThanTheBufferAreRead() throws IOException {
+        final byte[] large = payload(MkvBufferPool.MIN_BUFFER_SIZE * 3, 5);
+        final ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+        cluster.write(unknownSizeHeader(ID_CLUSTER));
+        cluster.write(element(0xE7, new byte[] {0x03, (byte) 0xE8}));
+        cluster.write(element(0xA0, concat(element(0xA1, block(1, 0, 0x00, large)),
+                element(0x9B, new byte[] {0x21}))));
+        cluster.write(element(0xA0, concat(element(0xA1, block(1, 33, 0x00, payload(10, 6))),
+                element(0xFB, new byte[] {(byte) 0xDF}))));
+
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(ebmlHeader("matroska"));
+        stream.write(unknownSizeHeader(ID_SEGMENT));
+        stream.write(cluster.toByteArray());
+
+        final MkvBufferPool pool = new MkvBufferPool(MkvBufferPool.DEFAULT_MAX_FREE_BUFFERS_PER_SIZE);
+        final List<MkvFrame> frames = new ArrayList<MkvFrame>();
+        final List<byte[]> data = new ArrayList<byte[]>();
+        try (final MkvStreamParser parser = new MkvStreamParser(new ChunkedInputStream(stream.toByteArray(), 8192),
+                new MkvStreamVisitor() {
+                    @Override
+                    public void onFrame(@Nonnull final MkvFragment fragment, @Nonnull final MkvFrame frame) {
+                        assertEquals(frames.isEmpty(), frame.isKeyFrame());
+                        assertEquals(frames.isEmpty() ? 33000000 : 0, frame.getDurationNanos());
+                        frames.add(frame);
+                        data.add(frame.copyData());
+                    }
+                }, pool)) {
+            parser.parse();
+        }
+
+        assertEquals(2, frames.size());
+        assertArrayEquals(large, data.get(0));
+        assertArrayEquals(payload(10, 6), data.get(1));
+        // The initial buffer and the grown one
+        assertEquals(2, pool.getAllocatedBufferCount());
+    }
+
+    @Test
+    public void endlessStreamIsParsedInConstantMemory() throws IOException {
+        final byte[] fragment = fragment("1", 0, 0, payload(30000, 1), payload(20000, 2));
+        final int fragmentCount = 2000;
+        final MkvBufferPool pool = new MkvBufferPool(MkvBufferPool.DEFAULT_MAX_FREE_BUFFERS_PER_SIZE);
+        final long[] frameBytes = new long[1];
+        try (final MkvStreamParser parser = new MkvStreamParser(new RepeatingInputStream(fragment, fragmentCount),
+                new MkvStreamVisitor() {
+                    @Override
+                    public void onFrame(@Nonnull final MkvFragment fragment, @Nonnull final MkvFrame frame) {
+                        frameBytes[0] += frame.getDataSize();
+                    }
+                }, pool)) {
+            parser.parse();
+            assertEquals(fragmentCount, parser.getFragmentCount());
+            assertEquals((long) fragment.length * fragmentCount, parser.getOffset());
+        }
+
+        assertEquals(50000L * fragmentCount, frameBytes[0]);
+        assertEquals(1, pool.getAllocatedBufferCount());
+
+        // The buffer went back to the pool
+        pool.release(pool.acquire(MkvBufferPool.MIN_BUFFER_SIZE));
+        assertEquals(1, pool.getAllocatedBufferCount());
+    }
+
+    @Test
+    public void streamEndingWithinAnElementFails() throws IOException {
+        final byte[] fragment = fragment("1", 0, 0, payload(100, 1), payload(100, 2));
+        final RecordingVisitor visitor = new RecordingVisitor();
+        try (final MkvStreamParser parser = new MkvStreamParser(
+                new ByteArrayInputStream(Arrays.copyOf(fragment, fragment.length - 150)), visitor)) {
+            parser.parse();
+            fail("Expected an EOFException");
+        } catch (final EOFException e) {
+            // Expected
+        }
+
+        assertEquals("frame 1 0 true", visitor.events.get(visitor.events.size() - 1));
+    }
+
+    /**
+     * Returns a fragment as sent by GetMedia, with a key frame and a frame 33ms later
+     */
+    private static byte[] fragment(final String fragmentNumber, final long timecodeMillis,
+                                   final long millisBehindNow, final byte[] keyFrame, final byte[] frame) {
+        return concat(ebmlHeader("matroska"), unknownSizeHeader(ID_SEGMENT), info(),
+                videoTracks(new byte[] {0x01, 0x64, 0x00, 0x28}),
+                tags(MkvFragment.TAG_FRAGMENT_NUMBER, fragmentNumber,
+                        MkvFragment.TAG_SERVER_TIMESTAMP, (1600000000 + timecodeMillis / 1000) + ".000"),
+                clusterHeader(timecodeMillis), simpleBlock(0, 0x80, keyFrame), simpleBlock(33, 0x00, frame),
+                tags(MkvFragment.TAG_MILLIS_BEHIND_NOW, Long.toString(millisBehindNow)));
+    }
+
+    private static byte[] payload(final int size, final int seed) {
+        final byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) (seed * 31 + i);
+        }
+
+        return payload;
+    }
+
+    /**
+     * Returns the data in chunks of at most the size, like a network stream
+     */
+    private static final class ChunkedInputStream extends InputStream {
+        private final byte[] data;
+        private final int chunkSize;
+        private int position;
+
+        private ChunkedInputStream(final byte[] data, final int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (position == data.length) {
+                return -1;
+            }
+
+            final int read = Math.min(Math.min(length, chunkSize), data.length - position);
+            System.arraycopy(data, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+    }
+
+    /**
+     * Returns the data the number of times without holding more than one copy
+     */
+    private static final class RepeatingInputStream extends InputStream {
+        private final byte[] data;
+        private int remainingCount;
+        private int position;
+
+        private RepeatingInputStream(final byte[] data, final int count) {
+            this.data = data;
+            this.remainingCount = count;
+        }
+
+        @Override
+        public int read() {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (position == data.length) {
+                if (--remainingCount <= 0) {
+                    return -1;
+                }
+
+                position = 0;
+            }
+
+            final int read = Math.min(length, data.length - position);
+            System.arraycopy(data, position, buffer, offset, read);
+            position += read;
+            return read;
+        }
+    }
+}
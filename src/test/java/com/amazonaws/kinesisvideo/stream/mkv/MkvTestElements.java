@@ -0,0 +1,158 @@
+package com.amazonaws.kinesisvideo.stream.mkv;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the EBML elements of the MKV data of the tests.
+ */
+public final class MkvTestElements {
+    /**
+     * Size of an element of unknown size, e.g. of a segment or a cluster written as it is streamed
+     */
+    public static final byte[] UNKNOWN_SIZE = {0x01, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF};
+
+    public static final long ID_SEGMENT = 0x18538067;
+    public static final long ID_CLUSTER = 0x1F43B675;
+
+    private MkvTestElements() {
+    }
+
+    /**
+     * Returns the element with its size on 8 bytes
+     */
+    public static byte[] element(final long id, final byte[] payload) {
+        final byte[] size = uint(payload.length, 8);
+        size[0] = 0x01;
+        return concat(id(id), size, payload);
+    }
+
+    /**
+     * Returns the element id without its leading zero bytes
+     */
+    public static byte[] id(final long id) {
+        int length = 1;
+        while (length < 4 && (id >>> (8 * length)) != 0) {
+            length++;
+        }
+
+        return uint(id, length);
+    }
+
+    /**
+     * Returns the big endian unsigned integer on the number of bytes
+     */
+    public static byte[] uint(final long value, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (value >>> (8 * (length - 1 - i)));
+        }
+
+        return bytes;
+    }
+
+    public static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the start of an element of unknown size, e.g. of a segment or a cluster written as it is streamed
+     */
+    public static byte[] unknownSizeHeader(final long id) {
+        return concat(id(id), UNKNOWN_SIZE);
+    }
+
+    /**
+     * Returns the EBML header of the document type
+     */
+    public static byte[] ebmlHeader(final String docType) {
+        return element(0x1A45DFA3, element(0x4282, docType.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Returns the segment info with a timecode scale of a millisecond
+     */
+    public static byte[] info() {
+        return element(0x1549A966, element(0x2AD7B1, uint(1000000, 3)));
+    }
+
+    /**
+     * Returns the tracks with an H.264 video track 1
+     */
+    public static byte[] videoTracks(@Nullable final byte[] codecPrivateData) {
+        final byte[] track = concat(
+                element(0xD7, uint(1, 1)),
+                element(0x83, uint(1, 1)),
+                element(0x86, "V_MPEG4/ISO/AVC".getBytes(StandardCharsets.US_ASCII)));
+        return element(0x1654AE6B, element(0xAE, codecPrivateData == null
+                ? track
+                : concat(track, element(0x63A2, codecPrivateData))));
+    }
+
+    /**
+     * Returns the tags of a single tag with the simple tags of the names and values
+     */
+    public static byte[] tags(final String... namesAndValues) {
+        final ByteArrayOutputStream simpleTags = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            final byte[] simpleTag = element(0x67C8, concat(
+                    element(0x45A3, namesAndValues[i].getBytes(StandardCharsets.UTF_8)),
+                    element(0x4487, namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8))));
+            simpleTags.write(simpleTag, 0, simpleTag.length);
+        }
+
+        return element(0x1254C367, element(0x7373, concat(element(0x63C0, new byte[0]),
+                simpleTags.toByteArray())));
+    }
+
+    /**
+     * Returns the start of a cluster of unknown size with its timecode on 8 bytes
+     */
+    public static byte[] clusterHeader(final long timecode) {
+        return concat(unknownSizeHeader(ID_CLUSTER), element(0xE7, uint(timecode, 8)));
+    }
+
+    /**
+     * Returns the payload of a block or a simple block
+     */
+    public static byte[] block(final int track, final int relativeTimecode, final int flags, final byte[] data) {
+        return concat(new byte[] {(byte) (0x80 | track), (byte) (relativeTimecode >> 8), (byte) relativeTimecode,
+                (byte) flags}, data);
+    }
+
+    /**
+     * Returns a simple block of the track 1
+     */
+    public static byte[] simpleBlock(final int relativeTimecode, final int flags, final byte[] data) {
+        return element(0xA3, block(1, relativeTimecode, flags, data));
+    }
+
+    /**
+     * Returns the start of a PutMedia stream, an EBML header and a segment of unknown size with an H.264 track
+     */
+    public static byte[] streamHeader() {
+        return concat(ebmlHeader("matroska"), unknownSizeHeader(ID_SEGMENT), info(), videoTracks(null));
+    }
+
+    /**
+     * Returns a cluster of unknown size of frames 40ms apart, the first one a key frame
+     */
+    public static byte[] cluster(final long timecode, final int frameCount, final int frameSize) {
+        final ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+        final byte[] header = clusterHeader(timecode);
+        cluster.write(header, 0, header.length);
+        for (int frame = 0; frame < frameCount; frame++) {
+            final byte[] block = simpleBlock(frame * 40, frame == 0 ? 0x80 : 0, new byte[frameSize]);
+            cluster.write(block, 0, block.length);
+        }
+
+        return cluster.toByteArray();
+    }
+}
@@ -0,0 +1,266 @@
+package com.amazonaws.kinesisvideo.stream.spill;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ID_SEGMENT;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.clusterHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.concat;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.ebmlHeader;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.element;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.info;
+import static com.amazonaws.kinesisvideo.stream.mkv.MkvTestElements.unknownSizeHeader;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentSpillLogTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sessionResumesFromTheFirstUnacknowledgedFragment() throws Exception {
+        final byte[] header = header();
+        final List<byte[]> clusters = clusters(0, 3, 100);
+        try (final SegmentSpillLog log = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT)) {
+            // Byte by byte, every element header is split
+            append(log, header, 1);
+            for (final byte[] cluster : clusters) {
+                append(log, cluster, 1);
+            }
+
+            assertEquals(3, log.getPendingFragmentCount());
+            assertEquals(2, log.acknowledge(1000));
+            assertEquals(header.length + clusters.get(0).length + clusters.get(1).length, log.getAckedOffset());
+
+            log.markEndOfStream();
+            assertArrayEquals(concat(header, clusters.get(2)), readSession(log));
+        }
+    }
+
+    @Test
+    public void sessionResumedAfterEveryFragmentWasAcknowledgedStartsWithTheHeader() throws Exception {
+        final byte[] header = header();
+        final List<byte[]> clusters = clusters(0, 3, 100);
+        try (final SegmentSpillLog log = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT)) {
+            append(log, header, 7);
+            append(log, clusters.get(0), 7);
+            append(log, clusters.get(1), 7);
+            assertEquals(2, log.acknowledge(1000));
+            assertEquals(0, log.getPendingFragmentCount());
+
+            // A caught-up sender whose connection dropped resumes with the next cluster
+            final InputStream session = log.openSession();
+            append(log, clusters.get(2), 7);
+            log.markEndOfStream();
+            assertArrayEquals(concat(header, clusters.get(2)), readAll(session));
+        }
+    }
+
+    @Test
+    public void sessionFollowsTheAppendsAcrossSegments() throws Exception {
+        final byte[] header = header();
+        final List<byte[]> clusters = clusters(0, 6, 1500);
+        try (final SegmentSpillLog log = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT)) {
+            append(log, header, 7);
+            final InputStream session = log.openSession();
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write(header);
+            for (final byte[] cluster : clusters) {
+                append(log, cluster, 1000);
+                expected.write(cluster);
+            }
+
+            log.markEndOfStream();
+            assertTrue(log.getSegmentCount() > 2);
+            assertArrayEquals(expected.toByteArray(), readAll(session));
+
+            // Only the segment being written is left once everything is acknowledged
+            assertEquals(6, log.acknowledge(5000));
+            assertEquals(1, log.getSegmentCount());
+            assertEquals(1, countFiles(".seg"));
+        }
+    }
+
+    @Test
+    public void recoveryDropsTheFragmentCutShort() throws Exception {
+        final byte[] header = header();
+        final List<byte[]> clusters = clusters(0, 4, 1500);
+        final SegmentSpillLog crashed = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT);
+        append(crashed, header, 512);
+        for (final byte[] cluster : clusters) {
+            append(crashed, cluster, 512);
+        }
+
+        crashed.acknowledge(0);
+
+        // Never closed, the last fragment may not be complete
+        try (final SegmentSpillLog log = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT)) {
+            assertEquals(2, log.getPendingFragmentCount());
+            assertEquals(0, log.getAckedTimecode());
+            log.markEndOfStream();
+            assertArrayEquals(concat(header, clusters.get(1), clusters.get(2)), readSession(log));
+        }
+    }
+
+    @Test
+    public void recoveryTruncatesAtTheFirstCorruptedRecord() throws Exception {
+        final byte[] header = header();
+        final List<byte[]> clusters = clusters(0, 3, 1000);
+        final SegmentSpillLog crashed = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT);
+        append(crashed, header, 4096);
+        for (final byte[] cluster : clusters) {
+            append(crashed, cluster, 4096);
+        }
+
+        crashed.markEndOfStream();
+        crashed.close();
+
+        // Corrupts the data of the last fragment, the one before is no longer known to be complete
+        final Path last = listFiles(".seg").get(listFiles(".seg").size() - 1);
+        try (final RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.seek(findLastFragment(last) + 20);
+            file.write(0x55);
+        }
+
+        try (final SegmentSpillLog log = openLog(SegmentSpillLog.DEFAULT_MAX_SEGMENT_COUNT)) {
+            assertEquals(1, log.getPendingFragmentCount());
+            final byte[] next = clusters(3000, 1, 1000).get(0);
+            append(log, header, 4096);
+            append(log, next, 4096);
+            log.markEndOfStream();
+            assertArrayEquals(concat(header, clusters.get(0), header, next), readSession(log));
+        }
+    }
+
+    @Test
+    public void diskUsageIsBoundedBySegmentCount() throws Exception {
+        final byte[] header = header();
+        try (final SegmentSpillLog log = openLog(2)) {
+            append(log, header, 4096);
+            final List<byte[]> clusters = clusters(0, 10, 1500);
+            for (final byte[] cluster : clusters) {
+                append(log, cluster, 4096);
+            }
+
+            assertEquals(2, log.getSegmentCount());
+            assertEquals(2, countFiles(".seg"));
+            assertTrue(log.getDroppedByteCount() > 0);
+            assertTrue(log.getDroppedFragmentCount() > 0);
+
+            // The session starts with the header and the oldest fragment still stored
+            log.markEndOfStream();
+            final int retained = log.getPendingFragmentCount();
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            expected.write(header);
+            for (final byte[] cluster : clusters.subList(clusters.size() - retained, clusters.size())) {
+                expected.write(cluster);
+            }
+
+            assertArrayEquals(expected.toByteArray(), readSession(log));
+        }
+    }
+
+    private SegmentSpillLog openLog(final int maxSegmentCount) throws IOException {
+        return SegmentSpillLog.builder()
+                .directory(folder.getRoot().toPath())
+                .segmentSize(SEGMENT_SIZE)
+                .maxSegmentCount(maxSegmentCount)
+                .build();
+    }
+
+    private int countFiles(final String suffix) throws IOException {
+        return listFiles(suffix).size();
+    }
+
+    private List<Path> listFiles(final String suffix) throws IOException {
+        final List<Path> files = new ArrayList<Path>();
+        try (final DirectoryStream<Path> directory = Files.newDirectoryStream(folder.getRoot().toPath())) {
+            for (final Path file : directory) {
+                if (file.toString().endsWith(suffix)) {
+                    files.add(file);
+                }
+            }
+        }
+
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * Returns the position of the last fragment start record of the segment
+     */
+    private static int findLastFragment(final Path segment) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int position = 16;
+        int last = -1;
+        while (position + 9 <= buffer.capacity() && buffer.get(position + 8) != 0) {
+            if (buffer.get(position + 8) == 2) {
+                last = position;
+            }
+
+            position += 9 + buffer.getInt(position);
+        }
+
+        return last;
+    }
+
+    private static void append(final SegmentSpillLog log, final byte[] data, final int chunkSize) throws IOException {
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            log.append(data, offset, Math.min(chunkSize, data.length - offset));
+        }
+    }
+
+    private static byte[] readSession(final SegmentSpillLog log) throws IOException {
+        try (final InputStream session = log.openSession()) {
+            return readAll(session);
+        }
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[333];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static byte[] header() {
+        return concat(ebmlHeader("matroska"), unknownSizeHeader(ID_SEGMENT), info());
+    }
+
+    /**
+     * Returns clusters of unknown size a second apart, each holding a block of the size
+     */
+    private static List<byte[]> clusters(final long firstTimecode, final int count, final int blockSize) {
+        final List<byte[]> clusters = new ArrayList<byte[]>();
+        for (int i = 0; i < count; i++) {
+            final byte[] block = new byte[blockSize];
+            for (int j = 0; j < blockSize; j++) {
+                block[j] = (byte) (i + j);
+            }
+
+            clusters.add(concat(clusterHeader(firstTimecode + i * 1000L), element(0xA3, block)));
+        }
+
+        return clusters;
+    }
+}